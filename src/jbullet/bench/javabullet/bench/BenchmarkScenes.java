@@ -0,0 +1,264 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javabullet.collision.broadphase.DbvtBroadphase;
+import javabullet.collision.dispatch.CollisionDispatcher;
+import javabullet.collision.dispatch.DefaultCollisionConfiguration;
+import javabullet.collision.shapes.BoxShape;
+import javabullet.collision.shapes.BvhTriangleMeshShape;
+import javabullet.collision.shapes.CollisionShape;
+import javabullet.collision.shapes.ConvexHullShape;
+import javabullet.collision.shapes.HeightfieldTerrainShape;
+import javabullet.collision.shapes.ScalarType;
+import javabullet.collision.shapes.TreeBuildMode;
+import javabullet.collision.shapes.TriangleIndexVertexArray;
+import javabullet.demos.genericjoint.RagDoll;
+import javabullet.dynamics.DiscreteDynamicsWorld;
+import javabullet.dynamics.RigidBody;
+import javabullet.dynamics.RigidBodyConstructionInfo;
+import javabullet.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
+import javabullet.linearmath.DefaultMotionState;
+import javabullet.linearmath.Transform;
+import javax.vecmath.Vector3f;
+
+/**
+ * Headless scenes shared by the benchmarks. All scenes are built from fixed
+ * seeds, so every fork simulates the same thing.
+ * 
+ * @author jezek2
+ */
+public class BenchmarkScenes {
+	
+	public static final float TIME_STEP = 1f / 60f;
+	
+	public static final String BOX_STACK = "boxStack";
+	public static final String PYRAMID = "pyramid";
+	public static final String RAGDOLL_PILE = "ragdollPile";
+	public static final String TERRAIN_HULLS = "terrainHulls";
+	public static final String HEIGHTFIELD_HULLS = "heightfieldHulls";
+	
+	public static final int TERRAIN_SIZE = 64;
+	public static final float TERRAIN_SCALE = 2f;
+	
+	public DiscreteDynamicsWorld dynamicsWorld;
+	public CollisionDispatcher dispatcher;
+	public SequentialImpulseConstraintSolver solver;
+	public final List<RigidBody> bodies = new ArrayList<RigidBody>();
+	public TreeBuildMode terrainBuildMode = TreeBuildMode.BUILD_MEAN_SPLIT;
+
+	public BenchmarkScenes() {
+		DefaultCollisionConfiguration collisionConfiguration = new DefaultCollisionConfiguration();
+		dispatcher = new CollisionDispatcher(collisionConfiguration);
+		solver = new SequentialImpulseConstraintSolver();
+		dynamicsWorld = new DiscreteDynamicsWorld(dispatcher, new DbvtBroadphase(), solver, collisionConfiguration);
+		dynamicsWorld.setGravity(new Vector3f(0f, -10f, 0f));
+	}
+	
+	public static BenchmarkScenes create(String name) {
+		return create(name, TreeBuildMode.BUILD_MEAN_SPLIT);
+	}
+	
+	/**
+	 * Creates scene, triangle mesh terrain is built using given algorithm.
+	 */
+	public static BenchmarkScenes create(String name, TreeBuildMode terrainBuildMode) {
+		BenchmarkScenes scene = new BenchmarkScenes();
+		scene.terrainBuildMode = terrainBuildMode;
+		if (BOX_STACK.equals(name)) {
+			scene.createGround();
+			scene.createBoxStacks(8, 12);
+		}
+		else if (PYRAMID.equals(name)) {
+			scene.createGround();
+			scene.createPyramid(20);
+		}
+		else if (RAGDOLL_PILE.equals(name)) {
+			scene.createGround();
+			scene.createRagDollPile(4, 4, 4);
+		}
+		else if (TERRAIN_HULLS.equals(name)) {
+			scene.createTerrain();
+			scene.createFallingHulls(10, 4, 10);
+		}
+		else if (HEIGHTFIELD_HULLS.equals(name)) {
+			scene.createHeightfieldTerrain();
+			scene.createFallingHulls(10, 4, 10);
+		}
+		else {
+			throw new IllegalArgumentException("unknown scene: "+name);
+		}
+		return scene;
+	}
+	
+	public void stepSimulation(int numSteps) {
+		for (int i=0; i<numSteps; i++) {
+			dynamicsWorld.stepSimulation(TIME_STEP, 1, TIME_STEP);
+		}
+	}
+	
+	public void createGround() {
+		createBody(0f, new BoxShape(new Vector3f(100f, 1f, 100f)), 0f, -1f, 0f);
+	}
+	
+	/**
+	 * Creates grid of stacks of unit boxes.
+	 */
+	public void createBoxStacks(int numStacks, int height) {
+		CollisionShape boxShape = new BoxShape(new Vector3f(0.5f, 0.5f, 0.5f));
+		for (int s=0; s<numStacks; s++) {
+			float x = (s % 4) * 3f - 4.5f;
+			float z = (s / 4) * 3f - 1.5f;
+			for (int i=0; i<height; i++) {
+				createBody(1f, boxShape, x, 0.5f + i, z);
+			}
+		}
+	}
+	
+	public void createPyramid(int baseSize) {
+		CollisionShape boxShape = new BoxShape(new Vector3f(0.5f, 0.5f, 0.5f));
+		for (int level=0; level<baseSize; level++) {
+			int count = baseSize - level;
+			for (int i=0; i<count; i++) {
+				createBody(1f, boxShape, i*1.02f - count*0.51f, 0.5f + level, 0f);
+			}
+		}
+	}
+	
+	public void createRagDollPile(int sizeX, int sizeY, int sizeZ) {
+		Vector3f offset = new Vector3f();
+		for (int y=0; y<sizeY; y++) {
+			for (int x=0; x<sizeX; x++) {
+				for (int z=0; z<sizeZ; z++) {
+					offset.set(x*1.2f - sizeX*0.6f, 1f + y*1.5f, z*1.2f - sizeZ*0.6f);
+					new RagDoll(dynamicsWorld, offset);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Creates static triangle mesh terrain with smooth hills.
+	 */
+	public void createTerrain() {
+		int size = TERRAIN_SIZE;
+		int numVertices = (size + 1) * (size + 1);
+		int numTriangles = size * size * 2;
+		
+		ByteBuffer vertices = ByteBuffer.allocateDirect(numVertices * 3 * 4).order(ByteOrder.nativeOrder());
+		for (int i=0; i<=size; i++) {
+			for (int j=0; j<=size; j++) {
+				vertices.putFloat((i - size/2) * TERRAIN_SCALE);
+				vertices.putFloat((float)(Math.sin(i * 0.3) * Math.cos(j * 0.2)) * 2f);
+				vertices.putFloat((j - size/2) * TERRAIN_SCALE);
+			}
+		}
+		vertices.flip();
+		
+		ByteBuffer indices = ByteBuffer.allocateDirect(numTriangles * 3 * 4).order(ByteOrder.nativeOrder());
+		for (int i=0; i<size; i++) {
+			for (int j=0; j<size; j++) {
+				int i0 = i * (size + 1) + j;
+				int i1 = i0 + 1;
+				int i2 = i0 + size + 1;
+				int i3 = i2 + 1;
+				indices.putInt(i0).putInt(i1).putInt(i2);
+				indices.putInt(i1).putInt(i3).putInt(i2);
+			}
+		}
+		indices.flip();
+		
+		TriangleIndexVertexArray mesh = new TriangleIndexVertexArray(numTriangles, indices, 3 * 4, numVertices, vertices, 3 * 4);
+		BvhTriangleMeshShape terrainShape = new BvhTriangleMeshShape(mesh, true, terrainBuildMode, null, 1);
+		assert (terrainShape.getOptimizedBvh().getBuildMode() == terrainBuildMode);
+		createBody(0f, terrainShape, 0f, 0f, 0f);
+	}
+	
+	/**
+	 * Creates static heightfield terrain with the same hills as {@link #createTerrain}.
+	 */
+	public void createHeightfieldTerrain() {
+		int size = TERRAIN_SIZE;
+		
+		ByteBuffer heights = ByteBuffer.allocateDirect((size + 1) * (size + 1) * 4).order(ByteOrder.nativeOrder());
+		for (int j=0; j<=size; j++) {
+			for (int i=0; i<=size; i++) {
+				heights.putFloat((float)(Math.sin(i * 0.3) * Math.cos(j * 0.2)) * 2f);
+			}
+		}
+		heights.flip();
+		
+		HeightfieldTerrainShape terrainShape = new HeightfieldTerrainShape(size + 1, size + 1, heights, 1f, -2f, 2f, 1, ScalarType.PHY_FLOAT, false);
+		terrainShape.setLocalScaling(new Vector3f(TERRAIN_SCALE, 1f, TERRAIN_SCALE));
+		createBody(0f, terrainShape, 0f, 0f, 0f);
+	}
+	
+	/**
+	 * Creates grid of random convex hulls above the terrain.
+	 */
+	public void createFallingHulls(int sizeX, int sizeY, int sizeZ) {
+		Random random = new Random(1234);
+		
+		CollisionShape[] hulls = new CollisionShape[8];
+		for (int i=0; i<hulls.length; i++) {
+			List<Vector3f> points = new ArrayList<Vector3f>();
+			for (int j=0; j<16; j++) {
+				points.add(new Vector3f(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f));
+			}
+			hulls[i] = new ConvexHullShape(points);
+		}
+		
+		int n = 0;
+		for (int y=0; y<sizeY; y++) {
+			for (int x=0; x<sizeX; x++) {
+				for (int z=0; z<sizeZ; z++) {
+					createBody(1f, hulls[n++ % hulls.length], x*2f - sizeX, 5f + y*2f, z*2f - sizeZ);
+				}
+			}
+		}
+	}
+	
+	public RigidBody createBody(float mass, CollisionShape shape, float x, float y, float z) {
+		Transform startTransform = new Transform();
+		startTransform.setIdentity();
+		startTransform.origin.set(x, y, z);
+		
+		Vector3f localInertia = new Vector3f(0f, 0f, 0f);
+		if (mass != 0f) {
+			shape.calculateLocalInertia(mass, localInertia);
+		}
+		
+		RigidBodyConstructionInfo rbInfo = new RigidBodyConstructionInfo(mass, new DefaultMotionState(startTransform), shape, localInertia);
+		RigidBody body = new RigidBody(rbInfo);
+		dynamicsWorld.addRigidBody(body);
+		bodies.add(body);
+		return body;
+	}
+	
+}
@@ -0,0 +1,137 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javabullet.collision.broadphase.BroadphaseNativeType;
+import javabullet.collision.broadphase.BroadphaseProxy;
+import javabullet.collision.broadphase.CollisionFilterGroups;
+import javabullet.collision.broadphase.DbvtBroadphase;
+import javabullet.collision.dispatch.CollisionDispatcher;
+import javabullet.collision.dispatch.DefaultCollisionConfiguration;
+import javax.vecmath.Vector3f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures broadphase churn of {@link DbvtBroadphase}: in every step a fraction
+ * of proxies moves in random directions (bouncing off the world bounds) and
+ * overlapping pairs are updated.
+ * 
+ * @author jezek2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BroadphaseBenchmark {
+
+	private static final float WORLD_EXTENT = 50f;
+	private static final float PROXY_EXTENT = 1f;
+	private static final float SPEED = 0.5f;
+	
+	@Param({ "1000", "10000", "50000" })
+	public int numProxies;
+	
+	/**
+	 * Percentage of proxies moved in each step.
+	 */
+	@Param({ "10" })
+	public int movingPercent;
+	
+	private DbvtBroadphase broadphase;
+	private CollisionDispatcher dispatcher;
+	private BroadphaseProxy[] proxies;
+	private float[] positions;
+	private float[] velocities;
+	private float range;
+	private int numMoving;
+	private int nextMoving;
+	
+	private final Vector3f aabbMin = new Vector3f();
+	private final Vector3f aabbMax = new Vector3f();
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		dispatcher = new CollisionDispatcher(new DefaultCollisionConfiguration());
+		
+		// density is kept constant, so bigger worlds have similar number of pairs per proxy
+		float extent = WORLD_EXTENT * (float)Math.cbrt(numProxies / 10000.0);
+		broadphase = new DbvtBroadphase();
+		
+		Random random = new Random(2008);
+		proxies = new BroadphaseProxy[numProxies];
+		positions = new float[numProxies * 3];
+		velocities = new float[numProxies * 3];
+		range = extent - PROXY_EXTENT;
+		for (int i=0; i<numProxies; i++) {
+			for (int j=0; j<3; j++) {
+				positions[i*3+j] = (random.nextFloat() * 2f - 1f) * range;
+				velocities[i*3+j] = (random.nextFloat() * 2f - 1f) * SPEED;
+			}
+			getAabb(i);
+			proxies[i] = broadphase.createProxy(aabbMin, aabbMax, BroadphaseNativeType.BOX_SHAPE_PROXYTYPE, null,
+					(short)CollisionFilterGroups.DEFAULT_FILTER, (short)CollisionFilterGroups.ALL_FILTER, dispatcher);
+		}
+		broadphase.calculateOverlappingPairs(dispatcher);
+		
+		numMoving = Math.max(1, numProxies * movingPercent / 100);
+	}
+	
+	private void getAabb(int i) {
+		aabbMin.set(positions[i*3+0] - PROXY_EXTENT, positions[i*3+1] - PROXY_EXTENT, positions[i*3+2] - PROXY_EXTENT);
+		aabbMax.set(positions[i*3+0] + PROXY_EXTENT, positions[i*3+1] + PROXY_EXTENT, positions[i*3+2] + PROXY_EXTENT);
+	}
+	
+	@Benchmark
+	public int step() {
+		// moves different window of proxies in every step:
+		for (int n=0; n<numMoving; n++) {
+			int i = nextMoving;
+			nextMoving = (nextMoving + 1) % numProxies;
+			
+			for (int j=0; j<3; j++) {
+				float p = positions[i*3+j] + velocities[i*3+j];
+				if (p < -range || p > range) {
+					velocities[i*3+j] = -velocities[i*3+j];
+					p = positions[i*3+j] + velocities[i*3+j];
+				}
+				positions[i*3+j] = p;
+			}
+			getAabb(i);
+			broadphase.setAabb(proxies[i], aabbMin, aabbMax, dispatcher);
+		}
+		
+		broadphase.calculateOverlappingPairs(dispatcher);
+		return broadphase.getOverlappingPairCache().getNumOverlappingPairs();
+	}
+	
+}
@@ -0,0 +1,70 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.bench;
+
+import java.util.concurrent.TimeUnit;
+import javabullet.collision.broadphase.OverlappingPairCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures narrowphase alone: dispatch of all overlapping pairs of a scene
+ * that was simulated for a while, so the pairs are in resting contact.
+ * 
+ * @author jezek2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NarrowphaseBenchmark {
+
+	private static final int SETTLE_STEPS = 120;
+	
+	@Param({ BenchmarkScenes.BOX_STACK, BenchmarkScenes.RAGDOLL_PILE, BenchmarkScenes.TERRAIN_HULLS, BenchmarkScenes.HEIGHTFIELD_HULLS })
+	public String scene;
+	
+	private BenchmarkScenes scenes;
+	private OverlappingPairCache pairCache;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		scenes = BenchmarkScenes.create(scene);
+		scenes.stepSimulation(SETTLE_STEPS);
+		pairCache = scenes.dynamicsWorld.getBroadphase().getOverlappingPairCache();
+	}
+	
+	@Benchmark
+	public int dispatchAllCollisionPairs() {
+		scenes.dispatcher.dispatchAllCollisionPairs(pairCache, scenes.dynamicsWorld.getDispatchInfo(), scenes.dispatcher);
+		return scenes.dispatcher.getNumManifolds();
+	}
+	
+}
@@ -0,0 +1,107 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javabullet.collision.dispatch.CollisionWorld.ClosestRayResultCallback;
+import javabullet.collision.shapes.TreeBuildMode;
+import javax.vecmath.Vector3f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures storm of random rays (ns/ray) cast against the terrain with
+ * convex hulls lying on it. The terrain is either triangle mesh (built using
+ * given tree build mode) or heightfield (build mode is not used).
+ * 
+ * @author jezek2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RaycastBenchmark {
+
+	private static final int SETTLE_STEPS = 120;
+	private static final int NUM_RAYS = 1024;
+	
+	@Param({ BenchmarkScenes.TERRAIN_HULLS, BenchmarkScenes.HEIGHTFIELD_HULLS })
+	public String scene;
+	
+	@Param({ "BUILD_MEAN_SPLIT", "BUILD_BINNED_SAH" })
+	public TreeBuildMode buildMode;
+	
+	private BenchmarkScenes scenes;
+	private final Vector3f[] rayFrom = new Vector3f[NUM_RAYS];
+	private final Vector3f[] rayTo = new Vector3f[NUM_RAYS];
+	private final ClosestRayResultCallback rayCallback = new ClosestRayResultCallback(new Vector3f(), new Vector3f());
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		scenes = BenchmarkScenes.create(scene, buildMode);
+		scenes.stepSimulation(SETTLE_STEPS);
+		
+		Random random = new Random(4321);
+		float extent = BenchmarkScenes.TERRAIN_SIZE * BenchmarkScenes.TERRAIN_SCALE * 0.5f;
+		for (int i=0; i<NUM_RAYS; i++) {
+			// mix of vertical rays and long diagonal ones
+			float x = (random.nextFloat() * 2f - 1f) * extent;
+			float z = (random.nextFloat() * 2f - 1f) * extent;
+			rayFrom[i] = new Vector3f(x, 20f, z);
+			if ((i & 1) == 0) {
+				rayTo[i] = new Vector3f(x, -20f, z);
+			}
+			else {
+				rayTo[i] = new Vector3f(-x, -5f, -z);
+			}
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(NUM_RAYS)
+	public int rayTest() {
+		int hits = 0;
+		for (int i=0; i<NUM_RAYS; i++) {
+			rayCallback.rayFromWorld.set(rayFrom[i]);
+			rayCallback.rayToWorld.set(rayTo[i]);
+			rayCallback.closestHitFraction = 1f;
+			rayCallback.collisionObject = null;
+			
+			scenes.dynamicsWorld.rayTest(rayFrom[i], rayTo[i], rayCallback);
+			if (rayCallback.hasHit()) {
+				hits++;
+			}
+		}
+		return hits;
+	}
+	
+}
@@ -0,0 +1,93 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javabullet.collision.dispatch.CollisionObject;
+import javabullet.collision.narrowphase.PersistentManifold;
+import javabullet.dynamics.constraintsolver.ContactSolverInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the constraint solver alone: all contact manifolds of a settled
+ * scene are solved as one group.
+ * 
+ * @author jezek2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SolverBenchmark {
+
+	private static final int SETTLE_STEPS = 120;
+	
+	@Param({ BenchmarkScenes.BOX_STACK, BenchmarkScenes.PYRAMID })
+	public String scene;
+	
+	@Param({ "10" })
+	public int numIterations;
+	
+	private BenchmarkScenes scenes;
+	private List<PersistentManifold> manifolds;
+	private List<CollisionObject> collisionObjects;
+	private ContactSolverInfo solverInfo;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		scenes = BenchmarkScenes.create(scene);
+		scenes.stepSimulation(SETTLE_STEPS);
+		manifolds = scenes.dispatcher.getInternalManifoldPointer();
+		collisionObjects = scenes.dynamicsWorld.getCollisionObjectArray();
+		
+		solverInfo = new ContactSolverInfo(scenes.dynamicsWorld.getSolverInfo());
+		solverInfo.timeStep = BenchmarkScenes.TIME_STEP;
+		solverInfo.numIterations = numIterations;
+	}
+	
+	@Benchmark
+	public float solveGroup() {
+		// solver bodies are assigned per island, drop ids left by last step
+		// (or previous invocation) so all bodies are converted again:
+		for (int i=0; i<collisionObjects.size(); i++) {
+			CollisionObject colObj = collisionObjects.get(i);
+			colObj.setCompanionId(colObj.mergesSimulationIslands()? -1 : -2);
+		}
+		
+		int numManifolds = manifolds.size();
+		scenes.solver.prepareSolve(0, numManifolds);
+		float result = scenes.solver.solveGroup(null, 0, manifolds, 0, numManifolds, null, 0, 0, solverInfo, null, scenes.dispatcher);
+		scenes.solver.allSolved(solverInfo, null);
+		return result;
+	}
+	
+}
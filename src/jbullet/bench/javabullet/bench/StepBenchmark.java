@@ -0,0 +1,74 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures complete simulation step (ns/step) of the benchmark scenes. Every
+ * invocation simulates fixed number of steps of freshly built scene (setup is
+ * not measured), so all runs cover the same sequence of steps from the start.
+ * The sequence is not longer than deactivation time, so all objects are still
+ * awake and time spent stepping sleeping scenes is not included.
+ * 
+ * @author jezek2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StepBenchmark {
+	
+	private static final int NUM_STEPS = 120;
+	
+	@Param({ BenchmarkScenes.BOX_STACK, BenchmarkScenes.PYRAMID, BenchmarkScenes.RAGDOLL_PILE, BenchmarkScenes.TERRAIN_HULLS, BenchmarkScenes.HEIGHTFIELD_HULLS })
+	public String scene;
+	
+	private BenchmarkScenes scenes;
+	
+	@Setup(Level.Invocation)
+	public void setup() {
+		scenes = BenchmarkScenes.create(scene);
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(NUM_STEPS)
+	public int step() {
+		int numSubSteps = 0;
+		for (int i=0; i<NUM_STEPS; i++) {
+			numSubSteps += scenes.dynamicsWorld.stepSimulation(BenchmarkScenes.TIME_STEP, 1, BenchmarkScenes.TIME_STEP);
+		}
+		return numSubSteps;
+	}
+	
+}
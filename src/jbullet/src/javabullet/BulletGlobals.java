@@ -23,13 +23,7 @@
 
 package javabullet;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import javabullet.linearmath.ProfileManager;
 import javax.vecmath.Vector3f;
 
 /**
@@ -40,6 +34,11 @@ import javax.vecmath.Vector3f;
 public class BulletGlobals {
 	
 	public static final boolean DEBUG = true;
+	
+	/**
+	 * Initial state of {@link ProfileManager}, profiling can be also enabled
+	 * at runtime. When set, the profiles are printed at exit.
+	 */
 	public static final boolean ENABLE_PROFILE = false;
 	
 	public static final float CONVEX_DISTANCE_MARGIN = 0.04f;
@@ -61,13 +60,6 @@ public class BulletGlobals {
 	public static float gDeactivationTime = 2f;
 	public static boolean gDisableDeactivation = false;
 	
-	public static int gTotalContactPoints;
-	
-	// GjkPairDetector
-	// temp globals, to improve GJK/EPA/penetration calculations
-	public static int gNumDeepPenetrationChecks = 0;
-	public static int gNumGjkChecks = 0;
-	
 	public static int gNumAlignedAllocs;
 	public static int gNumAlignedFree;
 	public static int gTotalBytesAlignedAllocs;	
@@ -76,52 +68,24 @@ public class BulletGlobals {
 	public static final Vector3f gOldPickingPos = new Vector3f();
 	public static float gOldPickingDist = 0.f;
 	
-	public static int gOverlappingPairs = 0;
-	public static int gRemovePairs = 0;
-	public static int gAddedPairs = 0;
-	public static int gFindPairs = 0;
-	
 	public static final Vector3f ZERO_VECTOR3 = new Vector3f(0f, 0f, 0f);
 	
-	private static final List<ProfileBlock> profileStack = new ArrayList<ProfileBlock>();
-	private static final Map<String,Long> profiles = new HashMap<String,Long>();
-
 	// JAVA NOTE: added for statistics in applet demo
-	public static long stepSimulationTime;
 	public static long updateTime;
 	
-	public static void pushProfile(String name) {
-		if (!ENABLE_PROFILE) return;
-		
-		ProfileBlock block = new ProfileBlock();
-		block.name = name;
-		block.startTime = System.currentTimeMillis();
-		profileStack.add(block);
+	/**
+	 * Starts profile block, see {@link ProfileManager#startProfile}.
+	 */
+	public static void pushProfile(Object name) {
+		ProfileManager.startProfile(name);
 	}
 	
 	public static void popProfile() {
-		if (!ENABLE_PROFILE) return;
-		
-		ProfileBlock block = profileStack.remove(profileStack.size() - 1);
-		long time = System.currentTimeMillis();
-		
-		Long totalTime = profiles.get(block.name);
-		if (totalTime == null) totalTime = 0L;
-		totalTime += (time - block.startTime);
-		profiles.put(block.name, totalTime);
+		ProfileManager.stopProfile();
 	}
 	
 	public static void printProfiles() {
-		ArrayList<Entry<String,Long>> list = new ArrayList<Entry<String,Long>>(profiles.entrySet());
-		Collections.sort(list, new Comparator<Entry<String,Long>>() {
-			public int compare(Entry<String,Long> e1, Entry<String,Long> e2) {
-				return e1.getValue().compareTo(e2.getValue());
-			}
-		});
-		
-		for (Entry<String,Long> e : /*profiles.entrySet()*/list) {
-			System.out.println(e.getKey()+" = "+e.getValue()+" ms");
-		}
+		ProfileManager.printAllProfiles(System.out);
 	}
 	
 	static {
@@ -135,9 +99,4 @@ public class BulletGlobals {
 		}
 	}
 	
-	private static class ProfileBlock {
-		public String name;
-		public long startTime;
-	}
-	
 }
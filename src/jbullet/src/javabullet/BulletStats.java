@@ -0,0 +1,346 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-world statistics. Counters are collected only when enabled (see
+ * {@link #setEnabled}), otherwise they cost just a single check per event.<p>
+ * 
+ * Each thread participating in simulation step of a world increments its own
+ * counters, which are merged at the end of the step. Threads are bound to
+ * statistics by the world (see {@link #bind}), helper threads of parallel
+ * stages inherit binding from the thread that started them.
+ * 
+ * @author jezek2
+ */
+public class BulletStats {
+
+	private static final ThreadLocal<Counters> currentCounters = new ThreadLocal<Counters>();
+	private static volatile int numEnabled = 0;
+	
+	private boolean enabled = false;
+	
+	private final List<Counters> threadCountersList = new ArrayList<Counters>();
+	private final ThreadLocal<Counters> threadCounters = new ThreadLocal<Counters>() {
+		@Override
+		protected Counters initialValue() {
+			Counters counters = new Counters(BulletStats.this);
+			synchronized (threadCountersList) {
+				threadCountersList.add(counters);
+			}
+			return counters;
+		}
+	};
+	
+	private final Counters lastStep = new Counters(this);
+	private final Counters total = new Counters(this);
+	private int overlappingPairs;
+	private long stepTime;
+	
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public synchronized void setEnabled(boolean enabled) {
+		if (this.enabled != enabled) {
+			this.enabled = enabled;
+			synchronized (BulletStats.class) {
+				numEnabled += enabled? 1 : -1;
+			}
+		}
+	}
+	
+	/**
+	 * Binds current thread to these statistics. Must be paired with
+	 * {@link #unbind} in finally block.
+	 * 
+	 * @return previous binding, to be passed to {@link #unbind}
+	 */
+	public Counters bind() {
+		Counters prev = currentCounters.get();
+		currentCounters.set(enabled? threadCounters.get() : null);
+		return prev;
+	}
+	
+	/**
+	 * Binds current thread to given statistics, or unbinds it when null is passed.
+	 * 
+	 * @return previous binding, to be passed to {@link #unbind}
+	 */
+	public static Counters bind(BulletStats stats) {
+		if (stats != null) {
+			return stats.bind();
+		}
+		Counters prev = currentCounters.get();
+		currentCounters.set(null);
+		return prev;
+	}
+	
+	/**
+	 * Restores previous binding of current thread.
+	 */
+	public static void unbind(Counters prev) {
+		currentCounters.set(prev);
+	}
+	
+	/**
+	 * Returns statistics bound to current thread, or null.
+	 */
+	public static BulletStats getCurrent() {
+		Counters counters = currentCounters.get();
+		return counters != null? counters.owner : null;
+	}
+	
+	/**
+	 * Merges counters of all threads into last step statistics and totals.
+	 * Called by world at the end of simulation step, after all helper threads
+	 * have finished.
+	 */
+	public void merge(int overlappingPairs, long stepTime) {
+		this.overlappingPairs = overlappingPairs;
+		this.stepTime = stepTime;
+		
+		lastStep.reset();
+		synchronized (threadCountersList) {
+			for (int i=0; i<threadCountersList.size(); i++) {
+				Counters counters = threadCountersList.get(i);
+				lastStep.add(counters);
+				counters.reset();
+			}
+		}
+		total.add(lastStep);
+	}
+	
+	/**
+	 * Resets accumulated totals.
+	 */
+	public void reset() {
+		total.reset();
+	}
+	
+	/**
+	 * Returns counters of last simulation step.
+	 */
+	public Counters getLastStep() {
+		return lastStep;
+	}
+
+	/**
+	 * Returns counters accumulated since creation or last {@link #reset}.
+	 */
+	public Counters getTotal() {
+		return total;
+	}
+	
+	/**
+	 * Returns number of overlapping pairs at the end of last step.
+	 */
+	public int getOverlappingPairs() {
+		return overlappingPairs;
+	}
+
+	/**
+	 * Returns duration of last step in nanoseconds.
+	 */
+	public long getStepTime() {
+		return stepTime;
+	}
+	
+	////////////////////////////////////////////////////////////////////////////
+	
+	// hot path counters:
+
+	private static Counters current() {
+		return numEnabled != 0? currentCounters.get() : null;
+	}
+	
+	public static void addAddedPair() {
+		Counters c = current();
+		if (c != null) c.addedPairs++;
+	}
+	
+	public static void addRemovedPair() {
+		Counters c = current();
+		if (c != null) c.removedPairs++;
+	}
+	
+	public static void addFindPair() {
+		Counters c = current();
+		if (c != null) c.findPairs++;
+	}
+	
+	public static void addGjkCheck() {
+		Counters c = current();
+		if (c != null) c.gjkChecks++;
+	}
+	
+	public static void addDeepPenetrationCheck() {
+		Counters c = current();
+		if (c != null) c.deepPenetrationChecks++;
+	}
+	
+	public static void addContactPoints(int numPoints) {
+		Counters c = current();
+		if (c != null) c.contactPoints += numPoints;
+	}
+	
+	public static void addClampedCcdMotion() {
+		Counters c = current();
+		if (c != null) c.clampedCcdMotions++;
+	}
+	
+	public static void addAllocatedAlgorithm(boolean reused) {
+		Counters c = current();
+		if (c != null) {
+			if (reused) c.reusedAlgorithms++;
+			else c.createdAlgorithms++;
+		}
+	}
+	
+	public static void addAllocatedManifold(boolean reused) {
+		Counters c = current();
+		if (c != null) {
+			if (reused) c.reusedManifolds++;
+			else c.createdManifolds++;
+		}
+	}
+	
+	////////////////////////////////////////////////////////////////////////////
+	
+	public static class Counters {
+		private final BulletStats owner;
+		
+		private int addedPairs;
+		private int removedPairs;
+		private int findPairs;
+		private int gjkChecks;
+		private int deepPenetrationChecks;
+		private int contactPoints;
+		private int clampedCcdMotions;
+		private int createdAlgorithms;
+		private int reusedAlgorithms;
+		private int createdManifolds;
+		private int reusedManifolds;
+
+		private Counters(BulletStats owner) {
+			this.owner = owner;
+		}
+		
+		private void add(Counters c) {
+			addedPairs += c.addedPairs;
+			removedPairs += c.removedPairs;
+			findPairs += c.findPairs;
+			gjkChecks += c.gjkChecks;
+			deepPenetrationChecks += c.deepPenetrationChecks;
+			contactPoints += c.contactPoints;
+			clampedCcdMotions += c.clampedCcdMotions;
+			createdAlgorithms += c.createdAlgorithms;
+			reusedAlgorithms += c.reusedAlgorithms;
+			createdManifolds += c.createdManifolds;
+			reusedManifolds += c.reusedManifolds;
+		}
+		
+		private void reset() {
+			addedPairs = 0;
+			removedPairs = 0;
+			findPairs = 0;
+			gjkChecks = 0;
+			deepPenetrationChecks = 0;
+			contactPoints = 0;
+			clampedCcdMotions = 0;
+			createdAlgorithms = 0;
+			reusedAlgorithms = 0;
+			createdManifolds = 0;
+			reusedManifolds = 0;
+		}
+
+		public int getAddedPairs() {
+			return addedPairs;
+		}
+
+		public int getRemovedPairs() {
+			return removedPairs;
+		}
+
+		public int getFindPairs() {
+			return findPairs;
+		}
+
+		public int getGjkChecks() {
+			return gjkChecks;
+		}
+
+		public int getDeepPenetrationChecks() {
+			return deepPenetrationChecks;
+		}
+
+		/**
+		 * Returns number of contact points processed by constraint solver.
+		 */
+		public int getContactPoints() {
+			return contactPoints;
+		}
+
+		/**
+		 * Returns number of body motions limited by continuous collision detection.
+		 */
+		public int getClampedCcdMotions() {
+			return clampedCcdMotions;
+		}
+
+		/**
+		 * Returns number of collision algorithms created because free list of
+		 * the dispatcher was empty.
+		 */
+		public int getCreatedAlgorithms() {
+			return createdAlgorithms;
+		}
+
+		/**
+		 * Returns number of collision algorithms reused from free list of the dispatcher.
+		 */
+		public int getReusedAlgorithms() {
+			return reusedAlgorithms;
+		}
+
+		/**
+		 * Returns number of persistent manifolds created because manifold pool
+		 * of the dispatcher was empty.
+		 */
+		public int getCreatedManifolds() {
+			return createdManifolds;
+		}
+
+		/**
+		 * Returns number of persistent manifolds reused from pool of the dispatcher.
+		 */
+		public int getReusedManifolds() {
+			return reusedManifolds;
+		}
+	}
+	
+}
@@ -65,6 +65,13 @@ public class ObjectPool<T> {
 		}
 	}
 	
+	/**
+	 * Returns number of instances available in pool.
+	 */
+	public int getFreeCount() {
+		return list.size();
+	}
+	
 	/**
 	 * Release instance into pool.
 	 * 
@@ -0,0 +1,541 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.collision.broadphase;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * AxisSweep3 is an efficient implementation of the 3D axis sweep and prune broadphase.
+ * It uses arrays rather then lists for storage of the 3 axis. Also it operates using
+ * 16 bit integer coordinates instead of floats. The testOverlap check is optimized
+ * to check the array index, rather then the actual AABB coordinates/pos.<p>
+ * 
+ * The overlapping pairs are maintained incrementally while the AABBs are updated
+ * in {@link #setAabb}, only added and removed pairs are reported to the
+ * {@link OverlappingPairCache}.
+ * 
+ * @author jezek2
+ */
+public class AxisSweep3 implements BroadphaseInterface {
+
+	protected static final int BP_HANDLE_MASK = 0xfffe; // lowest bit is used to mark max edges
+	protected static final int HANDLE_SENTINEL = 0xffff;
+	
+	protected final Vector3f worldAabbMin = new Vector3f(); // overall system bounds
+	protected final Vector3f worldAabbMax = new Vector3f(); // overall system bounds
+
+	protected final Vector3f quantize = new Vector3f(); // scaling factor for quantization
+
+	protected int numHandles; // number of active handles
+	protected int maxHandles; // max number of handles
+	protected Handle[] pHandles; // handles pool
+	protected int firstFreeHandle; // free handles list
+
+	// edge arrays for the 3 axes (each array has maxHandles * 2 entries, including the sentinels)
+	protected final int[][] pEdgePos = new int[3][];
+	protected final int[][] pEdgeHandle = new int[3][];
+
+	protected OverlappingPairCache pairCache;
+	protected boolean ownsPairCache;
+	
+	// temporary quantized bounds:
+	private final int[] quantMin = new int[3];
+	private final int[] quantMax = new int[3];
+
+	public AxisSweep3(Vector3f worldAabbMin, Vector3f worldAabbMax) {
+		this(worldAabbMin, worldAabbMax, 16384, null);
+	}
+
+	public AxisSweep3(Vector3f worldAabbMin, Vector3f worldAabbMax, int maxHandles) {
+		this(worldAabbMin, worldAabbMax, maxHandles, null);
+	}
+	
+	public AxisSweep3(Vector3f worldAabbMin, Vector3f worldAabbMax, int maxHandles, OverlappingPairCache pairCache) {
+		assert (maxHandles > 1);
+		
+		this.pairCache = pairCache;
+		
+		if (pairCache == null) {
+			this.pairCache = new HashedOverlappingPairCache();
+			ownsPairCache = true;
+		}
+
+		// init bounds
+		this.worldAabbMin.set(worldAabbMin);
+		this.worldAabbMax.set(worldAabbMax);
+
+		quantize.sub(worldAabbMax, worldAabbMin);
+		quantize.x = HANDLE_SENTINEL / quantize.x;
+		quantize.y = HANDLE_SENTINEL / quantize.y;
+		quantize.z = HANDLE_SENTINEL / quantize.z;
+
+		// allocate handles buffer and put all handles on free list
+		pHandles = new Handle[maxHandles];
+		for (int i = 0; i < maxHandles; i++) {
+			pHandles[i] = new Handle();
+		}
+		this.maxHandles = maxHandles;
+		this.numHandles = 0;
+
+		// handle 0 is reserved as the null index, and is also used as the sentinel
+		firstFreeHandle = 1;
+		{
+			for (int i = firstFreeHandle; i < maxHandles; i++) {
+				pHandles[i].setNextFree(i + 1);
+			}
+			pHandles[maxHandles - 1].setNextFree(0);
+		}
+
+		// allocate edge buffers
+		for (int i = 0; i < 3; i++) {
+			pEdgePos[i] = new int[maxHandles * 2];
+			pEdgeHandle[i] = new int[maxHandles * 2];
+		}
+
+		// make boundary sentinels
+		pHandles[0].clientObject = null;
+
+		for (int axis = 0; axis < 3; axis++) {
+			pHandles[0].minEdges[axis] = 0;
+			pHandles[0].maxEdges[axis] = 1;
+
+			pEdgePos[axis][0] = 0;
+			pEdgeHandle[axis][0] = 0;
+			pEdgePos[axis][1] = HANDLE_SENTINEL;
+			pEdgeHandle[axis][1] = 0;
+		}
+	}
+	
+	public BroadphaseProxy createProxy(Vector3f aabbMin, Vector3f aabbMax, BroadphaseNativeType shapeType, Object userPtr, short collisionFilterGroup, short collisionFilterMask, Dispatcher dispatcher) {
+		int handleId = addHandle(aabbMin, aabbMax, userPtr, collisionFilterGroup, collisionFilterMask, dispatcher);
+		return getHandle(handleId);
+	}
+
+	public void destroyProxy(BroadphaseProxy proxy, Dispatcher dispatcher) {
+		Handle handle = (Handle)proxy;
+		removeHandle(handle.uniqueId, dispatcher);
+	}
+
+	public void setAabb(BroadphaseProxy proxy, Vector3f aabbMin, Vector3f aabbMax, Dispatcher dispatcher) {
+		Handle handle = (Handle)proxy;
+		updateHandle(handle.uniqueId, aabbMin, aabbMax, dispatcher);
+	}
+
+	public void calculateOverlappingPairs(Dispatcher dispatcher) {
+		// pairs are added and removed incrementally in setAabb
+	}
+
+	public void rayTest(Vector3f rayFrom, Vector3f rayTo, BroadphaseRayCallback rayCallback) {
+		rayTest(rayFrom, rayTo, rayCallback, null, null);
+	}
+
+	public void rayTest(Vector3f rayFrom, Vector3f rayTo, BroadphaseRayCallback rayCallback, Vector3f aabbMin, Vector3f aabbMax) {
+		int[] edgePos = pEdgePos[0];
+		int[] edgeHandle = pEdgeHandle[0];
+		
+		// each handle has exactly one max edge on the axis, skip the sentinels
+		for (int i = 1; i < numHandles * 2 + 1; i++) {
+			if (isMax(edgePos[i])) {
+				rayCallback.process(getHandle(edgeHandle[i]));
+			}
+		}
+	}
+
+	public OverlappingPairCache getOverlappingPairCache() {
+		return pairCache;
+	}
+	
+	public int getNumHandles() {
+		return numHandles;
+	}
+	
+	public Handle getHandle(int index) {
+		return pHandles[index];
+	}
+	
+	public Vector3f getWorldAabbMin() {
+		return worldAabbMin;
+	}
+
+	public Vector3f getWorldAabbMax() {
+		return worldAabbMax;
+	}
+	
+	/**
+	 * Conservative test for overlap of quantized bounds of two proxies.
+	 */
+	public boolean testAabbOverlap(BroadphaseProxy proxy0, BroadphaseProxy proxy1) {
+		return testOverlap(-1, (Handle)proxy0, (Handle)proxy1);
+	}
+
+	public int addHandle(Vector3f aabbMin, Vector3f aabbMax, Object pOwner, short collisionFilterGroup, short collisionFilterMask, Dispatcher dispatcher) {
+		// quantize the bounds
+		int[] min = quantMin, max = quantMax;
+		quantize(min, aabbMin, 0);
+		quantize(max, aabbMax, 1);
+
+		// allocate a handle
+		int handle = allocHandle();
+
+		Handle pHandle = getHandle(handle);
+
+		pHandle.uniqueId = handle;
+		//pHandle->m_pOverlaps = 0;
+		pHandle.clientObject = pOwner;
+		pHandle.collisionFilterGroup = collisionFilterGroup;
+		pHandle.collisionFilterMask = collisionFilterMask;
+
+		// compute current limit of edge arrays
+		int limit = numHandles * 2;
+
+		// insert new edges just inside the max boundary edge
+		for (int axis = 0; axis < 3; axis++) {
+			int[] edgePos = pEdgePos[axis];
+			int[] edgeHandle = pEdgeHandle[axis];
+			
+			pHandles[0].maxEdges[axis] += 2;
+
+			edgePos[limit + 1] = edgePos[limit - 1];
+			edgeHandle[limit + 1] = edgeHandle[limit - 1];
+
+			edgePos[limit - 1] = min[axis];
+			edgeHandle[limit - 1] = handle;
+
+			edgePos[limit] = max[axis];
+			edgeHandle[limit] = handle;
+
+			pHandle.minEdges[axis] = limit - 1;
+			pHandle.maxEdges[axis] = limit;
+		}
+
+		// now sort the new edges to their correct position
+		sortMinDown(0, pHandle.minEdges[0], dispatcher, false);
+		sortMaxDown(0, pHandle.maxEdges[0], dispatcher, false);
+		sortMinDown(1, pHandle.minEdges[1], dispatcher, false);
+		sortMaxDown(1, pHandle.maxEdges[1], dispatcher, false);
+		sortMinDown(2, pHandle.minEdges[2], dispatcher, true);
+		sortMaxDown(2, pHandle.maxEdges[2], dispatcher, true);
+
+		return handle;
+	}
+
+	public void removeHandle(int handle, Dispatcher dispatcher) {
+		Handle pHandle = getHandle(handle);
+
+		// explicitly remove the pairs containing the proxy
+		// we could do it also in the sortMinUp (passing true)
+		pairCache.removeOverlappingPairsContainingProxy(pHandle, dispatcher);
+
+		// compute current limit of edge arrays
+		int limit = numHandles * 2;
+
+		int axis;
+
+		for (axis = 0; axis < 3; axis++) {
+			pHandles[0].maxEdges[axis] -= 2;
+		}
+
+		// remove the edges by sorting them up to the end of the list
+		for (axis = 0; axis < 3; axis++) {
+			int[] edgePos = pEdgePos[axis];
+			int[] edgeHandle = pEdgeHandle[axis];
+			
+			int max = pHandle.maxEdges[axis];
+			edgePos[max] = HANDLE_SENTINEL;
+
+			sortMaxUp(axis, max, dispatcher, false);
+
+			int i = pHandle.minEdges[axis];
+			edgePos[i] = HANDLE_SENTINEL;
+
+			sortMinUp(axis, i, dispatcher, false);
+
+			edgeHandle[limit - 1] = 0;
+			edgePos[limit - 1] = HANDLE_SENTINEL;
+		}
+
+		// free the handle
+		freeHandle(handle);
+	}
+
+	public void updateHandle(int handle, Vector3f aabbMin, Vector3f aabbMax, Dispatcher dispatcher) {
+		Handle pHandle = getHandle(handle);
+
+		// quantize the new bounds
+		int[] min = quantMin, max = quantMax;
+		quantize(min, aabbMin, 0);
+		quantize(max, aabbMax, 1);
+
+		// update changed edges
+		for (int axis = 0; axis < 3; axis++) {
+			int[] edgePos = pEdgePos[axis];
+			
+			int emin = pHandle.minEdges[axis];
+			int emax = pHandle.maxEdges[axis];
+
+			int dmin = min[axis] - edgePos[emin];
+			int dmax = max[axis] - edgePos[emax];
+
+			edgePos[emin] = min[axis];
+			edgePos[emax] = max[axis];
+
+			// expand (only adds overlaps)
+			if (dmin < 0) {
+				sortMinDown(axis, emin, dispatcher, true);
+			}
+			if (dmax > 0) {
+				sortMaxUp(axis, emax, dispatcher, true);
+			}
+
+			// shrink (only removes overlaps)
+			if (dmin > 0) {
+				sortMinUp(axis, emin, dispatcher, true);
+			}
+			if (dmax < 0) {
+				sortMaxDown(axis, emax, dispatcher, true);
+			}
+		}
+	}
+	
+	protected void quantize(int[] out, Vector3f point, int isMax) {
+		float x = Math.min(Math.max(point.x, worldAabbMin.x), worldAabbMax.x);
+		float y = Math.min(Math.max(point.y, worldAabbMin.y), worldAabbMax.y);
+		float z = Math.min(Math.max(point.z, worldAabbMin.z), worldAabbMax.z);
+
+		out[0] = ((int)((x - worldAabbMin.x) * quantize.x) & BP_HANDLE_MASK) | isMax;
+		out[1] = ((int)((y - worldAabbMin.y) * quantize.y) & BP_HANDLE_MASK) | isMax;
+		out[2] = ((int)((z - worldAabbMin.z) * quantize.z) & BP_HANDLE_MASK) | isMax;
+	}
+	
+	// allocation/deallocation
+	protected int allocHandle() {
+		assert (firstFreeHandle != 0);
+
+		int handle = firstFreeHandle;
+		firstFreeHandle = getHandle(handle).getNextFree();
+		numHandles++;
+
+		return handle;
+	}
+	
+	protected void freeHandle(int handle) {
+		assert (handle > 0 && handle < maxHandles);
+
+		getHandle(handle).setNextFree(firstFreeHandle);
+		firstFreeHandle = handle;
+
+		numHandles--;
+	}
+	
+	/**
+	 * Tests overlap of two handles on the axes other than ignoreAxis. Uses the
+	 * indices into the sorted edge arrays instead of the positions.
+	 */
+	protected boolean testOverlap(int ignoreAxis, Handle pHandleA, Handle pHandleB) {
+		for (int axis = 0; axis < 3; axis++) {
+			if (axis != ignoreAxis) {
+				if (pHandleA.maxEdges[axis] < pHandleB.minEdges[axis] ||
+						pHandleB.maxEdges[axis] < pHandleA.minEdges[axis]) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+	
+	private static boolean isMax(int pos) {
+		return (pos & 1) != 0;
+	}
+	
+	// sorting a min edge downwards can only ever *add* overlaps
+	protected void sortMinDown(int axis, int edge, Dispatcher dispatcher, boolean updateOverlaps) {
+		int[] edgePos = pEdgePos[axis];
+		int[] edgeHandle = pEdgeHandle[axis];
+		
+		int pEdge = edge;
+		int pPrev = edge - 1;
+		Handle pHandleEdge = getHandle(edgeHandle[pEdge]);
+
+		while (edgePos[pEdge] < edgePos[pPrev]) {
+			Handle pHandlePrev = getHandle(edgeHandle[pPrev]);
+
+			if (isMax(edgePos[pPrev])) {
+				// if previous edge is a maximum check the bounds and add an overlap if necessary
+				if (updateOverlaps && testOverlap(axis, pHandleEdge, pHandlePrev)) {
+					pairCache.addOverlappingPair(pHandleEdge, pHandlePrev);
+				}
+
+				// update edge reference in other handle
+				pHandlePrev.maxEdges[axis]++;
+			}
+			else {
+				pHandlePrev.minEdges[axis]++;
+			}
+			pHandleEdge.minEdges[axis]--;
+
+			// swap the edges
+			swapEdges(edgePos, edgeHandle, pEdge, pPrev);
+
+			// decrement
+			pEdge--;
+			pPrev--;
+		}
+	}
+	
+	// sorting a min edge upwards can only ever *remove* overlaps
+	protected void sortMinUp(int axis, int edge, Dispatcher dispatcher, boolean updateOverlaps) {
+		int[] edgePos = pEdgePos[axis];
+		int[] edgeHandle = pEdgeHandle[axis];
+
+		int pEdge = edge;
+		int pNext = edge + 1;
+		Handle pHandleEdge = getHandle(edgeHandle[pEdge]);
+
+		while (edgeHandle[pNext] != 0 && (edgePos[pEdge] >= edgePos[pNext])) {
+			Handle pHandleNext = getHandle(edgeHandle[pNext]);
+
+			if (isMax(edgePos[pNext])) {
+				// if next edge is maximum remove any overlap between the two handles
+				if (updateOverlaps && testOverlap(axis, pHandleEdge, pHandleNext)) {
+					pairCache.removeOverlappingPair(pHandleEdge, pHandleNext, dispatcher);
+				}
+
+				// update edge reference in other handle
+				pHandleNext.maxEdges[axis]--;
+			}
+			else {
+				pHandleNext.minEdges[axis]--;
+			}
+			pHandleEdge.minEdges[axis]++;
+
+			// swap the edges
+			swapEdges(edgePos, edgeHandle, pEdge, pNext);
+
+			// increment
+			pEdge++;
+			pNext++;
+		}
+	}
+	
+	// sorting a max edge downwards can only ever *remove* overlaps
+	protected void sortMaxDown(int axis, int edge, Dispatcher dispatcher, boolean updateOverlaps) {
+		int[] edgePos = pEdgePos[axis];
+		int[] edgeHandle = pEdgeHandle[axis];
+
+		int pEdge = edge;
+		int pPrev = edge - 1;
+		Handle pHandleEdge = getHandle(edgeHandle[pEdge]);
+
+		while (edgePos[pEdge] < edgePos[pPrev]) {
+			Handle pHandlePrev = getHandle(edgeHandle[pPrev]);
+
+			if (!isMax(edgePos[pPrev])) {
+				// if previous edge was a minimum remove any overlap between the two handles
+				if (updateOverlaps && testOverlap(axis, pHandleEdge, pHandlePrev)) {
+					pairCache.removeOverlappingPair(pHandleEdge, pHandlePrev, dispatcher);
+				}
+
+				// update edge reference in other handle
+				pHandlePrev.minEdges[axis]++;
+			}
+			else {
+				pHandlePrev.maxEdges[axis]++;
+			}
+			pHandleEdge.maxEdges[axis]--;
+
+			// swap the edges
+			swapEdges(edgePos, edgeHandle, pEdge, pPrev);
+
+			// decrement
+			pEdge--;
+			pPrev--;
+		}
+	}
+	
+	// sorting a max edge upwards can only ever *add* overlaps
+	protected void sortMaxUp(int axis, int edge, Dispatcher dispatcher, boolean updateOverlaps) {
+		int[] edgePos = pEdgePos[axis];
+		int[] edgeHandle = pEdgeHandle[axis];
+
+		int pEdge = edge;
+		int pNext = edge + 1;
+		Handle pHandleEdge = getHandle(edgeHandle[pEdge]);
+
+		while (edgeHandle[pNext] != 0 && (edgePos[pEdge] >= edgePos[pNext])) {
+			Handle pHandleNext = getHandle(edgeHandle[pNext]);
+
+			if (!isMax(edgePos[pNext])) {
+				// if next edge is a minimum check the bounds and add an overlap if necessary
+				if (updateOverlaps && testOverlap(axis, pHandleEdge, pHandleNext)) {
+					pairCache.addOverlappingPair(pHandleEdge, pHandleNext);
+				}
+
+				// update edge reference in other handle
+				pHandleNext.minEdges[axis]--;
+			}
+			else {
+				pHandleNext.maxEdges[axis]--;
+			}
+			pHandleEdge.maxEdges[axis]++;
+
+			// swap the edges
+			swapEdges(edgePos, edgeHandle, pEdge, pNext);
+
+			// increment
+			pEdge++;
+			pNext++;
+		}
+	}
+	
+	private static void swapEdges(int[] edgePos, int[] edgeHandle, int a, int b) {
+		int tmpPos = edgePos[a];
+		edgePos[a] = edgePos[b];
+		edgePos[b] = tmpPos;
+		
+		int tmpHandle = edgeHandle[a];
+		edgeHandle[a] = edgeHandle[b];
+		edgeHandle[b] = tmpHandle;
+	}
+	
+	////////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Broadphase proxy of AxisSweep3, stores indices into the sorted edge arrays.
+	 */
+	public static class Handle extends BroadphaseProxy {
+		// indexes into the edge arrays
+		public final int[] minEdges = new int[3];
+		public final int[] maxEdges = new int[3];
+		
+		public void setNextFree(int next) {
+			minEdges[0] = next;
+		}
+		
+		public int getNextFree() {
+			return minEdges[0];
+		}
+	}
+	
+}
@@ -43,4 +43,10 @@ public interface BroadphaseInterface {
 
 	public OverlappingPairCache getOverlappingPairCache();
 	
+	///rayTest calls the callback for proxies that may be hit by the ray, broadphases with acceleration structure can skip the rest
+	public void rayTest(Vector3f rayFrom, Vector3f rayTo, BroadphaseRayCallback rayCallback);
+	
+	///rayTest with the ray expanded by given bounds (relative to the ray), used for sweeping of convex shapes
+	public void rayTest(Vector3f rayFrom, Vector3f rayTo, BroadphaseRayCallback rayCallback, Vector3f aabbMin, Vector3f aabbMax);
+	
 }
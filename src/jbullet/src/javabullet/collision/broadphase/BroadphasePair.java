@@ -60,7 +60,25 @@ public class BroadphasePair {
 
 	@Override
 	public int hashCode() {
-		return pProxy0.hashCode() ^ pProxy1.hashCode();
+		// JAVA NOTE: hash is based on unique ids instead of identity hash codes,
+		// so the iteration order of pair caches is reproducible between runs
+		int id0 = pProxy0.uniqueId;
+		int id1 = pProxy1.uniqueId;
+		if (id0 > id1) {
+			int tmp = id0;
+			id0 = id1;
+			id1 = tmp;
+		}
+		
+		// Thomas Wang's hash
+		int key = id0 | (id1 << 16);
+		key += ~(key << 15);
+		key ^= (key >>> 10);
+		key += (key << 3);
+		key ^= (key >>> 6);
+		key += ~(key << 11);
+		key ^= (key >>> 16);
+		return key;
 	}
 	
 }
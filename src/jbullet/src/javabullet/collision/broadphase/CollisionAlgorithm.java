@@ -23,27 +23,36 @@
 
 package javabullet.collision.broadphase;
 
-import javabullet.BulletStack;
 import javabullet.collision.dispatch.CollisionObject;
 import javabullet.collision.dispatch.ManifoldResult;
 
 /**
+ * Collision algorithm for pair of collision objects. Algorithms are allocated
+ * by {@link Dispatcher#allocateCollisionAlgorithm} and reinitialized for each
+ * pair, after {@link #destroy} they must be returned using
+ * {@link Dispatcher#freeCollisionAlgorithm}.
  *
  * @author jezek2
  */
 public abstract class CollisionAlgorithm {
 
-	protected final BulletStack stack = BulletStack.get();
-	
 	protected Dispatcher dispatcher;
 
 	public CollisionAlgorithm() {
 	}
 
 	public CollisionAlgorithm(CollisionAlgorithmConstructionInfo ci) {
+		init(ci);
+	}
+	
+	public void init(CollisionAlgorithmConstructionInfo ci) {
 		dispatcher = ci.dispatcher1;
 	}
 	
+	/**
+	 * Releases manifolds and child algorithms. Must reset references to
+	 * collision objects, so that the algorithm can be reused for other pair.
+	 */
 	public abstract void destroy();
 
 	public abstract void processCollision(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut);
@@ -0,0 +1,419 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.collision.broadphase;
+
+import java.util.ArrayList;
+import javabullet.BulletGlobals;
+import javax.vecmath.Vector3f;
+
+/**
+ * Dbvt implements a fast dynamic bounding volume tree based on axis aligned
+ * bounding boxes (AABB tree). Leaves can be inserted, removed and updated
+ * incrementally, the tree is rebalanced by reinserting moved leaves near
+ * their old position.
+ * 
+ * @author jezek2
+ */
+public class Dbvt {
+	
+	public Node root;
+	public int lkhd = -1; // lookahead used when reinserting updated leaves
+	public int leaves;
+	public int opath;
+	
+	private Node free; // free list of nodes, linked by parent
+	private final ArrayList<Node> stack = new ArrayList<Node>();
+	
+	public Dbvt() {
+	}
+	
+	public void clear() {
+		root = null;
+		free = null;
+		leaves = 0;
+		opath = 0;
+		stack.clear();
+	}
+	
+	public boolean empty() {
+		return (root == null);
+	}
+	
+	public void optimizeIncremental(int passes) {
+		if (passes < 0) {
+			passes = leaves;
+		}
+		
+		if (root != null && (passes > 0)) {
+			do {
+				Node node = root;
+				int bit = 0;
+				while (node.isInternal()) {
+					node = ((opath >>> bit) & 1) == 0? node.child0 : node.child1;
+					bit = (bit + 1) & (32 - 1);
+				}
+				update(node);
+				++opath;
+			}
+			while ((--passes) != 0);
+		}
+	}
+	
+	public Node insert(Vector3f mins, Vector3f maxs, Object data) {
+		Node leaf = createNode(null, mins, maxs, data);
+		insertLeaf(root, leaf);
+		leaves++;
+		return leaf;
+	}
+	
+	public void update(Node leaf) {
+		update(leaf, lkhd);
+	}
+
+	public void update(Node leaf, int lookahead) {
+		Node root = detachLeaf(leaf, lookahead);
+		insertLeaf(root, leaf);
+	}
+	
+	public void update(Node leaf, Vector3f mins, Vector3f maxs) {
+		Node root = detachLeaf(leaf, lkhd);
+		leaf.mins.set(mins);
+		leaf.maxs.set(maxs);
+		insertLeaf(root, leaf);
+	}
+	
+	public void remove(Node leaf) {
+		removeLeaf(leaf);
+		deleteNode(leaf);
+		leaves--;
+	}
+	
+	/**
+	 * Calls policy for every leaf that intersects given volume.
+	 */
+	public void collideTV(Node root, Vector3f mins, Vector3f maxs, ICollide policy) {
+		collideTV(root, mins, maxs, policy, this.stack);
+	}
+	
+	/**
+	 * Same as {@link #collideTV(Node, Vector3f, Vector3f, ICollide)}, but uses
+	 * provided traversal stack, so the tree can be queried from multiple
+	 * threads at once.
+	 */
+	public static void collideTV(Node root, Vector3f mins, Vector3f maxs, ICollide policy, ArrayList<Node> stack) {
+		if (root != null) {
+			int base = stack.size();
+			stack.add(root);
+			while (stack.size() > base) {
+				Node n = stack.remove(stack.size() - 1);
+				if (intersect(n, mins, maxs)) {
+					if (n.isInternal()) {
+						stack.add(n.child0);
+						stack.add(n.child1);
+					}
+					else {
+						policy.process(n);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Calls policy for every leaf that is hit by ray from rayFrom to rayTo. The
+	 * traversal is limited by {@link ICollide#lambdaMax}, which the policy may
+	 * decrease as closer hits are found.
+	 */
+	public void rayTest(Node root, Vector3f rayFrom, Vector3f rayTo, ICollide policy) {
+		rayTest(root, rayFrom, rayTo, BulletGlobals.ZERO_VECTOR3, BulletGlobals.ZERO_VECTOR3, policy);
+	}
+	
+	/**
+	 * Ray test with nodes expanded by given bounds of swept shape (relative to the ray).
+	 */
+	public void rayTest(Node root, Vector3f rayFrom, Vector3f rayTo, Vector3f aabbMin, Vector3f aabbMax, ICollide policy) {
+		rayTest(root, rayFrom, rayTo, aabbMin, aabbMax, policy, this.stack);
+	}
+	
+	/**
+	 * Same as {@link #rayTest(Node, Vector3f, Vector3f, Vector3f, Vector3f, ICollide)},
+	 * but uses provided traversal stack, so the tree can be queried from multiple
+	 * threads at once.
+	 */
+	public static void rayTest(Node root, Vector3f rayFrom, Vector3f rayTo, Vector3f aabbMin, Vector3f aabbMax, ICollide policy, ArrayList<Node> stack) {
+		if (root != null) {
+			float dx = rayTo.x - rayFrom.x;
+			float dy = rayTo.y - rayFrom.y;
+			float dz = rayTo.z - rayFrom.z;
+			
+			// what about division by zero? --> just set rayDirection[i] to INF/1e30
+			float invx = dx == 0f? 1e30f : 1f / dx;
+			float invy = dy == 0f? 1e30f : 1f / dy;
+			float invz = dz == 0f? 1e30f : 1f / dz;
+			
+			int base = stack.size();
+			stack.add(root);
+			while (stack.size() > base) {
+				Node n = stack.remove(stack.size() - 1);
+				if (rayAabb(rayFrom, invx, invy, invz, policy.lambdaMax, n.mins, n.maxs, aabbMin, aabbMax)) {
+					if (n.isInternal()) {
+						stack.add(n.child0);
+						stack.add(n.child1);
+					}
+					else {
+						policy.process(n);
+					}
+				}
+			}
+		}
+	}
+	
+	////////////////////////////////////////////////////////////////////////////
+	
+	public static boolean intersect(Node n, Vector3f mins, Vector3f maxs) {
+		return (n.mins.x <= maxs.x) && (n.maxs.x >= mins.x) &&
+				(n.mins.y <= maxs.y) && (n.maxs.y >= mins.y) &&
+				(n.mins.z <= maxs.z) && (n.maxs.z >= mins.z);
+	}
+	
+	public static boolean intersect(Node a, Node b) {
+		return intersect(a, b.mins, b.maxs);
+	}
+
+	public static boolean contain(Node n, Vector3f mins, Vector3f maxs) {
+		return (n.mins.x <= mins.x) && (n.mins.y <= mins.y) && (n.mins.z <= mins.z) &&
+				(n.maxs.x >= maxs.x) && (n.maxs.y >= maxs.y) && (n.maxs.z >= maxs.z);
+	}
+	
+	private static boolean rayAabb(Vector3f from, float invx, float invy, float invz, float lambdaMax, Vector3f mins, Vector3f maxs, Vector3f aabbMin, Vector3f aabbMax) {
+		float tmin = 0f, tmax = lambdaMax;
+		float t0, t1;
+		
+		t0 = (mins.x - aabbMax.x - from.x) * invx;
+		t1 = (maxs.x - aabbMin.x - from.x) * invx;
+		if (t0 > t1) { float t = t0; t0 = t1; t1 = t; }
+		if (t0 > tmin) tmin = t0;
+		if (t1 < tmax) tmax = t1;
+		if (tmin > tmax) return false;
+
+		t0 = (mins.y - aabbMax.y - from.y) * invy;
+		t1 = (maxs.y - aabbMin.y - from.y) * invy;
+		if (t0 > t1) { float t = t0; t0 = t1; t1 = t; }
+		if (t0 > tmin) tmin = t0;
+		if (t1 < tmax) tmax = t1;
+		if (tmin > tmax) return false;
+
+		t0 = (mins.z - aabbMax.z - from.z) * invz;
+		t1 = (maxs.z - aabbMin.z - from.z) * invz;
+		if (t0 > t1) { float t = t0; t0 = t1; t1 = t; }
+		if (t0 > tmin) tmin = t0;
+		if (t1 < tmax) tmax = t1;
+		return (tmin <= tmax);
+	}
+	
+	private static float proximity(Node a, Node b) {
+		return Math.abs((a.mins.x + a.maxs.x) - (b.mins.x + b.maxs.x)) +
+				Math.abs((a.mins.y + a.maxs.y) - (b.mins.y + b.maxs.y)) +
+				Math.abs((a.mins.z + a.maxs.z) - (b.mins.z + b.maxs.z));
+	}
+	
+	private static void merge(Node a, Node b, Node r) {
+		r.mins.x = Math.min(a.mins.x, b.mins.x);
+		r.mins.y = Math.min(a.mins.y, b.mins.y);
+		r.mins.z = Math.min(a.mins.z, b.mins.z);
+		r.maxs.x = Math.max(a.maxs.x, b.maxs.x);
+		r.maxs.y = Math.max(a.maxs.y, b.maxs.y);
+		r.maxs.z = Math.max(a.maxs.z, b.maxs.z);
+	}
+	
+	private static boolean contain(Node a, Node b) {
+		return contain(a, b.mins, b.maxs);
+	}
+	
+	private Node createNode(Node parent, Vector3f mins, Vector3f maxs, Object data) {
+		Node node;
+		if (free != null) {
+			node = free;
+			free = node.parent;
+		}
+		else {
+			node = new Node();
+		}
+		node.parent = parent;
+		node.mins.set(mins);
+		node.maxs.set(maxs);
+		node.data = data;
+		node.child0 = null;
+		node.child1 = null;
+		return node;
+	}
+	
+	private void deleteNode(Node node) {
+		node.data = null;
+		node.child0 = null;
+		node.child1 = null;
+		node.parent = free;
+		free = node;
+	}
+	
+	private void insertLeaf(Node root, Node leaf) {
+		if (this.root == null) {
+			this.root = leaf;
+			leaf.parent = null;
+		}
+		else {
+			if (!root.isLeaf()) {
+				do {
+					if (proximity(leaf, root.child0) < proximity(leaf, root.child1)) {
+						root = root.child0;
+					}
+					else {
+						root = root.child1;
+					}
+				}
+				while (!root.isLeaf());
+			}
+			Node prev = root.parent;
+			Node node = createNode(prev, leaf.mins, leaf.maxs, null);
+			merge(leaf, root, node);
+			if (prev != null) {
+				if (prev.child0 == root) {
+					prev.child0 = node;
+				}
+				else {
+					prev.child1 = node;
+				}
+				node.child0 = root;
+				root.parent = node;
+				node.child1 = leaf;
+				leaf.parent = node;
+				do {
+					if (!contain(prev, node)) {
+						merge(prev.child0, prev.child1, prev);
+					}
+					else {
+						break;
+					}
+					node = prev;
+				}
+				while ((prev = node.parent) != null);
+			}
+			else {
+				node.child0 = root;
+				root.parent = node;
+				node.child1 = leaf;
+				leaf.parent = node;
+				this.root = node;
+			}
+		}
+	}
+	
+	/**
+	 * Removes leaf and returns the node from which it should be reinserted.
+	 */
+	private Node detachLeaf(Node leaf, int lookahead) {
+		Node root = removeLeaf(leaf);
+		if (root != null) {
+			if (lookahead >= 0) {
+				for (int i = 0; (i < lookahead) && root.parent != null; i++) {
+					root = root.parent;
+				}
+			}
+			else {
+				root = this.root;
+			}
+		}
+		return root;
+	}
+	
+	private Node removeLeaf(Node leaf) {
+		if (leaf == root) {
+			root = null;
+			return null;
+		}
+		else {
+			Node parent = leaf.parent;
+			Node prev = parent.parent;
+			Node sibling = parent.child0 == leaf? parent.child1 : parent.child0;
+			if (prev != null) {
+				if (prev.child0 == parent) {
+					prev.child0 = sibling;
+				}
+				else {
+					prev.child1 = sibling;
+				}
+				sibling.parent = prev;
+				deleteNode(parent);
+				while (prev != null) {
+					float minx = prev.mins.x, miny = prev.mins.y, minz = prev.mins.z;
+					float maxx = prev.maxs.x, maxy = prev.maxs.y, maxz = prev.maxs.z;
+					merge(prev.child0, prev.child1, prev);
+					if (minx != prev.mins.x || miny != prev.mins.y || minz != prev.mins.z ||
+							maxx != prev.maxs.x || maxy != prev.maxs.y || maxz != prev.maxs.z) {
+						prev = prev.parent;
+					}
+					else {
+						break;
+					}
+				}
+				return (prev != null? prev : root);
+			}
+			else {
+				root = sibling;
+				sibling.parent = null;
+				deleteNode(parent);
+				return root;
+			}
+		}
+	}
+	
+	////////////////////////////////////////////////////////////////////////////
+	
+	public static class Node {
+		public final Vector3f mins = new Vector3f();
+		public final Vector3f maxs = new Vector3f();
+		public Node parent;
+		public Node child0;
+		public Node child1;
+		public Object data;
+
+		public boolean isLeaf() {
+			return child1 == null;
+		}
+
+		public boolean isInternal() {
+			return !isLeaf();
+		}
+	}
+	
+	/**
+	 * Policy called for leaves found by tree queries.
+	 */
+	public static abstract class ICollide {
+		public float lambdaMax = 1f;
+		
+		public abstract void process(Node leaf);
+	}
+	
+}
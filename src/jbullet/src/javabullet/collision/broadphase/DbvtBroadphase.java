@@ -0,0 +1,272 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.collision.broadphase;
+
+import java.util.ArrayList;
+import java.util.List;
+import javabullet.BulletGlobals;
+import javax.vecmath.Vector3f;
+
+/**
+ * DbvtBroadphase implements a broadphase using two dynamic AABB trees, one
+ * for the moving objects and one for the static objects (and the objects
+ * that didn't move for a while). This is well suited for large and sparse
+ * worlds with mostly static objects.<p>
+ * 
+ * AABBs of moving proxies are stored enlarged by a margin and by predicted
+ * movement, so the tree is updated only when the enlarged AABB is exceeded.
+ * Only such proxies are tested for new and separated pairs in
+ * {@link #calculateOverlappingPairs}.
+ * 
+ * @author jezek2
+ */
+public class DbvtBroadphase implements BroadphaseInterface {
+
+	public static final float DBVT_BP_MARGIN = 0.05f;
+
+	public static final int DYNAMIC_SET = 0; // dynamic set index
+	public static final int FIXED_SET   = 1; // fixed set index
+	public static final int STAGECOUNT  = 2; // number of frames without update after which proxy is moved to fixed set
+
+	public final Dbvt[] sets = new Dbvt[2]; // dbvt sets
+	protected OverlappingPairCache pairCache;
+	protected boolean ownsPairCache;
+	
+	public float predictedFrames = 2f; // frames predicted
+	public float margin = DBVT_BP_MARGIN; // margin of fattened AABBs
+	public int dupdt = 1; // percent of dynamic updates per frame
+	public int fupdt = 1; // percent of fixed updates per frame
+
+	protected int frame; // current frame
+	protected int gid; // gen id
+	protected final List<DbvtProxy> dynamicProxies = new ArrayList<DbvtProxy>();
+	protected final List<DbvtProxy> movedProxies = new ArrayList<DbvtProxy>();
+	
+	private final Vector3f fatMin = new Vector3f();
+	private final Vector3f fatMax = new Vector3f();
+	private final PairCollider pairCollider = new PairCollider();
+	private final RemoveSeparatedPairsCallback removeSeparatedPairsCallback = new RemoveSeparatedPairsCallback();
+	private final RayTester rayTester = new RayTester();
+
+	public DbvtBroadphase() {
+		this(null);
+	}
+
+	public DbvtBroadphase(OverlappingPairCache pairCache) {
+		this.pairCache = pairCache;
+
+		if (pairCache == null) {
+			this.pairCache = new HashedOverlappingPairCache();
+			ownsPairCache = true;
+		}
+		
+		sets[DYNAMIC_SET] = new Dbvt();
+		sets[FIXED_SET] = new Dbvt();
+	}
+	
+	public BroadphaseProxy createProxy(Vector3f aabbMin, Vector3f aabbMax, BroadphaseNativeType shapeType, Object userPtr, short collisionFilterGroup, short collisionFilterMask, Dispatcher dispatcher) {
+		assert (aabbMin.x <= aabbMax.x && aabbMin.y <= aabbMax.y && aabbMin.z <= aabbMax.z);
+		
+		DbvtProxy proxy = new DbvtProxy(userPtr, collisionFilterGroup, collisionFilterMask);
+		proxy.aabbMin.set(aabbMin);
+		proxy.aabbMax.set(aabbMax);
+		proxy.uniqueId = ++gid;
+		proxy.updateFrame = frame;
+		
+		if ((collisionFilterGroup & CollisionFilterGroups.STATIC_FILTER) != 0) {
+			proxy.stage = FIXED_SET;
+			proxy.leaf = sets[FIXED_SET].insert(aabbMin, aabbMax, proxy);
+		}
+		else {
+			proxy.stage = DYNAMIC_SET;
+			proxy.leaf = sets[DYNAMIC_SET].insert(aabbMin, aabbMax, proxy);
+			addDynamicProxy(proxy);
+		}
+		
+		markMoved(proxy);
+		return proxy;
+	}
+
+	public void destroyProxy(BroadphaseProxy absproxy, Dispatcher dispatcher) {
+		DbvtProxy proxy = (DbvtProxy)absproxy;
+		
+		sets[proxy.stage].remove(proxy.leaf);
+		proxy.leaf = null;
+		
+		if (proxy.stage == DYNAMIC_SET) {
+			removeDynamicProxy(proxy);
+		}
+		if (proxy.moved) {
+			movedProxies.remove(proxy);
+			proxy.moved = false;
+		}
+		
+		pairCache.removeOverlappingPairsContainingProxy(proxy, dispatcher);
+	}
+
+	public void setAabb(BroadphaseProxy absproxy, Vector3f aabbMin, Vector3f aabbMax, Dispatcher dispatcher) {
+		DbvtProxy proxy = (DbvtProxy)absproxy;
+		proxy.updateFrame = frame;
+		
+		if (!Dbvt.contain(proxy.leaf, aabbMin, aabbMax)) {
+			// enlarge by margin and by predicted movement of the center
+			fatMin.set(aabbMin.x - margin, aabbMin.y - margin, aabbMin.z - margin);
+			fatMax.set(aabbMax.x + margin, aabbMax.y + margin, aabbMax.z + margin);
+			
+			float scale = 0.5f * predictedFrames;
+			float vx = ((aabbMin.x + aabbMax.x) - (proxy.aabbMin.x + proxy.aabbMax.x)) * scale;
+			float vy = ((aabbMin.y + aabbMax.y) - (proxy.aabbMin.y + proxy.aabbMax.y)) * scale;
+			float vz = ((aabbMin.z + aabbMax.z) - (proxy.aabbMin.z + proxy.aabbMax.z)) * scale;
+			if (vx > 0) fatMax.x += vx; else fatMin.x += vx;
+			if (vy > 0) fatMax.y += vy; else fatMin.y += vy;
+			if (vz > 0) fatMax.z += vz; else fatMin.z += vz;
+			
+			if (proxy.stage == FIXED_SET) {
+				// moving again, transfer to the dynamic set
+				sets[FIXED_SET].remove(proxy.leaf);
+				proxy.leaf = sets[DYNAMIC_SET].insert(fatMin, fatMax, proxy);
+				proxy.stage = DYNAMIC_SET;
+				addDynamicProxy(proxy);
+			}
+			else {
+				sets[DYNAMIC_SET].update(proxy.leaf, fatMin, fatMax);
+			}
+			
+			markMoved(proxy);
+		}
+		
+		proxy.aabbMin.set(aabbMin);
+		proxy.aabbMax.set(aabbMax);
+	}
+
+	public void calculateOverlappingPairs(Dispatcher dispatcher) {
+		// optimize
+		sets[DYNAMIC_SET].optimizeIncremental(1 + (sets[DYNAMIC_SET].leaves * dupdt) / 100);
+		sets[FIXED_SET].optimizeIncremental(1 + (sets[FIXED_SET].leaves * fupdt) / 100);
+		
+		// transfer proxies that weren't updated for some time to the fixed set
+		for (int i = dynamicProxies.size() - 1; i >= 0; i--) {
+			DbvtProxy proxy = dynamicProxies.get(i);
+			if (frame - proxy.updateFrame >= STAGECOUNT) {
+				sets[DYNAMIC_SET].remove(proxy.leaf);
+				proxy.leaf = sets[FIXED_SET].insert(proxy.aabbMin, proxy.aabbMax, proxy);
+				proxy.stage = FIXED_SET;
+				removeDynamicProxy(proxy);
+			}
+		}
+		
+		if (!movedProxies.isEmpty()) {
+			// find new pairs of moved proxies
+			for (int i = 0; i < movedProxies.size(); i++) {
+				DbvtProxy proxy = movedProxies.get(i);
+				pairCollider.proxy = proxy;
+				sets[DYNAMIC_SET].collideTV(sets[DYNAMIC_SET].root, proxy.leaf.mins, proxy.leaf.maxs, pairCollider);
+				sets[FIXED_SET].collideTV(sets[FIXED_SET].root, proxy.leaf.mins, proxy.leaf.maxs, pairCollider);
+			}
+			pairCollider.proxy = null;
+			
+			// remove pairs of moved proxies that don't overlap anymore
+			pairCache.processAllOverlappingPairs(removeSeparatedPairsCallback, dispatcher);
+			
+			for (int i = 0; i < movedProxies.size(); i++) {
+				movedProxies.get(i).moved = false;
+			}
+			movedProxies.clear();
+		}
+		
+		frame++;
+	}
+
+	public void rayTest(Vector3f rayFrom, Vector3f rayTo, BroadphaseRayCallback rayCallback) {
+		rayTest(rayFrom, rayTo, rayCallback, BulletGlobals.ZERO_VECTOR3, BulletGlobals.ZERO_VECTOR3);
+	}
+
+	public void rayTest(Vector3f rayFrom, Vector3f rayTo, BroadphaseRayCallback rayCallback, Vector3f aabbMin, Vector3f aabbMax) {
+		rayTester.callback = rayCallback;
+		rayTester.lambdaMax = rayCallback.lambdaMax;
+		sets[DYNAMIC_SET].rayTest(sets[DYNAMIC_SET].root, rayFrom, rayTo, aabbMin, aabbMax, rayTester);
+		sets[FIXED_SET].rayTest(sets[FIXED_SET].root, rayFrom, rayTo, aabbMin, aabbMax, rayTester);
+		rayTester.callback = null;
+	}
+
+	public OverlappingPairCache getOverlappingPairCache() {
+		return pairCache;
+	}
+	
+	private void markMoved(DbvtProxy proxy) {
+		if (!proxy.moved) {
+			proxy.moved = true;
+			movedProxies.add(proxy);
+		}
+	}
+	
+	private void addDynamicProxy(DbvtProxy proxy) {
+		proxy.index = dynamicProxies.size();
+		dynamicProxies.add(proxy);
+	}
+	
+	private void removeDynamicProxy(DbvtProxy proxy) {
+		// swap remove
+		int last = dynamicProxies.size() - 1;
+		DbvtProxy lastProxy = dynamicProxies.get(last);
+		dynamicProxies.set(proxy.index, lastProxy);
+		lastProxy.index = proxy.index;
+		dynamicProxies.remove(last);
+		proxy.index = -1;
+	}
+	
+	////////////////////////////////////////////////////////////////////////////
+	
+	private class PairCollider extends Dbvt.ICollide {
+		public DbvtProxy proxy;
+		
+		public void process(Dbvt.Node leaf) {
+			DbvtProxy other = (DbvtProxy)leaf.data;
+			if (other != proxy) {
+				pairCache.addOverlappingPair(proxy, other);
+			}
+		}
+	}
+	
+	private static class RemoveSeparatedPairsCallback implements OverlapCallback {
+		public boolean processOverlap(BroadphasePair pair) {
+			DbvtProxy pa = (DbvtProxy)pair.pProxy0;
+			DbvtProxy pb = (DbvtProxy)pair.pProxy1;
+			if (pa.moved || pb.moved) {
+				return !Dbvt.intersect(pa.leaf, pb.leaf);
+			}
+			return false;
+		}
+	}
+	
+	private static class RayTester extends Dbvt.ICollide {
+		public BroadphaseRayCallback callback;
+		
+		public void process(Dbvt.Node leaf) {
+			callback.process((BroadphaseProxy)leaf.data);
+			lambdaMax = callback.lambdaMax;
+		}
+	}
+	
+}
@@ -59,8 +59,15 @@ public abstract class Dispatcher {
 
 	public abstract List<PersistentManifold> getInternalManifoldPointer();
 
-	//public abstract Object allocateCollisionAlgorithm(int size);
-
-	//public abstract void freeCollisionAlgorithm(Object ptr);
+	/**
+	 * Returns algorithm of given class, either previously freed one or a new
+	 * instance. Caller must initialize it.
+	 */
+	public abstract <T extends CollisionAlgorithm> T allocateCollisionAlgorithm(Class<T> cls);
+
+	/**
+	 * Returns destroyed algorithm for reuse by {@link #allocateCollisionAlgorithm}.
+	 */
+	public abstract void freeCollisionAlgorithm(CollisionAlgorithm algo);
 	
 }
@@ -0,0 +1,130 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.collision.broadphase;
+
+import javabullet.BulletStats;
+import javabullet.ObjectPool;
+import javabullet.util.HashUtil;
+import javabullet.util.HashUtil.IMap;
+import javabullet.util.HashUtil.IObjectProcedure;
+
+/**
+ * HashedOverlappingPairCache stores the pairs in a hash map.
+ *
+ * @author jezek2
+ */
+public class HashedOverlappingPairCache extends OverlappingPairCache {
+
+	private final ObjectPool<BroadphasePair> pairsPool = new ObjectPool<BroadphasePair>(BroadphasePair.class);
+	
+	private final IMap<BroadphasePair,BroadphasePair> overlappingPairs = HashUtil.createMap();
+
+	public HashedOverlappingPairCache() {
+	}
+
+	@Override
+	public BroadphasePair addOverlappingPair(BroadphaseProxy proxy0, BroadphaseProxy proxy1) {
+		BulletStats.addAddedPair();
+
+		if (!needsBroadphaseCollision(proxy0, proxy1)) {
+			return null;
+		}
+
+		BroadphasePair pair = pairsPool.get();
+		pair.set(proxy0, proxy1);
+		
+		BroadphasePair old = overlappingPairs.get(pair);
+		if (old != null) {
+			pairsPool.release(pair);
+			return old;
+		}
+		overlappingPairs.put(pair, pair);
+		return pair;
+	}
+
+	@Override
+	public Object removeOverlappingPair(BroadphaseProxy proxy0, BroadphaseProxy proxy1, Dispatcher dispatcher) {
+		BulletStats.addRemovedPair();
+
+		BroadphasePair key = pairsPool.get();
+		key.set(proxy0, proxy1);
+		BroadphasePair pair = overlappingPairs.remove(key);
+		pairsPool.release(key);
+		
+		if (pair == null) {
+			return null;
+		}
+
+		cleanOverlappingPair(pair, dispatcher);
+		pairsPool.release(pair);
+
+		return pair.userInfo;
+	}
+
+	private class ProcessAllOverlappingPairsCallback implements IObjectProcedure<BroadphasePair> {
+		public OverlapCallback callback;
+		public Dispatcher dispatcher;
+		
+		public boolean execute(BroadphasePair pair) {
+			if (callback.processOverlap(pair)) {
+				//removeOverlappingPair(pair.pProxy0, pair.pProxy1, dispatcher);
+				cleanOverlappingPair(pair, dispatcher);
+				BulletStats.addRemovedPair();
+				pairsPool.release(pair);
+				return false;
+			}
+			return true;
+		}
+	}
+	
+	private ProcessAllOverlappingPairsCallback processAllOverlappingPairsCallback = new ProcessAllOverlappingPairsCallback();
+	
+	@Override
+	public void processAllOverlappingPairs(OverlapCallback callback, Dispatcher dispatcher) {
+		processAllOverlappingPairsCallback.callback = callback;
+		processAllOverlappingPairsCallback.dispatcher = dispatcher;
+		overlappingPairs.retainEntries(processAllOverlappingPairsCallback);
+	}
+
+	public IMap<BroadphasePair,BroadphasePair> getOverlappingPairArray() {
+		return overlappingPairs;
+	}
+
+	@Override
+	public BroadphasePair findPair(BroadphaseProxy proxy0, BroadphaseProxy proxy1) {
+		BulletStats.addFindPair();
+
+		BroadphasePair key = pairsPool.get();
+		key.set(proxy0, proxy1);
+		BroadphasePair value = overlappingPairs.get(key);
+		pairsPool.release(key);
+		return value;
+	}
+
+	@Override
+	public int getNumOverlappingPairs() {
+		return overlappingPairs.size();
+	}
+
+}
@@ -23,69 +23,25 @@
 
 package javabullet.collision.broadphase;
 
-import java.util.Collection;
-import java.util.Iterator;
-import javabullet.BulletGlobals;
-import javabullet.BulletPool;
-import javabullet.ObjectPool;
-import javabullet.util.HashUtil;
-import javabullet.util.HashUtil.IMap;
-import javabullet.util.HashUtil.IObjectProcedure;
-
 /**
- *
+ * OverlappingPairCache maintains the objects with overlapping AABB.
+ * Typically managed by the broadphase, {@link HashedOverlappingPairCache} is
+ * used by default, {@link SortedOverlappingPairCache} can be passed to the
+ * broadphase constructor instead.
+ * 
  * @author jezek2
  */
-public class OverlappingPairCache {
+public abstract class OverlappingPairCache {
 
-	private final ObjectPool<BroadphasePair> pairsPool = BulletPool.get(BroadphasePair.class);
-	
-	private final IMap<BroadphasePair,BroadphasePair> overlappingPairs = HashUtil.createMap();
-	private OverlapFilterCallback overlapFilterCallback;
-
-	public OverlappingPairCache() {
-	}
+	protected OverlapFilterCallback overlapFilterCallback;
 
 	/**
 	 * Add a pair and return the new pair. If the pair already exists,
 	 * no new pair is created and the old one is returned.
 	 */
-	public BroadphasePair addOverlappingPair(BroadphaseProxy proxy0, BroadphaseProxy proxy1) {
-		BulletGlobals.gAddedPairs++;
-
-		if (!needsBroadphaseCollision(proxy0, proxy1)) {
-			return null;
-		}
-
-		BroadphasePair pair = pairsPool.get();
-		pair.set(proxy0, proxy1);
-		
-		BroadphasePair old = overlappingPairs.get(pair);
-		if (old != null) {
-			pairsPool.release(pair);
-			return old;
-		}
-		overlappingPairs.put(pair, pair);
-		return pair;
-	}
-
-	public Object removeOverlappingPair(BroadphaseProxy proxy0, BroadphaseProxy proxy1, Dispatcher dispatcher) {
-		BulletGlobals.gRemovePairs++;
-
-		BroadphasePair key = pairsPool.get();
-		key.set(proxy0, proxy1);
-		BroadphasePair pair = overlappingPairs.remove(key);
-		pairsPool.release(key);
-		
-		if (pair == null) {
-			return null;
-		}
+	public abstract BroadphasePair addOverlappingPair(BroadphaseProxy proxy0, BroadphaseProxy proxy1);
 
-		cleanOverlappingPair(pair, dispatcher);
-		pairsPool.release(pair);
-
-		return pair.userInfo;
-	}
+	public abstract Object removeOverlappingPair(BroadphaseProxy proxy0, BroadphaseProxy proxy1, Dispatcher dispatcher);
 
 	public boolean needsBroadphaseCollision(BroadphaseProxy proxy0, BroadphaseProxy proxy1) {
 		if (overlapFilterCallback != null) {
@@ -98,30 +54,7 @@ public class OverlappingPairCache {
 		return collides;
 	}
 
-	private class ProcessAllOverlappingPairsCallback implements IObjectProcedure<BroadphasePair> {
-		public OverlapCallback callback;
-		public Dispatcher dispatcher;
-		
-		public boolean execute(BroadphasePair pair) {
-			if (callback.processOverlap(pair)) {
-				//removeOverlappingPair(pair.pProxy0, pair.pProxy1, dispatcher);
-				cleanOverlappingPair(pair, dispatcher);
-				BulletGlobals.gRemovePairs++;
-				BulletGlobals.gOverlappingPairs--;
-				pairsPool.release(pair);
-				return false;
-			}
-			return true;
-		}
-	}
-	
-	private ProcessAllOverlappingPairsCallback processAllOverlappingPairsCallback = new ProcessAllOverlappingPairsCallback();
-	
-	public void processAllOverlappingPairs(OverlapCallback callback, Dispatcher dispatcher) {
-		processAllOverlappingPairsCallback.callback = callback;
-		processAllOverlappingPairsCallback.dispatcher = dispatcher;
-		overlappingPairs.retainEntries(processAllOverlappingPairsCallback);
-	}
+	public abstract void processAllOverlappingPairs(OverlapCallback callback, Dispatcher dispatcher);
 
 	public void removeOverlappingPairsContainingProxy(BroadphaseProxy proxy, Dispatcher dispatcher) {
 		processAllOverlappingPairs(new RemovePairCallback(proxy), dispatcher);
@@ -131,33 +64,22 @@ public class OverlappingPairCache {
 		processAllOverlappingPairs(new CleanPairCallback(proxy, this, dispatcher), dispatcher);
 	}
 
-	public IMap<BroadphasePair,BroadphasePair> getOverlappingPairArray() {
-		return overlappingPairs;
-	}
-
 	public void cleanOverlappingPair(BroadphasePair pair, Dispatcher dispatcher) {
 		if (pair.algorithm != null) {
 			pair.algorithm.destroy();
-			// TODO: dispatcher.freeCollisionAlgorithm(pair.m_algorithm);
+			if (dispatcher != null) {
+				dispatcher.freeCollisionAlgorithm(pair.algorithm);
+			}
 			pair.algorithm = null;
 		}
 	}
 
-	public BroadphasePair findPair(BroadphaseProxy proxy0, BroadphaseProxy proxy1) {
-		BulletGlobals.gFindPairs++;
-
-		BroadphasePair key = pairsPool.get();
-		key.set(proxy0, proxy1);
-		BroadphasePair value = overlappingPairs.get(key);
-		pairsPool.release(key);
-		return value;
-	}
+	public abstract BroadphasePair findPair(BroadphaseProxy proxy0, BroadphaseProxy proxy1);
 
 	public int getCount() {
-		return overlappingPairs.size();
+		return getNumOverlappingPairs();
 	}
 
-//	btBroadphasePair* GetPairs() { return m_pairs; }
 	public OverlapFilterCallback getOverlapFilterCallback() {
 		return overlapFilterCallback;
 	}
@@ -166,9 +88,7 @@ public class OverlappingPairCache {
 		this.overlapFilterCallback = overlapFilterCallback;
 	}
 
-	public int getNumOverlappingPairs() {
-		return overlappingPairs.size();
-	}
+	public abstract int getNumOverlappingPairs();
 	
 	////////////////////////////////////////////////////////////////////////////
 
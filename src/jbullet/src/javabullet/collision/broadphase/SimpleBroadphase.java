@@ -30,7 +30,7 @@ import javax.vecmath.Vector3f;
 /**
  * SimpleBroadphase is a brute force aabb culling broadphase based on O(n^2) aabb checks.
  * SimpleBroadphase is just a unit-test implementation to verify and test other broadphases.
- * So please don't use this class, but use bt32BitAxisSweep3 or btAxisSweep3 instead!
+ * So please don't use this class, but use {@link AxisSweep3} instead!
  * 
  * @author jezek2
  */
@@ -40,6 +40,7 @@ public class SimpleBroadphase implements BroadphaseInterface {
 	private int maxHandles;						// max number of handles
 	private OverlappingPairCache pairCache;
 	private boolean ownsPairCache;
+	private int gid = 0;
 
 	public SimpleBroadphase() {
 		this(16384, null);
@@ -53,7 +54,7 @@ public class SimpleBroadphase implements BroadphaseInterface {
 		this.pairCache = overlappingPairCache;
 
 		if (overlappingPairCache == null) {
-			pairCache = new OverlappingPairCache();
+			pairCache = new HashedOverlappingPairCache();
 			ownsPairCache = true;
 		}
 	}
@@ -62,7 +63,7 @@ public class SimpleBroadphase implements BroadphaseInterface {
 		assert (aabbMin.x <= aabbMax.x && aabbMin.y <= aabbMax.y && aabbMin.z <= aabbMax.z);
 
 		SimpleBroadphaseProxy proxy = new SimpleBroadphaseProxy(aabbMin, aabbMax, shapeType, userPtr, collisionFilterGroup, collisionFilterMask);
-		proxy.uniqueId = handles.size();
+		proxy.uniqueId = ++gid;
 		handles.add(proxy);
 		return proxy;
 	}
@@ -106,6 +107,16 @@ public class SimpleBroadphase implements BroadphaseInterface {
 		}
 	}
 
+	public void rayTest(Vector3f rayFrom, Vector3f rayTo, BroadphaseRayCallback rayCallback) {
+		rayTest(rayFrom, rayTo, rayCallback, null, null);
+	}
+
+	public void rayTest(Vector3f rayFrom, Vector3f rayTo, BroadphaseRayCallback rayCallback, Vector3f aabbMin, Vector3f aabbMax) {
+		for (int i=0; i<handles.size(); i++) {
+			rayCallback.process(handles.get(i));
+		}
+	}
+
 	public OverlappingPairCache getOverlappingPairCache() {
 		return pairCache;
 	}
@@ -0,0 +1,343 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.collision.broadphase;
+
+import javabullet.BulletStats;
+import javabullet.ObjectPool;
+
+/**
+ * SortedOverlappingPairCache keeps the pairs in a contiguous array sorted by
+ * the unique ids of both proxies. Lookups are binary searches over primitive
+ * keys and don't allocate, processing iterates the pairs in the sorted order
+ * (grouped by the first proxy).<p>
+ * 
+ * Newly added pairs are collected in a small sorted array first and merged
+ * into the main array in one pass. Removed pairs are only marked and the array
+ * is compacted once per batch, eg. after {@link #processAllOverlappingPairs}.<p>
+ * 
+ * Proxy unique ids must be unique among the live proxies of the broadphase.
+ * 
+ * @author jezek2
+ */
+public class SortedOverlappingPairCache extends OverlappingPairCache {
+
+	private final ObjectPool<BroadphasePair> pairsPool = new ObjectPool<BroadphasePair>(BroadphasePair.class);
+	
+	// sorted pairs, removed pairs have null entry but keep the key:
+	private long[] keys;
+	private BroadphasePair[] pairs;
+	private int size;
+	private int removedCount;
+	
+	// sorted pairs added since last merge:
+	private long[] addedKeys;
+	private BroadphasePair[] addedPairs;
+	private int addedSize;
+	
+	// merge buffers (swapped with main arrays):
+	private long[] tmpKeys;
+	private BroadphasePair[] tmpPairs;
+	
+	private int iterating;
+
+	public SortedOverlappingPairCache() {
+		this(64);
+	}
+
+	public SortedOverlappingPairCache(int initialCapacity) {
+		initialCapacity = Math.max(initialCapacity, 16);
+		keys = new long[initialCapacity];
+		pairs = new BroadphasePair[initialCapacity];
+		addedKeys = new long[16];
+		addedPairs = new BroadphasePair[16];
+		tmpKeys = new long[0];
+		tmpPairs = new BroadphasePair[0];
+	}
+
+	@Override
+	public BroadphasePair addOverlappingPair(BroadphaseProxy proxy0, BroadphaseProxy proxy1) {
+		BulletStats.addAddedPair();
+
+		if (!needsBroadphaseCollision(proxy0, proxy1)) {
+			return null;
+		}
+
+		long key = getKey(proxy0, proxy1);
+		
+		int idx = binarySearch(keys, size, key);
+		if (idx >= 0) {
+			BroadphasePair pair = pairs[idx];
+			if (pair != null) {
+				return pair;
+			}
+			
+			// revive removed slot:
+			pair = createPair(proxy0, proxy1);
+			pairs[idx] = pair;
+			removedCount--;
+			return pair;
+		}
+		
+		idx = binarySearch(addedKeys, addedSize, key);
+		if (idx >= 0) {
+			return addedPairs[idx];
+		}
+		
+		idx = -idx - 1;
+		if (addedSize == addedKeys.length) {
+			long[] newKeys = new long[addedSize << 1];
+			BroadphasePair[] newPairs = new BroadphasePair[addedSize << 1];
+			System.arraycopy(addedKeys, 0, newKeys, 0, addedSize);
+			System.arraycopy(addedPairs, 0, newPairs, 0, addedSize);
+			addedKeys = newKeys;
+			addedPairs = newPairs;
+		}
+		System.arraycopy(addedKeys, idx, addedKeys, idx+1, addedSize - idx);
+		System.arraycopy(addedPairs, idx, addedPairs, idx+1, addedSize - idx);
+		
+		BroadphasePair pair = createPair(proxy0, proxy1);
+		addedKeys[idx] = key;
+		addedPairs[idx] = pair;
+		addedSize++;
+		
+		// keep insertion cost bounded, merging is linear in the number of pairs:
+		if (iterating == 0 && addedSize > 64 + (size >> 3)) {
+			merge();
+		}
+		return pair;
+	}
+
+	@Override
+	public Object removeOverlappingPair(BroadphaseProxy proxy0, BroadphaseProxy proxy1, Dispatcher dispatcher) {
+		BulletStats.addRemovedPair();
+
+		long key = getKey(proxy0, proxy1);
+		BroadphasePair pair;
+		
+		int idx = binarySearch(keys, size, key);
+		if (idx >= 0) {
+			pair = pairs[idx];
+			if (pair == null) {
+				return null;
+			}
+			pairs[idx] = null;
+			removedCount++;
+		}
+		else {
+			idx = binarySearch(addedKeys, addedSize, key);
+			if (idx < 0) {
+				return null;
+			}
+			pair = addedPairs[idx];
+			System.arraycopy(addedKeys, idx+1, addedKeys, idx, addedSize - idx - 1);
+			System.arraycopy(addedPairs, idx+1, addedPairs, idx, addedSize - idx - 1);
+			addedSize--;
+			addedPairs[addedSize] = null;
+		}
+
+		cleanOverlappingPair(pair, dispatcher);
+		pairsPool.release(pair);
+		
+		if (iterating == 0 && removedCount > 16 + (size >> 2)) {
+			compact();
+		}
+
+		return pair.userInfo;
+	}
+
+	@Override
+	public void processAllOverlappingPairs(OverlapCallback callback, Dispatcher dispatcher) {
+		if (iterating == 0) {
+			merge();
+		}
+		
+		iterating++;
+		try {
+			// pairs added by the callback are not visited:
+			int count = size;
+			for (int i=0; i<count; i++) {
+				BroadphasePair pair = pairs[i];
+				if (pair == null) {
+					continue;
+				}
+				
+				if (callback.processOverlap(pair)) {
+					//removeOverlappingPair(pair.pProxy0, pair.pProxy1, dispatcher);
+					if (pairs[i] == pair) {
+						pairs[i] = null;
+						removedCount++;
+						cleanOverlappingPair(pair, dispatcher);
+						BulletStats.addRemovedPair();
+						pairsPool.release(pair);
+					}
+				}
+			}
+		}
+		finally {
+			iterating--;
+		}
+		
+		if (iterating == 0) {
+			merge();
+		}
+	}
+
+	@Override
+	public BroadphasePair findPair(BroadphaseProxy proxy0, BroadphaseProxy proxy1) {
+		BulletStats.addFindPair();
+
+		long key = getKey(proxy0, proxy1);
+		
+		int idx = binarySearch(keys, size, key);
+		if (idx >= 0) {
+			return pairs[idx];
+		}
+		
+		idx = binarySearch(addedKeys, addedSize, key);
+		if (idx >= 0) {
+			return addedPairs[idx];
+		}
+		return null;
+	}
+
+	@Override
+	public int getNumOverlappingPairs() {
+		return size - removedCount + addedSize;
+	}
+	
+	private BroadphasePair createPair(BroadphaseProxy proxy0, BroadphaseProxy proxy1) {
+		BroadphasePair pair = pairsPool.get();
+		// keep pairs ordered by unique id for deterministic processing:
+		if (proxy0.uniqueId > proxy1.uniqueId) {
+			pair.set(proxy1, proxy0);
+		}
+		else {
+			pair.set(proxy0, proxy1);
+		}
+		return pair;
+	}
+	
+	/**
+	 * Merges added pairs into main array and removes marked pairs.
+	 */
+	private void merge() {
+		if (addedSize == 0) {
+			if (removedCount > 0) {
+				compact();
+			}
+			return;
+		}
+		
+		int newCapacity = size - removedCount + addedSize;
+		if (tmpKeys.length < newCapacity) {
+			newCapacity = Math.max(newCapacity + (newCapacity >> 1), keys.length);
+			tmpKeys = new long[newCapacity];
+			tmpPairs = new BroadphasePair[newCapacity];
+		}
+		
+		long[] dstKeys = tmpKeys;
+		BroadphasePair[] dstPairs = tmpPairs;
+		
+		int i = 0, j = 0, n = 0;
+		while (i < size || j < addedSize) {
+			if (j == addedSize || (i < size && keys[i] < addedKeys[j])) {
+				if (pairs[i] != null) {
+					dstKeys[n] = keys[i];
+					dstPairs[n] = pairs[i];
+					n++;
+				}
+				pairs[i] = null;
+				i++;
+			}
+			else {
+				dstKeys[n] = addedKeys[j];
+				dstPairs[n] = addedPairs[j];
+				addedPairs[j] = null;
+				n++;
+				j++;
+			}
+		}
+		
+		tmpKeys = keys;
+		tmpPairs = pairs;
+		keys = dstKeys;
+		pairs = dstPairs;
+		size = n;
+		removedCount = 0;
+		addedSize = 0;
+	}
+	
+	/**
+	 * Removes marked pairs from main array.
+	 */
+	private void compact() {
+		int n = 0;
+		for (int i=0; i<size; i++) {
+			BroadphasePair pair = pairs[i];
+			if (pair != null) {
+				keys[n] = keys[i];
+				pairs[n] = pair;
+				n++;
+			}
+		}
+		for (int i=n; i<size; i++) {
+			pairs[i] = null;
+		}
+		size = n;
+		removedCount = 0;
+	}
+	
+	private static long getKey(BroadphaseProxy proxy0, BroadphaseProxy proxy1) {
+		int id0 = proxy0.uniqueId;
+		int id1 = proxy1.uniqueId;
+		if (id0 > id1) {
+			int tmp = id0;
+			id0 = id1;
+			id1 = tmp;
+		}
+		return ((long)id0 << 32) | (id1 & 0xFFFFFFFFL);
+	}
+	
+	private static int binarySearch(long[] array, int size, long key) {
+		int low = 0;
+		int high = size - 1;
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long midVal = array[mid];
+
+			if (midVal < key) {
+				low = mid + 1;
+			}
+			else if (midVal > key) {
+				high = mid - 1;
+			}
+			else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+	
+}
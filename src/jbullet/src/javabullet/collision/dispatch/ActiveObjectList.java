@@ -0,0 +1,200 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.collision.dispatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Index of active collision objects in a {@link CollisionWorld}. Objects are
+ * added and removed automatically whenever their activation state changes,
+ * so per-step stages can iterate just the awake objects instead of whole world.
+ * Static objects are never indexed, they cost nothing per step unless moved
+ * by {@link CollisionObject#setWorldTransform}.<p>
+ * 
+ * Objects are kept in the same relative order as they were added to the world,
+ * so the results don't depend on the order in which they were woken up.<p>
+ * 
+ * Sleeping and static objects that still need some per-step processing (they just fell
+ * asleep, had forces applied or were moved by user) are tracked in separate
+ * list of dirty objects, which is cleared by {@link #clearDirtyObjects}.
+ * 
+ * @author jezek2
+ */
+public class ActiveObjectList {
+
+	private CollisionObject[] objects = new CollisionObject[16];
+	private int size;
+	private int numRemoved;
+	private boolean unsorted;
+	private int nextOrder;
+	private int maxAppendedOrder = -1;
+	
+	private final List<CollisionObject> dirtyObjects = new ArrayList<CollisionObject>();
+	
+	void addObject(CollisionObject colObj) {
+		assert (colObj.activeList == null);
+		colObj.activeList = this;
+		colObj.activeOrder = nextOrder++;
+		colObj.activeIndex = -1;
+		updateObject(colObj);
+	}
+	
+	void removeObject(CollisionObject colObj) {
+		if (colObj.activeIndex >= 0) {
+			objects[colObj.activeIndex] = null;
+			numRemoved++;
+			colObj.activeIndex = -1;
+		}
+		if (colObj.dirty) {
+			dirtyObjects.remove(colObj);
+			colObj.dirty = false;
+		}
+		colObj.activeList = null;
+	}
+	
+	/**
+	 * Called when activation state or collision flags of object have changed.
+	 */
+	void updateObject(CollisionObject colObj) {
+		boolean active = colObj.isActive() && !colObj.isStaticObject();
+		if (active && colObj.activeIndex < 0) {
+			if (size == objects.length) {
+				CollisionObject[] newArray = new CollisionObject[objects.length << 1];
+				System.arraycopy(objects, 0, newArray, 0, size);
+				objects = newArray;
+			}
+			// tail slot can be a hole, so compare against highest order appended so far:
+			if (colObj.activeOrder < maxAppendedOrder) {
+				unsorted = true;
+			}
+			else {
+				maxAppendedOrder = colObj.activeOrder;
+			}
+			colObj.activeIndex = size;
+			objects[size++] = colObj;
+		}
+		else if (!active && colObj.activeIndex >= 0) {
+			objects[colObj.activeIndex] = null;
+			numRemoved++;
+			colObj.activeIndex = -1;
+			
+			// needs final update of motion state and forces:
+			markDirty(colObj);
+		}
+	}
+	
+	void markDirty(CollisionObject colObj) {
+		if (!colObj.dirty) {
+			colObj.dirty = true;
+			dirtyObjects.add(colObj);
+		}
+	}
+	
+	/**
+	 * Removes holes left by deactivated objects and restores original ordering.
+	 * Must be called before iterating, objects deactivated during iteration
+	 * are replaced by null.
+	 */
+	public void compact() {
+		if (numRemoved > 0) {
+			int j = 0;
+			for (int i=0; i<size; i++) {
+				CollisionObject colObj = objects[i];
+				if (colObj != null) {
+					colObj.activeIndex = j;
+					objects[j++] = colObj;
+				}
+			}
+			for (int i=j; i<size; i++) {
+				objects[i] = null;
+			}
+			size = j;
+			numRemoved = 0;
+		}
+		
+		if (unsorted) {
+			Arrays.sort(objects, 0, size, activeOrderComparator);
+			for (int i=0; i<size; i++) {
+				objects[i].activeIndex = i;
+			}
+			unsorted = false;
+		}
+		
+		maxAppendedOrder = (size > 0)? objects[size-1].activeOrder : -1;
+		assert (isSorted());
+	}
+	
+	private boolean isSorted() {
+		for (int i=1; i<size; i++) {
+			if (objects[i-1].activeOrder >= objects[i].activeOrder) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns number of slots, some of them can be null when not compacted.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns active object or null when it was deactivated since last compaction.
+	 */
+	public CollisionObject get(int index) {
+		return objects[index];
+	}
+	
+	public int getNumDirtyObjects() {
+		return dirtyObjects.size();
+	}
+	
+	/**
+	 * Returns sleeping object that still needs processing in current step.
+	 */
+	public CollisionObject getDirtyObject(int index) {
+		return dirtyObjects.get(index);
+	}
+	
+	public void clearDirtyObjects() {
+		for (int i=0; i<dirtyObjects.size(); i++) {
+			dirtyObjects.get(i).dirty = false;
+		}
+		dirtyObjects.clear();
+	}
+	
+	////////////////////////////////////////////////////////////////////////////
+	
+	private static final Comparator<CollisionObject> activeOrderComparator = new Comparator<CollisionObject>() {
+		public int compare(CollisionObject lhs, CollisionObject rhs) {
+			return lhs.activeOrder < rhs.activeOrder? -1 : (lhs.activeOrder > rhs.activeOrder? +1 : 0);
+		}
+	};
+	
+}
@@ -0,0 +1,332 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.collision.dispatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javabullet.BulletGlobals;
+import javabullet.BulletStack;
+import javabullet.collision.broadphase.BroadphaseProxy;
+import javabullet.collision.broadphase.Dbvt;
+import javabullet.collision.dispatch.CollisionWorld.LocalRayResult;
+import javabullet.collision.dispatch.CollisionWorld.RayResultCallback;
+import javabullet.linearmath.Transform;
+import javabullet.util.ParallelLoop;
+import javax.vecmath.Vector3f;
+
+/**
+ * Closest hit raycasts for batches of rays, see {@link CollisionWorld#rayTestBatch}.<p>
+ *
+ * At the start of each batch transforms and AABBs of all collision objects
+ * are copied into a snapshot, rays are then tested only against the snapshot
+ * using own AABB tree, so they can be processed concurrently by executor
+ * threads of the world. Rays are sorted by direction, so that each thread
+ * traverses object trees (such as {@link javabullet.collision.shapes.OptimizedBvh})
+ * with coherent rays. Each ray is tested independently, results don't depend
+ * on the order or number of threads.<p>
+ *
+ * Collision shapes must not be modified during the batch.
+ *
+ * @author jezek2
+ */
+public class BatchRaycaster {
+
+	private static final int MIN_RAYS_PER_CHUNK = 32;
+
+	// number of quantization levels of direction components used for sorting
+	private static final int DIRECTION_BITS = 5;
+
+	private final CollisionWorld world;
+
+	// snapshot of collision objects:
+	private CollisionObject[] objects = new CollisionObject[0];
+	private Transform[] transforms = new Transform[0];
+	private short[] filterGroups = new short[0];
+	private int numObjects;
+
+	// tree leaf i bounds snapshot object i:
+	private final Dbvt tree = new Dbvt();
+	private final List<Dbvt.Node> leaves = new ArrayList<Dbvt.Node>();
+
+	// current batch:
+	private long[] sortKeys = new long[0];
+	private int numRays;
+	private float[] rayFrom;
+	private float[] rayTo;
+	private short[] filterMasks;
+	private float[] hitFractions;
+	private float[] hitNormals;
+	private int[] hitObjects;
+
+	private final RayLoop rayLoop = new RayLoop();
+
+	private final ThreadLocal<RayContext> contexts = new ThreadLocal<RayContext>() {
+		@Override
+		protected RayContext initialValue() {
+			return new RayContext();
+		}
+	};
+
+	public BatchRaycaster(CollisionWorld world) {
+		this.world = world;
+	}
+
+	/**
+	 * Performs closest hit raycasts, see {@link CollisionWorld#rayTestBatch}.
+	 */
+	public void rayTest(float[] rayFrom, float[] rayTo, short[] filterMasks, int numRays, float[] hitFractions, float[] hitNormals, int[] hitObjects) {
+		assert (rayFrom.length >= numRays*3 && rayTo.length >= numRays*3);
+		assert (filterMasks == null || filterMasks.length >= numRays);
+		assert (hitFractions.length >= numRays);
+		assert (hitNormals == null || hitNormals.length >= numRays*3);
+		assert (hitObjects == null || hitObjects.length >= numRays);
+
+		BulletGlobals.pushProfile("rayTestBatch");
+		try {
+			updateSnapshot();
+			sortRays(rayFrom, rayTo, numRays);
+
+			this.numRays = numRays;
+			this.rayFrom = rayFrom;
+			this.rayTo = rayTo;
+			this.filterMasks = filterMasks;
+			this.hitFractions = hitFractions;
+			this.hitNormals = hitNormals;
+			this.hitObjects = hitObjects;
+			try {
+				rayLoop.run(world.getExecutor(), world.getParallelism(), numRays, MIN_RAYS_PER_CHUNK);
+			}
+			finally {
+				this.rayFrom = null;
+				this.rayTo = null;
+				this.filterMasks = null;
+				this.hitFractions = null;
+				this.hitNormals = null;
+				this.hitObjects = null;
+			}
+		}
+		finally {
+			BulletGlobals.popProfile();
+		}
+	}
+
+	/**
+	 * Copies transforms and AABBs of collision objects, only leaves of objects
+	 * whose AABB changed are updated in the tree.
+	 */
+	private void updateSnapshot() {
+		BulletStack stack = BulletStack.get();
+
+		stack.vectors.push();
+		try {
+			Vector3f aabbMin = stack.vectors.get(), aabbMax = stack.vectors.get();
+
+			List<CollisionObject> collisionObjects = world.getCollisionObjectArray();
+			numObjects = collisionObjects.size();
+			if (objects.length < numObjects) {
+				Transform[] oldTransforms = transforms;
+				objects = new CollisionObject[numObjects];
+				transforms = new Transform[numObjects];
+				filterGroups = new short[numObjects];
+				System.arraycopy(oldTransforms, 0, transforms, 0, oldTransforms.length);
+				for (int i=oldTransforms.length; i<numObjects; i++) {
+					transforms[i] = new Transform();
+				}
+			}
+
+			for (int i=0; i<numObjects; i++) {
+				CollisionObject colObj = collisionObjects.get(i);
+				objects[i] = colObj;
+				transforms[i].set(colObj.getWorldTransform());
+				BroadphaseProxy proxy = colObj.getBroadphaseHandle();
+				filterGroups[i] = proxy != null? proxy.collisionFilterGroup : (short)-1;
+
+				colObj.getCollisionShape().getAabb(transforms[i], aabbMin, aabbMax);
+				if (i < leaves.size()) {
+					Dbvt.Node leaf = leaves.get(i);
+					if (!leaf.mins.equals(aabbMin) || !leaf.maxs.equals(aabbMax)) {
+						tree.update(leaf, aabbMin, aabbMax);
+					}
+				}
+				else {
+					leaves.add(tree.insert(aabbMin, aabbMax, i));
+				}
+			}
+
+			while (leaves.size() > numObjects) {
+				tree.remove(leaves.remove(leaves.size() - 1));
+			}
+			for (int i=numObjects; i<objects.length; i++) {
+				objects[i] = null;
+			}
+
+			tree.optimizeIncremental(1);
+		}
+		finally {
+			stack.vectors.pop();
+		}
+	}
+
+	/**
+	 * Sorts rays by octant and quantized direction, ray index is kept in lower bits.
+	 */
+	private void sortRays(float[] rayFrom, float[] rayTo, int numRays) {
+		if (sortKeys.length < numRays) {
+			sortKeys = new long[numRays];
+		}
+
+		int levels = 1 << DIRECTION_BITS;
+		for (int i=0; i<numRays; i++) {
+			float dx = rayTo[i*3+0] - rayFrom[i*3+0];
+			float dy = rayTo[i*3+1] - rayFrom[i*3+1];
+			float dz = rayTo[i*3+2] - rayFrom[i*3+2];
+
+			int octant = (dx < 0f? 4 : 0) | (dy < 0f? 2 : 0) | (dz < 0f? 1 : 0);
+
+			int morton = 0;
+			float len = (float)Math.sqrt(dx*dx + dy*dy + dz*dz);
+			if (len > BulletGlobals.FLT_EPSILON) {
+				float scale = (levels - 1) / len;
+				int qx = (int)(Math.abs(dx) * scale);
+				int qy = (int)(Math.abs(dy) * scale);
+				int qz = (int)(Math.abs(dz) * scale);
+				for (int b=DIRECTION_BITS-1; b>=0; b--) {
+					morton = (morton << 3) | (((qx >>> b) & 1) << 2) | (((qy >>> b) & 1) << 1) | ((qz >>> b) & 1);
+				}
+			}
+
+			long key = (octant << (3*DIRECTION_BITS)) | morton;
+			sortKeys[i] = (key << 32) | i;
+		}
+		Arrays.sort(sortKeys, 0, numRays);
+	}
+
+	private void processRay(int rayIndex, RayContext ctx) {
+		ctx.rayFromTrans.origin.set(rayFrom[rayIndex*3+0], rayFrom[rayIndex*3+1], rayFrom[rayIndex*3+2]);
+		ctx.rayToTrans.origin.set(rayTo[rayIndex*3+0], rayTo[rayIndex*3+1], rayTo[rayIndex*3+2]);
+
+		RayCallback callback = ctx.callback;
+		callback.closestHitFraction = 1f;
+		callback.collisionObject = null;
+		callback.objectIndex = -1;
+		callback.hitNormalWorld.set(0f, 0f, 0f);
+
+		RayPolicy policy = ctx.policy;
+		policy.lambdaMax = 1f;
+		policy.collisionFilterMask = filterMasks != null? filterMasks[rayIndex] : (short)-1;
+
+		Dbvt.rayTest(tree.root, ctx.rayFromTrans.origin, ctx.rayToTrans.origin, BulletGlobals.ZERO_VECTOR3, BulletGlobals.ZERO_VECTOR3, policy, ctx.stack);
+
+		hitFractions[rayIndex] = callback.closestHitFraction;
+		if (hitNormals != null) {
+			hitNormals[rayIndex*3+0] = callback.hitNormalWorld.x;
+			hitNormals[rayIndex*3+1] = callback.hitNormalWorld.y;
+			hitNormals[rayIndex*3+2] = callback.hitNormalWorld.z;
+		}
+		if (hitObjects != null) {
+			hitObjects[rayIndex] = callback.objectIndex;
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+
+	private class RayLoop extends ParallelLoop {
+		@Override
+		protected void process(int start, int end) {
+			RayContext ctx = contexts.get();
+			for (int i=start; i<end; i++) {
+				processRay((int)sortKeys[i], ctx);
+			}
+		}
+	}
+
+	private class RayContext {
+		public final Transform rayFromTrans = new Transform();
+		public final Transform rayToTrans = new Transform();
+		public final ArrayList<Dbvt.Node> stack = new ArrayList<Dbvt.Node>();
+		public final RayCallback callback = new RayCallback();
+		public final RayPolicy policy = new RayPolicy(this);
+
+		public RayContext() {
+			rayFromTrans.setIdentity();
+			rayToTrans.setIdentity();
+		}
+	}
+
+	private class RayPolicy extends Dbvt.ICollide {
+		private final RayContext ctx;
+		public short collisionFilterMask;
+
+		public RayPolicy(RayContext ctx) {
+			this.ctx = ctx;
+		}
+
+		@Override
+		public void process(Dbvt.Node leaf) {
+			int index = (Integer)leaf.data;
+			if ((filterGroups[index] & collisionFilterMask) == 0) {
+				return;
+			}
+
+			CollisionObject colObj = objects[index];
+			ctx.callback.currentIndex = index;
+			ctx.callback.currentTransform = transforms[index];
+			world.rayTestSingle(ctx.rayFromTrans, ctx.rayToTrans,
+					colObj,
+					colObj.getCollisionShape(),
+					transforms[index],
+					ctx.callback,
+					(short) -1);
+
+			// further objects can't be closer than the closest hit
+			lambdaMax = ctx.callback.closestHitFraction;
+		}
+	}
+
+	private static class RayCallback extends RayResultCallback {
+		public final Vector3f hitNormalWorld = new Vector3f();
+		public int objectIndex;
+
+		public int currentIndex;
+		public Transform currentTransform;
+
+		@Override
+		public float addSingleResult(LocalRayResult rayResult, boolean normalInWorldSpace) {
+			// caller already does the filter on the closestHitFraction
+			assert (rayResult.hitFraction <= closestHitFraction);
+
+			closestHitFraction = rayResult.hitFraction;
+			collisionObject = rayResult.collisionObject;
+			objectIndex = currentIndex;
+			hitNormalWorld.set(rayResult.hitNormalLocal);
+			if (!normalInWorldSpace) {
+				// need to transform normal into worldspace, using the snapshot
+				currentTransform.basis.transform(hitNormalWorld);
+			}
+			return rayResult.hitFraction;
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.collision.dispatch;
+
+import javabullet.BulletPool;
+import javabullet.ObjectPool;
+import javabullet.collision.broadphase.CollisionAlgorithm;
+import javabullet.collision.broadphase.CollisionAlgorithmConstructionInfo;
+import javabullet.collision.broadphase.DispatcherInfo;
+import javabullet.collision.narrowphase.DiscreteCollisionDetectorInterface.ClosestPointInput;
+import javabullet.collision.narrowphase.PersistentManifold;
+import javabullet.collision.shapes.BoxShape;
+
+/**
+ * Box-box collision detection, see {@link BoxBoxDetector}. Face contacts
+ * produce full manifold in a single step.
+ *
+ * @author jezek2
+ */
+public class BoxBoxCollisionAlgorithm extends CollisionAlgorithm {
+
+	private boolean ownManifold;
+	private PersistentManifold manifoldPtr;
+	private final BoxBoxDetector detector = new BoxBoxDetector();
+
+	public BoxBoxCollisionAlgorithm() {
+	}
+
+	public BoxBoxCollisionAlgorithm(PersistentManifold mf, CollisionAlgorithmConstructionInfo ci, CollisionObject obj0, CollisionObject obj1) {
+		init(mf, ci, obj0, obj1);
+	}
+
+	public void init(PersistentManifold mf, CollisionAlgorithmConstructionInfo ci, CollisionObject obj0, CollisionObject obj1) {
+		super.init(ci);
+		manifoldPtr = mf;
+
+		if (manifoldPtr == null && dispatcher.needsCollision(obj0, obj1)) {
+			manifoldPtr = dispatcher.getNewManifold(obj0, obj1);
+			ownManifold = true;
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if (ownManifold) {
+			if (manifoldPtr != null) {
+				dispatcher.releaseManifold(manifoldPtr);
+			}
+		}
+		ownManifold = false;
+		manifoldPtr = null;
+	}
+
+	@Override
+	public void processCollision(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+		if (manifoldPtr == null) {
+			return;
+		}
+
+		BoxShape box0 = (BoxShape) body0.getCollisionShape();
+		BoxShape box1 = (BoxShape) body1.getCollisionShape();
+
+		// report contacts, they are kept persistent so the applied impulses are reused
+		resultOut.setPersistentManifold(manifoldPtr);
+
+		ObjectPool<ClosestPointInput> pointInputsPool = BulletPool.get(ClosestPointInput.class);
+		ClosestPointInput input = pointInputsPool.get();
+		input.init();
+
+		input.maximumDistanceSquared = manifoldPtr.getContactBreakingThreshold();
+		input.maximumDistanceSquared *= input.maximumDistanceSquared;
+		input.transformA.set(body0.getWorldTransform());
+		input.transformB.set(body1.getWorldTransform());
+
+		detector.init(box0, box1);
+		detector.getClosestPoints(input, resultOut, dispatchInfo.debugDraw);
+
+		pointInputsPool.release(input);
+
+		if (ownManifold) {
+			resultOut.refreshContactPoints();
+		}
+	}
+
+	@Override
+	public float calculateTimeOfImpact(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+		// not yet
+		return 1f;
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+
+	public static class CreateFunc extends CollisionAlgorithmCreateFunc {
+		@Override
+		public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
+			BoxBoxCollisionAlgorithm algo = ci.dispatcher1.allocateCollisionAlgorithm(BoxBoxCollisionAlgorithm.class);
+			algo.init(ci.manifold, ci, body0, body1);
+			return algo;
+		}
+	}
+
+}
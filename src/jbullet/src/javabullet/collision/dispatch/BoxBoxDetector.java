@@ -0,0 +1,396 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.collision.dispatch;
+
+import javabullet.BulletStack;
+import javabullet.collision.narrowphase.DiscreteCollisionDetectorInterface;
+import javabullet.collision.shapes.BoxShape;
+import javabullet.linearmath.IDebugDraw;
+import javabullet.linearmath.Transform;
+import javax.vecmath.Vector3f;
+
+/**
+ * BoxBoxDetector wraps the ODE box-box collision detector. It finds the axis
+ * of minimum penetration among the 15 separating axis candidates and then
+ * either clips the incident face against the reference face (giving up to 4
+ * contact points at once) or reports single point for edge-edge contact.
+ *
+ * @author jezek2
+ */
+public class BoxBoxDetector implements DiscreteCollisionDetectorInterface {
+
+	// edge axes must be this much better than face axes to be used, face
+	// contacts are more stable
+	private static final float EDGE_FUDGE_FACTOR = 1.05f;
+
+	private static final int MAX_CLIP_POINTS = 16;
+	private static final int MAX_CONTACTS = 4;
+
+	private BoxShape box1;
+	private BoxShape box2;
+
+	// box axes in world space, axis i is at index i*3
+	private final float[] axes1 = new float[9];
+	private final float[] axes2 = new float[9];
+	private final float[] ext1 = new float[3];
+	private final float[] ext2 = new float[3];
+
+	// clipping buffers, x/y/z per point
+	private float[] clip = new float[MAX_CLIP_POINTS*3];
+	private float[] clipTmp = new float[MAX_CLIP_POINTS*3];
+	private final float[] depths = new float[MAX_CLIP_POINTS];
+	private final int[] selected = new int[MAX_CONTACTS];
+
+	public BoxBoxDetector() {
+	}
+
+	public BoxBoxDetector(BoxShape box1, BoxShape box2) {
+		this.box1 = box1;
+		this.box2 = box2;
+	}
+
+	public void init(BoxShape box1, BoxShape box2) {
+		this.box1 = box1;
+		this.box2 = box2;
+	}
+
+	/**
+	 * Contacts are reported up to separation given by input.maximumDistanceSquared.
+	 */
+	public void getClosestPoints(ClosestPointInput input, Result output, IDebugDraw debugDraw) {
+		BulletStack stack = BulletStack.get();
+
+		stack.vectors.push();
+		try {
+			Transform transA = input.transformA;
+			Transform transB = input.transformB;
+
+			Vector3f tmp = stack.vectors.get();
+			for (int i=0; i<3; i++) {
+				transA.basis.getColumn(i, tmp);
+				axes1[i*3+0] = tmp.x; axes1[i*3+1] = tmp.y; axes1[i*3+2] = tmp.z;
+				transB.basis.getColumn(i, tmp);
+				axes2[i*3+0] = tmp.x; axes2[i*3+1] = tmp.y; axes2[i*3+2] = tmp.z;
+			}
+
+			tmp.set(box1.getHalfExtentsWithMargin());
+			ext1[0] = tmp.x; ext1[1] = tmp.y; ext1[2] = tmp.z;
+			tmp.set(box2.getHalfExtentsWithMargin());
+			ext2[0] = tmp.x; ext2[1] = tmp.y; ext2[2] = tmp.z;
+
+			float threshold = (float)Math.sqrt(input.maximumDistanceSquared);
+
+			Vector3f p1 = transA.origin;
+			Vector3f p2 = transB.origin;
+			float dx = p2.x - p1.x, dy = p2.y - p1.y, dz = p2.z - p1.z;
+
+			// find axis of minimum penetration (or maximum separation):
+			// edge axes are compared by scaled separation, depth uses the raw one:
+			float bestScore = -Float.MAX_VALUE;
+			float bestSep = 0f;
+			int bestCode = -1;
+			float nx = 0f, ny = 0f, nz = 0f;
+
+			for (int code=0; code<15; code++) {
+				float lx, ly, lz;
+				float fudge = 1f;
+				if (code < 3) {
+					lx = axes1[code*3+0]; ly = axes1[code*3+1]; lz = axes1[code*3+2];
+				}
+				else if (code < 6) {
+					lx = axes2[(code-3)*3+0]; ly = axes2[(code-3)*3+1]; lz = axes2[(code-3)*3+2];
+				}
+				else {
+					int i = (code-6) / 3;
+					int j = (code-6) % 3;
+					float ax = axes1[i*3+0], ay = axes1[i*3+1], az = axes1[i*3+2];
+					float bx = axes2[j*3+0], by = axes2[j*3+1], bz = axes2[j*3+2];
+					lx = ay*bz - az*by;
+					ly = az*bx - ax*bz;
+					lz = ax*by - ay*bx;
+					float len = (float)Math.sqrt(lx*lx + ly*ly + lz*lz);
+					if (len < 1e-5f) {
+						// parallel edges, covered by face axes
+						continue;
+					}
+					lx /= len; ly /= len; lz /= len;
+					fudge = EDGE_FUDGE_FACTOR;
+				}
+
+				float dist = dx*lx + dy*ly + dz*lz;
+				float sep = Math.abs(dist) - project(axes1, ext1, lx, ly, lz) - project(axes2, ext2, lx, ly, lz);
+				if (sep > threshold) {
+					return;
+				}
+				float score = sep * (sep < 0f? fudge : 1f);
+				if (score > bestScore) {
+					bestScore = score;
+					bestSep = sep;
+					bestCode = code;
+					// normal points from box1 to box2
+					if (dist < 0f) {
+						nx = -lx; ny = -ly; nz = -lz;
+					}
+					else {
+						nx = lx; ny = ly; nz = lz;
+					}
+				}
+			}
+
+			if (bestCode < 0) {
+				return;
+			}
+
+			Vector3f normalOnB = stack.vectors.get(-nx, -ny, -nz);
+
+			if (bestCode < 3) {
+				// reference face on box1
+				faceContacts(axes1, ext1, p1, bestCode, axes2, ext2, p2, nx, ny, nz, true, threshold, normalOnB, output);
+			}
+			else if (bestCode < 6) {
+				// reference face on box2
+				faceContacts(axes2, ext2, p2, bestCode-3, axes1, ext1, p1, -nx, -ny, -nz, false, threshold, normalOnB, output);
+			}
+			else {
+				int i = (bestCode-6) / 3;
+				int j = (bestCode-6) % 3;
+
+				// find the edges closest to each other:
+				Vector3f pa = stack.vectors.get(p1);
+				Vector3f pb = stack.vectors.get(p2);
+				for (int k=0; k<3; k++) {
+					if (k != i) {
+						float sign = (nx*axes1[k*3+0] + ny*axes1[k*3+1] + nz*axes1[k*3+2]) > 0f? 1f : -1f;
+						float s = sign * ext1[k];
+						pa.x += axes1[k*3+0]*s; pa.y += axes1[k*3+1]*s; pa.z += axes1[k*3+2]*s;
+					}
+					if (k != j) {
+						float sign = (nx*axes2[k*3+0] + ny*axes2[k*3+1] + nz*axes2[k*3+2]) > 0f? -1f : 1f;
+						float s = sign * ext2[k];
+						pb.x += axes2[k*3+0]*s; pb.y += axes2[k*3+1]*s; pb.z += axes2[k*3+2]*s;
+					}
+				}
+
+				// closest approach of two lines:
+				float uax = axes1[i*3+0], uay = axes1[i*3+1], uaz = axes1[i*3+2];
+				float ubx = axes2[j*3+0], uby = axes2[j*3+1], ubz = axes2[j*3+2];
+				float px = pb.x - pa.x, py = pb.y - pa.y, pz = pb.z - pa.z;
+				float uaub = uax*ubx + uay*uby + uaz*ubz;
+				float q1 = uax*px + uay*py + uaz*pz;
+				float q2 = -(ubx*px + uby*py + ubz*pz);
+				float d = 1f - uaub*uaub;
+				float beta = 0f;
+				if (d > 0.0001f) {
+					beta = (uaub*q1 + q2) / d;
+				}
+
+				Vector3f pointOnB = stack.vectors.get(pb.x + ubx*beta, pb.y + uby*beta, pb.z + ubz*beta);
+				output.addContactPoint(normalOnB, pointOnB, bestSep);
+			}
+		}
+		finally {
+			stack.vectors.pop();
+		}
+	}
+
+	/**
+	 * Clips incident face against reference face and reports the points
+	 * below the reference face (up to the threshold).
+	 */
+	private void faceContacts(float[] refAxes, float[] refExt, Vector3f refPos, int refIndex,
+			float[] incAxes, float[] incExt, Vector3f incPos,
+			float rnx, float rny, float rnz, boolean refIsA, float threshold, Vector3f normalOnB, Result output) {
+		BulletStack stack = BulletStack.get();
+
+		stack.vectors.push();
+		try {
+			// center of the reference face:
+			float h = refExt[refIndex];
+			float cx = refPos.x + rnx*h, cy = refPos.y + rny*h, cz = refPos.z + rnz*h;
+
+			// incident face is the one most anti-parallel to the reference normal:
+			int k = 0;
+			float maxDot = -1f, kDot = 0f;
+			for (int i=0; i<3; i++) {
+				float dot = rnx*incAxes[i*3+0] + rny*incAxes[i*3+1] + rnz*incAxes[i*3+2];
+				if (Math.abs(dot) > maxDot) {
+					maxDot = Math.abs(dot);
+					kDot = dot;
+					k = i;
+				}
+			}
+			float sign = kDot > 0f? -1f : 1f;
+			float icx = incPos.x + incAxes[k*3+0]*sign*incExt[k];
+			float icy = incPos.y + incAxes[k*3+1]*sign*incExt[k];
+			float icz = incPos.z + incAxes[k*3+2]*sign*incExt[k];
+
+			int k1 = (k+1) % 3, k2 = (k+2) % 3;
+			float e1x = incAxes[k1*3+0]*incExt[k1], e1y = incAxes[k1*3+1]*incExt[k1], e1z = incAxes[k1*3+2]*incExt[k1];
+			float e2x = incAxes[k2*3+0]*incExt[k2], e2y = incAxes[k2*3+1]*incExt[k2], e2z = incAxes[k2*3+2]*incExt[k2];
+
+			float[] poly = clip;
+			poly[0] = icx + e1x + e2x; poly[1]  = icy + e1y + e2y; poly[2]  = icz + e1z + e2z;
+			poly[3] = icx - e1x + e2x; poly[4]  = icy - e1y + e2y; poly[5]  = icz - e1z + e2z;
+			poly[6] = icx - e1x - e2x; poly[7]  = icy - e1y - e2y; poly[8]  = icz - e1z - e2z;
+			poly[9] = icx + e1x - e2x; poly[10] = icy + e1y - e2y; poly[11] = icz + e1z - e2z;
+			int count = 4;
+
+			// clip against side planes of the reference face:
+			int u = (refIndex+1) % 3, v = (refIndex+2) % 3;
+			count = clipPolygon(count, refAxes[u*3+0], refAxes[u*3+1], refAxes[u*3+2], cx, cy, cz, refExt[u]);
+			count = clipPolygon(count, -refAxes[u*3+0], -refAxes[u*3+1], -refAxes[u*3+2], cx, cy, cz, refExt[u]);
+			count = clipPolygon(count, refAxes[v*3+0], refAxes[v*3+1], refAxes[v*3+2], cx, cy, cz, refExt[v]);
+			count = clipPolygon(count, -refAxes[v*3+0], -refAxes[v*3+1], -refAxes[v*3+2], cx, cy, cz, refExt[v]);
+
+			// keep points below reference face:
+			poly = clip;
+			int numContacts = 0;
+			for (int i=0; i<count; i++) {
+				float depth = rnx*(poly[i*3+0] - cx) + rny*(poly[i*3+1] - cy) + rnz*(poly[i*3+2] - cz);
+				if (depth <= threshold) {
+					poly[numContacts*3+0] = poly[i*3+0];
+					poly[numContacts*3+1] = poly[i*3+1];
+					poly[numContacts*3+2] = poly[i*3+2];
+					depths[numContacts] = depth;
+					numContacts++;
+				}
+			}
+
+			int numSelected = cullPoints(numContacts);
+
+			Vector3f pointOnB = stack.vectors.get();
+			for (int s=0; s<numSelected; s++) {
+				int i = selected[s];
+				float depth = depths[i];
+				if (refIsA) {
+					// incident face belongs to box B
+					pointOnB.set(poly[i*3+0], poly[i*3+1], poly[i*3+2]);
+				}
+				else {
+					// incident face belongs to box A, project it to the reference face on B
+					pointOnB.set(poly[i*3+0] - rnx*depth, poly[i*3+1] - rny*depth, poly[i*3+2] - rnz*depth);
+				}
+				output.addContactPoint(normalOnB, pointOnB, depth);
+			}
+		}
+		finally {
+			stack.vectors.pop();
+		}
+	}
+
+	/**
+	 * Clips polygon in clip buffer by plane with given normal passing at
+	 * offset from center, keeps the part behind the plane.
+	 */
+	private int clipPolygon(int count, float pnx, float pny, float pnz, float cx, float cy, float cz, float offset) {
+		if (count == 0) {
+			return 0;
+		}
+
+		float[] in = clip;
+		float[] out = clipTmp;
+		int outCount = 0;
+
+		int prev = count - 1;
+		float prevDist = pnx*(in[prev*3+0] - cx) + pny*(in[prev*3+1] - cy) + pnz*(in[prev*3+2] - cz) - offset;
+		for (int i=0; i<count; i++) {
+			float dist = pnx*(in[i*3+0] - cx) + pny*(in[i*3+1] - cy) + pnz*(in[i*3+2] - cz) - offset;
+
+			if ((prevDist <= 0f) != (dist <= 0f) && outCount < MAX_CLIP_POINTS) {
+				// edge crosses the plane
+				float t = prevDist / (prevDist - dist);
+				out[outCount*3+0] = in[prev*3+0] + (in[i*3+0] - in[prev*3+0])*t;
+				out[outCount*3+1] = in[prev*3+1] + (in[i*3+1] - in[prev*3+1])*t;
+				out[outCount*3+2] = in[prev*3+2] + (in[i*3+2] - in[prev*3+2])*t;
+				outCount++;
+			}
+			if (dist <= 0f && outCount < MAX_CLIP_POINTS) {
+				out[outCount*3+0] = in[i*3+0];
+				out[outCount*3+1] = in[i*3+1];
+				out[outCount*3+2] = in[i*3+2];
+				outCount++;
+			}
+
+			prev = i;
+			prevDist = dist;
+		}
+
+		clip = out;
+		clipTmp = in;
+		return outCount;
+	}
+
+	/**
+	 * Selects up to 4 points from clip buffer: the deepest one and then
+	 * repeatedly the one farthest from points already selected.
+	 */
+	private int cullPoints(int count) {
+		if (count <= MAX_CONTACTS) {
+			for (int i=0; i<count; i++) {
+				selected[i] = i;
+			}
+			return count;
+		}
+
+		float[] poly = clip;
+		int deepest = 0;
+		for (int i=1; i<count; i++) {
+			if (depths[i] < depths[deepest]) {
+				deepest = i;
+			}
+		}
+		selected[0] = deepest;
+
+		for (int s=1; s<MAX_CONTACTS; s++) {
+			int best = -1;
+			float bestDist = -1f;
+			for (int i=0; i<count; i++) {
+				float minDist = Float.MAX_VALUE;
+				for (int j=0; j<s; j++) {
+					int p = selected[j];
+					float ddx = poly[i*3+0] - poly[p*3+0];
+					float ddy = poly[i*3+1] - poly[p*3+1];
+					float ddz = poly[i*3+2] - poly[p*3+2];
+					minDist = Math.min(minDist, ddx*ddx + ddy*ddy + ddz*ddz);
+				}
+				if (minDist > bestDist) {
+					bestDist = minDist;
+					best = i;
+				}
+			}
+			selected[s] = best;
+		}
+		return MAX_CONTACTS;
+	}
+
+	/**
+	 * Returns projected radius of box on axis.
+	 */
+	private static float project(float[] axes, float[] ext, float lx, float ly, float lz) {
+		return ext[0] * Math.abs(axes[0]*lx + axes[1]*ly + axes[2]*lz) +
+				ext[1] * Math.abs(axes[3]*lx + axes[4]*ly + axes[5]*lz) +
+				ext[2] * Math.abs(axes[6]*lx + axes[7]*ly + axes[8]*lz);
+	}
+
+}
@@ -0,0 +1,214 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.collision.dispatch;
+
+import javabullet.BulletStack;
+import javabullet.collision.broadphase.CollisionAlgorithm;
+import javabullet.collision.broadphase.CollisionAlgorithmConstructionInfo;
+import javabullet.collision.broadphase.DispatcherInfo;
+import javabullet.collision.narrowphase.PersistentManifold;
+import javabullet.collision.shapes.CapsuleShape;
+import javabullet.linearmath.Transform;
+import javax.vecmath.Vector3f;
+
+/**
+ * CapsuleCapsuleCollisionAlgorithm computes closest points of the two capsule
+ * segments directly, capsules are then handled as swept spheres.
+ *
+ * @author jezek2
+ */
+public class CapsuleCapsuleCollisionAlgorithm extends CollisionAlgorithm {
+
+	private boolean ownManifold;
+	private PersistentManifold manifoldPtr;
+
+	public CapsuleCapsuleCollisionAlgorithm() {
+	}
+
+	public CapsuleCapsuleCollisionAlgorithm(PersistentManifold mf, CollisionAlgorithmConstructionInfo ci, CollisionObject col0, CollisionObject col1) {
+		init(mf, ci, col0, col1);
+	}
+
+	public void init(PersistentManifold mf, CollisionAlgorithmConstructionInfo ci, CollisionObject col0, CollisionObject col1) {
+		super.init(ci);
+		manifoldPtr = mf;
+
+		if (manifoldPtr == null && dispatcher.needsCollision(col0, col1)) {
+			manifoldPtr = dispatcher.getNewManifold(col0, col1);
+			ownManifold = true;
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if (ownManifold) {
+			if (manifoldPtr != null) {
+				dispatcher.releaseManifold(manifoldPtr);
+			}
+		}
+		ownManifold = false;
+		manifoldPtr = null;
+	}
+
+	@Override
+	public void processCollision(CollisionObject col0, CollisionObject col1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+		BulletStack stack = BulletStack.get();
+
+		if (manifoldPtr == null) {
+			return;
+		}
+
+		stack.vectors.push();
+		try {
+			CapsuleShape capsule0 = (CapsuleShape) col0.getCollisionShape();
+			CapsuleShape capsule1 = (CapsuleShape) col1.getCollisionShape();
+
+			Transform trans0 = col0.getWorldTransform();
+			Transform trans1 = col1.getWorldTransform();
+
+			// segments are along local Y axis:
+			Vector3f dir0 = stack.vectors.get();
+			trans0.basis.getColumn(1, dir0);
+			dir0.scale(capsule0.getHalfHeight());
+
+			Vector3f dir1 = stack.vectors.get();
+			trans1.basis.getColumn(1, dir1);
+			dir1.scale(capsule1.getHalfHeight());
+
+			Vector3f closest0 = stack.vectors.get();
+			Vector3f closest1 = stack.vectors.get();
+			segmentsClosestPoints(trans0.origin, dir0, trans1.origin, dir1, closest0, closest1);
+
+			// normal points from capsule1 towards capsule0
+			Vector3f normal = stack.vectors.get();
+			normal.sub(closest0, closest1);
+			float len = normal.length();
+			if (len > 1e-6f) {
+				normal.scale(1f / len);
+			}
+			else {
+				// segments intersect, use any direction perpendicular to the first one
+				Vector3f axis = stack.vectors.get();
+				trans0.basis.getColumn(0, axis);
+				normal.set(axis);
+			}
+
+			float radius0 = capsule0.getRadius();
+			float radius1 = capsule1.getRadius();
+			float dist = len - (radius0 + radius1);
+
+			resultOut.setPersistentManifold(manifoldPtr);
+
+			if (dist < manifoldPtr.getContactBreakingThreshold()) {
+				Vector3f pointOnB = stack.vectors.get();
+				pointOnB.scaleAdd(radius1, normal, closest1);
+				resultOut.addContactPoint(normal, pointOnB, dist);
+			}
+
+			if (ownManifold) {
+				if (manifoldPtr.getNumContacts() != 0) {
+					resultOut.refreshContactPoints();
+				}
+			}
+		}
+		finally {
+			stack.vectors.pop();
+		}
+	}
+
+	/**
+	 * Computes closest points of segments center0 +- dir0 and center1 +- dir1.
+	 */
+	private static void segmentsClosestPoints(Vector3f center0, Vector3f dir0, Vector3f center1, Vector3f dir1, Vector3f out0, Vector3f out1) {
+		float rx = center0.x - center1.x;
+		float ry = center0.y - center1.y;
+		float rz = center0.z - center1.z;
+
+		float a = dir0.lengthSquared();
+		float e = dir1.lengthSquared();
+		float b = dir0.dot(dir1);
+		float c = dir0.x*rx + dir0.y*ry + dir0.z*rz;
+		float f = dir1.x*rx + dir1.y*ry + dir1.z*rz;
+
+		// parameters in range -1..1
+		float s, t;
+		if (a <= 1e-12f && e <= 1e-12f) {
+			s = 0f;
+			t = 0f;
+		}
+		else if (a <= 1e-12f) {
+			s = 0f;
+			t = clamp(f / e);
+		}
+		else if (e <= 1e-12f) {
+			t = 0f;
+			s = clamp(-c / a);
+		}
+		else {
+			float denom = a*e - b*b;
+			if (denom > 1e-6f * a * e) {
+				s = clamp((b*f - c*e) / denom);
+			}
+			else {
+				// parallel, any point will do
+				s = 0f;
+			}
+
+			t = (b*s + f) / e;
+			if (t < -1f) {
+				t = -1f;
+				s = clamp((-b - c) / a);
+			}
+			else if (t > 1f) {
+				t = 1f;
+				s = clamp((b - c) / a);
+			}
+		}
+
+		out0.scaleAdd(s, dir0, center0);
+		out1.scaleAdd(t, dir1, center1);
+	}
+
+	private static float clamp(float value) {
+		return Math.max(-1f, Math.min(1f, value));
+	}
+
+	@Override
+	public float calculateTimeOfImpact(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+		// not yet
+		return 1f;
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+
+	public static class CreateFunc extends CollisionAlgorithmCreateFunc {
+		@Override
+		public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
+			CapsuleCapsuleCollisionAlgorithm algo = ci.dispatcher1.allocateCollisionAlgorithm(CapsuleCapsuleCollisionAlgorithm.class);
+			algo.init(ci.manifold, ci, body0, body1);
+			return algo;
+		}
+	}
+
+}
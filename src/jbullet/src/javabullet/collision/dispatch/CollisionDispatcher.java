@@ -25,8 +25,12 @@ package javabullet.collision.dispatch;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-import javabullet.BulletPool;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import javabullet.BulletGlobals;
+import javabullet.BulletStats;
 import javabullet.ObjectPool;
 import javabullet.collision.broadphase.BroadphaseNativeType;
 import javabullet.collision.broadphase.BroadphasePair;
@@ -38,16 +42,41 @@ import javabullet.collision.broadphase.DispatcherInfo;
 import javabullet.collision.broadphase.OverlapCallback;
 import javabullet.collision.broadphase.OverlappingPairCache;
 import javabullet.collision.narrowphase.PersistentManifold;
+import javabullet.util.IntArrayList;
+import javabullet.util.HelperTasks;
 
 /**
  * CollisionDispatcher supports algorithms that handle ConvexConvex and ConvexConcave collision pairs.
- * Time of Impact, Closest Points and Penetration Depth.
+ * Time of Impact, Closest Points and Penetration Depth.<p>
+ * 
+ * Discrete collision pairs can be dispatched in parallel by setting an executor
+ * (see {@link #setExecutor}). Pairs are split into contiguous chunks processed
+ * by worker threads, each using its own per-thread stack and pools. Manifolds
+ * created during parallel dispatch are appended in the same order as in serial
+ * dispatch, so contact results don't depend on thread scheduling. Pairs with
+ * compound shapes are processed on calling thread, because compound algorithm
+ * temporarily modifies the collision object. Custom {@link NearCallback} must
+ * be thread-safe when parallel dispatch is used.<p>
+ * 
+ * Collision algorithms and manifolds of removed pairs are kept in free lists
+ * owned by the dispatcher and reused for new pairs, so that creating and
+ * removing pairs doesn't allocate once the lists are warmed up.
  * 
  * @author jezek2
  */
 public class CollisionDispatcher extends Dispatcher {
 	
-	protected final ObjectPool<PersistentManifold> manifoldsPool = BulletPool.get(PersistentManifold.class);
+	// JAVA NOTE: pools are owned by instance (not per-thread), so that worlds
+	// created on one thread can be stepped concurrently on other threads
+	protected final ObjectPool<PersistentManifold> manifoldsPool = new ObjectPool<PersistentManifold>(PersistentManifold.class);
+	protected final IdentityHashMap<Class<?>, ObjectPool<?>> algorithmPools = new IdentityHashMap<Class<?>, ObjectPool<?>>();
+	
+	private final ThreadLocal<CollisionAlgorithmConstructionInfo> constructionInfos = new ThreadLocal<CollisionAlgorithmConstructionInfo>() {
+		@Override
+		protected CollisionAlgorithmConstructionInfo initialValue() {
+			return new CollisionAlgorithmConstructionInfo();
+		}
+	};
 
 	private static final int MAX_BROADPHASE_COLLISION_TYPES = BroadphaseNativeType.MAX_BROADPHASE_COLLISION_TYPES.ordinal();
 	private int count = 0;
@@ -60,7 +89,21 @@ public class CollisionDispatcher extends Dispatcher {
 	//private PoolAllocator*	m_persistentManifoldPoolAllocator;
 	private final CollisionAlgorithmCreateFunc[][] doubleDispatch = new CollisionAlgorithmCreateFunc[MAX_BROADPHASE_COLLISION_TYPES][MAX_BROADPHASE_COLLISION_TYPES];
 	private CollisionConfiguration collisionConfiguration;
-	private static int gNumManifold = 0;
+	
+	// parallel dispatch:
+	private static final int MIN_PAIRS_PER_CHUNK = 16;
+	private ExecutorService executor;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private volatile boolean dispatchingParallel = false;
+	private final ThreadLocal<DispatchChunk> currentChunk = new ThreadLocal<DispatchChunk>();
+	private final List<BroadphasePair> parallelPairs = new ArrayList<BroadphasePair>();
+	private final List<DispatchChunk> chunks = new ArrayList<DispatchChunk>();
+	private final DispatchChunk serialChunk = new DispatchChunk();
+	private final List<DispatchWorker> workers = new ArrayList<DispatchWorker>();
+	private final HelperTasks helperTasks = new HelperTasks();
+	private final AtomicInteger nextChunk = new AtomicInteger();
+	private int numChunks;
+	private DispatcherInfo parallelDispatchInfo;
 
 	public CollisionDispatcher(CollisionConfiguration collisionConfiguration) {
 		this.collisionConfiguration = collisionConfiguration;
@@ -101,21 +144,86 @@ public class CollisionDispatcher extends Dispatcher {
 		this.collisionConfiguration = collisionConfiguration;
 	}
 
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Sets executor used for parallel dispatch of discrete collision pairs.
+	 * Executor is not shut down by dispatcher.
+	 * 
+	 * @param executor executor service, or null for serial dispatch (default)
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets number of threads (including calling thread) used for parallel dispatch.
+	 * Defaults to number of available processors.
+	 */
+	public void setParallelism(int parallelism) {
+		assert (parallelism >= 1);
+		this.parallelism = parallelism;
+	}
+
 	@Override
 	public CollisionAlgorithm findAlgorithm(CollisionObject body0, CollisionObject body1, PersistentManifold sharedManifold) {
-		CollisionAlgorithmConstructionInfo ci = new CollisionAlgorithmConstructionInfo();
+		CollisionAlgorithmConstructionInfo ci = constructionInfos.get();
 
 		ci.dispatcher1 = this;
 		ci.manifold = sharedManifold;
 		CollisionAlgorithm algo = doubleDispatch[body0.getCollisionShape().getShapeType().ordinal()][body1.getCollisionShape().getShapeType().ordinal()].createCollisionAlgorithm(ci, body0, body1);
+		ci.manifold = null;
 
 		return algo;
 	}
 
 	@Override
-	public PersistentManifold getNewManifold(Object b0, Object b1) {
-		gNumManifold++;
+	public <T extends CollisionAlgorithm> T allocateCollisionAlgorithm(Class<T> cls) {
+		if (dispatchingParallel) {
+			synchronized (algorithmPools) {
+				return allocateAlgorithm(cls);
+			}
+		}
+		return allocateAlgorithm(cls);
+	}
+
+	private <T extends CollisionAlgorithm> T allocateAlgorithm(Class<T> cls) {
+		ObjectPool<T> pool = getAlgorithmPool(cls);
+		BulletStats.addAllocatedAlgorithm(pool.getFreeCount() != 0);
+		return pool.get();
+	}
 
+	@Override
+	@SuppressWarnings("unchecked")
+	public void freeCollisionAlgorithm(CollisionAlgorithm algo) {
+		Class<CollisionAlgorithm> cls = (Class<CollisionAlgorithm>) algo.getClass();
+		if (dispatchingParallel) {
+			synchronized (algorithmPools) {
+				getAlgorithmPool(cls).release(algo);
+			}
+			return;
+		}
+		getAlgorithmPool(cls).release(algo);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends CollisionAlgorithm> ObjectPool<T> getAlgorithmPool(Class<T> cls) {
+		ObjectPool<T> pool = (ObjectPool<T>) algorithmPools.get(cls);
+		if (pool == null) {
+			pool = new ObjectPool<T>(cls);
+			algorithmPools.put(cls, pool);
+		}
+		return pool;
+	}
+
+	@Override
+	public PersistentManifold getNewManifold(Object b0, Object b1) {
 		//btAssert(gNumManifold < 65535);
 
 		CollisionObject body0 = (CollisionObject)b0;
@@ -137,7 +245,24 @@ public class CollisionDispatcher extends Dispatcher {
 		m_manifoldsPtr.push_back(manifold);
 		*/
 		
-		PersistentManifold manifold = manifoldsPool.get();
+		PersistentManifold manifold;
+		DispatchChunk chunk = dispatchingParallel? currentChunk.get() : null;
+		if (chunk != null) {
+			synchronized (manifoldsPool) {
+				BulletStats.addAllocatedManifold(manifoldsPool.getFreeCount() != 0);
+				manifold = manifoldsPool.get();
+			}
+			manifold.init(body0,body1,0);
+			
+			// added to manifoldsPtr in pair order after parallel dispatch:
+			manifold.index1a = -1;
+			chunk.newManifolds.add(manifold);
+			chunk.newManifoldPairs.add(chunk.currentPair);
+			return manifold;
+		}
+		
+		BulletStats.addAllocatedManifold(manifoldsPool.getFreeCount() != 0);
+		manifold = manifoldsPool.get();
 		manifold.init(body0,body1,0);
 		
 		manifold.index1a = manifoldsPtr.size();
@@ -148,19 +273,27 @@ public class CollisionDispatcher extends Dispatcher {
 
 	@Override
 	public void releaseManifold(PersistentManifold manifold) {
-		gNumManifold--;
-
 		//printf("releaseManifold: gNumManifold %d\n",gNumManifold);
 		clearManifold(manifold);
 
-		// TODO: optimize
-		int findIndex = manifold.index1a;
-		assert (findIndex < manifoldsPtr.size());
-		Collections.swap(manifoldsPtr, findIndex, manifoldsPtr.size()-1);
-		manifoldsPtr.get(findIndex).index1a = findIndex;
-		manifoldsPtr.remove(manifoldsPtr.size()-1);
-
-		manifoldsPool.release(manifold);
+		DispatchChunk chunk = dispatchingParallel? currentChunk.get() : null;
+		if (chunk != null) {
+			synchronized (manifoldsPool) {
+				int idx = chunk.newManifolds.indexOf(manifold);
+				if (idx != -1) {
+					// not yet added to manifoldsPtr:
+					chunk.newManifolds.remove(idx);
+					chunk.newManifoldPairs.remove(idx);
+					manifoldsPool.release(manifold);
+				}
+				else {
+					removeManifold(manifold);
+				}
+			}
+			return;
+		}
+		
+		removeManifold(manifold);
 		/*
 		manifold->~btPersistentManifold();
 		if (m_persistentManifoldPoolAllocator->validPtr(manifold))
@@ -173,6 +306,17 @@ public class CollisionDispatcher extends Dispatcher {
 		*/
 	}
 
+	private void removeManifold(PersistentManifold manifold) {
+		// TODO: optimize
+		int findIndex = manifold.index1a;
+		assert (findIndex < manifoldsPtr.size());
+		Collections.swap(manifoldsPtr, findIndex, manifoldsPtr.size()-1);
+		manifoldsPtr.get(findIndex).index1a = findIndex;
+		manifoldsPtr.remove(manifoldsPtr.size()-1);
+
+		manifoldsPool.release(manifold);
+	}
+
 	@Override
 	public void clearManifold(PersistentManifold manifold) {
 		manifold.clearManifold();
@@ -232,13 +376,160 @@ public class CollisionDispatcher extends Dispatcher {
 	
 	private CollisionPairCallback collisionPairCallback = new CollisionPairCallback();
 	
+	private static class CollectPairsCallback implements OverlapCallback {
+		private CollisionDispatcher dispatcher;
+		
+		public boolean processOverlap(BroadphasePair pair) {
+			CollisionObject colObj0 = (CollisionObject) pair.pProxy0.clientObject;
+			CollisionObject colObj1 = (CollisionObject) pair.pProxy1.clientObject;
+			
+			// compound algorithm temporarily modifies the collision object:
+			if (colObj0.getCollisionShape().isCompound() || colObj1.getCollisionShape().isCompound()) {
+				dispatcher.serialChunk.pairs.add(pair);
+				dispatcher.serialChunk.pairIndices.add(dispatcher.parallelPairs.size() + dispatcher.serialChunk.pairs.size() - 1);
+			}
+			else {
+				dispatcher.parallelPairs.add(pair);
+			}
+			return false;
+		}
+	}
+	
+	private CollectPairsCallback collectPairsCallback = new CollectPairsCallback();
+	
 	@Override
 	public void dispatchAllCollisionPairs(OverlappingPairCache pairCache, DispatcherInfo dispatchInfo, Dispatcher dispatcher) {
+		// continuous collision and debug drawing are not done in parallel:
+		boolean parallel = executor != null && parallelism > 1 &&
+				dispatchInfo.dispatchFunc == DispatchFunc.DISPATCH_DISCRETE &&
+				(dispatchInfo.debugDraw == null || dispatchInfo.debugDraw.getDebugMode() == 0) &&
+				pairCache.getNumOverlappingPairs() >= MIN_PAIRS_PER_CHUNK * 2;
+		
+		if (parallel) {
+			dispatchAllCollisionPairsParallel(pairCache, dispatchInfo, dispatcher);
+			return;
+		}
+		
 		//m_blockedForChanges = true;
 		collisionPairCallback.init(dispatchInfo, this);
 		pairCache.processAllOverlappingPairs(collisionPairCallback, dispatcher);
 		//m_blockedForChanges = false;
 	}
+	
+	private void dispatchAllCollisionPairsParallel(OverlappingPairCache pairCache, DispatcherInfo dispatchInfo, Dispatcher dispatcher) {
+		// collect pairs in cache order, pair index is the position in serial order:
+		parallelPairs.clear();
+		serialChunk.reset();
+		collectPairsCallback.dispatcher = this;
+		pairCache.processAllOverlappingPairs(collectPairsCallback, dispatcher);
+		
+		// more chunks than threads for better load balancing:
+		int numPairs = parallelPairs.size();
+		numChunks = Math.max(1, Math.min(parallelism * 4, numPairs / MIN_PAIRS_PER_CHUNK));
+		while (chunks.size() < numChunks) {
+			chunks.add(new DispatchChunk());
+		}
+		
+		// pair indices of non-compound pairs, skipping the serially processed ones:
+		int serialIdx = 0;
+		int pairIndex = 0;
+		for (int c=0; c<numChunks; c++) {
+			DispatchChunk chunk = chunks.get(c);
+			chunk.reset();
+			int start = (int)((long)numPairs * c / numChunks);
+			int end = (int)((long)numPairs * (c+1) / numChunks);
+			for (int i=start; i<end; i++) {
+				while (serialIdx < serialChunk.pairIndices.size() && serialChunk.pairIndices.get(serialIdx) == pairIndex) {
+					serialIdx++;
+					pairIndex++;
+				}
+				chunk.pairs.add(parallelPairs.get(i));
+				chunk.pairIndices.add(pairIndex++);
+			}
+		}
+		
+		parallelDispatchInfo = dispatchInfo;
+		nextChunk.set(0);
+		dispatchingParallel = true;
+		try {
+			int numWorkers = Math.min(parallelism, numChunks) - 1;
+			while (workers.size() < numWorkers) {
+				workers.add(new DispatchWorker(this));
+			}
+			BulletStats stats = BulletStats.getCurrent();
+			for (int i=0; i<numWorkers; i++) {
+				workers.get(i).stats = stats;
+				helperTasks.submit(executor, workers.get(i));
+			}
+			
+			try {
+				// calling thread processes compound pairs first, then helps with chunks:
+				processChunk(serialChunk);
+				processChunks();
+			}
+			finally {
+				helperTasks.join();
+			}
+		}
+		finally {
+			dispatchingParallel = false;
+			parallelDispatchInfo = null;
+			mergeNewManifolds();
+			parallelPairs.clear();
+			serialChunk.pairs.clear();
+			for (int c=0; c<numChunks; c++) {
+				chunks.get(c).pairs.clear();
+			}
+		}
+	}
+	
+	private void processChunks() {
+		int c;
+		while ((c = nextChunk.getAndIncrement()) < numChunks) {
+			processChunk(chunks.get(c));
+		}
+	}
+	
+	private void processChunk(DispatchChunk chunk) {
+		currentChunk.set(chunk);
+		try {
+			for (int i=0; i<chunk.pairs.size(); i++) {
+				chunk.currentPair = chunk.pairIndices.get(i);
+				nearCallback.invoke(chunk.pairs.get(i), this, parallelDispatchInfo);
+			}
+		}
+		finally {
+			currentChunk.set(null);
+		}
+	}
+	
+	/**
+	 * Appends manifolds created during parallel dispatch, ordered by pair index.
+	 * Chunks are contiguous ranges, so only compound pairs need to be interleaved.
+	 */
+	private void mergeNewManifolds() {
+		int s = 0;
+		for (int c=0; c<numChunks; c++) {
+			DispatchChunk chunk = chunks.get(c);
+			for (int i=0; i<chunk.newManifolds.size(); i++) {
+				int pairIndex = chunk.newManifoldPairs.get(i);
+				while (s < serialChunk.newManifolds.size() && serialChunk.newManifoldPairs.get(s) <= pairIndex) {
+					addManifold(serialChunk.newManifolds.get(s++));
+				}
+				addManifold(chunk.newManifolds.get(i));
+			}
+			chunk.newManifolds.clear();
+		}
+		while (s < serialChunk.newManifolds.size()) {
+			addManifold(serialChunk.newManifolds.get(s++));
+		}
+		serialChunk.newManifolds.clear();
+	}
+	
+	private void addManifold(PersistentManifold manifold) {
+		manifold.index1a = manifoldsPtr.size();
+		manifoldsPtr.add(manifold);
+	}
 
 	@Override
 	public int getNumManifolds() {
@@ -257,8 +548,48 @@ public class CollisionDispatcher extends Dispatcher {
 
 	////////////////////////////////////////////////////////////////////////////
 	
+	private static class DispatchChunk {
+		public final List<BroadphasePair> pairs = new ArrayList<BroadphasePair>();
+		public final IntArrayList pairIndices = new IntArrayList();
+		public final List<PersistentManifold> newManifolds = new ArrayList<PersistentManifold>();
+		public final IntArrayList newManifoldPairs = new IntArrayList();
+		public int currentPair;
+		
+		public void reset() {
+			pairs.clear();
+			pairIndices.clear();
+			newManifolds.clear();
+			newManifoldPairs.clear();
+		}
+	}
+	
+	private static class DispatchWorker implements Runnable {
+		private final CollisionDispatcher dispatcher;
+		public BulletStats stats;
+
+		public DispatchWorker(CollisionDispatcher dispatcher) {
+			this.dispatcher = dispatcher;
+		}
+		
+		public void run() {
+			BulletStats.Counters prevStats = BulletStats.bind(stats);
+			try {
+				dispatcher.processChunks();
+			}
+			finally {
+				BulletStats.unbind(prevStats);
+			}
+		}
+	}
+	
 	private static class DefaultNearCallback implements NearCallback {
-		private final ManifoldResult contactPointResult = new ManifoldResult();
+		// JAVA NOTE: per-thread result for parallel dispatch
+		private final ThreadLocal<ManifoldResult> contactPointResults = new ThreadLocal<ManifoldResult>() {
+			@Override
+			protected ManifoldResult initialValue() {
+				return new ManifoldResult();
+			}
+		};
 		
 		public void invoke(BroadphasePair collisionPair, CollisionDispatcher dispatcher, DispatcherInfo dispatchInfo) {
 			CollisionObject colObj0 = (CollisionObject) collisionPair.pProxy0.clientObject;
@@ -272,19 +603,27 @@ public class CollisionDispatcher extends Dispatcher {
 
 				if (collisionPair.algorithm != null) {
 					//ManifoldResult contactPointResult = new ManifoldResult(colObj0, colObj1);
+					ManifoldResult contactPointResult = contactPointResults.get();
 					contactPointResult.init(colObj0, colObj1);
 
-					if (dispatchInfo.dispatchFunc == DispatchFunc.DISPATCH_DISCRETE) {
-						// discrete collision detection query
-						collisionPair.algorithm.processCollision(colObj0, colObj1, dispatchInfo, contactPointResult);
-					}
-					else {
-						// continuous collision detection query, time of impact (toi)
-						float toi = collisionPair.algorithm.calculateTimeOfImpact(colObj0, colObj1, dispatchInfo, contactPointResult);
-						if (dispatchInfo.timeOfImpact > toi) {
-							dispatchInfo.timeOfImpact = toi;
+					// profiled per algorithm type
+					BulletGlobals.pushProfile(collisionPair.algorithm.getClass());
+					try {
+						if (dispatchInfo.dispatchFunc == DispatchFunc.DISPATCH_DISCRETE) {
+							// discrete collision detection query
+							collisionPair.algorithm.processCollision(colObj0, colObj1, dispatchInfo, contactPointResult);
+						}
+						else {
+							// continuous collision detection query, time of impact (toi)
+							float toi = collisionPair.algorithm.calculateTimeOfImpact(colObj0, colObj1, dispatchInfo, contactPointResult);
+							if (dispatchInfo.timeOfImpact > toi) {
+								dispatchInfo.timeOfImpact = toi;
+							}
 						}
 					}
+					finally {
+						BulletGlobals.popProfile();
+					}
 				}
 			}
 		}
@@ -23,7 +23,6 @@
 
 package javabullet.collision.dispatch;
 
-import javabullet.BulletStack;
 import javabullet.collision.broadphase.BroadphaseProxy;
 import javabullet.collision.shapes.CollisionShape;
 import javabullet.linearmath.Transform;
@@ -38,8 +37,6 @@ import javax.vecmath.Vector3f;
  */
 public class CollisionObject {
 	
-	protected final BulletStack stack = BulletStack.get();
-
 	// island management, m_activationState1
 	public static final int ACTIVE_TAG = 1;
 	public static final int ISLAND_SLEEPING = 2;
@@ -80,6 +77,12 @@ public class CollisionObject {
 	protected float ccdSquareMotionThreshold;
 	/// If some object should have elaborate collision filtering by sub-classes
 	protected boolean checkCollideWith;
+	
+	// active objects index of the world this object is in, see ActiveObjectList:
+	ActiveObjectList activeList;
+	int activeIndex = -1;
+	int activeOrder;
+	boolean dirty;
 
 	public CollisionObject() {
 		this.collisionFlags = CollisionFlags.STATIC_OBJECT;
@@ -130,6 +133,9 @@ public class CollisionObject {
 	public void setActivationState(int newState) {
 		if ((activationState1 != DISABLE_DEACTIVATION) && (activationState1 != DISABLE_SIMULATION)) {
 			this.activationState1 = newState;
+			if (activeList != null) {
+				activeList.updateObject(this);
+			}
 		}
 	}
 
@@ -143,6 +149,19 @@ public class CollisionObject {
 
 	public void forceActivationState(int newState) {
 		this.activationState1 = newState;
+		if (activeList != null) {
+			activeList.updateObject(this);
+		}
+	}
+	
+	/**
+	 * Requests processing of sleeping object (clearing forces, synchronizing
+	 * motion state) in the current step. Active objects are always processed.
+	 */
+	protected void markDirty() {
+		if (activeList != null && activeIndex < 0) {
+			activeList.markDirty(this);
+		}
 	}
 
 	public void activate() {
@@ -185,8 +204,14 @@ public class CollisionObject {
 		return worldTransform;
 	}
 
+	/**
+	 * Sets world transform. Objects that are not in active objects index
+	 * (static or sleeping) get their AABB updated in next step only when
+	 * moved using this method.
+	 */
 	public void setWorldTransform(Transform worldTransform) {
 		this.worldTransform.set(worldTransform);
+		markDirty();
 	}
 
 	public BroadphaseProxy getBroadphaseHandle() {
@@ -243,6 +268,9 @@ public class CollisionObject {
 
 	public void setCollisionFlags(int collisionFlags) {
 		this.collisionFlags = collisionFlags;
+		if (activeList != null) {
+			activeList.updateObject(this);
+		}
 	}
 
 	// Swept sphere radius (0.0 by default), see btConvexConvexAlgorithm::
@@ -25,16 +25,23 @@ package javabullet.collision.dispatch;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import javabullet.BulletGlobals;
+import javabullet.BulletPool;
 import javabullet.BulletStack;
+import javabullet.ObjectPool;
 import javabullet.collision.broadphase.BroadphaseInterface;
 import javabullet.collision.broadphase.BroadphaseNativeType;
 import javabullet.collision.broadphase.BroadphaseProxy;
+import javabullet.collision.broadphase.BroadphaseRayCallback;
+import javabullet.collision.broadphase.Dbvt;
 import javabullet.collision.broadphase.Dispatcher;
 import javabullet.collision.broadphase.DispatcherInfo;
 import javabullet.collision.broadphase.OverlappingPairCache;
 import javabullet.collision.narrowphase.ConvexCast.CastResult;
+import javabullet.collision.narrowphase.GjkConvexCast;
 import javabullet.collision.narrowphase.SubsimplexConvexCast;
+import javabullet.collision.narrowphase.TriangleConvexcastCallback;
 import javabullet.collision.narrowphase.TriangleRaycastCallback;
 import javabullet.collision.narrowphase.VoronoiSimplexSolver;
 import javabullet.collision.shapes.BvhTriangleMeshShape;
@@ -42,11 +49,13 @@ import javabullet.collision.shapes.CollisionShape;
 import javabullet.collision.shapes.CompoundShape;
 import javabullet.collision.shapes.ConcaveShape;
 import javabullet.collision.shapes.ConvexShape;
+import javabullet.collision.shapes.HeightfieldTerrainShape;
 import javabullet.collision.shapes.SphereShape;
 import javabullet.linearmath.AabbUtil2;
 import javabullet.linearmath.IDebugDraw;
 import javabullet.linearmath.Transform;
 import javabullet.linearmath.VectorUtil;
+import javabullet.util.ParallelLoop;
 import javax.vecmath.Vector3f;
 
 /**
@@ -56,15 +65,22 @@ import javax.vecmath.Vector3f;
  */
 public class CollisionWorld {
 
-	protected final BulletStack stack = BulletStack.get();
-	
 	protected List<CollisionObject> collisionObjects = new ArrayList<CollisionObject>();
+	protected ActiveObjectList activeObjects = new ActiveObjectList();
 	protected Dispatcher dispatcher1;
 	protected DispatcherInfo dispatchInfo = new DispatcherInfo();
 	//protected btStackAlloc*	m_stackAlloc;
 	protected BroadphaseInterface broadphasePairCache;
 	protected IDebugDraw debugDrawer;
 	
+	// parallel per-object stages:
+	protected static final int MIN_OBJECTS_PER_CHUNK = 64;
+	protected ExecutorService executor;
+	protected int parallelism = Runtime.getRuntime().availableProcessors();
+	private float[] aabbs = new float[0];
+	private final AabbLoop aabbLoop = new AabbLoop();
+	private BatchRaycaster batchRaycaster;
+	
 	/**
 	 * This constructor doesn't own the dispatcher and paircache/broadphase.
 	 */
@@ -94,12 +110,15 @@ public class CollisionWorld {
 	}
 
 	public void addCollisionObject(CollisionObject collisionObject, short collisionFilterGroup, short collisionFilterMask) {
+		BulletStack stack = BulletStack.get();
+
 		stack.pushCommonMath();
 		try {
 			// check that the object isn't already added
 			assert (!collisionObjects.contains(collisionObject));
 
 			collisionObjects.add(collisionObject);
+			activeObjects.addObject(collisionObject);
 
 			// calculate new AABB
 			// TODO: check if it's overwritten or not
@@ -131,7 +150,13 @@ public class CollisionWorld {
 
 			updateAabbs();
 
-			broadphasePairCache.calculateOverlappingPairs(dispatcher1);
+			BulletGlobals.pushProfile("calculateOverlappingPairs");
+			try {
+				broadphasePairCache.calculateOverlappingPairs(dispatcher1);
+			}
+			finally {
+				BulletGlobals.popProfile();
+			}
 
 			Dispatcher dispatcher = getDispatcher();
 			{
@@ -168,6 +193,7 @@ public class CollisionWorld {
 
 		//swapremove
 		collisionObjects.remove(collisionObject);
+		activeObjects.removeObject(collisionObject);
 	}
 
 	public BroadphaseInterface getBroadphase() {
@@ -189,6 +215,8 @@ public class CollisionWorld {
 	private static boolean updateAabbs_reportMe = true;
 	
 	public void updateAabbs() {
+		BulletStack stack = BulletStack.get();
+
 		BulletGlobals.pushProfile("updateAabbs");
 		stack.pushCommonMath();
 		try {
@@ -196,40 +224,97 @@ public class CollisionWorld {
 			Vector3f minAabb = stack.vectors.get(), maxAabb = stack.vectors.get();
 			Vector3f tmp = stack.vectors.get();
 
-			for (int i = 0; i < collisionObjects.size(); i++) {
-				CollisionObject colObj = collisionObjects.get(i);
-
-				// only update aabb of active objects
-				if (colObj.isActive()) {
-					colObj.getCollisionShape().getAabb(colObj.getWorldTransform(), minAabb, maxAabb);
-					BroadphaseInterface bp = broadphasePairCache;
+			// only update aabb of active objects
+			activeObjects.compact();
+			int numObjects = activeObjects.size();
+			
+			// broadphase is not thread-safe, only AABBs are computed in parallel:
+			boolean parallel = executor != null && parallelism > 1;
+			if (parallel) {
+				if (aabbs.length < numObjects*6) {
+					aabbs = new float[numObjects*6];
+				}
+				aabbLoop.run(executor, parallelism, numObjects, MIN_OBJECTS_PER_CHUNK);
+			}
+			
+			for (int i = 0; i < numObjects; i++) {
+				CollisionObject colObj = activeObjects.get(i);
 
-					// moving objects should be moderately sized, probably something wrong if not
-					tmp.sub(maxAabb, minAabb); // TODO: optimize
-					if (colObj.isStaticObject() || (tmp.lengthSquared() < 1e12f)) {
-						bp.setAabb(colObj.getBroadphaseHandle(), minAabb, maxAabb, dispatcher1);
+				if (colObj != null) {
+					if (parallel) {
+						minAabb.set(aabbs[i*6+0], aabbs[i*6+1], aabbs[i*6+2]);
+						maxAabb.set(aabbs[i*6+3], aabbs[i*6+4], aabbs[i*6+5]);
 					}
 					else {
-						// something went wrong, investigate
-						// this assert is unwanted in 3D modelers (danger of loosing work)
-						colObj.setActivationState(CollisionObject.DISABLE_SIMULATION);
-
-						if (updateAabbs_reportMe && debugDrawer != null) {
-							updateAabbs_reportMe = false;
-							debugDrawer.reportErrorWarning("Overflow in AABB, object removed from simulation");
-							debugDrawer.reportErrorWarning("If you can reproduce this, please email bugs@continuousphysics.com\n");
-							debugDrawer.reportErrorWarning("Please include above information, your Platform, version of OS.\n");
-							debugDrawer.reportErrorWarning("Thanks.\n");
-						}
+						colObj.getCollisionShape().getAabb(colObj.getWorldTransform(), minAabb, maxAabb);
 					}
+					updateSingleAabb(colObj, minAabb, maxAabb, tmp);
 				}
 			}
+			
+			// static and sleeping objects moved by user or just deactivated:
+			for (int i = 0; i < activeObjects.getNumDirtyObjects(); i++) {
+				CollisionObject colObj = activeObjects.getDirtyObject(i);
+				colObj.getCollisionShape().getAabb(colObj.getWorldTransform(), minAabb, maxAabb);
+				updateSingleAabb(colObj, minAabb, maxAabb, tmp);
+			}
 		}
 		finally {
 			stack.popCommonMath();
 			BulletGlobals.popProfile();
 		}
 	}
+	
+	private void updateSingleAabb(CollisionObject colObj, Vector3f minAabb, Vector3f maxAabb, Vector3f tmp) {
+		BroadphaseInterface bp = broadphasePairCache;
+
+		// moving objects should be moderately sized, probably something wrong if not
+		tmp.sub(maxAabb, minAabb); // TODO: optimize
+		if (colObj.isStaticObject() || (tmp.lengthSquared() < 1e12f)) {
+			bp.setAabb(colObj.getBroadphaseHandle(), minAabb, maxAabb, dispatcher1);
+		}
+		else {
+			// something went wrong, investigate
+			// this assert is unwanted in 3D modelers (danger of loosing work)
+			colObj.setActivationState(CollisionObject.DISABLE_SIMULATION);
+
+			if (updateAabbs_reportMe && debugDrawer != null) {
+				updateAabbs_reportMe = false;
+				debugDrawer.reportErrorWarning("Overflow in AABB, object removed from simulation");
+				debugDrawer.reportErrorWarning("If you can reproduce this, please email bugs@continuousphysics.com\n");
+				debugDrawer.reportErrorWarning("Please include above information, your Platform, version of OS.\n");
+				debugDrawer.reportErrorWarning("Thanks.\n");
+			}
+		}
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Sets executor used for parallel processing of per-object stages (such as
+	 * AABB updates). Results are the same as with serial processing. Executor
+	 * is not shut down by world.
+	 * 
+	 * @param executor executor service, or null for serial processing (default)
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets number of threads (including calling thread) used for per-object stages.
+	 * Defaults to number of available processors.
+	 */
+	public void setParallelism(int parallelism) {
+		assert (parallelism >= 1);
+		this.parallelism = parallelism;
+	}
 
 	public IDebugDraw getDebugDrawer() {
 		return debugDrawer;
@@ -249,6 +334,8 @@ public class CollisionWorld {
 			CollisionShape collisionShape,
 			Transform colObjWorldTransform,
 			RayResultCallback resultCallback, short collisionFilterMask) {
+		BulletStack stack = BulletStack.get();
+
 		stack.pushCommonMath();
 		try {
 			SphereShape pointShape = new SphereShape(0f);
@@ -308,6 +395,20 @@ public class CollisionWorld {
 						rcb.hitFraction = resultCallback.closestHitFraction;
 						triangleMesh.performRaycast(rcb, rayFromLocal, rayToLocal);
 					}
+					else if (collisionShape.getShapeType() == BroadphaseNativeType.TERRAIN_SHAPE_PROXYTYPE) {
+						// grid marching version for HeightfieldTerrainShape
+						HeightfieldTerrainShape terrain = (HeightfieldTerrainShape)collisionShape;
+						Transform worldTocollisionObject = stack.transforms.get();
+						worldTocollisionObject.inverse(colObjWorldTransform);
+						Vector3f rayFromLocal = stack.vectors.get(rayFromTrans.origin);
+						worldTocollisionObject.transform(rayFromLocal);
+						Vector3f rayToLocal = stack.vectors.get(rayToTrans.origin);
+						worldTocollisionObject.transform(rayToLocal);
+
+						BridgeTriangleRaycastCallback rcb = new BridgeTriangleRaycastCallback(rayFromLocal, rayToLocal, resultCallback, collisionObject, terrain);
+						rcb.hitFraction = resultCallback.closestHitFraction;
+						terrain.performRaycast(rcb, rayFromLocal, rayToLocal);
+					}
 					else {
 						ConcaveShape triangleMesh = (ConcaveShape)collisionShape;
 
@@ -331,21 +432,32 @@ public class CollisionWorld {
 					}
 				}
 				else {
-					// todo: use AABB tree or other BVH acceleration structure!
 					if (collisionShape.isCompound()) {
+						// only children whose AABB is hit by the ray are tested
 						CompoundShape compoundShape = (CompoundShape) collisionShape;
-						int i = 0;
-						for (i = 0; i < compoundShape.getNumChildShapes(); i++) {
-							Transform childTrans = stack.transforms.get(compoundShape.getChildTransform(i));
-							CollisionShape childCollisionShape = compoundShape.getChildShape(i);
-							Transform childWorldTrans = stack.transforms.get(colObjWorldTransform);
-							childWorldTrans.mul(childTrans);
-							rayTestSingle(rayFromTrans, rayToTrans,
-									collisionObject,
-									childCollisionShape,
-									childWorldTrans,
-									resultCallback, collisionFilterMask);
-						}
+						
+						Transform worldTocollisionObject = stack.transforms.get();
+						worldTocollisionObject.inverse(colObjWorldTransform);
+						Vector3f rayFromLocal = stack.vectors.get(rayFromTrans.origin);
+						worldTocollisionObject.transform(rayFromLocal);
+						Vector3f rayToLocal = stack.vectors.get(rayToTrans.origin);
+						worldTocollisionObject.transform(rayToLocal);
+						
+						ObjectPool<CompoundRayPolicy> policies = BulletPool.get(CompoundRayPolicy.class);
+						CompoundRayPolicy policy = policies.get();
+						policy.world = this;
+						policy.rayFromTrans = rayFromTrans;
+						policy.rayToTrans = rayToTrans;
+						policy.collisionObject = collisionObject;
+						policy.compoundShape = compoundShape;
+						policy.colObjWorldTransform = colObjWorldTransform;
+						policy.resultCallback = resultCallback;
+						policy.collisionFilterMask = collisionFilterMask;
+						policy.lambdaMax = resultCallback.closestHitFraction;
+						
+						Dbvt.rayTest(compoundShape.getDynamicAabbTree().root, rayFromLocal, rayToLocal, BulletGlobals.ZERO_VECTOR3, BulletGlobals.ZERO_VECTOR3, policy, policy.stack);
+						
+						policies.release(policy);
 					}
 				}
 			}
@@ -362,9 +474,12 @@ public class CollisionWorld {
 	/**
 	 * rayTest performs a raycast on all objects in the CollisionWorld, and calls the resultCallback.
 	 * This allows for several queries: first hit, all hits, any hit, dependent on the value returned by the callback.
+	 * The candidate objects are obtained from the broadphase, see {@link BroadphaseInterface#rayTest}.
 	 */
 	public void rayTest(Vector3f rayFromWorld, Vector3f rayToWorld, RayResultCallback resultCallback, short collisionFilterMask) {
-		stack.pushCommonMath();
+		BulletStack stack = BulletStack.get();
+
+		stack.transforms.push();
 		try {
 			Transform rayFromTrans = stack.transforms.get(), rayToTrans = stack.transforms.get();
 			rayFromTrans.setIdentity();
@@ -373,34 +488,133 @@ public class CollisionWorld {
 
 			rayToTrans.origin.set(rayToWorld);
 
-			// go over all objects, and if the ray intersects their aabb, do a ray-shape query using convexCaster (CCD)
-			Vector3f collisionObjectAabbMin = stack.vectors.get(), collisionObjectAabbMax = stack.vectors.get();
-			float[] hitLambda = new float[1];
+			// go over all objects reported by broadphase, and if the ray intersects their aabb, do a ray-shape query using convexCaster (CCD)
+			SingleRayCallback rayCallback = new SingleRayCallback(rayFromWorld, rayToWorld, rayFromTrans, rayToTrans, resultCallback, collisionFilterMask);
+			broadphasePairCache.rayTest(rayFromWorld, rayToWorld, rayCallback);
+		}
+		finally {
+			stack.transforms.pop();
+		}
+	}
+	
+	/**
+	 * Performs closest hit raycasts for batch of rays. Rays are processed in
+	 * parallel when executor is set (see {@link #setExecutor}), against
+	 * snapshot of collision objects taken at the start of the call.
+	 * 
+	 * @param rayFrom ray start points (x, y, z per ray)
+	 * @param rayTo ray end points (x, y, z per ray)
+	 * @param filterMasks collision filter mask per ray, or null to test all objects
+	 * @param numRays number of rays
+	 * @param hitFractions output closest hit fraction per ray, 1 when nothing was hit
+	 * @param hitNormals output hit normal in world space (x, y, z per ray), may be null
+	 * @param hitObjects output index of hit object in {@link #getCollisionObjectArray}
+	 *        or -1 when nothing was hit, may be null
+	 */
+	public void rayTestBatch(float[] rayFrom, float[] rayTo, short[] filterMasks, int numRays, float[] hitFractions, float[] hitNormals, int[] hitObjects) {
+		if (batchRaycaster == null) {
+			batchRaycaster = new BatchRaycaster(this);
+		}
+		batchRaycaster.rayTest(rayFrom, rayTo, filterMasks, numRays, hitFractions, hitNormals, hitObjects);
+	}
+	
+	/**
+	 * objectQuerySingle performs a collision detection query of swept convex shape
+	 * against single collision object and calls the resultCallback.
+	 */
+	public void objectQuerySingle(ConvexShape castShape, Transform convexFromTrans, Transform convexToTrans,
+			CollisionObject collisionObject,
+			CollisionShape collisionShape,
+			Transform colObjWorldTransform,
+			ConvexResultCallback resultCallback) {
+		BulletStack stack = BulletStack.get();
 
-			for (int i = 0; i < collisionObjects.size(); i++) {
-				// terminate further ray tests, once the closestHitFraction reached zero
-				if (resultCallback.closestHitFraction == 0f) {
-					break;
-				}
+		stack.pushCommonMath();
+		try {
+			if (collisionShape.isConvex()) {
+				CastResult castResult = new CastResult();
+				castResult.fraction = resultCallback.closestHitFraction;
 
-				CollisionObject collisionObject = collisionObjects.get(i);
-				// only perform raycast if filterMask matches
-				if ((collisionObject.getBroadphaseHandle().collisionFilterGroup & collisionFilterMask) != 0) {
-					//RigidcollisionObject* collisionObject = ctrl->GetRigidcollisionObject();
-					collisionObject.getCollisionShape().getAabb(collisionObject.getWorldTransform(), collisionObjectAabbMin, collisionObjectAabbMax);
+				ConvexShape convexShape = (ConvexShape) collisionShape;
+				VoronoiSimplexSolver simplexSolver = new VoronoiSimplexSolver();
+				GjkConvexCast convexCaster = new GjkConvexCast(castShape, convexShape, simplexSolver);
 
-					hitLambda[0] = resultCallback.closestHitFraction;
-					Vector3f hitNormal = stack.vectors.get();
-					if (AabbUtil2.rayAabb(rayFromWorld, rayToWorld, collisionObjectAabbMin, collisionObjectAabbMax, hitLambda, hitNormal)) {
-						rayTestSingle(rayFromTrans, rayToTrans,
-								collisionObject,
-								collisionObject.getCollisionShape(),
-								collisionObject.getWorldTransform(),
-								resultCallback,
-								(short) -1);
+				if (convexCaster.calcTimeOfImpact(convexFromTrans, convexToTrans, colObjWorldTransform, colObjWorldTransform, castResult)) {
+					//add hit
+					if (castResult.normal.lengthSquared() > 0.0001f) {
+						if (castResult.fraction < resultCallback.closestHitFraction) {
+							castResult.normal.normalize();
+							LocalConvexResult localConvexResult = new LocalConvexResult(
+									collisionObject,
+									null,
+									castResult.normal,
+									castResult.hitPoint,
+									castResult.fraction);
+
+							boolean normalInWorldSpace = true;
+							resultCallback.addSingleResult(localConvexResult, normalInWorldSpace);
+						}
+					}
+				}
+			}
+			else {
+				if (collisionShape.isConcave()) {
+					ConcaveShape triangleMesh = (ConcaveShape)collisionShape;
+					
+					Transform worldTocollisionObject = stack.transforms.get();
+					worldTocollisionObject.inverse(colObjWorldTransform);
+					
+					// bounds of the swept shape in local space of the object
+					Transform convexLocal = stack.transforms.get();
+					Vector3f tmpMin = stack.vectors.get(), tmpMax = stack.vectors.get();
+					Vector3f aabbMinLocal = stack.vectors.get(), aabbMaxLocal = stack.vectors.get();
+					
+					convexLocal.mul(worldTocollisionObject, convexFromTrans);
+					castShape.getAabb(convexLocal, aabbMinLocal, aabbMaxLocal);
+					convexLocal.mul(worldTocollisionObject, convexToTrans);
+					castShape.getAabb(convexLocal, tmpMin, tmpMax);
+					VectorUtil.setMin(aabbMinLocal, tmpMin);
+					VectorUtil.setMax(aabbMaxLocal, tmpMax);
+					
+					BridgeTriangleConvexcastCallback tccb = new BridgeTriangleConvexcastCallback(castShape, convexFromTrans, convexToTrans, resultCallback, collisionObject, triangleMesh, colObjWorldTransform);
+					tccb.hitFraction = resultCallback.closestHitFraction;
+					triangleMesh.processAllTriangles(tccb, aabbMinLocal, aabbMaxLocal);
+				}
+				else {
+					if (collisionShape.isCompound()) {
+						// only children overlapping bounds of the swept shape are tested
+						CompoundShape compoundShape = (CompoundShape) collisionShape;
+						
+						Transform worldTocollisionObject = stack.transforms.get();
+						worldTocollisionObject.inverse(colObjWorldTransform);
+						
+						Transform convexLocal = stack.transforms.get();
+						Vector3f tmpMin = stack.vectors.get(), tmpMax = stack.vectors.get();
+						Vector3f aabbMinLocal = stack.vectors.get(), aabbMaxLocal = stack.vectors.get();
+						
+						convexLocal.mul(worldTocollisionObject, convexFromTrans);
+						castShape.getAabb(convexLocal, aabbMinLocal, aabbMaxLocal);
+						convexLocal.mul(worldTocollisionObject, convexToTrans);
+						castShape.getAabb(convexLocal, tmpMin, tmpMax);
+						VectorUtil.setMin(aabbMinLocal, tmpMin);
+						VectorUtil.setMax(aabbMaxLocal, tmpMax);
+						
+						ObjectPool<CompoundSweepPolicy> policies = BulletPool.get(CompoundSweepPolicy.class);
+						CompoundSweepPolicy policy = policies.get();
+						policy.world = this;
+						policy.castShape = castShape;
+						policy.convexFromTrans = convexFromTrans;
+						policy.convexToTrans = convexToTrans;
+						policy.collisionObject = collisionObject;
+						policy.compoundShape = compoundShape;
+						policy.colObjWorldTransform = colObjWorldTransform;
+						policy.resultCallback = resultCallback;
+						
+						Dbvt.collideTV(compoundShape.getDynamicAabbTree().root, aabbMinLocal, aabbMaxLocal, policy, policy.stack);
+						
+						policies.release(policy);
 					}
 				}
-
 			}
 		}
 		finally {
@@ -408,9 +622,58 @@ public class CollisionWorld {
 		}
 	}
 	
+	public void convexSweepTest(ConvexShape castShape, Transform convexFromWorld, Transform convexToWorld, ConvexResultCallback resultCallback) {
+		convexSweepTest(castShape, convexFromWorld, convexToWorld, resultCallback, (short)-1);
+	}
+	
+	/**
+	 * convexSweepTest performs a swept convex cast on all objects in the CollisionWorld, and calls the resultCallback.
+	 * The candidate objects are obtained from the broadphase, see {@link BroadphaseInterface#rayTest}.
+	 */
+	public void convexSweepTest(ConvexShape castShape, Transform convexFromWorld, Transform convexToWorld, ConvexResultCallback resultCallback, short collisionFilterMask) {
+		BulletStack stack = BulletStack.get();
+
+		stack.pushCommonMath();
+		try {
+			// bounds of the cast shape relative to its origin, for both orientations
+			Transform rotation = stack.transforms.get();
+			Vector3f castShapeAabbMin = stack.vectors.get(), castShapeAabbMax = stack.vectors.get();
+			Vector3f tmpMin = stack.vectors.get(), tmpMax = stack.vectors.get();
+			
+			rotation.set(convexFromWorld);
+			rotation.origin.set(0f, 0f, 0f);
+			castShape.getAabb(rotation, castShapeAabbMin, castShapeAabbMax);
+			rotation.basis.set(convexToWorld.basis);
+			castShape.getAabb(rotation, tmpMin, tmpMax);
+			VectorUtil.setMin(castShapeAabbMin, tmpMin);
+			VectorUtil.setMax(castShapeAabbMax, tmpMax);
+			
+			// bounds of the whole sweep
+			Vector3f sweepAabbMin = stack.vectors.get(convexFromWorld.origin);
+			VectorUtil.setMin(sweepAabbMin, convexToWorld.origin);
+			sweepAabbMin.add(castShapeAabbMin);
+			Vector3f sweepAabbMax = stack.vectors.get(convexFromWorld.origin);
+			VectorUtil.setMax(sweepAabbMax, convexToWorld.origin);
+			sweepAabbMax.add(castShapeAabbMax);
+			
+			SingleSweepCallback sweepCallback = new SingleSweepCallback(castShape, convexFromWorld, convexToWorld, sweepAabbMin, sweepAabbMax, resultCallback, collisionFilterMask);
+			broadphasePairCache.rayTest(convexFromWorld.origin, convexToWorld.origin, sweepCallback, castShapeAabbMin, castShapeAabbMax);
+		}
+		finally {
+			stack.popCommonMath();
+		}
+	}
+	
 	public List<CollisionObject> getCollisionObjectArray() {
 		return collisionObjects;
 	}
+
+	/**
+	 * Returns index of active (not sleeping) collision objects.
+	 */
+	public ActiveObjectList getActiveObjects() {
+		return activeObjects;
+	}
 	
 	////////////////////////////////////////////////////////////////////////////
 	
@@ -509,6 +772,13 @@ public class CollisionWorld {
 			return (closestHitFraction < 1f);
 		}
 		
+		/**
+		 * Returns false for objects that should be skipped by convex sweep.
+		 */
+		public boolean needsCollision(CollisionObject collisionObject) {
+			return true;
+		}
+		
 		public abstract float addSingleResult(LocalConvexResult convexResult, boolean normalInWorldSpace);
 	}
 	
@@ -540,6 +810,144 @@ public class CollisionWorld {
 		}
 	}
 	
+	private class SingleRayCallback extends BroadphaseRayCallback {
+		private final Vector3f rayFromWorld;
+		private final Vector3f rayToWorld;
+		private final Transform rayFromTrans;
+		private final Transform rayToTrans;
+		private final RayResultCallback resultCallback;
+		private final short collisionFilterMask;
+		private final float[] hitLambda = new float[1];
+
+		public SingleRayCallback(Vector3f rayFromWorld, Vector3f rayToWorld, Transform rayFromTrans, Transform rayToTrans, RayResultCallback resultCallback, short collisionFilterMask) {
+			this.rayFromWorld = rayFromWorld;
+			this.rayToWorld = rayToWorld;
+			this.rayFromTrans = rayFromTrans;
+			this.rayToTrans = rayToTrans;
+			this.resultCallback = resultCallback;
+			this.collisionFilterMask = collisionFilterMask;
+			this.lambdaMax = resultCallback.closestHitFraction;
+		}
+		
+		public void process(BroadphaseProxy proxy) {
+			BulletStack stack = BulletStack.get();
+
+			// terminate further ray tests, once the closestHitFraction reached zero
+			if (resultCallback.closestHitFraction == 0f) {
+				lambdaMax = 0f;
+				return;
+			}
+
+			CollisionObject collisionObject = (CollisionObject)proxy.clientObject;
+			// only perform raycast if filterMask matches
+			if ((proxy.collisionFilterGroup & collisionFilterMask) != 0) {
+				stack.vectors.push();
+				try {
+					Vector3f collisionObjectAabbMin = stack.vectors.get(), collisionObjectAabbMax = stack.vectors.get();
+					collisionObject.getCollisionShape().getAabb(collisionObject.getWorldTransform(), collisionObjectAabbMin, collisionObjectAabbMax);
+
+					hitLambda[0] = resultCallback.closestHitFraction;
+					Vector3f hitNormal = stack.vectors.get();
+					if (AabbUtil2.rayAabb(rayFromWorld, rayToWorld, collisionObjectAabbMin, collisionObjectAabbMax, hitLambda, hitNormal)) {
+						rayTestSingle(rayFromTrans, rayToTrans,
+								collisionObject,
+								collisionObject.getCollisionShape(),
+								collisionObject.getWorldTransform(),
+								resultCallback,
+								(short) -1);
+					}
+				}
+				finally {
+					stack.vectors.pop();
+				}
+			}
+			
+			// further objects can't be closer than the closest hit
+			lambdaMax = resultCallback.closestHitFraction;
+		}
+	}
+	
+	/**
+	 * Reports hits of ray against compound children, pooled per thread
+	 * together with traversal stack.
+	 */
+	protected static class CompoundRayPolicy extends Dbvt.ICollide {
+		public final ArrayList<Dbvt.Node> stack = new ArrayList<Dbvt.Node>();
+		public CollisionWorld world;
+		public Transform rayFromTrans;
+		public Transform rayToTrans;
+		public CollisionObject collisionObject;
+		public CompoundShape compoundShape;
+		public Transform colObjWorldTransform;
+		public RayResultCallback resultCallback;
+		public short collisionFilterMask;
+
+		public CompoundRayPolicy() {
+		}
+
+		@Override
+		public void process(Dbvt.Node leaf) {
+			BulletStack stack = BulletStack.get();
+
+			stack.transforms.push();
+			try {
+				int index = (Integer)leaf.data;
+				Transform childWorldTrans = stack.transforms.get(colObjWorldTransform);
+				childWorldTrans.mul(compoundShape.getChildTransform(index));
+				world.rayTestSingle(rayFromTrans, rayToTrans,
+						collisionObject,
+						compoundShape.getChildShape(index),
+						childWorldTrans,
+						resultCallback, collisionFilterMask);
+				
+				// rest of the traversal can be limited to closer hits
+				lambdaMax = resultCallback.closestHitFraction;
+			}
+			finally {
+				stack.transforms.pop();
+			}
+		}
+	}
+	
+	/**
+	 * Reports hits of swept shape against compound children, pooled per thread
+	 * together with traversal stack.
+	 */
+	protected static class CompoundSweepPolicy extends Dbvt.ICollide {
+		public final ArrayList<Dbvt.Node> stack = new ArrayList<Dbvt.Node>();
+		public CollisionWorld world;
+		public ConvexShape castShape;
+		public Transform convexFromTrans;
+		public Transform convexToTrans;
+		public CollisionObject collisionObject;
+		public CompoundShape compoundShape;
+		public Transform colObjWorldTransform;
+		public ConvexResultCallback resultCallback;
+
+		public CompoundSweepPolicy() {
+		}
+
+		@Override
+		public void process(Dbvt.Node leaf) {
+			BulletStack stack = BulletStack.get();
+
+			stack.transforms.push();
+			try {
+				int index = (Integer)leaf.data;
+				Transform childWorldTrans = stack.transforms.get(colObjWorldTransform);
+				childWorldTrans.mul(compoundShape.getChildTransform(index));
+				world.objectQuerySingle(castShape, convexFromTrans, convexToTrans,
+						collisionObject,
+						compoundShape.getChildShape(index),
+						childWorldTrans,
+						resultCallback);
+			}
+			finally {
+				stack.transforms.pop();
+			}
+		}
+	}
+	
 	private static class BridgeTriangleRaycastCallback extends TriangleRaycastCallback {
 		public RayResultCallback resultCallback;
 		public CollisionObject collisionObject;
@@ -563,5 +971,118 @@ public class CollisionWorld {
 			return resultCallback.addSingleResult(rayResult, normalInWorldSpace);
 		}
 	}
+
+	private class SingleSweepCallback extends BroadphaseRayCallback {
+		private final ConvexShape castShape;
+		private final Transform convexFromTrans;
+		private final Transform convexToTrans;
+		private final Vector3f sweepAabbMin;
+		private final Vector3f sweepAabbMax;
+		private final ConvexResultCallback resultCallback;
+		private final short collisionFilterMask;
+
+		public SingleSweepCallback(ConvexShape castShape, Transform convexFromTrans, Transform convexToTrans, Vector3f sweepAabbMin, Vector3f sweepAabbMax, ConvexResultCallback resultCallback, short collisionFilterMask) {
+			this.castShape = castShape;
+			this.convexFromTrans = convexFromTrans;
+			this.convexToTrans = convexToTrans;
+			this.sweepAabbMin = sweepAabbMin;
+			this.sweepAabbMax = sweepAabbMax;
+			this.resultCallback = resultCallback;
+			this.collisionFilterMask = collisionFilterMask;
+			this.lambdaMax = resultCallback.closestHitFraction;
+		}
+		
+		public void process(BroadphaseProxy proxy) {
+			BulletStack stack = BulletStack.get();
+
+			// terminate further convex sweep tests, once the closestHitFraction reached zero
+			if (resultCallback.closestHitFraction == 0f) {
+				lambdaMax = 0f;
+				return;
+			}
+
+			CollisionObject collisionObject = (CollisionObject)proxy.clientObject;
+			// only perform sweep if filterMask matches
+			if ((proxy.collisionFilterGroup & collisionFilterMask) != 0 && resultCallback.needsCollision(collisionObject)) {
+				stack.vectors.push();
+				try {
+					Vector3f collisionObjectAabbMin = stack.vectors.get(), collisionObjectAabbMax = stack.vectors.get();
+					collisionObject.getCollisionShape().getAabb(collisionObject.getWorldTransform(), collisionObjectAabbMin, collisionObjectAabbMax);
+
+					// JAVA NOTE: broadphases without acceleration structure report all proxies
+					if (AabbUtil2.testAabbAgainstAabb2(sweepAabbMin, sweepAabbMax, collisionObjectAabbMin, collisionObjectAabbMax)) {
+						objectQuerySingle(castShape, convexFromTrans, convexToTrans,
+								collisionObject,
+								collisionObject.getCollisionShape(),
+								collisionObject.getWorldTransform(),
+								resultCallback);
+					}
+				}
+				finally {
+					stack.vectors.pop();
+				}
+			}
+			
+			// further objects can't be closer than the closest hit
+			lambdaMax = resultCallback.closestHitFraction;
+		}
+	}
+	
+	private static class BridgeTriangleConvexcastCallback extends TriangleConvexcastCallback {
+		public ConvexResultCallback resultCallback;
+		public CollisionObject collisionObject;
+		public ConcaveShape triangleMesh;
+
+		public BridgeTriangleConvexcastCallback(ConvexShape castShape, Transform from, Transform to, ConvexResultCallback resultCallback, CollisionObject collisionObject, ConcaveShape triangleMesh, Transform triangleToWorld) {
+			super(castShape, from, to, triangleToWorld);
+			this.resultCallback = resultCallback;
+			this.collisionObject = collisionObject;
+			this.triangleMesh = triangleMesh;
+		}
+
+		public float reportHit(Vector3f hitNormalLocal, Vector3f hitPointLocal, float hitFraction, int partId, int triangleIndex) {
+			if (hitFraction <= resultCallback.closestHitFraction) {
+				LocalShapeInfo shapeInfo = new LocalShapeInfo();
+				shapeInfo.shapePart = partId;
+				shapeInfo.triangleIndex = triangleIndex;
+
+				LocalConvexResult convexResult = new LocalConvexResult(collisionObject, shapeInfo, hitNormalLocal, hitPointLocal, hitFraction);
+
+				boolean normalInWorldSpace = false;
+				this.hitFraction = resultCallback.addSingleResult(convexResult, normalInWorldSpace);
+				return this.hitFraction;
+			}
+			return hitFraction;
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	
+	private class AabbLoop extends ParallelLoop {
+		@Override
+		protected void process(int start, int end) {
+			BulletStack stack = BulletStack.get();
+
+			stack.vectors.push();
+			try {
+				Vector3f minAabb = stack.vectors.get(), maxAabb = stack.vectors.get();
+				for (int i = start; i < end; i++) {
+					CollisionObject colObj = activeObjects.get(i);
+					if (colObj != null) {
+						colObj.getCollisionShape().getAabb(colObj.getWorldTransform(), minAabb, maxAabb);
+						aabbs[i*6+0] = minAabb.x;
+						aabbs[i*6+1] = minAabb.y;
+						aabbs[i*6+2] = minAabb.z;
+						aabbs[i*6+3] = maxAabb.x;
+						aabbs[i*6+4] = maxAabb.y;
+						aabbs[i*6+5] = maxAabb.z;
+					}
+				}
+			}
+			finally {
+				stack.vectors.pop();
+			}
+		}
+	}
 	
 }
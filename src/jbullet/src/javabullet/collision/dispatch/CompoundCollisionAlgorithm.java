@@ -24,60 +24,110 @@
 package javabullet.collision.dispatch;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import javabullet.BulletGlobals;
+import javabullet.BulletStack;
 import javabullet.collision.broadphase.CollisionAlgorithm;
 import javabullet.collision.broadphase.CollisionAlgorithmConstructionInfo;
+import javabullet.collision.broadphase.Dbvt;
 import javabullet.collision.broadphase.DispatcherInfo;
 import javabullet.collision.shapes.CollisionShape;
 import javabullet.collision.shapes.CompoundShape;
 import javabullet.linearmath.Transform;
+import javax.vecmath.Vector3f;
 
 /**
  * CompoundCollisionAlgorithm  supports collision between CompoundCollisionShapes and other collision shapes.
- * Place holder, not fully implemented yet.
+ * Children are culled using AABB tree of the compound shape, algorithms for
+ * children are created when the child starts to overlap the other object and
+ * destroyed when it stops overlapping. Compound vs compound collisions are
+ * handled by recursion, the child algorithm culls the other compound using
+ * AABB of the child.
  * 
  * @author jezek2
  */
 public class CompoundCollisionAlgorithm extends CollisionAlgorithm {
 
 	private final List<CollisionAlgorithm> childCollisionAlgorithms = new ArrayList<CollisionAlgorithm>();
+	private boolean[] overlapping = new boolean[0];
 	private boolean isSwapped;
+	private int compoundShapeRevision; // to keep track of changes, so that childAlgorithm array can be updated
+	
+	private final ArrayList<Dbvt.Node> treeStack = new ArrayList<Dbvt.Node>();
+	private final ChildCollisionPolicy childPolicy = new ChildCollisionPolicy();
+	
+	public CompoundCollisionAlgorithm() {
+	}
 	
 	public CompoundCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1, boolean isSwapped) {
-		super(ci);
+		init(ci, body0, body1, isSwapped);
+	}
+	
+	public void init(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1, boolean isSwapped) {
+		super.init(ci);
 		this.isSwapped = isSwapped;
 
 		CollisionObject colObj = isSwapped ? body1 : body0;
-		CollisionObject otherObj = isSwapped ? body0 : body1;
 		assert (colObj.getCollisionShape().isCompound());
 
 		CompoundShape compoundShape = (CompoundShape) colObj.getCollisionShape();
+		preallocateChildAlgorithms(compoundShape);
+	}
+
+	private void preallocateChildAlgorithms(CompoundShape compoundShape) {
 		int numChildren = compoundShape.getNumChildShapes();
+		
+		// JAVA NOTE: algorithms are created lazily on first overlap, see processChild
+		for (int i = 0; i < numChildren; i++) {
+			childCollisionAlgorithms.add(null);
+		}
+		if (overlapping.length < numChildren) {
+			overlapping = new boolean[numChildren];
+		}
+		compoundShapeRevision = compoundShape.getUpdateRevision();
+	}
+	
+	private void removeChildAlgorithms() {
+		int numChildren = childCollisionAlgorithms.size();
 		int i;
-
-		//childCollisionAlgorithms.resize(numChildren);
 		for (i = 0; i < numChildren; i++) {
-			CollisionShape childShape = compoundShape.getChildShape(i);
-			CollisionShape orgShape = colObj.getCollisionShape();
-			colObj.setCollisionShape(childShape);
-			childCollisionAlgorithms.add(ci.dispatcher1.findAlgorithm(colObj, otherObj));
-			colObj.setCollisionShape(orgShape);
+			CollisionAlgorithm algo = childCollisionAlgorithms.get(i);
+			if (algo != null) {
+				algo.destroy();
+				dispatcher.freeCollisionAlgorithm(algo);
+			}
 		}
+		childCollisionAlgorithms.clear();
 	}
-
+	
 	@Override
 	public void destroy() {
-		int numChildren = childCollisionAlgorithms.size();
-		int i;
-		for (i = 0; i < numChildren; i++) {
-			childCollisionAlgorithms.get(i).destroy();
-			//m_dispatcher->freeCollisionAlgorithm(m_childCollisionAlgorithms[i]);
+		removeChildAlgorithms();
+	}
+	
+	private CollisionAlgorithm getChildAlgorithm(int index, CollisionObject colObj, CollisionObject otherObj, CollisionShape childShape) {
+		CollisionAlgorithm algo = childCollisionAlgorithms.get(index);
+		if (algo == null) {
+			algo = createChildAlgorithm(colObj, otherObj, childShape);
+			childCollisionAlgorithms.set(index, algo);
 		}
+		return algo;
+	}
+	
+	private CollisionAlgorithm createChildAlgorithm(CollisionObject colObj, CollisionObject otherObj, CollisionShape childShape) {
+		CollisionShape orgShape = colObj.getCollisionShape();
+		colObj.setCollisionShape(childShape);
+		CollisionAlgorithm algo = dispatcher.findAlgorithm(colObj, otherObj);
+		colObj.setCollisionShape(orgShape);
+		return algo;
 	}
 	
 	@Override
 	public void processCollision(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
-		stack.transforms.push();
+		BulletStack stack = BulletStack.get();
+
+		stack.pushCommonMath();
 		try {
 			CollisionObject colObj = isSwapped ? body1 : body0;
 			CollisionObject otherObj = isSwapped ? body0 : body1;
@@ -85,39 +135,87 @@ public class CompoundCollisionAlgorithm extends CollisionAlgorithm {
 			assert (colObj.getCollisionShape().isCompound());
 			CompoundShape compoundShape = (CompoundShape) colObj.getCollisionShape();
 
-			// We will use the OptimizedBVH, AABB tree to cull potential child-overlaps
-			// If both proxies are Compound, we will deal with that directly, by performing sequential/parallel tree traversals
-			// given Proxy0 and Proxy1, if both have a tree, Tree0 and Tree1, this means:
-			// determine overlapping nodes of Proxy1 using Proxy0 AABB against Tree1
-			// then use each overlapping node AABB against Tree0
-			// and vise versa.
+			// compound shape was changed, recreate the child algorithms
+			if (compoundShape.getUpdateRevision() != compoundShapeRevision) {
+				removeChildAlgorithms();
+				preallocateChildAlgorithms(compoundShape);
+			}
 
-			Transform tmpTrans = stack.transforms.get();
-			Transform orgTrans = stack.transforms.get();
+			// determine bounds of other object in local space of the compound,
+			// expanded so that contacts are kept until they break
+			Transform otherInCompoundSpace = stack.transforms.get();
+			otherInCompoundSpace.inverse(colObj.getWorldTransform());
+			otherInCompoundSpace.mul(otherObj.getWorldTransform());
+
+			Vector3f localAabbMin = stack.vectors.get(), localAabbMax = stack.vectors.get();
+			otherObj.getCollisionShape().getAabb(otherInCompoundSpace, localAabbMin, localAabbMax);
+			float threshold = BulletGlobals.gContactBreakingThreshold;
+			localAabbMin.x -= threshold; localAabbMin.y -= threshold; localAabbMin.z -= threshold;
+			localAabbMax.x += threshold; localAabbMax.y += threshold; localAabbMax.z += threshold;
 
 			int numChildren = childCollisionAlgorithms.size();
-			int i;
-			for (i = 0; i < numChildren; i++) {
-				// temporarily exchange parent btCollisionShape with childShape, and recurse
-				CollisionShape childShape = compoundShape.getChildShape(i);
+			Arrays.fill(overlapping, 0, numChildren, false);
 
-				// backup
-				orgTrans.set(colObj.getWorldTransform());
-				CollisionShape orgShape = colObj.getCollisionShape();
+			ChildCollisionPolicy policy = childPolicy;
+			policy.algorithm = this;
+			policy.compoundShape = compoundShape;
+			policy.colObj = colObj;
+			policy.otherObj = otherObj;
+			policy.dispatchInfo = dispatchInfo;
+			policy.resultOut = resultOut;
+			try {
+				Dbvt tree = compoundShape.getDynamicAabbTree();
+				Dbvt.collideTV(tree.root, localAabbMin, localAabbMax, policy, treeStack);
+			}
+			finally {
+				policy.clear();
+				treeStack.clear();
+			}
 
-				Transform childTrans = compoundShape.getChildTransform(i);
-				//btTransform	newChildWorldTrans = orgTrans*childTrans ;
-				tmpTrans.set(orgTrans);
-				tmpTrans.mul(childTrans);
-				colObj.setWorldTransform(tmpTrans);
-				// the contactpoint is still projected back using the original inverted worldtrans
-				colObj.setCollisionShape(childShape);
-				childCollisionAlgorithms.get(i).processCollision(colObj, otherObj, dispatchInfo, resultOut);
-				// revert back
-				colObj.setCollisionShape(orgShape);
-				colObj.setWorldTransform(orgTrans);
+			// destroy algorithms (and their contacts) of children that no longer overlap
+			for (int i = 0; i < numChildren; i++) {
+				if (!overlapping[i]) {
+					CollisionAlgorithm algo = childCollisionAlgorithms.get(i);
+					if (algo != null) {
+						algo.destroy();
+						dispatcher.freeCollisionAlgorithm(algo);
+						childCollisionAlgorithms.set(i, null);
+					}
+				}
 			}
 		}
+		finally {
+			stack.popCommonMath();
+		}
+	}
+	
+	private void processChild(int index, CompoundShape compoundShape, CollisionObject colObj, CollisionObject otherObj, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+		BulletStack stack = BulletStack.get();
+
+		stack.transforms.push();
+		try {
+			overlapping[index] = true;
+			
+			// temporarily exchange parent btCollisionShape with childShape, and recurse
+			CollisionShape childShape = compoundShape.getChildShape(index);
+			CollisionAlgorithm algo = getChildAlgorithm(index, colObj, otherObj, childShape);
+
+			// backup
+			Transform orgTrans = stack.transforms.get(colObj.getWorldTransform());
+			CollisionShape orgShape = colObj.getCollisionShape();
+
+			Transform childTrans = compoundShape.getChildTransform(index);
+			//btTransform	newChildWorldTrans = orgTrans*childTrans ;
+			Transform tmpTrans = stack.transforms.get(orgTrans);
+			tmpTrans.mul(childTrans);
+			colObj.setWorldTransform(tmpTrans);
+			// the contactpoint is still projected back using the original inverted worldtrans
+			colObj.setCollisionShape(childShape);
+			algo.processCollision(colObj, otherObj, dispatchInfo, resultOut);
+			// revert back
+			colObj.setCollisionShape(orgShape);
+			colObj.setWorldTransform(orgTrans);
+		}
 		finally {
 			stack.transforms.pop();
 		}
@@ -125,6 +223,8 @@ public class CompoundCollisionAlgorithm extends CollisionAlgorithm {
 
 	@Override
 	public float calculateTimeOfImpact(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+		BulletStack stack = BulletStack.get();
+
 		stack.transforms.push();
 		try {
 			CollisionObject colObj = isSwapped ? body1 : body0;
@@ -134,12 +234,14 @@ public class CompoundCollisionAlgorithm extends CollisionAlgorithm {
 
 			CompoundShape compoundShape = (CompoundShape) colObj.getCollisionShape();
 
-			// We will use the OptimizedBVH, AABB tree to cull potential child-overlaps
-			// If both proxies are Compound, we will deal with that directly, by performing sequential/parallel tree traversals
-			// given Proxy0 and Proxy1, if both have a tree, Tree0 and Tree1, this means:
-			// determine overlapping nodes of Proxy1 using Proxy0 AABB against Tree1
-			// then use each overlapping node AABB against Tree0
-			// and vise versa.
+			if (compoundShape.getUpdateRevision() != compoundShapeRevision) {
+				removeChildAlgorithms();
+				preallocateChildAlgorithms(compoundShape);
+			}
+
+			// JAVA NOTE: all children are tested, the motion is not bounded by the tree;
+			// children without algorithm (not overlapping in processCollision) use
+			// temporary one, so they don't keep algorithms and manifolds alive
 
 			Transform tmpTrans = stack.transforms.get();
 			Transform orgTrans = stack.transforms.get();
@@ -150,6 +252,11 @@ public class CompoundCollisionAlgorithm extends CollisionAlgorithm {
 			for (i = 0; i < numChildren; i++) {
 				// temporarily exchange parent btCollisionShape with childShape, and recurse
 				CollisionShape childShape = compoundShape.getChildShape(i);
+				CollisionAlgorithm algo = childCollisionAlgorithms.get(i);
+				boolean temporary = (algo == null);
+				if (temporary) {
+					algo = createChildAlgorithm(colObj, otherObj, childShape);
+				}
 
 				// backup
 				orgTrans.set(colObj.getWorldTransform());
@@ -162,13 +269,18 @@ public class CompoundCollisionAlgorithm extends CollisionAlgorithm {
 				colObj.setWorldTransform(tmpTrans);
 
 				colObj.setCollisionShape(childShape);
-				float frac = childCollisionAlgorithms.get(i).calculateTimeOfImpact(colObj, otherObj, dispatchInfo, resultOut);
+				float frac = algo.calculateTimeOfImpact(colObj, otherObj, dispatchInfo, resultOut);
 				if (frac < hitFraction) {
 					hitFraction = frac;
 				}
 				// revert back
 				colObj.setCollisionShape(orgShape);
 				colObj.setWorldTransform(orgTrans);
+				
+				if (temporary) {
+					algo.destroy();
+					dispatcher.freeCollisionAlgorithm(algo);
+				}
 			}
 			return hitFraction;
 		}
@@ -179,17 +291,47 @@ public class CompoundCollisionAlgorithm extends CollisionAlgorithm {
 	
 	////////////////////////////////////////////////////////////////////////////
 	
+	private static class ChildCollisionPolicy extends Dbvt.ICollide {
+		public CompoundCollisionAlgorithm algorithm;
+		public CompoundShape compoundShape;
+		public CollisionObject colObj;
+		public CollisionObject otherObj;
+		public DispatcherInfo dispatchInfo;
+		public ManifoldResult resultOut;
+
+		@Override
+		public void process(Dbvt.Node leaf) {
+			int index = (Integer)leaf.data;
+			algorithm.processChild(index, compoundShape, colObj, otherObj, dispatchInfo, resultOut);
+		}
+		
+		public void clear() {
+			algorithm = null;
+			compoundShape = null;
+			colObj = null;
+			otherObj = null;
+			dispatchInfo = null;
+			resultOut = null;
+		}
+	}
+	
+	////////////////////////////////////////////////////////////////////////////
+	
 	public static final CollisionAlgorithmCreateFunc createFunc = new CollisionAlgorithmCreateFunc() {
 		@Override
 		public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
-			return new CompoundCollisionAlgorithm(ci, body0, body1, false);
+			CompoundCollisionAlgorithm algo = ci.dispatcher1.allocateCollisionAlgorithm(CompoundCollisionAlgorithm.class);
+			algo.init(ci, body0, body1, false);
+			return algo;
 		}
 	};
 	
 	public static final CollisionAlgorithmCreateFunc swappedCreateFunc = new CollisionAlgorithmCreateFunc() {
 		@Override
 		public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
-			return new CompoundCollisionAlgorithm(ci, body0, body1, true);
+			CompoundCollisionAlgorithm algo = ci.dispatcher1.allocateCollisionAlgorithm(CompoundCollisionAlgorithm.class);
+			algo.init(ci, body0, body1, true);
+			return algo;
 		}
 	};
 
@@ -23,6 +23,7 @@
 
 package javabullet.collision.dispatch;
 
+import javabullet.BulletStack;
 import javabullet.collision.broadphase.CollisionAlgorithm;
 import javabullet.collision.broadphase.CollisionAlgorithmConstructionInfo;
 import javabullet.collision.broadphase.DispatcherInfo;
@@ -46,12 +47,19 @@ import javax.vecmath.Vector3f;
 public class ConvexConcaveCollisionAlgorithm extends CollisionAlgorithm {
 
 	private boolean isSwapped;
-	private ConvexTriangleCallback btConvexTriangleCallback;
+	private final ConvexTriangleCallback btConvexTriangleCallback = new ConvexTriangleCallback();
+	
+	public ConvexConcaveCollisionAlgorithm() {
+	}
 	
 	public ConvexConcaveCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1, boolean isSwapped) {
-		super(ci);
+		init(ci, body0, body1, isSwapped);
+	}
+	
+	public void init(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1, boolean isSwapped) {
+		super.init(ci);
 		this.isSwapped = isSwapped;
-		this.btConvexTriangleCallback = new ConvexTriangleCallback(dispatcher, body0, body1, isSwapped);
+		btConvexTriangleCallback.init(dispatcher, body0, body1, isSwapped);
 	}
 	
 	@Override
@@ -88,6 +96,8 @@ public class ConvexConcaveCollisionAlgorithm extends CollisionAlgorithm {
 
 	@Override
 	public float calculateTimeOfImpact(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+		BulletStack stack = BulletStack.get();
+
 		stack.pushCommonMath();
 		try {
 			Vector3f tmp = stack.vectors.get();
@@ -212,14 +222,18 @@ public class ConvexConcaveCollisionAlgorithm extends CollisionAlgorithm {
 	public static class CreateFunc extends CollisionAlgorithmCreateFunc {
 		@Override
 		public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
-			return new ConvexConcaveCollisionAlgorithm(ci, body0, body1, false);
+			ConvexConcaveCollisionAlgorithm algo = ci.dispatcher1.allocateCollisionAlgorithm(ConvexConcaveCollisionAlgorithm.class);
+			algo.init(ci, body0, body1, false);
+			return algo;
 		}
 	}
 	
 	public static class SwappedCreateFunc extends CollisionAlgorithmCreateFunc {
 		@Override
 		public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
-			return new ConvexConcaveCollisionAlgorithm(ci, body0, body1, true);
+			ConvexConcaveCollisionAlgorithm algo = ci.dispatcher1.allocateCollisionAlgorithm(ConvexConcaveCollisionAlgorithm.class);
+			algo.init(ci, body0, body1, true);
+			return algo;
 		}
 	}
 	
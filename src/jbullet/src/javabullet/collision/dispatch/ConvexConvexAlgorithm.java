@@ -24,6 +24,7 @@
 package javabullet.collision.dispatch;
 
 import javabullet.BulletPool;
+import javabullet.BulletStack;
 import javabullet.ObjectPool;
 import javabullet.collision.broadphase.CollisionAlgorithm;
 import javabullet.collision.broadphase.CollisionAlgorithmConstructionInfo;
@@ -47,18 +48,24 @@ import javax.vecmath.Vector3f;
  */
 public class ConvexConvexAlgorithm extends CollisionAlgorithm {
 	
-	protected final ObjectPool<ClosestPointInput> pointInputsPool = BulletPool.get(ClosestPointInput.class);
-
-	private GjkPairDetector gjkPairDetector;
+	private final GjkPairDetector gjkPairDetector = new GjkPairDetector(null, null, null, null);
 
 	public boolean ownManifold = false;
 	public PersistentManifold manifoldPtr;
 	public boolean lowLevelOfDetail = false;
 	
+	public ConvexConvexAlgorithm() {
+	}
+	
 	public ConvexConvexAlgorithm(PersistentManifold mf, CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1, SimplexSolverInterface simplexSolver, ConvexPenetrationDepthSolver pdSolver) {
-		super(ci);
-		gjkPairDetector = new GjkPairDetector(null, null, simplexSolver, pdSolver);
+		init(mf, ci, body0, body1, simplexSolver, pdSolver);
+	}
+	
+	public void init(PersistentManifold mf, CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1, SimplexSolverInterface simplexSolver, ConvexPenetrationDepthSolver pdSolver) {
+		super.init(ci);
+		gjkPairDetector.init(null, null, simplexSolver, pdSolver);
 		this.manifoldPtr = mf;
+		this.lowLevelOfDetail = false;
 	}
 	
 	@Override
@@ -68,6 +75,10 @@ public class ConvexConvexAlgorithm extends CollisionAlgorithm {
 				dispatcher.releaseManifold(manifoldPtr);
 			}
 		}
+		ownManifold = false;
+		manifoldPtr = null;
+		gjkPairDetector.setMinkowskiA(null);
+		gjkPairDetector.setMinkowskiB(null);
 	}
 
 	public void setLowLevelOfDetail(boolean useLowLevel) {
@@ -103,8 +114,9 @@ public class ConvexConvexAlgorithm extends CollisionAlgorithm {
 		ConvexShape min0 = (ConvexShape) body0.getCollisionShape();
 		ConvexShape min1 = (ConvexShape) body1.getCollisionShape();
 
+		ObjectPool<ClosestPointInput> pointInputsPool = BulletPool.get(ClosestPointInput.class);
 		ClosestPointInput input = pointInputsPool.get();
-		input.init(gl);
+		input.init();
 
 		// JAVA NOTE: original: TODO: if (dispatchInfo.m_useContinuous)
 		gjkPairDetector.setMinkowskiA(min0);
@@ -132,6 +144,8 @@ public class ConvexConvexAlgorithm extends CollisionAlgorithm {
 	
 	@Override
 	public float calculateTimeOfImpact(CollisionObject col0, CollisionObject col1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			Vector3f tmp = stack.vectors.get();
@@ -246,8 +260,9 @@ public class ConvexConvexAlgorithm extends CollisionAlgorithm {
 
 		@Override
 		public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
-			//void* mem = ci.dispatcher1.allocateCollisionAlgorithm(sizeof(btConvexConvexAlgorithm));
-			return new ConvexConvexAlgorithm(ci.manifold,ci,body0,body1,simplexSolver,pdSolver);
+			ConvexConvexAlgorithm algo = ci.dispatcher1.allocateCollisionAlgorithm(ConvexConvexAlgorithm.class);
+			algo.init(ci.manifold, ci, body0, body1, simplexSolver, pdSolver);
+			return algo;
 		}
 	}
 	
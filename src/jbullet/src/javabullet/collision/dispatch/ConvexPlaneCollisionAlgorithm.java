@@ -23,6 +23,7 @@
 
 package javabullet.collision.dispatch;
 
+import javabullet.BulletStack;
 import javabullet.collision.broadphase.CollisionAlgorithm;
 import javabullet.collision.broadphase.CollisionAlgorithmConstructionInfo;
 import javabullet.collision.broadphase.DispatcherInfo;
@@ -42,8 +43,15 @@ public class ConvexPlaneCollisionAlgorithm extends CollisionAlgorithm {
 	private PersistentManifold manifoldPtr;
 	private boolean isSwapped;
 	
+	public ConvexPlaneCollisionAlgorithm() {
+	}
+	
 	public ConvexPlaneCollisionAlgorithm(PersistentManifold mf, CollisionAlgorithmConstructionInfo ci, CollisionObject col0, CollisionObject col1, boolean isSwapped) {
-		super(ci);
+		init(mf, ci, col0, col1, isSwapped);
+	}
+	
+	public void init(PersistentManifold mf, CollisionAlgorithmConstructionInfo ci, CollisionObject col0, CollisionObject col1, boolean isSwapped) {
+		super.init(ci);
 		this.manifoldPtr = mf;
 		this.isSwapped = isSwapped;
 
@@ -63,11 +71,15 @@ public class ConvexPlaneCollisionAlgorithm extends CollisionAlgorithm {
 				dispatcher.releaseManifold(manifoldPtr);
 			}
 		}
+		ownManifold = false;
+		manifoldPtr = null;
 	}
 	
 	
 	@Override
 	public void processCollision(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+		BulletStack stack = BulletStack.get();
+
 		if (manifoldPtr == null) {
 			return;
 		}
@@ -142,12 +154,14 @@ public class ConvexPlaneCollisionAlgorithm extends CollisionAlgorithm {
 
 		@Override
 		public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
+			ConvexPlaneCollisionAlgorithm algo = ci.dispatcher1.allocateCollisionAlgorithm(ConvexPlaneCollisionAlgorithm.class);
 			if (!swapped) {
-				return new ConvexPlaneCollisionAlgorithm(null, ci, body0, body1, false);
+				algo.init(null, ci, body0, body1, false);
 			}
 			else {
-				return new ConvexPlaneCollisionAlgorithm(null, ci, body0, body1, true);
+				algo.init(null, ci, body0, body1, true);
 			}
+			return algo;
 		}
 	}
 	
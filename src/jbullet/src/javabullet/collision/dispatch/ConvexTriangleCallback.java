@@ -24,6 +24,7 @@
 package javabullet.collision.dispatch;
 
 import javabullet.BulletStack;
+import javabullet.collision.broadphase.BroadphaseNativeType;
 import javabullet.collision.broadphase.CollisionAlgorithm;
 import javabullet.collision.broadphase.CollisionAlgorithmConstructionInfo;
 import javabullet.collision.broadphase.Dispatcher;
@@ -43,8 +44,6 @@ import javax.vecmath.Vector3f;
  */
 class ConvexTriangleCallback implements TriangleCallback {
 
-	protected final BulletStack stack = BulletStack.get();
-	
 	private CollisionObject convexBody;
 	private CollisionObject triBody;
 
@@ -60,7 +59,14 @@ class ConvexTriangleCallback implements TriangleCallback {
 	public int triangleCount;
 	public PersistentManifold manifoldPtr;
 	
+	public ConvexTriangleCallback() {
+	}
+	
 	public ConvexTriangleCallback(Dispatcher dispatcher, CollisionObject body0, CollisionObject body1, boolean isSwapped) {
+		init(dispatcher, body0, body1, isSwapped);
+	}
+	
+	public void init(Dispatcher dispatcher, CollisionObject body0, CollisionObject body1, boolean isSwapped) {
 		this.dispatcher = dispatcher;
 		this.dispatchInfoPtr = null;
 
@@ -76,16 +82,29 @@ class ConvexTriangleCallback implements TriangleCallback {
 	}
 	
 	public void destroy() {
+		freeTriangleAlgorithm();
 		clearCache();
 		dispatcher.releaseManifold(manifoldPtr);
+		
+		manifoldPtr = null;
+		convexBody = null;
+		triBody = null;
+		resultOut = null;
+		dispatchInfoPtr = null;
+		triObject.setCollisionShape(null);
 	}
 
 	public void setTimeStepAndCounters(float collisionMarginTriangle, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+		BulletStack stack = BulletStack.get();
+
 		stack.pushCommonMath();
 		try {
 			this.dispatchInfoPtr = dispatchInfo;
 			this.collisionMarginTriangle = collisionMarginTriangle;
 			this.resultOut = resultOut;
+			
+			triObject.setWorldTransform(triBody.getWorldTransform());
+			triObject.getInterpolationWorldTransform().set(triBody.getInterpolationWorldTransform());
 
 			// recalc aabbs
 			Transform convexInTriangleSpace = stack.transforms.get();
@@ -110,7 +129,39 @@ class ConvexTriangleCallback implements TriangleCallback {
 	private CollisionAlgorithmConstructionInfo ci = new CollisionAlgorithmConstructionInfo();
 	private TriangleShape tm = new TriangleShape();
 	
+	// JAVA NOTE: triangles are processed against private copy of triBody
+	// instead of temporarily exchanging its collision shape, so the concave
+	// object can be shared by pairs processed in parallel
+	private final CollisionObject triObject = new CollisionObject();
+	
+	// JAVA NOTE: algorithm for convex vs. triangle is kept between triangles
+	// and frames instead of allocating it from the dispatcher for each triangle,
+	// it works on the shared manifold and keeps no other state between calls
+	private CollisionAlgorithm triangleAlgorithm;
+	private BroadphaseNativeType triangleAlgorithmShapeType;
+	
+	private CollisionAlgorithm getTriangleAlgorithm() {
+		BroadphaseNativeType shapeType = convexBody.getCollisionShape().getShapeType();
+		if (triangleAlgorithm == null || triangleAlgorithmShapeType != shapeType) {
+			freeTriangleAlgorithm();
+			triangleAlgorithm = dispatcher.findAlgorithm(convexBody, triObject, manifoldPtr);
+			triangleAlgorithmShapeType = shapeType;
+		}
+		return triangleAlgorithm;
+	}
+	
+	private void freeTriangleAlgorithm() {
+		if (triangleAlgorithm != null) {
+			triangleAlgorithm.destroy();
+			dispatcher.freeCollisionAlgorithm(triangleAlgorithm);
+			triangleAlgorithm = null;
+			triangleAlgorithmShapeType = null;
+		}
+	}
+	
 	public void processTriangle(Vector3f[] triangle, int partId, int triangleIndex) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			// just for debugging purposes
@@ -155,20 +206,16 @@ class ConvexTriangleCallback implements TriangleCallback {
 				tm.init(triangle[0], triangle[1], triangle[2]);
 				tm.setMargin(collisionMarginTriangle);
 
-				CollisionShape tmpShape = ob.getCollisionShape();
-				ob.setCollisionShape(tm);
+				triObject.setCollisionShape(tm);
 
-				CollisionAlgorithm colAlgo = ci.dispatcher1.findAlgorithm(convexBody, triBody, manifoldPtr);
+				CollisionAlgorithm colAlgo = getTriangleAlgorithm();
 				// this should use the btDispatcher, so the actual registered algorithm is used
 				//		btConvexConvexAlgorithm cvxcvxalgo(m_manifoldPtr,ci,m_convexBody,m_triBody);
 
 				resultOut.setShapeIdentifiers(-1, -1, partId, triangleIndex);
 				//cvxcvxalgo.setShapeIdentifiers(-1,-1,partId,triangleIndex);
 				//cvxcvxalgo.processCollision(m_convexBody,m_triBody,*m_dispatchInfoPtr,m_resultOut);
-				colAlgo.processCollision(convexBody, triBody, dispatchInfoPtr, resultOut);
-				colAlgo.destroy();
-				//ci.dispatcher1.freeCollisionAlgorithm(colAlgo);
-				ob.setCollisionShape(tmpShape);
+				colAlgo.processCollision(convexBody, triObject, dispatchInfoPtr, resultOut);
 			}
 		}
 		finally {
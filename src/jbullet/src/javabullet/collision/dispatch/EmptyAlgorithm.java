@@ -33,6 +33,9 @@ import javabullet.collision.broadphase.DispatcherInfo;
  */
 public class EmptyAlgorithm extends CollisionAlgorithm {
 
+	public EmptyAlgorithm() {
+	}
+
 	public EmptyAlgorithm(CollisionAlgorithmConstructionInfo ci) {
 		super(ci);
 	}
@@ -55,7 +58,9 @@ public class EmptyAlgorithm extends CollisionAlgorithm {
 	public static final CollisionAlgorithmCreateFunc createFunc = new CollisionAlgorithmCreateFunc() {
 		@Override
 		public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
-			return new EmptyAlgorithm(ci);
+			EmptyAlgorithm algo = ci.dispatcher1.allocateCollisionAlgorithm(EmptyAlgorithm.class);
+			algo.init(ci);
+			return algo;
 		}
 	};
 
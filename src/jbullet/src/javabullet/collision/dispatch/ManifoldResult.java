@@ -24,7 +24,6 @@
 package javabullet.collision.dispatch;
 
 import javabullet.BulletGlobals;
-import javabullet.BulletPool;
 import javabullet.BulletStack;
 import javabullet.ObjectPool;
 import javabullet.collision.narrowphase.DiscreteCollisionDetectorInterface;
@@ -40,8 +39,7 @@ import javax.vecmath.Vector3f;
  */
 public class ManifoldResult implements DiscreteCollisionDetectorInterface.Result {
 
-	protected final BulletStack stack = BulletStack.get();
-	protected final ObjectPool<ManifoldPoint> pointsPool = BulletPool.get(ManifoldPoint.class);
+	protected final ObjectPool<ManifoldPoint> pointsPool = new ObjectPool<ManifoldPoint>(ManifoldPoint.class);
 	
 	private PersistentManifold manifoldPtr;
 
@@ -85,6 +83,8 @@ public class ManifoldResult implements DiscreteCollisionDetectorInterface.Result
 	}
 
 	public void addContactPoint(Vector3f normalOnBInWorld, Vector3f pointInWorld, float depth) {
+		BulletStack stack = BulletStack.get();
+
 		assert (manifoldPtr != null);
 		//order in manifold needs to match
 
@@ -24,15 +24,12 @@
 package javabullet.collision.dispatch;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 import javabullet.BulletGlobals;
 import javabullet.collision.broadphase.BroadphasePair;
 import javabullet.collision.broadphase.Dispatcher;
+import javabullet.collision.broadphase.OverlapCallback;
 import javabullet.collision.narrowphase.PersistentManifold;
-import javabullet.linearmath.MiscUtil;
-import javabullet.util.HashUtil.IMap;
-import javabullet.util.HashUtil.IObjectProcedure;
 
 /**
  * SimulationIslandManager creates and handles simulation islands, using UnionFind.
@@ -45,6 +42,7 @@ public class SimulationIslandManager {
 
 	private final List<PersistentManifold> islandmanifold = new ArrayList<PersistentManifold>();
 	private final List<CollisionObject> islandBodies = new ArrayList<CollisionObject>();
+	private PersistentManifold[] sortedManifolds = new PersistentManifold[0];
 	
 	public void initUnionFind(int n) {
 		unionFind.reset(n);
@@ -54,8 +52,8 @@ public class SimulationIslandManager {
 		return unionFind;
 	}
 	
-	private class FindUnionsCallback implements IObjectProcedure<BroadphasePair> {
-		public boolean execute(BroadphasePair collisionPair) {
+	private class FindUnionsCallback implements OverlapCallback {
+		public boolean processOverlap(BroadphasePair collisionPair) {
 			CollisionObject colObj0 = (CollisionObject) collisionPair.pProxy0.clientObject;
 			CollisionObject colObj1 = (CollisionObject) collisionPair.pProxy1.clientObject;
 
@@ -63,15 +61,14 @@ public class SimulationIslandManager {
 					((colObj1 != null) && ((colObj1).mergesSimulationIslands()))) {
 				unionFind.unite((colObj0).getIslandTag(), (colObj1).getIslandTag());
 			}
-			return true;
+			return false;
 		}
 	}
 	
 	private FindUnionsCallback findUnionsCallback = new FindUnionsCallback();
 
 	public void findUnions(Dispatcher dispatcher, CollisionWorld colWorld) {
-		IMap<BroadphasePair,BroadphasePair> pairPtr = colWorld.getPairCache().getOverlappingPairArray();
-		pairPtr.forEachValue(findUnionsCallback);
+		colWorld.getPairCache().processAllOverlappingPairs(findUnionsCallback, dispatcher);
 	}
 
 	public void updateActivationState(CollisionWorld colWorld, Dispatcher dispatcher) {
@@ -136,8 +133,8 @@ public class SimulationIslandManager {
 
 			// update the sleeping state for bodies, if all are sleeping
 			for (startIslandIndex = 0; startIslandIndex < numElem; startIslandIndex = endIslandIndex) {
-				int islandId = getUnionFind().getElement(startIslandIndex).id;
-				for (endIslandIndex = startIslandIndex + 1; (endIslandIndex < numElem) && (getUnionFind().getElement(endIslandIndex).id == islandId); endIslandIndex++) {
+				int islandId = getUnionFind().getElementId(startIslandIndex);
+				for (endIslandIndex = startIslandIndex + 1; (endIslandIndex < numElem) && (getUnionFind().getElementId(endIslandIndex) == islandId); endIslandIndex++) {
 				}
 
 				//int numSleeping = 0;
@@ -146,7 +143,7 @@ public class SimulationIslandManager {
 
 				int idx;
 				for (idx = startIslandIndex; idx < endIslandIndex; idx++) {
-					int i = getUnionFind().getElement(idx).sz;
+					int i = getUnionFind().getSortedElement(idx);
 
 					CollisionObject colObj0 = collisionObjects.get(i);
 					if ((colObj0.getIslandTag() != islandId) && (colObj0.getIslandTag() != -1)) {
@@ -168,7 +165,7 @@ public class SimulationIslandManager {
 				if (allSleeping) {
 					//int idx;
 					for (idx = startIslandIndex; idx < endIslandIndex; idx++) {
-						int i = getUnionFind().getElement(idx).sz;
+						int i = getUnionFind().getSortedElement(idx);
 						CollisionObject colObj0 = collisionObjects.get(i);
 						if ((colObj0.getIslandTag() != islandId) && (colObj0.getIslandTag() != -1)) {
 							System.err.println("error in island management\n");
@@ -185,7 +182,7 @@ public class SimulationIslandManager {
 
 					//int idx;
 					for (idx = startIslandIndex; idx < endIslandIndex; idx++) {
-						int i = getUnionFind().getElement(idx).sz;
+						int i = getUnionFind().getSortedElement(idx);
 
 						CollisionObject colObj0 = collisionObjects.get(i);
 						if ((colObj0.getIslandTag() != islandId) && (colObj0.getIslandTag() != -1)) {
@@ -251,9 +248,8 @@ public class SimulationIslandManager {
 			// we should do radix sort, it it much faster (O(n) instead of O (n log2(n))
 			//islandmanifold.heapSort(btPersistentManifoldSortPredicate());
 			
-			// JAVA NOTE: memory optimized sorting with caching of temporary array
-			//Collections.sort(islandmanifold, persistentManifoldComparator);
-			MiscUtil.heapSort(islandmanifold, persistentManifoldComparator);
+			// JAVA NOTE: counting sort by island id, stable and without garbage
+			sortManifoldsByIsland(numElem);
 
 			// now process all active islands (sets of manifolds for now)
 
@@ -266,11 +262,11 @@ public class SimulationIslandManager {
 
 			// traverse the simulation islands, and call the solver, unless all objects are sleeping/deactivated
 			for (startIslandIndex = 0; startIslandIndex < numElem; startIslandIndex = endIslandIndex) {
-				int islandId = getUnionFind().getElement(startIslandIndex).id;
+				int islandId = getUnionFind().getElementId(startIslandIndex);
 				boolean islandSleeping = false;
 
-				for (endIslandIndex = startIslandIndex; (endIslandIndex < numElem) && (getUnionFind().getElement(endIslandIndex).id == islandId); endIslandIndex++) {
-					/*int*/ i = getUnionFind().getElement(endIslandIndex).sz;
+				for (endIslandIndex = startIslandIndex; (endIslandIndex < numElem) && (getUnionFind().getElementId(endIslandIndex) == islandId); endIslandIndex++) {
+					/*int*/ i = getUnionFind().getSortedElement(endIslandIndex);
 					CollisionObject colObj0 = collisionObjects.get(i);
 					islandBodies.add(colObj0);
 					if (!colObj0.isActive()) {
@@ -320,16 +316,42 @@ public class SimulationIslandManager {
 		}
 	}
 
+	/**
+	 * Sorts islandmanifold by island id using counting sort. Island ids are
+	 * indices of collision objects (or -1), so they are in range -1..numElem-1.
+	 */
+	private void sortManifoldsByIsland(int numElem) {
+		int numManifolds = islandmanifold.size();
+		if (numManifolds <= 1) {
+			return;
+		}
+		
+		if (sortedManifolds.length < numManifolds) {
+			sortedManifolds = new PersistentManifold[Math.max(numManifolds, sortedManifolds.length * 2)];
+		}
+		
+		// bucket is island id + 1:
+		int[] counts = unionFind.getCounts(numElem + 1);
+		for (int i = 0; i < numManifolds; i++) {
+			counts[getIslandId(islandmanifold.get(i)) + 2]++;
+		}
+		for (int i = 0; i <= numElem; i++) {
+			counts[i + 1] += counts[i];
+		}
+		for (int i = 0; i < numManifolds; i++) {
+			PersistentManifold manifold = islandmanifold.get(i);
+			sortedManifolds[counts[getIslandId(manifold) + 1]++] = manifold;
+		}
+		for (int i = 0; i < numManifolds; i++) {
+			islandmanifold.set(i, sortedManifolds[i]);
+			sortedManifolds[i] = null;
+		}
+	}
+
 	////////////////////////////////////////////////////////////////////////////
 	
 	public interface IslandCallback {
 		public void processIsland(List<CollisionObject> bodies, int numBodies, List<PersistentManifold> manifolds, int manifolds_offset, int numManifolds, int islandId);
 	}
 	
-	private static final Comparator<PersistentManifold> persistentManifoldComparator = new Comparator<PersistentManifold>() {
-		public int compare(PersistentManifold lhs, PersistentManifold rhs) {
-			return getIslandId(lhs) < getIslandId(rhs)? -1 : +1;
-		}
-	};
-	
 }
@@ -0,0 +1,180 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.collision.dispatch;
+
+import javabullet.BulletStack;
+import javabullet.collision.broadphase.CollisionAlgorithm;
+import javabullet.collision.broadphase.CollisionAlgorithmConstructionInfo;
+import javabullet.collision.broadphase.DispatcherInfo;
+import javabullet.collision.narrowphase.PersistentManifold;
+import javabullet.collision.shapes.BoxShape;
+import javabullet.collision.shapes.SphereShape;
+import javabullet.linearmath.Transform;
+import javax.vecmath.Vector3f;
+
+/**
+ * SphereBoxCollisionAlgorithm provides sphere-box collision detection.
+ * Sphere center is clamped to the box in box space, when the center is
+ * inside the box the nearest face is used.
+ *
+ * @author jezek2
+ */
+public class SphereBoxCollisionAlgorithm extends CollisionAlgorithm {
+
+	private boolean ownManifold;
+	private PersistentManifold manifoldPtr;
+	private boolean isSwapped;
+
+	public SphereBoxCollisionAlgorithm() {
+	}
+
+	public SphereBoxCollisionAlgorithm(PersistentManifold mf, CollisionAlgorithmConstructionInfo ci, CollisionObject col0, CollisionObject col1, boolean isSwapped) {
+		init(mf, ci, col0, col1, isSwapped);
+	}
+
+	public void init(PersistentManifold mf, CollisionAlgorithmConstructionInfo ci, CollisionObject col0, CollisionObject col1, boolean isSwapped) {
+		super.init(ci);
+		this.manifoldPtr = mf;
+		this.isSwapped = isSwapped;
+
+		CollisionObject sphereObj = isSwapped ? col1 : col0;
+		CollisionObject boxObj = isSwapped ? col0 : col1;
+
+		if (manifoldPtr == null && dispatcher.needsCollision(sphereObj, boxObj)) {
+			manifoldPtr = dispatcher.getNewManifold(sphereObj, boxObj);
+			ownManifold = true;
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if (ownManifold) {
+			if (manifoldPtr != null) {
+				dispatcher.releaseManifold(manifoldPtr);
+			}
+		}
+		ownManifold = false;
+		manifoldPtr = null;
+	}
+
+	@Override
+	public void processCollision(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+		BulletStack stack = BulletStack.get();
+
+		if (manifoldPtr == null) {
+			return;
+		}
+
+		stack.vectors.push();
+		try {
+			CollisionObject sphereObj = isSwapped ? body1 : body0;
+			CollisionObject boxObj = isSwapped ? body0 : body1;
+
+			SphereShape sphere = (SphereShape) sphereObj.getCollisionShape();
+			BoxShape box = (BoxShape) boxObj.getCollisionShape();
+
+			float radius = sphere.getRadius();
+			Vector3f halfExtents = stack.vectors.get(box.getHalfExtentsWithMargin());
+			Transform boxTrans = boxObj.getWorldTransform();
+
+			// sphere center in box space:
+			Vector3f center = stack.vectors.get(sphereObj.getWorldTransform().origin);
+			boxTrans.invXform(center, center);
+
+			Vector3f closest = stack.vectors.get(
+					Math.max(-halfExtents.x, Math.min(halfExtents.x, center.x)),
+					Math.max(-halfExtents.y, Math.min(halfExtents.y, center.y)),
+					Math.max(-halfExtents.z, Math.min(halfExtents.z, center.z)));
+
+			// normal points from box towards sphere
+			Vector3f normal = stack.vectors.get();
+			normal.sub(center, closest);
+			float len = normal.length();
+			float dist;
+
+			if (len > 1e-6f) {
+				normal.scale(1f / len);
+				dist = len - radius;
+			}
+			else {
+				// center is inside, push out through the nearest face:
+				float dx = halfExtents.x - Math.abs(center.x);
+				float dy = halfExtents.y - Math.abs(center.y);
+				float dz = halfExtents.z - Math.abs(center.z);
+				if (dx <= dy && dx <= dz) {
+					normal.set(center.x < 0f? -1f : 1f, 0f, 0f);
+					closest.x = normal.x * halfExtents.x;
+					dist = -dx - radius;
+				}
+				else if (dy <= dz) {
+					normal.set(0f, center.y < 0f? -1f : 1f, 0f);
+					closest.y = normal.y * halfExtents.y;
+					dist = -dy - radius;
+				}
+				else {
+					normal.set(0f, 0f, center.z < 0f? -1f : 1f);
+					closest.z = normal.z * halfExtents.z;
+					dist = -dz - radius;
+				}
+			}
+
+			resultOut.setPersistentManifold(manifoldPtr);
+
+			if (dist < manifoldPtr.getContactBreakingThreshold()) {
+				boxTrans.basis.transform(normal);
+				boxTrans.transform(closest);
+
+				// manifold is always sphere-first, ManifoldResult handles swapped order
+				resultOut.addContactPoint(normal, closest, dist);
+			}
+
+			if (ownManifold) {
+				if (manifoldPtr.getNumContacts() != 0) {
+					resultOut.refreshContactPoints();
+				}
+			}
+		}
+		finally {
+			stack.vectors.pop();
+		}
+	}
+
+	@Override
+	public float calculateTimeOfImpact(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+		// not yet
+		return 1f;
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+
+	public static class CreateFunc extends CollisionAlgorithmCreateFunc {
+		@Override
+		public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
+			SphereBoxCollisionAlgorithm algo = ci.dispatcher1.allocateCollisionAlgorithm(SphereBoxCollisionAlgorithm.class);
+			algo.init(ci.manifold, ci, body0, body1, swapped);
+			return algo;
+		}
+	}
+
+}
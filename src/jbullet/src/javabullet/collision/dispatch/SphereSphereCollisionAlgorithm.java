@@ -41,8 +41,15 @@ public class SphereSphereCollisionAlgorithm extends CollisionAlgorithm {
 	private boolean ownManifold;
 	private PersistentManifold manifoldPtr;
 
+	public SphereSphereCollisionAlgorithm() {
+	}
+
 	public SphereSphereCollisionAlgorithm(PersistentManifold mf, CollisionAlgorithmConstructionInfo ci, CollisionObject col0, CollisionObject col1) {
-		super(ci);
+		init(mf, ci, col0, col1);
+	}
+
+	public void init(PersistentManifold mf, CollisionAlgorithmConstructionInfo ci, CollisionObject col0, CollisionObject col1) {
+		super.init(ci);
 		manifoldPtr = mf;
 
 		if (manifoldPtr == null) {
@@ -62,10 +69,14 @@ public class SphereSphereCollisionAlgorithm extends CollisionAlgorithm {
 				dispatcher.releaseManifold(manifoldPtr);
 			}
 		}
+		ownManifold = false;
+		manifoldPtr = null;
 	}
 	
 	@Override
 	public void processCollision(CollisionObject col0, CollisionObject col1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+		BulletStack stack = BulletStack.get();
+
 		if (manifoldPtr == null) {
 			return;
 		}
@@ -130,7 +141,9 @@ public class SphereSphereCollisionAlgorithm extends CollisionAlgorithm {
 	public static final CollisionAlgorithmCreateFunc createFunc = new CollisionAlgorithmCreateFunc() {
 		@Override
 		public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
-			return new SphereSphereCollisionAlgorithm(null, ci, body0, body1);
+			SphereSphereCollisionAlgorithm algo = ci.dispatcher1.allocateCollisionAlgorithm(SphereSphereCollisionAlgorithm.class);
+			algo.init(null, ci, body0, body1);
+			return algo;
 		}
 	};
 	
@@ -0,0 +1,229 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.collision.dispatch;
+
+import javabullet.BulletStack;
+import javabullet.collision.broadphase.CollisionAlgorithm;
+import javabullet.collision.broadphase.CollisionAlgorithmConstructionInfo;
+import javabullet.collision.broadphase.DispatcherInfo;
+import javabullet.collision.narrowphase.PersistentManifold;
+import javabullet.collision.shapes.SphereShape;
+import javabullet.collision.shapes.TriangleShape;
+import javabullet.linearmath.Transform;
+import javax.vecmath.Vector3f;
+
+/**
+ * SphereTriangleCollisionAlgorithm provides sphere-triangle collision detection.
+ * Triangles are two-sided and thickened by their collision margin. It's mainly
+ * used for spheres against concave meshes, where the manifold is shared by
+ * all triangles.
+ *
+ * @author jezek2
+ */
+public class SphereTriangleCollisionAlgorithm extends CollisionAlgorithm {
+
+	private boolean ownManifold;
+	private PersistentManifold manifoldPtr;
+	private boolean isSwapped;
+
+	public SphereTriangleCollisionAlgorithm() {
+	}
+
+	public SphereTriangleCollisionAlgorithm(PersistentManifold mf, CollisionAlgorithmConstructionInfo ci, CollisionObject col0, CollisionObject col1, boolean isSwapped) {
+		init(mf, ci, col0, col1, isSwapped);
+	}
+
+	public void init(PersistentManifold mf, CollisionAlgorithmConstructionInfo ci, CollisionObject col0, CollisionObject col1, boolean isSwapped) {
+		super.init(ci);
+		this.manifoldPtr = mf;
+		this.isSwapped = isSwapped;
+
+		CollisionObject sphereObj = isSwapped ? col1 : col0;
+		CollisionObject triObj = isSwapped ? col0 : col1;
+
+		if (manifoldPtr == null && dispatcher.needsCollision(sphereObj, triObj)) {
+			manifoldPtr = dispatcher.getNewManifold(sphereObj, triObj);
+			ownManifold = true;
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if (ownManifold) {
+			if (manifoldPtr != null) {
+				dispatcher.releaseManifold(manifoldPtr);
+			}
+		}
+		ownManifold = false;
+		manifoldPtr = null;
+	}
+
+	@Override
+	public void processCollision(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+		BulletStack stack = BulletStack.get();
+
+		if (manifoldPtr == null) {
+			return;
+		}
+
+		stack.vectors.push();
+		try {
+			CollisionObject sphereObj = isSwapped ? body1 : body0;
+			CollisionObject triObj = isSwapped ? body0 : body1;
+
+			SphereShape sphere = (SphereShape) sphereObj.getCollisionShape();
+			TriangleShape triangle = (TriangleShape) triObj.getCollisionShape();
+
+			Transform triTrans = triObj.getWorldTransform();
+
+			// sphere center in triangle space:
+			Vector3f center = stack.vectors.get(sphereObj.getWorldTransform().origin);
+			triTrans.invXform(center, center);
+
+			Vector3f closest = stack.vectors.get();
+			closestPointOnTriangle(center, triangle.vertices1[0], triangle.vertices1[1], triangle.vertices1[2], closest);
+
+			// normal points from triangle towards sphere
+			Vector3f normal = stack.vectors.get();
+			normal.sub(center, closest);
+			float len = normal.length();
+			if (len > 1e-6f) {
+				normal.scale(1f / len);
+			}
+			else {
+				// center lies in the triangle
+				triangle.calcNormal(normal);
+			}
+
+			float radius = sphere.getRadius();
+			float triMargin = triangle.getMargin();
+			float dist = len - radius - triMargin;
+
+			resultOut.setPersistentManifold(manifoldPtr);
+
+			if (dist < manifoldPtr.getContactBreakingThreshold()) {
+				triTrans.basis.transform(normal);
+				triTrans.transform(closest);
+
+				// manifold is always sphere-first, ManifoldResult handles swapped order
+				Vector3f pointOnTriangle = stack.vectors.get();
+				pointOnTriangle.scaleAdd(triMargin, normal, closest);
+				resultOut.addContactPoint(normal, pointOnTriangle, dist);
+			}
+
+			if (ownManifold) {
+				if (manifoldPtr.getNumContacts() != 0) {
+					resultOut.refreshContactPoints();
+				}
+			}
+		}
+		finally {
+			stack.vectors.pop();
+		}
+	}
+
+	/**
+	 * Finds point on triangle closest to p, using Voronoi regions of the
+	 * triangle features.
+	 */
+	private static void closestPointOnTriangle(Vector3f p, Vector3f a, Vector3f b, Vector3f c, Vector3f out) {
+		float abx = b.x - a.x, aby = b.y - a.y, abz = b.z - a.z;
+		float acx = c.x - a.x, acy = c.y - a.y, acz = c.z - a.z;
+		float apx = p.x - a.x, apy = p.y - a.y, apz = p.z - a.z;
+
+		// vertex region A
+		float d1 = abx*apx + aby*apy + abz*apz;
+		float d2 = acx*apx + acy*apy + acz*apz;
+		if (d1 <= 0f && d2 <= 0f) {
+			out.set(a);
+			return;
+		}
+
+		// vertex region B
+		float bpx = p.x - b.x, bpy = p.y - b.y, bpz = p.z - b.z;
+		float d3 = abx*bpx + aby*bpy + abz*bpz;
+		float d4 = acx*bpx + acy*bpy + acz*bpz;
+		if (d3 >= 0f && d4 <= d3) {
+			out.set(b);
+			return;
+		}
+
+		// edge region AB
+		float vc = d1*d4 - d3*d2;
+		if (vc <= 0f && d1 >= 0f && d3 <= 0f) {
+			float v = d1 / (d1 - d3);
+			out.set(a.x + abx*v, a.y + aby*v, a.z + abz*v);
+			return;
+		}
+
+		// vertex region C
+		float cpx = p.x - c.x, cpy = p.y - c.y, cpz = p.z - c.z;
+		float d5 = abx*cpx + aby*cpy + abz*cpz;
+		float d6 = acx*cpx + acy*cpy + acz*cpz;
+		if (d6 >= 0f && d5 <= d6) {
+			out.set(c);
+			return;
+		}
+
+		// edge region AC
+		float vb = d5*d2 - d1*d6;
+		if (vb <= 0f && d2 >= 0f && d6 <= 0f) {
+			float w = d2 / (d2 - d6);
+			out.set(a.x + acx*w, a.y + acy*w, a.z + acz*w);
+			return;
+		}
+
+		// edge region BC
+		float va = d3*d6 - d5*d4;
+		if (va <= 0f && (d4 - d3) >= 0f && (d5 - d6) >= 0f) {
+			float w = (d4 - d3) / ((d4 - d3) + (d5 - d6));
+			out.set(b.x + (c.x - b.x)*w, b.y + (c.y - b.y)*w, b.z + (c.z - b.z)*w);
+			return;
+		}
+
+		// face region
+		float denom = 1f / (va + vb + vc);
+		float v = vb * denom;
+		float w = vc * denom;
+		out.set(a.x + abx*v + acx*w, a.y + aby*v + acy*w, a.z + abz*v + acz*w);
+	}
+
+	@Override
+	public float calculateTimeOfImpact(CollisionObject body0, CollisionObject body1, DispatcherInfo dispatchInfo, ManifoldResult resultOut) {
+		// not yet
+		return 1f;
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+
+	public static class CreateFunc extends CollisionAlgorithmCreateFunc {
+		@Override
+		public CollisionAlgorithm createCollisionAlgorithm(CollisionAlgorithmConstructionInfo ci, CollisionObject body0, CollisionObject body1) {
+			SphereTriangleCollisionAlgorithm algo = ci.dispatcher1.allocateCollisionAlgorithm(SphereTriangleCollisionAlgorithm.class);
+			algo.init(ci.manifold, ci, body0, body1, swapped);
+			return algo;
+		}
+	}
+
+}
@@ -23,71 +23,102 @@
 
 package javabullet.collision.dispatch;
 
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
-import javabullet.linearmath.MiscUtil;
-
 /**
  * UnionFind calculates connected subsets.
- * Implements weighted Quick Union with path compression.
- * Optimization: could use short ints instead of ints (halving memory, would limit the number of rigid bodies to 64k, sounds reasonable).
+ * Implements weighted Quick Union (union by size) with path compression.<p>
+ * 
+ * JAVA NOTE: elements are stored in primitive arrays instead of list of objects,
+ * and islands are sorted using counting sort, so no garbage is produced once
+ * arrays are grown to number of collision objects.
  * 
  * @author jezek2
  */
 public class UnionFind {
 
-	private final List<Element> elements = new ArrayList<Element>();
+	// after sortIslands: id holds island id, sz holds original element index
+	private int[] id = new int[0];
+	private int[] sz = new int[0];
+	private int numElements;
+	
+	// temporary arrays for sorting:
+	private int[] counts = new int[0];
+	private int[] tmpId = new int[0];
 	
 	/**
 	 * This is a special operation, destroying the content of UnionFind.
 	 * It sorts the elements, based on island id, in order to make it easy to iterate over islands.
+	 * Elements within island are kept in original order.
 	 */
 	public void sortIslands() {
 		// first store the original body index, and islandId
-		int numElements = elements.size();
+		int n = numElements;
 
-		for (int i = 0; i < numElements; i++) {
-			elements.get(i).id = find(i);
-			elements.get(i).sz = i;
+		for (int i = 0; i < n; i++) {
+			tmpId[i] = find(i);
 		}
 
-		// Sort the vector using predicate and std::sort
-		//std::sort(m_elements.begin(), m_elements.end(), btUnionFindElementSortPredicate);
-		//perhaps use radix sort?
-		//elements.heapSort(btUnionFindElementSortPredicate());
-		
-		//Collections.sort(elements);
-		MiscUtil.heapSort(elements, elementComparator);
+		// island ids are element indices, so counting sort in O(n) can be used:
+		int[] cnt = getCounts(n);
+		for (int i = 0; i < n; i++) {
+			cnt[tmpId[i] + 1]++;
+		}
+		for (int i = 0; i < n; i++) {
+			cnt[i + 1] += cnt[i];
+		}
+		for (int i = 0; i < n; i++) {
+			int islandId = tmpId[i];
+			int pos = cnt[islandId]++;
+			id[pos] = islandId;
+			sz[pos] = i;
+		}
 	}
 
 	public void reset(int N) {
 		allocate(N);
 
 		for (int i = 0; i < N; i++) {
-			elements.get(i).id = i;
-			elements.get(i).sz = 1;
+			id[i] = i;
+			sz[i] = 1;
 		}
 	}
 
 	public int getNumElements() {
-		return elements.size();
+		return numElements;
 	}
 
 	public boolean isRoot(int x) {
-		return (x == elements.get(x).id);
+		return (x == id[x]);
 	}
 
-	public Element getElement(int index) {
-		return elements.get(index);
+	/**
+	 * Returns island id of element at given index (only valid after {@link #sortIslands}).
+	 */
+	public int getElementId(int index) {
+		return id[index];
+	}
+
+	/**
+	 * Returns original index of element at given index (only valid after {@link #sortIslands}).
+	 */
+	public int getSortedElement(int index) {
+		return sz[index];
 	}
 
 	public void allocate(int N) {
-		MiscUtil.resize(elements, N, Element.class);
+		if (id.length < N) {
+			id = new int[N];
+			sz = new int[N];
+			tmpId = new int[N];
+		}
+		numElements = N;
 	}
 
 	public void free() {
-		elements.clear();
+		id = new int[0];
+		sz = new int[0];
+		tmpId = new int[0];
+		counts = new int[0];
+		numElements = 0;
 	}
 
 	public int find(int p, int q) {
@@ -100,50 +131,49 @@ public class UnionFind {
 			return;
 		}
 
-		//#ifndef USE_PATH_COMPRESSION
-		////weighted quick union, this keeps the 'trees' balanced, and keeps performance of unite O( log(n) )
-		//if (m_elements[i].m_sz < m_elements[j].m_sz)
-		//{ 
-		//	m_elements[i].m_id = j; m_elements[j].m_sz += m_elements[i].m_sz; 
-		//}
-		//else 
-		//{ 
-		//	m_elements[j].m_id = i; m_elements[i].m_sz += m_elements[j].m_sz; 
-		//}
-		//#else
-		elements.get(i).id = j;
-		elements.get(j).sz += elements.get(i).sz;
-		//#endif //USE_PATH_COMPRESSION
+		// weighted quick union, this keeps the 'trees' balanced, and keeps performance of unite O( log(n) )
+		if (sz[i] < sz[j]) {
+			id[i] = j;
+			sz[j] += sz[i];
+		}
+		else {
+			id[j] = i;
+			sz[i] += sz[j];
+		}
 	}
 
 	public int find(int x) {
 		//assert(x < m_N);
 		//assert(x >= 0);
 
-		while (x != elements.get(x).id) {
+		int[] id = this.id;
+		while (x != id[x]) {
 			// not really a reason not to use path compression, and it flattens the trees/improves find performance dramatically
 
 			//#ifdef USE_PATH_COMPRESSION
-			elements.get(x).id = elements.get(elements.get(x).id).id;
+			id[x] = id[id[x]];
 			//#endif //
-			x = elements.get(x).id;
+			x = id[x];
 			//assert(x < m_N);
 			//assert(x >= 0);
 		}
 		return x;
 	}
 	
-	////////////////////////////////////////////////////////////////////////////
-	
-	public static class Element {
-		public int id;
-		public int sz;
-	}
-	
-	private static final Comparator<Element> elementComparator = new Comparator<Element>() {
-		public int compare(Element o1, Element o2) {
-			return o1.id < o2.id? -1 : +1;
+	/**
+	 * Returns cleared temporary array of at least n+1 counters, used for counting sort by island id.
+	 * Content is valid until next call.
+	 */
+	int[] getCounts(int n) {
+		if (counts.length < n + 1) {
+			counts = new int[Math.max(n + 1, counts.length * 2)];
 		}
-	};
+		else {
+			for (int i = 0; i <= n; i++) {
+				counts[i] = 0;
+			}
+		}
+		return counts;
+	}
 	
 }
@@ -24,7 +24,6 @@
 package javabullet.collision.narrowphase;
 
 import javabullet.BulletGlobals;
-import javabullet.BulletPool;
 import javabullet.BulletStack;
 import javabullet.ObjectPool;
 import javabullet.collision.narrowphase.DiscreteCollisionDetectorInterface.ClosestPointInput;
@@ -41,8 +40,7 @@ import javax.vecmath.Vector3f;
  */
 public class GjkConvexCast implements ConvexCast {
 
-	protected final BulletStack stack = BulletStack.get();
-	protected final ObjectPool<ClosestPointInput> pointInputsPool = BulletPool.get(ClosestPointInput.class);
+	protected final ObjectPool<ClosestPointInput> pointInputsPool = new ObjectPool<ClosestPointInput>(ClosestPointInput.class);
 	
 	private SimplexSolverInterface simplexSolver;
 	private ConvexShape convexA;
@@ -55,6 +53,8 @@ public class GjkConvexCast implements ConvexCast {
 	}
 	
 	public boolean calcTimeOfImpact(Transform fromA, Transform toA, Transform fromB, Transform toB, CastResult result) {
+		BulletStack stack = BulletStack.get();
+
 		stack.pushCommonMath();
 		try {
 			MinkowskiSumShape combi = new MinkowskiSumShape(convexA, convexB);
@@ -113,7 +113,7 @@ public class GjkConvexCast implements ConvexCast {
 				GjkPairDetector gjk = new GjkPairDetector(raySphere, convex, simplexSolver, penSolverPtr);
 
 				ClosestPointInput input = pointInputsPool.get();
-				input.init(gl);
+				input.init();
 				
 				input.transformA.set(sphereTr);
 				input.transformB.set(identityTrans);
@@ -162,7 +162,7 @@ public class GjkConvexCast implements ConvexCast {
 					GjkPairDetector gjk = new GjkPairDetector(raySphere, convex, simplexSolver, penSolverPtr);
 					
 					ClosestPointInput input = pointInputsPool.get();
-					input.init(gl);
+					input.init();
 					
 					input.transformA.set(sphereTr);
 					input.transformB.set(identityTrans);
@@ -51,22 +51,6 @@ Nov.2006
  */
 public class GjkEpaSolver {
 	
-	protected static ObjectStackList<Mkv> stackMkv = new ObjectStackList<Mkv>(Mkv.class);
-	protected static ObjectStackList<He> stackHe = new ObjectStackList<He>(He.class);
-	protected static ObjectStackList<Face> stackFace = new ObjectStackList<Face>(Face.class);
-	
-	protected static void pushStack() {
-		stackMkv.push();
-		stackHe.push();
-		stackFace.push();
-	}
-	
-	protected static void popStack() {
-		stackMkv.pop();
-		stackHe.pop();
-		stackFace.pop();
-	}
-
 	public enum ResultsStatus {
 		Separated,		/* Shapes doesnt penetrate												*/ 
 		Penetrating,	/* Shapes are penetrating												*/ 
@@ -100,7 +84,23 @@ public class GjkEpaSolver {
 	////////////////////////////////////////////////////////////////////////////
 	
 	protected static class GJK {
-		protected final BulletStack stack = BulletStack.get();
+		
+		// JAVA NOTE: stacks are owned by GJK instance, which is per-thread (see collide)
+		protected final ObjectStackList<Mkv> stackMkv = new ObjectStackList<Mkv>(Mkv.class);
+		protected final ObjectStackList<He> stackHe = new ObjectStackList<He>(He.class);
+		protected final ObjectStackList<Face> stackFace = new ObjectStackList<Face>(Face.class);
+
+		protected void pushStack() {
+			stackMkv.push();
+			stackHe.push();
+			stackFace.push();
+		}
+
+		protected void popStack() {
+			stackMkv.pop();
+			stackHe.pop();
+			stackFace.pop();
+		}
 		
 		public static class Mkv {
 			public final Vector3f w = new Vector3f(); // Minkowski vertice
@@ -178,6 +178,8 @@ public class GjkEpaSolver {
 		}
 
 		public Vector3f LocalSupport(Vector3f d, /*unsigned*/ int i) {
+			BulletStack stack = BulletStack.get();
+
 			stack.vectors.push();
 			try {
 				Vector3f tmp = stack.vectors.get();
@@ -195,6 +197,8 @@ public class GjkEpaSolver {
 		}
 		
 		public void Support(Vector3f d, Mkv v) {
+			BulletStack stack = BulletStack.get();
+
 			stack.vectors.push();
 			try {
 				v.r.set(d);
@@ -237,6 +241,8 @@ public class GjkEpaSolver {
 		}
 
 		public boolean SolveSimplex2(Vector3f ao, Vector3f ab) {
+			BulletStack stack = BulletStack.get();
+
 			stack.vectors.push();
 			try {
 				if (ab.dot(ao) >= 0) {
@@ -263,6 +269,8 @@ public class GjkEpaSolver {
 
 		public boolean SolveSimplex3(Vector3f ao, Vector3f ab, Vector3f ac)
 		{
+			BulletStack stack = BulletStack.get();
+
 			stack.vectors.push();
 			try {
 				Vector3f tmp = stack.vectors.get();
@@ -275,6 +283,8 @@ public class GjkEpaSolver {
 		}
 		
 		public boolean SolveSimplex3a(Vector3f ao, Vector3f ab, Vector3f ac, Vector3f cabc) {
+			BulletStack stack = BulletStack.get();
+
 			stack.vectors.push();
 			try {
 				// TODO: optimize
@@ -323,6 +333,8 @@ public class GjkEpaSolver {
 		}
 		
 		public boolean SolveSimplex4(Vector3f ao, Vector3f ab, Vector3f ac, Vector3f ad) {
+			BulletStack stack = BulletStack.get();
+
 			stack.vectors.push();
 			try {
 				// TODO: optimize
@@ -370,6 +382,8 @@ public class GjkEpaSolver {
 		}
 		
 		public boolean SearchOrigin() {
+			BulletStack stack = BulletStack.get();
+
 			stack.vectors.push();
 			try {
 				return SearchOrigin(stack.vectors.get(1f, 0f, 0f));
@@ -380,6 +394,8 @@ public class GjkEpaSolver {
 		}
 		
 		public boolean SearchOrigin(Vector3f initray) {
+			BulletStack stack = BulletStack.get();
+
 			stack.vectors.push();
 			try {
 				Vector3f tmp1 = stack.vectors.get();
@@ -442,6 +458,8 @@ public class GjkEpaSolver {
 		}
 		
 		public boolean EncloseOrigin() {
+			BulletStack stack = BulletStack.get();
+
 			stack.pushCommonMath();
 			stack.quats.push();
 			try {
@@ -518,7 +536,6 @@ public class GjkEpaSolver {
 	////////////////////////////////////////////////////////////////////////////
 	
 	protected static class EPA {
-		protected final BulletStack stack = BulletStack.get();
 		
 		public static class Face {
 			public final GJK.Mkv[] v = new GJK.Mkv[3];
@@ -556,6 +573,8 @@ public class GjkEpaSolver {
 		}
 		
 		public Vector3f GetCoordinates(Face face) {
+			BulletStack stack = BulletStack.get();
+
 			stack.vectors.push();
 			try {
 				Vector3f tmp = stack.vectors.get();
@@ -613,6 +632,8 @@ public class GjkEpaSolver {
 		}
 
 		public boolean Set(Face f, GJK.Mkv a, GJK.Mkv b, GJK.Mkv c) {
+			BulletStack stack = BulletStack.get();
+
 			stack.vectors.push();
 			try {
 				Vector3f tmp1 = stack.vectors.get();
@@ -649,7 +670,7 @@ public class GjkEpaSolver {
 		
 		public Face NewFace(GJK.Mkv a, GJK.Mkv b, GJK.Mkv c) {
 			//Face pf = new Face();
-			Face pf = stackFace.get();
+			Face pf = gjk.stackFace.get();
 			if (Set(pf, a, b, c)) {
 				if (root != null) {
 					root.prev = pf;
@@ -692,7 +713,7 @@ public class GjkEpaSolver {
 
 		public Mkv Support(Vector3f w) {
 			//Mkv v = new Mkv();
-			Mkv v = stackMkv.get();
+			Mkv v = gjk.stackMkv.get();
 			gjk.Support(w, v);
 			return v;
 		}
@@ -737,8 +758,10 @@ public class GjkEpaSolver {
 		private static final int[][] hexahedron_eidx/*[9][4]*/ = new int[][] {{0,0,4,0},{0,1,2,1},{0,2,1,2},{1,1,5,2},{1,0,2,0},{2,2,3,2},{3,1,5,0},{3,0,4,2},{5,1,4,1}};
 		
 		public float EvaluatePD(float accuracy) {
+			BulletStack stack = BulletStack.get();
+
 			stack.vectors.push();
-			pushStack();
+			gjk.pushStack();
 			try {
 				Vector3f tmp = stack.vectors.get();
 
@@ -881,7 +904,7 @@ public class GjkEpaSolver {
 			}
 			finally {
 				stack.vectors.pop();
-				popStack();
+				gjk.popStack();
 			}
 		}
 		
@@ -889,7 +912,12 @@ public class GjkEpaSolver {
 	
 	////////////////////////////////////////////////////////////////////////////
 	
-	private static GJK gjk = new GJK();
+	private static final ThreadLocal<GJK> threadLocal = new ThreadLocal<GJK>() {
+		@Override
+		protected GJK initialValue() {
+			return new GJK();
+		}
+	};
 	
 	public static boolean collide(ConvexShape shape0, Transform wtrs0,
 			ConvexShape shape1, Transform wtrs1,
@@ -906,6 +934,7 @@ public class GjkEpaSolver {
 		results.epa_iterations = 0;
 		results.gjk_iterations = 0;
 		/* Use GJK to locate origin		*/
+		GJK gjk = threadLocal.get();
 		gjk.init(/*stackAlloc,*/
 				wtrs0.basis, wtrs0.origin, shape0,
 				wtrs1.basis, wtrs1.origin, shape1,
@@ -25,6 +25,7 @@ package javabullet.collision.narrowphase;
 
 import javabullet.BulletGlobals;
 import javabullet.BulletStack;
+import javabullet.BulletStats;
 import javabullet.collision.shapes.ConvexShape;
 import javabullet.linearmath.IDebugDraw;
 import javabullet.linearmath.MatrixUtil;
@@ -38,8 +39,6 @@ import javax.vecmath.Vector3f;
  */
 public class GjkPairDetector implements DiscreteCollisionDetectorInterface {
 
-	protected final BulletStack stack = BulletStack.get();
-	
 	// must be above the machine epsilon
 	private static final float REL_ERROR2 = 1.0e-6f;
 	
@@ -57,13 +56,22 @@ public class GjkPairDetector implements DiscreteCollisionDetectorInterface {
 	public int catchDegeneracies = 1;
 	
 	public GjkPairDetector(ConvexShape objectA, ConvexShape objectB, SimplexSolverInterface simplexSolver, ConvexPenetrationDepthSolver penetrationDepthSolver) {
+		init(objectA, objectB, simplexSolver, penetrationDepthSolver);
+	}
+	
+	public void init(ConvexShape objectA, ConvexShape objectB, SimplexSolverInterface simplexSolver, ConvexPenetrationDepthSolver penetrationDepthSolver) {
+		this.cachedSeparatingAxis.set(0f, 0f, 1f);
 		this.penetrationDepthSolver = penetrationDepthSolver;
 		this.simplexSolver = simplexSolver;
 		this.minkowskiA = objectA;
 		this.minkowskiB = objectB;
+		this.ignoreMargin = false;
+		this.lastUsedMethod = -1;
 	}
 	
 	public void getClosestPoints(ClosestPointInput input, Result output, IDebugDraw debugDraw) {
+		BulletStack stack = BulletStack.get();
+
 		stack.pushCommonMath();
 		try {
 			Vector3f tmp = stack.vectors.get();
@@ -82,7 +90,7 @@ public class GjkPairDetector implements DiscreteCollisionDetectorInterface {
 			float marginA = minkowskiA.getMargin();
 			float marginB = minkowskiB.getMargin();
 
-			BulletGlobals.gNumGjkChecks++;
+			BulletStats.addGjkCheck();
 
 			// for CCD we don't use margins
 			if (ignoreMargin) {
@@ -249,7 +257,7 @@ public class GjkPairDetector implements DiscreteCollisionDetectorInterface {
 						// Penetration depth case.
 						Vector3f tmpPointOnA = stack.vectors.get(), tmpPointOnB = stack.vectors.get();
 
-						BulletGlobals.gNumDeepPenetrationChecks++;
+						BulletStats.addDeepPenetrationCheck();
 
 						boolean isValid2 = penetrationDepthSolver.calcPenDepth(
 								simplexSolver,
@@ -46,6 +46,13 @@ public class ManifoldPoint {
 	
 	public Object userPersistentData;
 	public int lifeTime; //lifetime of the contactpoint in frames
+	
+	// impulses from last solver run, used for warm starting
+	public float appliedImpulse;
+	public float appliedImpulseLateral1;
+	public float appliedImpulseLateral2;
+	public final Vector3f lateralFrictionDir1 = new Vector3f();
+	public final Vector3f lateralFrictionDir2 = new Vector3f();
 
 	public ManifoldPoint() {
 	}
@@ -59,6 +66,15 @@ public class ManifoldPoint {
 		this.localPointB.set(pointB);
 		this.normalWorldOnB.set(normal);
 		this.distance1 = distance;
+		this.combinedFriction = 0f;
+		this.combinedRestitution = 0f;
+		this.userPersistentData = null;
+		this.lifeTime = 0;
+		this.appliedImpulse = 0f;
+		this.appliedImpulseLateral1 = 0f;
+		this.appliedImpulseLateral2 = 0f;
+		this.lateralFrictionDir1.set(0f, 0f, 0f);
+		this.lateralFrictionDir2.set(0f, 0f, 0f);
 	}
 
 	public float getDistance() {
@@ -80,8 +96,17 @@ public class ManifoldPoint {
 		combinedRestitution = p.combinedRestitution;
 		userPersistentData = p.userPersistentData;
 		lifeTime = p.lifeTime;
+		appliedImpulse = p.appliedImpulse;
+		appliedImpulseLateral1 = p.appliedImpulseLateral1;
+		appliedImpulseLateral2 = p.appliedImpulseLateral2;
+		lateralFrictionDir1.set(p.lateralFrictionDir1);
+		lateralFrictionDir2.set(p.lateralFrictionDir2);
 	}
 	
+	public float getAppliedImpulse() {
+		return appliedImpulse;
+	}
+
 	public Vector3f getPositionWorldOnA() {
 		return positionWorldOnA;
 		//return m_positionWorldOnB + m_normalWorldOnB * m_distance1;
@@ -44,8 +44,6 @@ import javax.vecmath.Vector4f;
  */
 public class PersistentManifold {
 
-	protected final BulletStack stack = BulletStack.get();
-	
 	public static final int MANIFOLD_CACHE_SIZE = 4;
 	
 	private final ManifoldPoint[] pointCache = new ManifoldPoint[MANIFOLD_CACHE_SIZE];
@@ -77,6 +75,8 @@ public class PersistentManifold {
 
 	/// sort cached points so most isolated points come first
 	private int sortCachedPoints(ManifoldPoint pt) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		stack.vectors4.push();
 		try {
@@ -213,6 +213,8 @@ public class PersistentManifold {
 	}
 
 	public int getCacheEntry(ManifoldPoint newPoint) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			float shortestDist = getContactBreakingThreshold() * getContactBreakingThreshold();
@@ -257,6 +259,14 @@ public class PersistentManifold {
 			cachedPoints++;
 		}
 		replaceContactPoint(newPoint, insertIndex);
+		
+		// new point doesn't inherit impulses of replaced point:
+		ManifoldPoint pt = pointCache[insertIndex];
+		pt.appliedImpulse = newPoint.appliedImpulse;
+		pt.appliedImpulseLateral1 = newPoint.appliedImpulseLateral1;
+		pt.appliedImpulseLateral2 = newPoint.appliedImpulseLateral2;
+		pt.lateralFrictionDir1.set(newPoint.lateralFrictionDir1);
+		pt.lateralFrictionDir2.set(newPoint.lateralFrictionDir2);
 	}
 
 	public void removeContactPoint(int index) {
@@ -284,11 +294,30 @@ public class PersistentManifold {
 		int lifeTime = pointCache[insertIndex].getLifeTime();
 		assert (lifeTime >= 0);
 		Object cache = pointCache[insertIndex].userPersistentData;
+		float appliedImpulse = pointCache[insertIndex].appliedImpulse;
+		float appliedImpulseLateral1 = pointCache[insertIndex].appliedImpulseLateral1;
+		float appliedImpulseLateral2 = pointCache[insertIndex].appliedImpulseLateral2;
+
+		BulletStack stack = BulletStack.get();
+		stack.vectors.push();
+		try {
+			Vector3f lateralFrictionDir1 = stack.vectors.get(pointCache[insertIndex].lateralFrictionDir1);
+			Vector3f lateralFrictionDir2 = stack.vectors.get(pointCache[insertIndex].lateralFrictionDir2);
 
-		pointCache[insertIndex].set(newPoint);
+			pointCache[insertIndex].set(newPoint);
+
+			pointCache[insertIndex].lateralFrictionDir1.set(lateralFrictionDir1);
+			pointCache[insertIndex].lateralFrictionDir2.set(lateralFrictionDir2);
+		}
+		finally {
+			stack.vectors.pop();
+		}
 
 		pointCache[insertIndex].userPersistentData = cache;
 		pointCache[insertIndex].lifeTime = lifeTime;
+		pointCache[insertIndex].appliedImpulse = appliedImpulse;
+		pointCache[insertIndex].appliedImpulseLateral1 = appliedImpulseLateral1;
+		pointCache[insertIndex].appliedImpulseLateral2 = appliedImpulseLateral2;
 //#else
 //		clearUserCache(m_pointCache[insertIndex]);
 //		m_pointCache[insertIndex] = newPoint;
@@ -301,6 +330,8 @@ public class PersistentManifold {
 
 	/// calculated new worldspace coordinates and depth, and reject points that exceed the collision margin
 	public void refreshContactPoints(Transform trA, Transform trB) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			Vector3f tmp = stack.vectors.get();
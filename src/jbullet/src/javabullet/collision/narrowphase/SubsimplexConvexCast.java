@@ -40,8 +40,6 @@ import javax.vecmath.Vector3f;
  */
 public class SubsimplexConvexCast implements ConvexCast {
 
-	protected final BulletStack stack = BulletStack.get();
-	
 	// Typically the conservative advancement reaches solution in a few iterations, clip it to 32 for degenerate cases.
 	// See discussion about this here http://continuousphysics.com/Bullet/phpBB2/viewtopic.php?t=565
 	//#ifdef BT_USE_DOUBLE_PRECISION
@@ -63,6 +61,8 @@ public class SubsimplexConvexCast implements ConvexCast {
 	}
 	
 	public boolean calcTimeOfImpact(Transform fromA, Transform toA, Transform fromB, Transform toB, CastResult result) {
+		BulletStack stack = BulletStack.get();
+
 		stack.pushCommonMath();
 		try {
 			MinkowskiSumShape combi = new MinkowskiSumShape(convexA, convexB);
@@ -0,0 +1,96 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.collision.narrowphase;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * ThreadLocalSimplexSolver delegates to {@link VoronoiSimplexSolver} owned by
+ * the current thread. Simplex solver is shared by all collision algorithms
+ * created by one create function, this makes it safe to use from parallel
+ * narrowphase dispatch.
+ * 
+ * @author jezek2
+ */
+public class ThreadLocalSimplexSolver implements SimplexSolverInterface {
+
+	private final ThreadLocal<VoronoiSimplexSolver> threadLocal = new ThreadLocal<VoronoiSimplexSolver>() {
+		@Override
+		protected VoronoiSimplexSolver initialValue() {
+			return new VoronoiSimplexSolver();
+		}
+	};
+	
+	/**
+	 * Returns simplex solver for current thread.
+	 */
+	public VoronoiSimplexSolver get() {
+		return threadLocal.get();
+	}
+	
+	public void reset() {
+		threadLocal.get().reset();
+	}
+
+	public void addVertex(Vector3f w, Vector3f p, Vector3f q) {
+		threadLocal.get().addVertex(w, p, q);
+	}
+
+	public boolean closest(Vector3f v) {
+		return threadLocal.get().closest(v);
+	}
+
+	public float maxVertex() {
+		return threadLocal.get().maxVertex();
+	}
+
+	public boolean fullSimplex() {
+		return threadLocal.get().fullSimplex();
+	}
+
+	public int getSimplex(Vector3f[] pBuf, Vector3f[] qBuf, Vector3f[] yBuf) {
+		return threadLocal.get().getSimplex(pBuf, qBuf, yBuf);
+	}
+
+	public boolean inSimplex(Vector3f w) {
+		return threadLocal.get().inSimplex(w);
+	}
+
+	public void backup_closest(Vector3f v) {
+		threadLocal.get().backup_closest(v);
+	}
+
+	public boolean emptySimplex() {
+		return threadLocal.get().emptySimplex();
+	}
+
+	public void compute_points(Vector3f p1, Vector3f p2) {
+		threadLocal.get().compute_points(p1, p2);
+	}
+
+	public int numVertices() {
+		return threadLocal.get().numVertices();
+	}
+	
+}
@@ -34,8 +34,6 @@ import javax.vecmath.Vector3f;
  */
 public abstract class TriangleRaycastCallback implements TriangleCallback {
 	
-	protected final BulletStack stack = BulletStack.get();
-
 	public final Vector3f from = new Vector3f();
 	public final Vector3f to = new Vector3f();
 
@@ -48,6 +46,8 @@ public abstract class TriangleRaycastCallback implements TriangleCallback {
 	}
 	
 	public void processTriangle(Vector3f[] triangle, int partId, int triangleIndex) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			Vector3f vert0 = triangle[0];
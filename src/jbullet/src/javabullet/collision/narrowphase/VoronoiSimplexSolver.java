@@ -23,7 +23,6 @@
 
 package javabullet.collision.narrowphase;
 
-import javabullet.BulletPool;
 import javabullet.BulletStack;
 import javabullet.ObjectPool;
 import javabullet.linearmath.VectorUtil;
@@ -35,8 +34,7 @@ import javax.vecmath.Vector3f;
  */
 public class VoronoiSimplexSolver implements SimplexSolverInterface {
 
-	protected final BulletStack stack = BulletStack.get();
-	protected final ObjectPool<SubSimplexClosestResult> subsimplexResultsPool = BulletPool.get(SubSimplexClosestResult.class);
+	protected final ObjectPool<SubSimplexClosestResult> subsimplexResultsPool = new ObjectPool<SubSimplexClosestResult>(SubSimplexClosestResult.class);
 	
 	private static final int VORONOI_SIMPLEX_MAX_VERTS = 5;
 	
@@ -92,6 +90,8 @@ public class VoronoiSimplexSolver implements SimplexSolverInterface {
 	}
 	
 	public boolean updateClosestVectorAndPoints() {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			if (needsUpdate)
@@ -267,6 +267,8 @@ public class VoronoiSimplexSolver implements SimplexSolverInterface {
 	}
 
 	public boolean closestPtPointTriangle(Vector3f p, Vector3f a, Vector3f b, Vector3f c, SubSimplexClosestResult result) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			result.usedVertices.reset();
@@ -390,6 +392,8 @@ public class VoronoiSimplexSolver implements SimplexSolverInterface {
 	/// Test if point p and d lie on opposite sides of plane through abc
 	public /*static*/ int pointOutsideOfPlane(Vector3f p, Vector3f a, Vector3f b, Vector3f c, Vector3f d)
 	{
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			Vector3f tmp = stack.vectors.get();
@@ -429,6 +433,8 @@ public class VoronoiSimplexSolver implements SimplexSolverInterface {
 	}
 	
 	public boolean closestPtPointTetrahedron(Vector3f p, Vector3f a, Vector3f b, Vector3f c, Vector3f d, SubSimplexClosestResult finalResult) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		SubSimplexClosestResult tempResult = subsimplexResultsPool.get();
 		tempResult.reset();
@@ -24,8 +24,10 @@
 package javabullet.collision.shapes;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
 import javabullet.BulletGlobals;
 import javabullet.BulletPool;
+import javabullet.BulletStack;
 import javabullet.ObjectPool;
 import javabullet.collision.broadphase.BroadphaseNativeType;
 import javabullet.collision.narrowphase.TriangleConvexcastCallback;
@@ -44,8 +46,7 @@ public class BvhTriangleMeshShape extends TriangleMeshShape {
 	private OptimizedBvh bvh;
 	private boolean useQuantizedAabbCompression;
 	private boolean ownsBvh;
-	
-	private ObjectPool<MyNodeOverlapCallback> myNodeCallbacks = BulletPool.get(MyNodeOverlapCallback.class);
+	private TreeBuildMode buildMode = TreeBuildMode.BUILD_MEAN_SPLIT;
 	
 	public BvhTriangleMeshShape() {
 		super(null);
@@ -69,14 +70,7 @@ public class BvhTriangleMeshShape extends TriangleMeshShape {
 		Vector3f bvhAabbMin = new Vector3f(), bvhAabbMax = new Vector3f();
 		meshInterface.calculateAabbBruteForce(bvhAabbMin, bvhAabbMax);
 
-		if (buildBvh) {
-			bvh = new OptimizedBvh();
-			bvh.build(meshInterface, useQuantizedAabbCompression, bvhAabbMin, bvhAabbMax);
-			ownsBvh = true;
-		}
-
-		// JAVA NOTE: moved from TriangleMeshShape
-		recalcLocalAabb();
+		init(bvhAabbMin, bvhAabbMax, buildBvh, null, 1);
 		//#endif //DISABLE_BVH
 	}
 
@@ -100,16 +94,61 @@ public class BvhTriangleMeshShape extends TriangleMeshShape {
 		// construct bvh from meshInterface
 		//#ifndef DISABLE_BVH
 
+		init(bvhAabbMin, bvhAabbMax, buildBvh, null, 1);
+		//#endif //DISABLE_BVH
+	}
+	
+	/**
+	 * Builds bvh using given algorithm. Subtrees of {@link TreeBuildMode#BUILD_BINNED_SAH}
+	 * tree are built concurrently when executor is provided.
+	 * 
+	 * @param executor executor service, or null for serial build
+	 * @param parallelism number of threads including calling thread
+	 */
+	public BvhTriangleMeshShape(StridingMeshInterface meshInterface, boolean useQuantizedAabbCompression, TreeBuildMode buildMode, ExecutorService executor, int parallelism) {
+		super(meshInterface);
+		this.bvh = null;
+		this.useQuantizedAabbCompression = useQuantizedAabbCompression;
+		this.ownsBvh = false;
+		this.buildMode = buildMode;
+
+		Vector3f bvhAabbMin = new Vector3f(), bvhAabbMax = new Vector3f();
+		meshInterface.calculateAabbBruteForce(bvhAabbMin, bvhAabbMax);
+
+		init(bvhAabbMin, bvhAabbMax, true, executor, parallelism);
+	}
+
+	/**
+	 * Builds bvh using given algorithm, optionally with a larger bvh aabb used for quantization.
+	 * 
+	 * @param executor executor service, or null for serial build
+	 * @param parallelism number of threads including calling thread
+	 */
+	public BvhTriangleMeshShape(StridingMeshInterface meshInterface, boolean useQuantizedAabbCompression, Vector3f bvhAabbMin, Vector3f bvhAabbMax, TreeBuildMode buildMode, ExecutorService executor, int parallelism) {
+		super(meshInterface);
+		this.bvh = null;
+		this.useQuantizedAabbCompression = useQuantizedAabbCompression;
+		this.ownsBvh = false;
+		this.buildMode = buildMode;
+
+		init(bvhAabbMin, bvhAabbMax, true, executor, parallelism);
+	}
+	
+	private void init(Vector3f bvhAabbMin, Vector3f bvhAabbMax, boolean buildBvh, ExecutorService executor, int parallelism) {
 		if (buildBvh) {
 			bvh = new OptimizedBvh();
-
-			bvh.build(meshInterface, useQuantizedAabbCompression, bvhAabbMin, bvhAabbMax);
+			bvh.setBuildMode(buildMode);
+			bvh.build(meshInterface, useQuantizedAabbCompression, bvhAabbMin, bvhAabbMax, executor, parallelism);
 			ownsBvh = true;
-		}
 
-		// JAVA NOTE: moved from TriangleMeshShape
-		recalcLocalAabb();
-		//#endif //DISABLE_BVH
+			// JAVA NOTE: moved from TriangleMeshShape
+			recalcLocalAabb();
+		}
+		else {
+			// bvh is provided later by setOptimizedBvh, local aabb can't be
+			// computed through tree traversal yet:
+			meshInterface.calculateAabbBruteForce(localAabbMin, localAabbMax);
+		}
 	}
 	
 	@Override
@@ -118,6 +157,7 @@ public class BvhTriangleMeshShape extends TriangleMeshShape {
 	}
 
 	public void performRaycast(TriangleRaycastCallback callback, Vector3f raySource, Vector3f rayTarget) {
+		ObjectPool<MyNodeOverlapCallback> myNodeCallbacks = BulletPool.get(MyNodeOverlapCallback.class);
 		MyNodeOverlapCallback myNodeCallback = myNodeCallbacks.get();
 		myNodeCallback.init(callback, meshInterface);
 
@@ -125,8 +165,23 @@ public class BvhTriangleMeshShape extends TriangleMeshShape {
 		
 		myNodeCallbacks.release(myNodeCallback);
 	}
-	
+
+	/**
+	 * Performs up to 4 raycasts at once, tree is traversed only once for all rays.
+	 * Each ray reports hits to its own callback. Rays should be coherent.
+	 */
+	public void performRaycastPacket(TriangleRaycastCallback[] callbacks, Vector3f[] raySources, Vector3f[] rayTargets, int numRays) {
+		ObjectPool<MyPacketNodeOverlapCallback> myNodeCallbacks = BulletPool.get(MyPacketNodeOverlapCallback.class);
+		MyPacketNodeOverlapCallback myNodeCallback = myNodeCallbacks.get();
+		myNodeCallback.init(callbacks, meshInterface);
+
+		bvh.reportRayPacketOverlappingNodex(myNodeCallback, raySources, rayTargets, numRays);
+
+		myNodeCallbacks.release(myNodeCallback);
+	}
+
 	public void performConvexcast(TriangleConvexcastCallback callback, Vector3f raySource, Vector3f rayTarget, Vector3f aabbMin, Vector3f aabbMax) {
+		ObjectPool<MyNodeOverlapCallback> myNodeCallbacks = BulletPool.get(MyNodeOverlapCallback.class);
 		MyNodeOverlapCallback myNodeCallback = myNodeCallbacks.get();
 		myNodeCallback.init(callback, meshInterface);
 
@@ -146,6 +201,7 @@ public class BvhTriangleMeshShape extends TriangleMeshShape {
 		//#else
 
 		// first get all the nodes
+		ObjectPool<MyNodeOverlapCallback> myNodeCallbacks = BulletPool.get(MyNodeOverlapCallback.class);
 		MyNodeOverlapCallback myNodeCallback = myNodeCallbacks.get();
 		myNodeCallback.init(callback, meshInterface);
 
@@ -178,6 +234,8 @@ public class BvhTriangleMeshShape extends TriangleMeshShape {
 	
 	@Override
 	public void setLocalScaling(Vector3f scaling) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			Vector3f tmp = stack.vectors.get();
@@ -194,6 +252,7 @@ public class BvhTriangleMeshShape extends TriangleMeshShape {
 				*/
 				///m_localAabbMin/m_localAabbMax is already re-calculated in btTriangleMeshShape. We could just scale aabb, but this needs some more work
 				bvh = new OptimizedBvh();
+				bvh.setBuildMode(buildMode);
 				// rebuild the bvh...
 				bvh.build(meshInterface, useQuantizedAabbCompression, localAabbMin, localAabbMax);
 
@@ -214,6 +273,9 @@ public class BvhTriangleMeshShape extends TriangleMeshShape {
 
 		this.bvh = bvh;
 		ownsBvh = false;
+		buildMode = bvh.getBuildMode();
+
+		recalcLocalAabb();
 	}
 
 	public boolean usesQuantizedAabbCompression() {
@@ -222,7 +284,7 @@ public class BvhTriangleMeshShape extends TriangleMeshShape {
 	
 	////////////////////////////////////////////////////////////////////////////
 	
-	protected static class MyNodeOverlapCallback implements NodeOverlapCallback {
+	protected static class MyNodeOverlapCallback implements RayNodeOverlapCallback {
 		public StridingMeshInterface meshInterface;
 		public TriangleCallback callback;
 
@@ -238,39 +300,88 @@ public class BvhTriangleMeshShape extends TriangleMeshShape {
 		}
 
 		public void processNode(int nodeSubPart, int nodeTriangleIndex) {
-			meshInterface.getLockedReadOnlyVertexIndexBase(data, nodeSubPart);
-
-			//int* gfxbase = (int*)(indexbase+nodeTriangleIndex*indexstride);
-			ByteBuffer gfxbase_ptr = data.indexbase;
-			int gfxbase_index = (nodeTriangleIndex * data.indexstride);
-			assert (data.indicestype == ScalarType.PHY_INTEGER || data.indicestype == ScalarType.PHY_SHORT);
-
-			Vector3f meshScaling = meshInterface.getScaling();
-			for (int j = 2; j >= 0; j--) {
-				int graphicsindex;
-				if (data.indicestype == ScalarType.PHY_SHORT) {
-					graphicsindex = gfxbase_ptr.getShort(gfxbase_index + j * 2) & 0xFFFF;
-				}
-				else {
-					graphicsindex = gfxbase_ptr.getInt(gfxbase_index + j * 4);
+			getTriangle(meshInterface, data, nodeSubPart, nodeTriangleIndex, triangle);
+
+			/* Perform ray vs. triangle collision here */
+			callback.processTriangle(triangle, nodeSubPart, nodeTriangleIndex);
+		}
+
+		public float getHitFraction() {
+			if (callback instanceof TriangleRaycastCallback) {
+				return ((TriangleRaycastCallback)callback).hitFraction;
+			}
+			if (callback instanceof TriangleConvexcastCallback) {
+				return ((TriangleConvexcastCallback)callback).hitFraction;
+			}
+			return 1f;
+		}
+	}
+
+	protected static class MyPacketNodeOverlapCallback implements RayPacketNodeOverlapCallback {
+		public StridingMeshInterface meshInterface;
+		public TriangleRaycastCallback[] callbacks;
+
+		private Vector3f[] triangle/*[3]*/ = new Vector3f[] { new Vector3f(), new Vector3f(), new Vector3f() };
+		private VertexData data = new VertexData();
+
+		public MyPacketNodeOverlapCallback() {
+		}
+
+		public void init(TriangleRaycastCallback[] callbacks, StridingMeshInterface meshInterface) {
+			this.meshInterface = meshInterface;
+			this.callbacks = callbacks;
+		}
+
+		public void processNode(int nodeSubPart, int nodeTriangleIndex, int rayMask) {
+			// triangle is fetched once for all rays overlapping the node
+			getTriangle(meshInterface, data, nodeSubPart, nodeTriangleIndex, triangle);
+
+			for (int i=0; i<callbacks.length; i++) {
+				if ((rayMask & (1 << i)) != 0) {
+					callbacks[i].processTriangle(triangle, nodeSubPart, nodeTriangleIndex);
 				}
+			}
+		}
 
-				//float* graphicsbase = (float*)(vertexbase+graphicsindex*stride);
-				ByteBuffer graphicsbase_ptr = data.vertexbase;
-				int graphicsbase_index = graphicsindex * data.stride;
+		public float getHitFraction(int ray) {
+			return callbacks[ray].hitFraction;
+		}
+	}
 
-				triangle[j].set(
-						graphicsbase_ptr.getFloat(graphicsbase_index + 4 * 0) * meshScaling.x,
-						graphicsbase_ptr.getFloat(graphicsbase_index + 4 * 1) * meshScaling.y,
-						graphicsbase_ptr.getFloat(graphicsbase_index + 4 * 2) * meshScaling.z);
+	/**
+	 * Reads triangle vertices (scaled by mesh scaling) from mesh interface.
+	 */
+	private static void getTriangle(StridingMeshInterface meshInterface, VertexData data, int nodeSubPart, int nodeTriangleIndex, Vector3f[] triangle) {
+		meshInterface.getLockedReadOnlyVertexIndexBase(data, nodeSubPart);
+
+		//int* gfxbase = (int*)(indexbase+nodeTriangleIndex*indexstride);
+		ByteBuffer gfxbase_ptr = data.indexbase;
+		int gfxbase_index = (nodeTriangleIndex * data.indexstride);
+		assert (data.indicestype == ScalarType.PHY_INTEGER || data.indicestype == ScalarType.PHY_SHORT);
+
+		Vector3f meshScaling = meshInterface.getScaling();
+		for (int j = 2; j >= 0; j--) {
+			int graphicsindex;
+			if (data.indicestype == ScalarType.PHY_SHORT) {
+				graphicsindex = gfxbase_ptr.getShort(gfxbase_index + j * 2) & 0xFFFF;
+			}
+			else {
+				graphicsindex = gfxbase_ptr.getInt(gfxbase_index + j * 4);
 			}
 
-			/* Perform ray vs. triangle collision here */
-			callback.processTriangle(triangle, nodeSubPart, nodeTriangleIndex);
-			meshInterface.unLockReadOnlyVertexBase(nodeSubPart);
+			//float* graphicsbase = (float*)(vertexbase+graphicsindex*stride);
+			ByteBuffer graphicsbase_ptr = data.vertexbase;
+			int graphicsbase_index = graphicsindex * data.stride;
 
-			data.unref();
+			triangle[j].set(
+					graphicsbase_ptr.getFloat(graphicsbase_index + 4 * 0) * meshScaling.x,
+					graphicsbase_ptr.getFloat(graphicsbase_index + 4 * 1) * meshScaling.y,
+					graphicsbase_ptr.getFloat(graphicsbase_index + 4 * 2) * meshScaling.z);
 		}
+
+		meshInterface.unLockReadOnlyVertexBase(nodeSubPart);
+
+		data.unref();
 	}
 	
 }
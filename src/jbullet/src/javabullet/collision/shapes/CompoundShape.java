@@ -25,7 +25,9 @@ package javabullet.collision.shapes;
 
 import java.util.ArrayList;
 import java.util.List;
+import javabullet.BulletStack;
 import javabullet.collision.broadphase.BroadphaseNativeType;
+import javabullet.collision.broadphase.Dbvt;
 import javabullet.linearmath.MatrixUtil;
 import javabullet.linearmath.Transform;
 import javabullet.linearmath.VectorUtil;
@@ -34,7 +36,11 @@ import javax.vecmath.Vector3f;
 
 /**
  * CompoundShape allows to store multiple other CollisionShapes.
- * This allows for concave collision objects. This is more general then the Static Concave TriangleMeshShape.
+ * This allows for concave collision objects. This is more general then the Static Concave TriangleMeshShape.<p>
+ * 
+ * Child shapes are kept in dynamic AABB tree ({@link Dbvt}) in local space,
+ * so collisions and raycasts visit only the overlapping children. Leaf data
+ * is the index of the child (as {@link Integer}).
  * 
  * @author jezek2
  */
@@ -44,28 +50,39 @@ public class CompoundShape extends CollisionShape {
 	private final Vector3f localAabbMin = new Vector3f(1e30f, 1e30f, 1e30f);
 	private final Vector3f localAabbMax = new Vector3f(-1e30f, -1e30f, -1e30f);
 
-	private OptimizedBvh aabbTree = null;
+	private final Dbvt dynamicAabbTree = new Dbvt();
+	
+	/**
+	 * Increased on every change of children, to let collision algorithms
+	 * know when to recreate their per-child state.
+	 */
+	private int updateRevision = 1;
 
 	private float collisionMargin = 0f;
 	protected final Vector3f localScaling = new Vector3f(1f, 1f, 1f);
 
 	public void addChildShape(Transform localTransform, CollisionShape shape) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			//m_childTransforms.push_back(localTransform);
 			//m_childShapes.push_back(shape);
+			updateRevision++;
+			
 			CompoundShapeChild child = new CompoundShapeChild();
 			child.transform.set(localTransform);
 			child.childShape = shape;
 			child.childShapeType = shape.getShapeType();
 			child.childMargin = shape.getMargin();
 
-			children.add(child);
-
 			// extend the local aabbMin/aabbMax
 			Vector3f _localAabbMin = stack.vectors.get(), _localAabbMax = stack.vectors.get();
 			shape.getAabb(localTransform, _localAabbMin, _localAabbMax);
 
+			child.node = dynamicAabbTree.insert(_localAabbMin, _localAabbMax, Integer.valueOf(children.size()));
+			children.add(child);
+
 			// JAVA NOTE: rewritten
 	//		for (int i=0;i<3;i++)
 	//		{
@@ -86,6 +103,91 @@ public class CompoundShape extends CollisionShape {
 		}
 	}
 
+	/**
+	 * Removes child by swapping it with the last child, so the index of last
+	 * child changes. Local AABB is not recalculated, call {@link #recalculateLocalAabb}
+	 * after removing children.
+	 */
+	public void removeChildShapeByIndex(int childShapeIndex) {
+		updateRevision++;
+		
+		CompoundShapeChild child = children.get(childShapeIndex);
+		dynamicAabbTree.remove(child.node);
+		child.node = null;
+		
+		int lastIndex = children.size() - 1;
+		if (childShapeIndex != lastIndex) {
+			CompoundShapeChild last = children.get(lastIndex);
+			last.node.data = Integer.valueOf(childShapeIndex);
+			children.set(childShapeIndex, last);
+		}
+		children.remove(lastIndex);
+	}
+	
+	/**
+	 * Removes all children using given shape.
+	 */
+	public void removeChildShape(CollisionShape shape) {
+		// Find the children containing the shape specified, and remove those children.
+		// note: there might be multiple children using the same shape!
+		for (int i = children.size() - 1; i >= 0; i--) {
+			if (children.get(i).childShape == shape) {
+				removeChildShapeByIndex(i);
+			}
+		}
+		
+		recalculateLocalAabb();
+	}
+	
+	/**
+	 * Sets new local transform of child, the AABB tree leaf is updated in place.
+	 * Update revision is not changed, set of children stays the same so existing
+	 * child collision algorithms (and their contacts) remain valid.
+	 */
+	public void updateChildTransform(int childIndex, Transform newChildTransform) {
+		BulletStack stack = BulletStack.get();
+
+		stack.vectors.push();
+		try {
+			CompoundShapeChild child = children.get(childIndex);
+			child.transform.set(newChildTransform);
+			
+			Vector3f _localAabbMin = stack.vectors.get(), _localAabbMax = stack.vectors.get();
+			child.childShape.getAabb(newChildTransform, _localAabbMin, _localAabbMax);
+			dynamicAabbTree.update(child.node, _localAabbMin, _localAabbMax);
+			
+			recalculateLocalAabb();
+		}
+		finally {
+			stack.vectors.pop();
+		}
+	}
+	
+	/**
+	 * Recalculates the local AABB from children. Use this after changing
+	 * children shapes or transforms directly.
+	 */
+	public void recalculateLocalAabb() {
+		BulletStack stack = BulletStack.get();
+
+		stack.vectors.push();
+		try {
+			localAabbMin.set(1e30f, 1e30f, 1e30f);
+			localAabbMax.set(-1e30f, -1e30f, -1e30f);
+			
+			Vector3f _localAabbMin = stack.vectors.get(), _localAabbMax = stack.vectors.get();
+			for (int i = 0; i < children.size(); i++) {
+				CompoundShapeChild child = children.get(i);
+				child.childShape.getAabb(child.transform, _localAabbMin, _localAabbMax);
+				VectorUtil.setMin(localAabbMin, _localAabbMin);
+				VectorUtil.setMax(localAabbMax, _localAabbMax);
+			}
+		}
+		finally {
+			stack.vectors.pop();
+		}
+	}
+
 	public int getNumChildShapes() {
 		return children.size();
 	}
@@ -107,6 +209,8 @@ public class CompoundShape extends CollisionShape {
 	 */
 	@Override
 	public void getAabb(Transform trans, Vector3f aabbMin, Vector3f aabbMax) {
+		BulletStack stack = BulletStack.get();
+
 		stack.pushCommonMath();
 		try {
 			Vector3f localHalfExtents = stack.vectors.get();
@@ -157,6 +261,8 @@ public class CompoundShape extends CollisionShape {
 
 	@Override
 	public void calculateLocalInertia(float mass, Vector3f inertia) {
+		BulletStack stack = BulletStack.get();
+
 		stack.pushCommonMath();
 		try {
 			// approximation: take the inertia from the aabb for now
@@ -202,11 +308,19 @@ public class CompoundShape extends CollisionShape {
 		return "Compound";
 	}
 
-	// this is optional, but should make collision queries faster, by culling non-overlapping nodes
-	// void	createAabbTreeFromChildren();
+	/**
+	 * Returns AABB tree of children in local space.
+	 */
+	public Dbvt getDynamicAabbTree() {
+		return dynamicAabbTree;
+	}
 	
-	public OptimizedBvh getAabbTree() {
-		return aabbTree;
+	/**
+	 * Returns revision that changes whenever children are added or removed.
+	 * Transform updates don't change it, see {@link #updateChildTransform}.
+	 */
+	public int getUpdateRevision() {
+		return updateRevision;
 	}
 	
 }
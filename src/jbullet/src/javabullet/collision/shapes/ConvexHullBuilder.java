@@ -0,0 +1,454 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.collision.shapes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import javabullet.BulletGlobals;
+import javabullet.util.IntArrayList;
+import javax.vecmath.Vector3f;
+
+/**
+ * ConvexHullBuilder computes triangulated convex hull of point cloud using
+ * quickhull algorithm. The point farthest from the current hull is always
+ * added first, so the build can be stopped at given number of vertices to get
+ * simplified hull that keeps the most prominent features.<p>
+ *
+ * It's intended for offline use (building support graph of {@link ConvexHullShape},
+ * reducing point count of scanned assets), it allocates freely.
+ *
+ * @author jezek2
+ */
+public class ConvexHullBuilder {
+
+	private float[] px, py, pz;
+	private int numPoints;
+	private float epsilon;
+
+	private final List<Face> faces = new ArrayList<Face>();
+	private final HashMap<Long,Face> edges = new HashMap<Long,Face>();
+	private final IntArrayList vertices = new IntArrayList();
+	private boolean[] isVertex;
+
+	/**
+	 * Builds hull of given points with at most maxVertices vertices (use
+	 * Integer.MAX_VALUE for full hull). Returns false when the points are
+	 * degenerate (less than 4 points, or all points lie in one plane).
+	 */
+	public boolean build(List<Vector3f> points, int maxVertices) {
+		faces.clear();
+		edges.clear();
+		vertices.clear();
+
+		numPoints = points.size();
+		px = new float[numPoints];
+		py = new float[numPoints];
+		pz = new float[numPoints];
+		isVertex = new boolean[numPoints];
+
+		float maxX = 0f, maxY = 0f, maxZ = 0f;
+		for (int i=0; i<numPoints; i++) {
+			Vector3f p = points.get(i);
+			px[i] = p.x;
+			py[i] = p.y;
+			pz[i] = p.z;
+			maxX = Math.max(maxX, Math.abs(p.x));
+			maxY = Math.max(maxY, Math.abs(p.y));
+			maxZ = Math.max(maxZ, Math.abs(p.z));
+		}
+		epsilon = 3f * BulletGlobals.FLT_EPSILON * (maxX + maxY + maxZ);
+
+		if (numPoints < 4 || maxVertices < 4 || !createSimplex()) {
+			faces.clear();
+			edges.clear();
+			vertices.clear();
+			return false;
+		}
+
+		List<Face> visible = new ArrayList<Face>();
+		IntArrayList horizon = new IntArrayList();
+		IntArrayList orphans = new IntArrayList();
+		List<Face> newFaces = new ArrayList<Face>();
+
+		while (vertices.size() < maxVertices) {
+			// find the point farthest from the hull:
+			Face eyeFace = null;
+			for (int i=0; i<faces.size(); i++) {
+				Face f = faces.get(i);
+				if (f.farthest >= 0 && (eyeFace == null || f.farthestDist > eyeFace.farthestDist)) {
+					eyeFace = f;
+				}
+			}
+			if (eyeFace == null) {
+				break;
+			}
+
+			int eye = eyeFace.farthest;
+			findHorizon(eyeFace, eye, visible, horizon);
+
+			// remove visible faces, keeping their conflict points for reassignment:
+			orphans.clear();
+			for (int i=0; i<visible.size(); i++) {
+				Face f = visible.get(i);
+				for (int j=0; j<f.conflicts.size(); j++) {
+					int p = f.conflicts.get(j);
+					if (p != eye) {
+						orphans.add(p);
+					}
+				}
+				f.removed = true;
+				edges.remove(edgeKey(f.v0, f.v1));
+				edges.remove(edgeKey(f.v1, f.v2));
+				edges.remove(edgeKey(f.v2, f.v0));
+			}
+			for (int i=faces.size()-1; i>=0; i--) {
+				if (faces.get(i).removed) {
+					faces.set(i, faces.get(faces.size()-1));
+					faces.remove(faces.size()-1);
+				}
+			}
+
+			addVertex(eye);
+
+			newFaces.clear();
+			for (int i=0; i<horizon.size(); i+=2) {
+				newFaces.add(addFace(horizon.get(i), horizon.get(i+1), eye));
+			}
+
+			for (int i=0; i<orphans.size(); i++) {
+				assignConflict(orphans.get(i), newFaces);
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns indices of input points that are vertices of the hull.
+	 */
+	public IntArrayList getVertices() {
+		return vertices;
+	}
+
+	/**
+	 * Returns number of hull triangles.
+	 */
+	public int getNumTriangles() {
+		return faces.size();
+	}
+
+	/**
+	 * Returns index of input point for given vertex (0-2) of hull triangle.
+	 * Triangles are oriented counter-clockwise when viewed from outside.
+	 */
+	public int getTriangleVertex(int triangle, int vertex) {
+		Face f = faces.get(triangle);
+		switch (vertex) {
+			case 0: return f.v0;
+			case 1: return f.v1;
+			case 2: return f.v2;
+		}
+		throw new IndexOutOfBoundsException();
+	}
+
+	/**
+	 * Creates vertex adjacency from hull edges in compressed form: neighbours
+	 * of point i are stored in adjacency[offsets[i]] .. adjacency[offsets[i+1]-1].
+	 * Points that are not hull vertices have no neighbours. Returns the
+	 * adjacency array, offsets array must have length of number of points + 1.
+	 */
+	public int[] buildAdjacency(int[] offsets) {
+		assert (offsets.length == numPoints + 1);
+
+		// every hull edge is shared by two triangles, count each directed edge once:
+		int[] counts = new int[numPoints + 1];
+		for (int i=0; i<faces.size(); i++) {
+			Face f = faces.get(i);
+			counts[f.v0]++;
+			counts[f.v1]++;
+			counts[f.v2]++;
+		}
+		offsets[0] = 0;
+		for (int i=0; i<numPoints; i++) {
+			offsets[i+1] = offsets[i] + counts[i];
+		}
+
+		int[] adjacency = new int[offsets[numPoints]];
+		int[] pos = new int[numPoints];
+		for (int i=0; i<numPoints; i++) {
+			pos[i] = offsets[i];
+		}
+		for (int i=0; i<faces.size(); i++) {
+			Face f = faces.get(i);
+			adjacency[pos[f.v0]++] = f.v1;
+			adjacency[pos[f.v1]++] = f.v2;
+			adjacency[pos[f.v2]++] = f.v0;
+		}
+		return adjacency;
+	}
+
+	/**
+	 * Reduces point cloud to at most maxPoints points lying on its convex hull.
+	 * Points are picked greedily by distance from the hull built so far, so
+	 * the result is a good approximation of the original shape. Interior
+	 * points are always dropped. Degenerate (flat) point clouds are returned
+	 * unchanged.
+	 */
+	public static List<Vector3f> simplify(List<Vector3f> points, int maxPoints) {
+		ConvexHullBuilder builder = new ConvexHullBuilder();
+		List<Vector3f> out = new ArrayList<Vector3f>();
+		if (!builder.build(points, maxPoints)) {
+			for (int i=0; i<points.size(); i++) {
+				out.add(new Vector3f(points.get(i)));
+			}
+			return out;
+		}
+
+		IntArrayList verts = builder.getVertices();
+		for (int i=0; i<verts.size(); i++) {
+			out.add(new Vector3f(points.get(verts.get(i))));
+		}
+		return out;
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+
+	private boolean createSimplex() {
+		// extreme points along axes:
+		int[] extremes = new int[6];
+		for (int i=1; i<numPoints; i++) {
+			if (px[i] < px[extremes[0]]) extremes[0] = i;
+			if (px[i] > px[extremes[1]]) extremes[1] = i;
+			if (py[i] < py[extremes[2]]) extremes[2] = i;
+			if (py[i] > py[extremes[3]]) extremes[3] = i;
+			if (pz[i] < pz[extremes[4]]) extremes[4] = i;
+			if (pz[i] > pz[extremes[5]]) extremes[5] = i;
+		}
+
+		// most distant pair of extremes:
+		int i0 = 0, i1 = 0;
+		float maxDist = -1f;
+		for (int i=0; i<6; i++) {
+			for (int j=i+1; j<6; j++) {
+				float dist = distSqr(extremes[i], extremes[j]);
+				if (dist > maxDist) {
+					maxDist = dist;
+					i0 = extremes[i];
+					i1 = extremes[j];
+				}
+			}
+		}
+		if (maxDist <= epsilon * epsilon) {
+			return false;
+		}
+
+		// point most distant from line:
+		float dx = px[i1] - px[i0], dy = py[i1] - py[i0], dz = pz[i1] - pz[i0];
+		int i2 = -1;
+		maxDist = 0f;
+		for (int i=0; i<numPoints; i++) {
+			float ex = px[i] - px[i0], ey = py[i] - py[i0], ez = pz[i] - pz[i0];
+			float cx = dy*ez - dz*ey, cy = dz*ex - dx*ez, cz = dx*ey - dy*ex;
+			float dist = cx*cx + cy*cy + cz*cz;
+			if (dist > maxDist) {
+				maxDist = dist;
+				i2 = i;
+			}
+		}
+		if (i2 < 0 || maxDist <= epsilon * epsilon * (dx*dx + dy*dy + dz*dz)) {
+			return false;
+		}
+
+		// point most distant from plane:
+		Face base = new Face(i0, i1, i2);
+		int i3 = -1;
+		maxDist = 0f;
+		for (int i=0; i<numPoints; i++) {
+			float dist = Math.abs(base.distance(i));
+			if (dist > maxDist) {
+				maxDist = dist;
+				i3 = i;
+			}
+		}
+		if (i3 < 0 || maxDist <= epsilon) {
+			return false;
+		}
+
+		addVertex(i0);
+		addVertex(i1);
+		addVertex(i2);
+		addVertex(i3);
+
+		List<Face> simplex = new ArrayList<Face>();
+		if (base.distance(i3) > 0f) {
+			// fourth point is in front of the base, flip the orientation:
+			simplex.add(addFace(i0, i2, i1));
+			simplex.add(addFace(i0, i1, i3));
+			simplex.add(addFace(i1, i2, i3));
+			simplex.add(addFace(i2, i0, i3));
+		}
+		else {
+			simplex.add(addFace(i0, i1, i2));
+			simplex.add(addFace(i1, i0, i3));
+			simplex.add(addFace(i2, i1, i3));
+			simplex.add(addFace(i0, i2, i3));
+		}
+
+		for (int i=0; i<numPoints; i++) {
+			if (!isVertex[i]) {
+				assignConflict(i, simplex);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finds faces visible from eye point (connected to the start face) and
+	 * the horizon edges around them, stored as pairs of vertices.
+	 */
+	private void findHorizon(Face start, int eye, List<Face> visible, IntArrayList horizon) {
+		visible.clear();
+		horizon.clear();
+
+		for (int i=0; i<faces.size(); i++) {
+			faces.get(i).visited = false;
+		}
+
+		start.visited = true;
+		start.visible = true;
+		visible.add(start);
+		for (int i=0; i<visible.size(); i++) {
+			Face f = visible.get(i);
+			checkEdge(f.v0, f.v1, eye, visible, horizon);
+			checkEdge(f.v1, f.v2, eye, visible, horizon);
+			checkEdge(f.v2, f.v0, eye, visible, horizon);
+		}
+	}
+
+	private void checkEdge(int a, int b, int eye, List<Face> visible, IntArrayList horizon) {
+		Face neighbour = edges.get(edgeKey(b, a));
+		if (neighbour.visited) {
+			if (!neighbour.visible) {
+				horizon.add(a);
+				horizon.add(b);
+			}
+			return;
+		}
+
+		neighbour.visited = true;
+		// degenerate faces are removed together with visible neighbours
+		neighbour.visible = neighbour.degenerate || neighbour.distance(eye) > epsilon;
+		if (neighbour.visible) {
+			visible.add(neighbour);
+		}
+		else {
+			horizon.add(a);
+			horizon.add(b);
+		}
+	}
+
+	private void assignConflict(int point, List<Face> candidates) {
+		Face best = null;
+		float bestDist = epsilon;
+		for (int i=0; i<candidates.size(); i++) {
+			Face f = candidates.get(i);
+			float dist = f.distance(point);
+			if (dist > bestDist) {
+				bestDist = dist;
+				best = f;
+			}
+		}
+
+		// points not outside of any face are inside the hull
+		if (best != null) {
+			best.conflicts.add(point);
+			if (bestDist > best.farthestDist) {
+				best.farthestDist = bestDist;
+				best.farthest = point;
+			}
+		}
+	}
+
+	private void addVertex(int index) {
+		vertices.add(index);
+		isVertex[index] = true;
+	}
+
+	private Face addFace(int v0, int v1, int v2) {
+		Face f = new Face(v0, v1, v2);
+		faces.add(f);
+		edges.put(edgeKey(v0, v1), f);
+		edges.put(edgeKey(v1, v2), f);
+		edges.put(edgeKey(v2, v0), f);
+		return f;
+	}
+
+	private float distSqr(int a, int b) {
+		float dx = px[b] - px[a], dy = py[b] - py[a], dz = pz[b] - pz[a];
+		return dx*dx + dy*dy + dz*dz;
+	}
+
+	private static Long edgeKey(int a, int b) {
+		return Long.valueOf(((long)a << 32) | (b & 0xFFFFFFFFL));
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+
+	private class Face {
+		public final int v0, v1, v2;
+		public final float nx, ny, nz, d;
+		public final IntArrayList conflicts = new IntArrayList();
+		public int farthest = -1;
+		public float farthestDist;
+		public final boolean degenerate;
+		public boolean removed;
+		public boolean visited;
+		public boolean visible;
+
+		public Face(int v0, int v1, int v2) {
+			this.v0 = v0;
+			this.v1 = v1;
+			this.v2 = v2;
+
+			float ax = px[v1] - px[v0], ay = py[v1] - py[v0], az = pz[v1] - pz[v0];
+			float bx = px[v2] - px[v0], by = py[v2] - py[v0], bz = pz[v2] - pz[v0];
+			float cx = ay*bz - az*by, cy = az*bx - ax*bz, cz = ax*by - ay*bx;
+			float len = (float)Math.sqrt(cx*cx + cy*cy + cz*cz);
+
+			// degenerate (sliver) triangles keep zero normal, nothing is ever outside of them
+			degenerate = (len <= 0f);
+			float rlen = degenerate? 0f : 1f / len;
+			nx = cx * rlen;
+			ny = cy * rlen;
+			nz = cz * rlen;
+			d = nx*px[v0] + ny*py[v0] + nz*pz[v0];
+		}
+
+		public float distance(int p) {
+			return nx*px[p] + ny*py[p] + nz*pz[p] - d;
+		}
+	}
+
+}
@@ -26,15 +26,24 @@ package javabullet.collision.shapes;
 import java.util.ArrayList;
 import java.util.List;
 import javabullet.BulletGlobals;
+import javabullet.BulletStack;
 import javabullet.collision.broadphase.BroadphaseNativeType;
 import javabullet.linearmath.VectorUtil;
+import javabullet.util.IntArrayList;
 import javax.vecmath.Vector3f;
 
 /**
  * ConvexHullShape implements an implicit (getSupportingVertex) Convex Hull of a Point Cloud (vertices).
  * No connectivity is needed. localGetSupportingVertex iterates linearly though all vertices.
  * On modern hardware, due to cache coherency this isn't that bad. Complex algorithms tend to trash the cashe
- * (memory is much slower then the cpu).
+ * (memory is much slower then the cpu).<p>
+ * 
+ * For hulls with many points call {@link #buildSupportGraph}, support queries
+ * then walk the hull edges from the last found support vertex towards the
+ * query direction (hill climbing), visiting only a few vertices. The last
+ * support vertex is remembered per thread, ties between vertices with equal
+ * dot product resolve to the lowest point index, so the result doesn't depend
+ * on previous queries.
  * 
  * @author jezek2
  */
@@ -42,6 +51,19 @@ public class ConvexHullShape extends PolyhedralConvexShape {
 
 	private final List<Vector3f> points = new ArrayList<Vector3f>();
 	
+	// support graph, adjacency of point i is in adjacency[adjacencyOffsets[i]] .. adjacency[adjacencyOffsets[i+1]-1]
+	private int[] adjacencyOffsets;
+	private int[] adjacency;
+	private int firstSupportIndex;
+	
+	// JAVA NOTE: warm start for hill climbing is kept per thread, the shape can be shared between worlds
+	private final ThreadLocal<SupportCache> supportCache = new ThreadLocal<SupportCache>() {
+		@Override
+		protected SupportCache initialValue() {
+			return new SupportCache();
+		}
+	};
+	
 	/**
 	 * TODO: This constructor optionally takes in a pointer to points. Each point is assumed to be 3 consecutive float (x,y,z), the striding defines the number of bytes between each point, in memory.
 	 * It is easier to not pass any points in the constructor, and just add one point at a time, using addPoint.
@@ -60,8 +82,107 @@ public class ConvexHullShape extends PolyhedralConvexShape {
 	
 	public void addPoint(Vector3f point) {
 		points.add(new Vector3f(point));
+		adjacencyOffsets = null;
+		adjacency = null;
 		recalcLocalAabb();
 	}
+	
+	/**
+	 * Precomputes adjacency of hull vertices, used for hill climbing in support
+	 * queries. Worth it for hulls with more than few dozens of points. Must be
+	 * called again after points are changed, adding points removes the graph.
+	 * Returns false when the points are degenerate (flat), linear search is
+	 * used then.
+	 */
+	public boolean buildSupportGraph() {
+		ConvexHullBuilder builder = new ConvexHullBuilder();
+		if (!builder.build(points, Integer.MAX_VALUE)) {
+			adjacencyOffsets = null;
+			adjacency = null;
+			return false;
+		}
+		
+		int[] offsets = new int[points.size() + 1];
+		firstSupportIndex = builder.getVertices().get(0);
+		adjacency = builder.buildAdjacency(offsets);
+		adjacencyOffsets = offsets;
+		return true;
+	}
+	
+	public boolean hasSupportGraph() {
+		return adjacency != null;
+	}
+	
+	/**
+	 * Returns start vertex for hill climbing, the last support vertex found
+	 * by current thread for the same support graph.
+	 */
+	private int getStartIndex(SupportCache cache, int[] adjacency) {
+		if (cache.adjacency != adjacency) {
+			cache.adjacency = adjacency;
+			cache.lastIndex = firstSupportIndex;
+		}
+		return cache.lastIndex;
+	}
+	
+	/**
+	 * Walks hull edges from start vertex towards the direction until no
+	 * neighbour is further along it. For convex hull the local maximum is
+	 * also the global one. When several vertices share the maximum (a face
+	 * or edge perpendicular to the direction), the lowest point index is
+	 * returned regardless of start vertex.
+	 */
+	private int climbSupport(float dirX, float dirY, float dirZ, int start, int[] offsets, int[] adjacency, IntArrayList plateau) {
+		int current = start;
+		Vector3f p = points.get(current);
+		float maxDot = dirX * p.x + dirY * p.y + dirZ * p.z;
+		
+		for (;;) {
+			int best = current;
+			for (int i = offsets[current], end = offsets[current+1]; i < end; i++) {
+				int n = adjacency[i];
+				p = points.get(n);
+				float dot = dirX * p.x + dirY * p.y + dirZ * p.z;
+				if (dot > maxDot) {
+					maxDot = dot;
+					best = n;
+				}
+			}
+			if (best == current) {
+				break;
+			}
+			current = best;
+		}
+		
+		// collect connected vertices with the same dot product, pick the lowest index:
+		plateau.clear();
+		plateau.add(current);
+		int result = current;
+		for (int j = 0; j < plateau.size(); j++) {
+			int v = plateau.get(j);
+			for (int i = offsets[v], end = offsets[v+1]; i < end; i++) {
+				int n = adjacency[i];
+				p = points.get(n);
+				float dot = dirX * p.x + dirY * p.y + dirZ * p.z;
+				if (dot == maxDot && !contains(plateau, n)) {
+					plateau.add(n);
+					if (n < result) {
+						result = n;
+					}
+				}
+			}
+		}
+		return result;
+	}
+	
+	private static boolean contains(IntArrayList list, int value) {
+		for (int i = 0; i < list.size(); i++) {
+			if (list.get(i) == value) {
+				return true;
+			}
+		}
+		return false;
+	}
 
 	public List<Vector3f> getPoints() {
 		return points;
@@ -73,6 +194,8 @@ public class ConvexHullShape extends PolyhedralConvexShape {
 
 	@Override
 	public Vector3f localGetSupportingVertexWithoutMargin(Vector3f vec0) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			Vector3f supVec = stack.vectors.get(0f, 0f, 0f);
@@ -88,6 +211,16 @@ public class ConvexHullShape extends PolyhedralConvexShape {
 				vec.scale(rlen);
 			}
 
+			int[] offsets = adjacencyOffsets;
+			int[] adjacency = this.adjacency;
+			if (adjacency != null) {
+				// dot(vec, point*scaling) == dot(vec*scaling, point)
+				SupportCache cache = supportCache.get();
+				int index = climbSupport(vec.x * localScaling.x, vec.y * localScaling.y, vec.z * localScaling.z, getStartIndex(cache, adjacency), offsets, adjacency, cache.plateau);
+				cache.lastIndex = index;
+				VectorUtil.mul(supVec, points.get(index), localScaling);
+				return stack.vectors.returning(supVec);
+			}
 
 			Vector3f vtx = stack.vectors.get();
 			for (int i = 0; i < points.size(); i++) {
@@ -108,6 +241,23 @@ public class ConvexHullShape extends PolyhedralConvexShape {
 
 	@Override
 	public void batchedUnitVectorGetSupportingVertexWithoutMargin(Vector3f[] vectors, Vector3f[] supportVerticesOut, int numVectors) {
+		BulletStack stack = BulletStack.get();
+
+		int[] offsets = adjacencyOffsets;
+		int[] adjacency = this.adjacency;
+		if (adjacency != null) {
+			// each direction starts from support of the previous one
+			SupportCache cache = supportCache.get();
+			int index = getStartIndex(cache, adjacency);
+			for (int j = 0; j < numVectors; j++) {
+				Vector3f vec = vectors[j];
+				index = climbSupport(vec.x * localScaling.x, vec.y * localScaling.y, vec.z * localScaling.z, index, offsets, adjacency, cache.plateau);
+				VectorUtil.mul(supportVerticesOut[j], points.get(index), localScaling);
+			}
+			cache.lastIndex = index;
+			return;
+		}
+		
 		stack.vectors.push();
 		try {
 			float newDot;
@@ -148,6 +298,8 @@ public class ConvexHullShape extends PolyhedralConvexShape {
 
 	@Override
 	public Vector3f localGetSupportingVertex(Vector3f vec) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			Vector3f supVertex = stack.vectors.get(localGetSupportingVertexWithoutMargin(vec));
@@ -219,5 +371,13 @@ public class ConvexHullShape extends PolyhedralConvexShape {
 	public String getName() {
 		return "Convex";
 	}
+	
+	////////////////////////////////////////////////////////////////////////////
+	
+	private static class SupportCache {
+		public int[] adjacency;
+		public int lastIndex;
+		public final IntArrayList plateau = new IntArrayList();
+	}
 
 }
@@ -0,0 +1,460 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.collision.shapes;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import javabullet.BulletPool;
+import javabullet.BulletStack;
+import javabullet.ObjectPool;
+import javabullet.collision.broadphase.BroadphaseNativeType;
+import javabullet.collision.narrowphase.TriangleRaycastCallback;
+import javabullet.linearmath.MatrixUtil;
+import javabullet.linearmath.Transform;
+import javabullet.linearmath.VectorUtil;
+import javax.vecmath.Matrix3f;
+import javax.vecmath.Vector3f;
+
+/**
+ * HeightfieldTerrainShape simulates a 2D heightfield terrain. The heights are
+ * read directly from provided buffer (which can be memory mapped) and triangles
+ * are generated on demand only for the grid cells overlapping the queried AABB,
+ * no index buffer or BVH is needed.<p>
+ * 
+ * The heights are stored in row major order, {@code heightStickWidth} values
+ * per row. Float heights are used as is, short heights are multiplied by
+ * {@code heightScale}. The terrain is centered around its origin, the grid
+ * spacing is 1 (use local scaling to change it).<p>
+ * 
+ * Rays are marched through the grid cells, see {@link #performRaycast}.
+ * 
+ * @author jezek2
+ */
+public class HeightfieldTerrainShape extends ConcaveShape {
+
+	protected final Vector3f localAabbMin = new Vector3f();
+	protected final Vector3f localAabbMax = new Vector3f();
+	protected final Vector3f localOrigin = new Vector3f();
+	
+	protected int heightStickWidth;
+	protected int heightStickLength;
+	protected float minHeight;
+	protected float maxHeight;
+	protected float width;
+	protected float length;
+	protected float heightScale;
+	
+	protected ScalarType heightDataType;
+	protected FloatBuffer heightDataFloat;
+	protected ShortBuffer heightDataShort;
+	
+	protected boolean flipQuadEdges;
+	protected boolean useDiamondSubdivision;
+	protected int upAxis;
+	
+	protected final Vector3f localScaling = new Vector3f(1f, 1f, 1f);
+
+	/**
+	 * Creates heightfield terrain shape.
+	 * 
+	 * @param heightStickWidth number of height values in X (or first horizontal) direction
+	 * @param heightStickLength number of height values in Z (or second horizontal) direction
+	 * @param heightfieldData height values, byte order of the buffer is respected
+	 * @param heightScale scale of short heights, ignored for float heights
+	 * @param minHeight minimum height, used for the bounding box
+	 * @param maxHeight maximum height, used for the bounding box
+	 * @param upAxis 0 for X, 1 for Y, 2 for Z
+	 * @param heightDataType {@link ScalarType#PHY_FLOAT} or {@link ScalarType#PHY_SHORT}
+	 * @param flipQuadEdges flips the diagonal that splits each cell into two triangles
+	 */
+	public HeightfieldTerrainShape(int heightStickWidth, int heightStickLength, ByteBuffer heightfieldData, float heightScale, float minHeight, float maxHeight, int upAxis, ScalarType heightDataType, boolean flipQuadEdges) {
+		if (heightStickWidth < 2 || heightStickLength < 2) {
+			throw new IllegalArgumentException("heightfield must have at least 2x2 height values");
+		}
+		if (upAxis < 0 || upAxis > 2) {
+			throw new IllegalArgumentException("invalid up axis: "+upAxis);
+		}
+		if (minHeight > maxHeight) {
+			throw new IllegalArgumentException("minHeight is greater than maxHeight");
+		}
+		
+		this.heightStickWidth = heightStickWidth;
+		this.heightStickLength = heightStickLength;
+		this.minHeight = minHeight;
+		this.maxHeight = maxHeight;
+		this.width = heightStickWidth - 1;
+		this.length = heightStickLength - 1;
+		this.heightScale = heightScale;
+		this.upAxis = upAxis;
+		this.heightDataType = heightDataType;
+		this.flipQuadEdges = flipQuadEdges;
+		
+		// JAVA NOTE: views are created from duplicate so the position of the buffer is not affected
+		int numHeights = heightStickWidth * heightStickLength;
+		switch (heightDataType) {
+			case PHY_FLOAT:
+				heightDataFloat = heightfieldData.duplicate().order(heightfieldData.order()).asFloatBuffer();
+				if (heightDataFloat.remaining() < numHeights) {
+					throw new IllegalArgumentException("not enough height data");
+				}
+				break;
+				
+			case PHY_SHORT:
+				heightDataShort = heightfieldData.duplicate().order(heightfieldData.order()).asShortBuffer();
+				if (heightDataShort.remaining() < numHeights) {
+					throw new IllegalArgumentException("not enough height data");
+				}
+				break;
+				
+			default:
+				throw new IllegalArgumentException("unsupported height data type: "+heightDataType);
+		}
+		
+		switch (upAxis) {
+			case 0:
+				localAabbMin.set(minHeight, 0f, 0f);
+				localAabbMax.set(maxHeight, width, length);
+				break;
+			case 1:
+				localAabbMin.set(0f, minHeight, 0f);
+				localAabbMax.set(width, maxHeight, length);
+				break;
+			case 2:
+				localAabbMin.set(0f, 0f, minHeight);
+				localAabbMax.set(width, length, maxHeight);
+				break;
+		}
+		
+		// center the shape around its origin
+		localOrigin.add(localAabbMin, localAabbMax);
+		localOrigin.scale(0.5f);
+	}
+
+	public void setUseDiamondSubdivision(boolean useDiamondSubdivision) {
+		this.useDiamondSubdivision = useDiamondSubdivision;
+	}
+	
+	/**
+	 * Returns height value as stored in the data (scaled for short heights).
+	 */
+	public float getRawHeightFieldValue(int x, int y) {
+		int index = y * heightStickWidth + x;
+		if (heightDataFloat != null) {
+			return heightDataFloat.get(index);
+		}
+		return heightDataShort.get(index) * heightScale;
+	}
+	
+	/**
+	 * Returns vertex of given grid point in local space of the shape.
+	 */
+	public void getVertex(int x, int y, Vector3f vertex) {
+		float height = getRawHeightFieldValue(x, y);
+		
+		switch (upAxis) {
+			case 0:
+				vertex.set(height - localOrigin.x, -width/2f + x, -length/2f + y);
+				break;
+			case 1:
+				vertex.set(-width/2f + x, height - localOrigin.y, -length/2f + y);
+				break;
+			case 2:
+				vertex.set(-width/2f + x, -length/2f + y, height - localOrigin.z);
+				break;
+		}
+		
+		VectorUtil.mul(vertex, vertex, localScaling);
+	}
+	
+	/**
+	 * Converts point from local space of the shape to unscaled grid space,
+	 * where horizontal coordinates are stored in x and y, and height in z.
+	 */
+	private void toGridSpace(Vector3f point, Vector3f out) {
+		float px = point.x / localScaling.x + localOrigin.x;
+		float py = point.y / localScaling.y + localOrigin.y;
+		float pz = point.z / localScaling.z + localOrigin.z;
+		
+		switch (upAxis) {
+			case 0: out.set(py, pz, px); break;
+			case 1: out.set(px, pz, py); break;
+			case 2: out.set(px, py, pz); break;
+		}
+	}
+	
+	@Override
+	public void processAllTriangles(TriangleCallback callback, Vector3f aabbMin, Vector3f aabbMax) {
+		BulletStack stack = BulletStack.get();
+		ObjectPool<QueryScratch> scratchPool = BulletPool.get(QueryScratch.class);
+
+		stack.vectors.push();
+		QueryScratch scratch = scratchPool.get();
+		try {
+			Vector3f gridAabbMin = stack.vectors.get(), gridAabbMax = stack.vectors.get();
+			toGridSpace(aabbMin, gridAabbMin);
+			toGridSpace(aabbMax, gridAabbMax);
+			
+			// negative scaling can swap the bounds
+			Vector3f tmp = stack.vectors.get(gridAabbMin);
+			VectorUtil.setMin(gridAabbMin, gridAabbMax);
+			VectorUtil.setMax(gridAabbMax, tmp);
+			
+			if (gridAabbMin.z > maxHeight || gridAabbMax.z < minHeight) {
+				return;
+			}
+			
+			int startX = Math.max(0, (int)Math.floor(gridAabbMin.x));
+			int endX = Math.min(heightStickWidth - 1, (int)Math.ceil(gridAabbMax.x));
+			int startY = Math.max(0, (int)Math.floor(gridAabbMin.y));
+			int endY = Math.min(heightStickLength - 1, (int)Math.ceil(gridAabbMax.y));
+			
+			Vector3f[] vertices = scratch.vertices;
+			
+			for (int y=startY; y<endY; y++) {
+				for (int x=startX; x<endX; x++) {
+					// skip cells that are completely above or below the AABB
+					float h00 = getRawHeightFieldValue(x, y);
+					float h10 = getRawHeightFieldValue(x+1, y);
+					float h01 = getRawHeightFieldValue(x, y+1);
+					float h11 = getRawHeightFieldValue(x+1, y+1);
+					float cellMin = Math.min(Math.min(h00, h10), Math.min(h01, h11));
+					float cellMax = Math.max(Math.max(h00, h10), Math.max(h01, h11));
+					if (cellMin > gridAabbMax.z || cellMax < gridAabbMin.z) {
+						continue;
+					}
+					
+					processCell(callback, x, y, vertices);
+				}
+			}
+		}
+		finally {
+			scratchPool.release(scratch);
+			stack.vectors.pop();
+		}
+	}
+	
+	private void processCell(TriangleCallback callback, int x, int y, Vector3f[] vertices) {
+		int triangleIndex = (y * heightStickWidth + x) * 2;
+		
+		if (flipQuadEdges || (useDiamondSubdivision && ((x + y) & 1) == 0)) {
+			// first triangle
+			getVertex(x, y, vertices[0]);
+			getVertex(x+1, y, vertices[1]);
+			getVertex(x+1, y+1, vertices[2]);
+			callback.processTriangle(vertices, 0, triangleIndex);
+			
+			// second triangle
+			getVertex(x, y, vertices[0]);
+			getVertex(x+1, y+1, vertices[1]);
+			getVertex(x, y+1, vertices[2]);
+			callback.processTriangle(vertices, 0, triangleIndex + 1);
+		}
+		else {
+			// first triangle
+			getVertex(x, y, vertices[0]);
+			getVertex(x, y+1, vertices[1]);
+			getVertex(x+1, y, vertices[2]);
+			callback.processTriangle(vertices, 0, triangleIndex);
+			
+			// second triangle
+			getVertex(x+1, y, vertices[0]);
+			getVertex(x, y+1, vertices[1]);
+			getVertex(x+1, y+1, vertices[2]);
+			callback.processTriangle(vertices, 0, triangleIndex + 1);
+		}
+	}
+	
+	/**
+	 * Performs raycast by marching the ray through the grid cells in order and
+	 * testing only the triangles of visited cells. Marching stops once a hit
+	 * closer than the end of current cell is found. Ray is given in local space
+	 * of the shape.
+	 */
+	public void performRaycast(TriangleRaycastCallback callback, Vector3f raySource, Vector3f rayTarget) {
+		BulletStack stack = BulletStack.get();
+		ObjectPool<QueryScratch> scratchPool = BulletPool.get(QueryScratch.class);
+
+		stack.vectors.push();
+		QueryScratch scratch = scratchPool.get();
+		try {
+			Vector3f from = stack.vectors.get(), to = stack.vectors.get();
+			toGridSpace(raySource, from);
+			toGridSpace(rayTarget, to);
+			
+			float dx = to.x - from.x;
+			float dy = to.y - from.y;
+			float dz = to.z - from.z;
+			
+			// clip the ray to the bounds of the grid
+			scratch.tmin = 0f;
+			scratch.tmax = callback.hitFraction;
+			if (!scratch.clip(from.x, dx, 0f, width) ||
+					!scratch.clip(from.y, dy, 0f, length) ||
+					!scratch.clip(from.z, dz, minHeight, maxHeight)) {
+				return;
+			}
+			float tmin = scratch.tmin;
+			float tmax = scratch.tmax;
+			
+			int x = clampCell((int)Math.floor(from.x + dx * tmin), heightStickWidth - 2);
+			int y = clampCell((int)Math.floor(from.y + dy * tmin), heightStickLength - 2);
+			
+			int stepX = dx > 0f? 1 : -1;
+			int stepY = dy > 0f? 1 : -1;
+			float tDeltaX = dx != 0f? Math.abs(1f / dx) : Float.POSITIVE_INFINITY;
+			float tDeltaY = dy != 0f? Math.abs(1f / dy) : Float.POSITIVE_INFINITY;
+			float tMaxX = dx > 0f? (x + 1 - from.x) / dx : (dx < 0f? (x - from.x) / dx : Float.POSITIVE_INFINITY);
+			float tMaxY = dy > 0f? (y + 1 - from.y) / dy : (dy < 0f? (y - from.y) / dy : Float.POSITIVE_INFINITY);
+			
+			Vector3f[] vertices = scratch.vertices;
+			
+			while (true) {
+				float tExit = Math.min(Math.min(tMaxX, tMaxY), tmax);
+				
+				processCell(callback, x, y, vertices);
+				
+				// no further cell can contain closer hit
+				if (callback.hitFraction <= tExit || tExit >= tmax) {
+					break;
+				}
+				
+				if (tMaxX < tMaxY) {
+					x += stepX;
+					if (x < 0 || x > heightStickWidth - 2) break;
+					tMaxX += tDeltaX;
+				}
+				else {
+					y += stepY;
+					if (y < 0 || y > heightStickLength - 2) break;
+					tMaxY += tDeltaY;
+				}
+			}
+		}
+		finally {
+			scratchPool.release(scratch);
+			stack.vectors.pop();
+		}
+	}
+	
+	private static int clampCell(int value, int max) {
+		return value < 0? 0 : (value > max? max : value);
+	}
+
+	@Override
+	public void getAabb(Transform trans, Vector3f aabbMin, Vector3f aabbMax) {
+		BulletStack stack = BulletStack.get();
+
+		stack.pushCommonMath();
+		try {
+			Vector3f tmp = stack.vectors.get();
+
+			Vector3f localHalfExtents = stack.vectors.get();
+			localHalfExtents.sub(localAabbMax, localAabbMin);
+			VectorUtil.mul(localHalfExtents, localHalfExtents, localScaling);
+			localHalfExtents.scale(0.5f);
+			localHalfExtents.absolute();
+
+			Matrix3f abs_b = stack.matrices.get(trans.basis);
+			MatrixUtil.absolute(abs_b);
+
+			Vector3f center = trans.origin;
+
+			Vector3f extent = stack.vectors.get();
+			abs_b.getRow(0, tmp);
+			extent.x = tmp.dot(localHalfExtents);
+			abs_b.getRow(1, tmp);
+			extent.y = tmp.dot(localHalfExtents);
+			abs_b.getRow(2, tmp);
+			extent.z = tmp.dot(localHalfExtents);
+
+			extent.add(stack.vectors.get(getMargin(), getMargin(), getMargin()));
+
+			aabbMin.sub(center, extent);
+			aabbMax.add(center, extent);
+		}
+		finally {
+			stack.popCommonMath();
+		}
+	}
+
+	@Override
+	public BroadphaseNativeType getShapeType() {
+		return BroadphaseNativeType.TERRAIN_SHAPE_PROXYTYPE;
+	}
+
+	@Override
+	public void setLocalScaling(Vector3f scaling) {
+		localScaling.set(scaling);
+	}
+
+	@Override
+	public Vector3f getLocalScaling() {
+		return localScaling;
+	}
+
+	@Override
+	public void calculateLocalInertia(float mass, Vector3f inertia) {
+		//moving concave objects not supported
+		inertia.set(0f, 0f, 0f);
+	}
+
+	@Override
+	public String getName() {
+		return "HEIGHTFIELD";
+	}
+	
+	////////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Per-thread scratch data for queries, shape itself can be queried from
+	 * multiple threads at once.
+	 */
+	protected static class QueryScratch {
+		public final Vector3f[] vertices/*[3]*/ = new Vector3f[] { new Vector3f(), new Vector3f(), new Vector3f() };
+		public float tmin;
+		public float tmax;
+		
+		public QueryScratch() {
+		}
+		
+		/**
+		 * Clips the [tmin, tmax] range of ray to given slab.
+		 */
+		public boolean clip(float origin, float dir, float min, float max) {
+			if (dir == 0f) {
+				return (origin >= min && origin <= max);
+			}
+			float t0 = (min - origin) / dir;
+			float t1 = (max - origin) / dir;
+			if (t0 > t1) {
+				float t = t0; t0 = t1; t1 = t;
+			}
+			if (t0 > tmin) tmin = t0;
+			if (t1 < tmax) tmax = t1;
+			return tmin <= tmax;
+		}
+	}
+	
+}
@@ -23,6 +23,7 @@
 
 package javabullet.collision.shapes;
 
+import javabullet.BulletStack;
 import javabullet.collision.broadphase.BroadphaseNativeType;
 import javabullet.linearmath.MatrixUtil;
 import javabullet.linearmath.Transform;
@@ -49,6 +50,8 @@ public class MinkowskiSumShape extends ConvexInternalShape {
 	
 	@Override
 	public Vector3f localGetSupportingVertexWithoutMargin(Vector3f vec) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			Vector3f tmp = stack.vectors.get();
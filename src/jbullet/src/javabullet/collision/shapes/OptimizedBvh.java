@@ -26,10 +26,15 @@ package javabullet.collision.shapes;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import javabullet.BulletGlobals;
+import javabullet.BulletPool;
 import javabullet.BulletStack;
+import javabullet.ObjectPool;
 import javabullet.linearmath.AabbUtil2;
 import javabullet.linearmath.MiscUtil;
 import javabullet.linearmath.VectorUtil;
+import javabullet.util.ParallelLoop;
 import javax.vecmath.Vector3f;
 
 /**
@@ -39,20 +44,20 @@ import javax.vecmath.Vector3f;
  */
 public class OptimizedBvh {
 
-	protected final BulletStack stack = BulletStack.get();
-	
 	private static final boolean DEBUG_TREE_BUILDING = false;
 	private static int gStackDepth = 0;
 	private static int gMaxStackDepth = 0;
 	
-	private static int maxIterations = 0;
-	
 	// Note: currently we have 16 bytes per quantized node
 	public static final int MAX_SUBTREE_SIZE_IN_BYTES = 2048;
 
 	// 10 gives the potential for 1024 parts, with at most 2^21 (2097152) (minus one
 	// actually) triangles each (since the sign bit is reserved
 	public static final int MAX_NUM_PARTS_IN_BITS = 10;
+
+	private static final int SAH_BIN_COUNT = 16;
+	private static final int MAX_SAH_DEPTH = 64;
+	private static final int MIN_SAH_SUBTREE_SIZE_PER_TASK = 4096;
 	
 	////////////////////////////////////////////////////////////////////////////
 
@@ -69,8 +74,14 @@ public class OptimizedBvh {
 	private final Vector3f bvhAabbMin = new Vector3f();
 	private final Vector3f bvhAabbMax = new Vector3f();
 	private final Vector3f bvhQuantization = new Vector3f();
+
+	// temporary data used by binned SAH builder, partitioned together:
+	private float[] sahLeafBounds; // min and max of each leaf
+	private float[] sahCentroids; // doubled centers of leaves
+	private int[] sahLeafIndices; // original leaf node indices
 	
-	protected TraversalMode traversalMode;
+	protected TraversalMode traversalMode = TraversalMode.TRAVERSAL_STACKLESS;
+	protected TreeBuildMode buildMode = TreeBuildMode.BUILD_MEAN_SPLIT;
 	protected final List<BvhSubtreeInfo> SubtreeHeaders = new ArrayList<BvhSubtreeInfo>();
 	// This is only used for serialization so we don't have to add serialization directly to btAlignedObjectArray
 	protected int subtreeHeaderCount;
@@ -122,6 +133,8 @@ public class OptimizedBvh {
 	}
 	
 	public void setQuantizationValues(Vector3f aabbMin, Vector3f aabbMax, float quantizationMargin) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			// enlarge the AABB to avoid division by zero when initializing the quantization values
@@ -192,6 +205,19 @@ public class OptimizedBvh {
 		}
 	}
 
+	public TreeBuildMode getBuildMode() {
+		return buildMode;
+	}
+
+	/**
+	 * Sets algorithm used by subsequent builds, default is {@link TreeBuildMode#BUILD_MEAN_SPLIT}.
+	 * {@link TreeBuildMode#BUILD_BINNED_SAH} speeds up building and AABB queries, but
+	 * can visit more nodes per ray on unevenly distributed meshes.
+	 */
+	public void setBuildMode(TreeBuildMode buildMode) {
+		this.buildMode = buildMode;
+	}
+
 	private static class NodeTriangleCallback implements InternalTriangleIndexCallback {
 		public List<OptimizedBvhNode> triangleNodes;
 		
@@ -226,7 +252,6 @@ public class OptimizedBvh {
 	}
 
 	private static class QuantizedNodeTriangleCallback implements InternalTriangleIndexCallback {
-		protected final BulletStack stack = BulletStack.get();
 		
 		public QuantizedBvhNodes triangleNodes;
 		public OptimizedBvh optimizedTree; // for quantization
@@ -237,6 +262,8 @@ public class OptimizedBvh {
 		}
 		
 		public void internalProcessTriangleIndex(Vector3f[] triangle, int partId, int triangleIndex) {
+			BulletStack stack = BulletStack.get();
+
 			// The partId and triangle index must fit in the same (positive) integer
 			assert (partId < (1 << MAX_NUM_PARTS_IN_BITS));
 			assert (triangleIndex < (1 << (31 - MAX_NUM_PARTS_IN_BITS)));
@@ -284,6 +311,20 @@ public class OptimizedBvh {
 	}
 	
 	public void build(StridingMeshInterface triangles, boolean useQuantizedAabbCompression, Vector3f _aabbMin, Vector3f _aabbMax) {
+		build(triangles, useQuantizedAabbCompression, _aabbMin, _aabbMax, null, 1);
+	}
+	
+	/**
+	 * Builds the tree, subtrees are built concurrently by executor threads
+	 * when using {@link TreeBuildMode#BUILD_BINNED_SAH}. Resulting tree doesn't
+	 * depend on the executor.
+	 * 
+	 * @param executor executor service, or null for serial build
+	 * @param parallelism number of threads including calling thread
+	 */
+	public void build(StridingMeshInterface triangles, boolean useQuantizedAabbCompression, Vector3f _aabbMin, Vector3f _aabbMax, ExecutorService executor, int parallelism) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			this.useQuantization = useQuantizedAabbCompression;
@@ -323,7 +364,12 @@ public class OptimizedBvh {
 
 			curNodeIndex = 0;
 
-			buildTree(0, numLeafNodes);
+			if (buildMode == TreeBuildMode.BUILD_BINNED_SAH) {
+				buildSahTree(numLeafNodes, executor, parallelism);
+			}
+			else {
+				buildTree(0, numLeafNodes);
+			}
 
 			//  if the entire tree is small then subtree size, we need to create a header info for the tree
 			if (useQuantization && SubtreeHeaders.size() == 0) {
@@ -348,6 +394,8 @@ public class OptimizedBvh {
 	}
 	
 	public void refit(StridingMeshInterface meshInterface) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			if (useQuantization) {
@@ -419,6 +467,8 @@ public class OptimizedBvh {
 	private VertexData data = new VertexData();
 	
 	public void updateBvhNodes(StridingMeshInterface meshInterface, int firstNode, int endNode, int index) {
+		BulletStack stack = BulletStack.get();
+
 		assert (useQuantization);
 
 		stack.vectors.push();
@@ -520,6 +570,8 @@ public class OptimizedBvh {
 	}
 	
 	protected void buildTree(int startIndex, int endIndex) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			//#ifdef DEBUG_TREE_BUILDING
@@ -659,6 +711,8 @@ public class OptimizedBvh {
 	}
 	
 	protected int sortAndCalcSplittingIndex(int startIndex, int endIndex, int splitAxis) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			int i;
@@ -717,6 +771,8 @@ public class OptimizedBvh {
 	}
 
 	protected int calcSplittingAxis(int startIndex, int endIndex) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			int i;
@@ -751,6 +807,363 @@ public class OptimizedBvh {
 		}
 	}
 
+	/**
+	 * Builds tree using binned surface area heuristic. Leaf nodes are not moved,
+	 * instead compact copies of their bounds are partitioned together with leaf
+	 * indices, so that leaves of a subtree are accessed sequentially.<p>
+	 * 
+	 * Subtree of n leaves always occupies 2n-1 contiguous nodes, so node indices
+	 * of subtrees are known before they're built and subtrees can be built
+	 * concurrently.
+	 */
+	protected void buildSahTree(int numLeafNodes, ExecutorService executor, int parallelism) {
+		try {
+			sahLeafBounds = new float[numLeafNodes * 6];
+			sahCentroids = new float[numLeafNodes * 3];
+			sahLeafIndices = new int[numLeafNodes];
+
+			for (int i=0; i<numLeafNodes; i++) {
+				Vector3f aabbMin = getAabbMin(i);
+				Vector3f aabbMax = getAabbMax(i);
+				sahLeafBounds[i*6+0] = aabbMin.x;
+				sahLeafBounds[i*6+1] = aabbMin.y;
+				sahLeafBounds[i*6+2] = aabbMin.z;
+				sahLeafBounds[i*6+3] = aabbMax.x;
+				sahLeafBounds[i*6+4] = aabbMax.y;
+				sahLeafBounds[i*6+5] = aabbMax.z;
+				sahCentroids[i*3+0] = aabbMin.x + aabbMax.x;
+				sahCentroids[i*3+1] = aabbMin.y + aabbMax.y;
+				sahCentroids[i*3+2] = aabbMin.z + aabbMax.z;
+				sahLeafIndices[i] = i;
+			}
+
+			if (numLeafNodes > 0) {
+				final List<int[]> subtrees = new ArrayList<int[]>();
+				int grainSize = Integer.MAX_VALUE;
+				if (executor != null && parallelism > 1) {
+					grainSize = Math.max(MIN_SAH_SUBTREE_SIZE_PER_TASK, numLeafNodes / (parallelism * 16));
+				}
+
+				ObjectPool<SahBins> binsPool = BulletPool.get(SahBins.class);
+				SahBins bins = binsPool.get();
+				try {
+					buildSahSubtree(0, numLeafNodes, 0, 0, bins, grainSize, subtrees);
+				}
+				finally {
+					binsPool.release(bins);
+				}
+
+				if (subtrees.size() > 0) {
+					new ParallelLoop() {
+						@Override
+						protected void process(int start, int end) {
+							ObjectPool<SahBins> binsPool = BulletPool.get(SahBins.class);
+							SahBins bins = binsPool.get();
+							try {
+								for (int i=start; i<end; i++) {
+									int[] subtree = subtrees.get(i);
+									buildSahSubtree(subtree[0], subtree[1], subtree[2], subtree[3], bins, Integer.MAX_VALUE, null);
+								}
+							}
+							finally {
+								binsPool.release(bins);
+							}
+						}
+					}.run(executor, parallelism, subtrees.size(), 1);
+				}
+			}
+			curNodeIndex = numLeafNodes > 0? 2 * numLeafNodes - 1 : 0;
+
+			if (useQuantization && curNodeIndex > 0) {
+				updateSubtreeHeadersRecursive(0);
+			}
+		}
+		finally {
+			sahLeafBounds = null;
+			sahCentroids = null;
+			sahLeafIndices = null;
+		}
+	}
+
+	/**
+	 * Builds subtree of leaves in range startIndex..endIndex at given node index.
+	 * Subtrees smaller than grainSize are not built, but added to deferred list instead.
+	 */
+	protected void buildSahSubtree(int startIndex, int endIndex, int nodeIndex, int depth, SahBins bins, int grainSize, List<int[]> deferred) {
+		BulletStack stack = BulletStack.get();
+
+		int numIndices = endIndex - startIndex;
+		assert (numIndices > 0);
+
+		if (numIndices == 1) {
+			assignInternalNodeFromLeafNode(nodeIndex, sahLeafIndices[startIndex]);
+			return;
+		}
+
+		if (deferred != null && numIndices <= grainSize) {
+			deferred.add(new int[] { startIndex, endIndex, nodeIndex, depth });
+			return;
+		}
+
+		// node bounds and bounds of triangle centers:
+		float[] centroidBounds = bins.centroidBounds;
+		float minX = 1e30f, minY = 1e30f, minZ = 1e30f;
+		float maxX = -1e30f, maxY = -1e30f, maxZ = -1e30f;
+		resetBounds(centroidBounds);
+		for (int i=startIndex; i<endIndex; i++) {
+			int l = i * 6;
+			if (sahLeafBounds[l+0] < minX) minX = sahLeafBounds[l+0];
+			if (sahLeafBounds[l+1] < minY) minY = sahLeafBounds[l+1];
+			if (sahLeafBounds[l+2] < minZ) minZ = sahLeafBounds[l+2];
+			if (sahLeafBounds[l+3] > maxX) maxX = sahLeafBounds[l+3];
+			if (sahLeafBounds[l+4] > maxY) maxY = sahLeafBounds[l+4];
+			if (sahLeafBounds[l+5] > maxZ) maxZ = sahLeafBounds[l+5];
+
+			int c = i * 3;
+			for (int axis=0; axis<3; axis++) {
+				float value = sahCentroids[c+axis];
+				if (value < centroidBounds[axis]) centroidBounds[axis] = value;
+				if (value > centroidBounds[3+axis]) centroidBounds[3+axis] = value;
+			}
+		}
+
+		stack.vectors.push();
+		try {
+			setInternalNodeAabbMin(nodeIndex, stack.vectors.get(minX, minY, minZ));
+			setInternalNodeAabbMax(nodeIndex, stack.vectors.get(maxX, maxY, maxZ));
+			setInternalNodeEscapeIndex(nodeIndex, 2 * numIndices - 1);
+		}
+		finally {
+			stack.vectors.pop();
+		}
+
+		int splitIndex;
+		if (depth < MAX_SAH_DEPTH) {
+			splitIndex = sortAndCalcSahSplittingIndex(startIndex, endIndex, bins);
+		}
+		else {
+			// prevent too deep recursion for degenerate inputs
+			splitIndex = sortAndCalcMeanSplittingIndex(startIndex, endIndex, bins);
+		}
+		assert (splitIndex > startIndex && splitIndex < endIndex);
+
+		int leftChildNodeIndex = nodeIndex + 1;
+		int rightChildNodeIndex = leftChildNodeIndex + 2 * (splitIndex - startIndex) - 1;
+
+		buildSahSubtree(startIndex, splitIndex, leftChildNodeIndex, depth + 1, bins, grainSize, deferred);
+		buildSahSubtree(splitIndex, endIndex, rightChildNodeIndex, depth + 1, bins, grainSize, deferred);
+	}
+
+	/**
+	 * Finds split with lowest surface area cost among bin boundaries of triangle
+	 * centers on all axes, and partitions leaves accordingly. Bounds of centers
+	 * must be already computed in bins.
+	 */
+	protected int sortAndCalcSahSplittingIndex(int startIndex, int endIndex, SahBins bins) {
+		int numIndices = endIndex - startIndex;
+		// fewer bins for small nodes, there are many of them:
+		int numBins = Math.min(SAH_BIN_COUNT, numIndices);
+
+		float[] centroidBounds = bins.centroidBounds;
+		int[] counts = bins.counts;
+		float[] bounds = bins.bounds;
+		float[] rightCosts = bins.rightCosts;
+		float[] scales = bins.scales;
+
+		for (int axis=0; axis<3; axis++) {
+			// all centers fall into first bin when there is no extent, no split is then considered
+			float extent = centroidBounds[3+axis] - centroidBounds[axis];
+			scales[axis] = extent > 0f? numBins / extent : 0f;
+		}
+
+		for (int axis=0; axis<3; axis++) {
+			for (int b=axis*SAH_BIN_COUNT; b<axis*SAH_BIN_COUNT+numBins; b++) {
+				counts[b] = 0;
+				bounds[b*6+0] = bounds[b*6+1] = bounds[b*6+2] = 1e30f;
+				bounds[b*6+3] = bounds[b*6+4] = bounds[b*6+5] = -1e30f;
+			}
+		}
+
+		// bin all axes at once:
+		for (int i=startIndex; i<endIndex; i++) {
+			int l = i * 6;
+			float leafMinX = sahLeafBounds[l+0], leafMinY = sahLeafBounds[l+1], leafMinZ = sahLeafBounds[l+2];
+			float leafMaxX = sahLeafBounds[l+3], leafMaxY = sahLeafBounds[l+4], leafMaxZ = sahLeafBounds[l+5];
+
+			for (int axis=0; axis<3; axis++) {
+				int b = axis * SAH_BIN_COUNT + sahBin(sahCentroids[i*3+axis], centroidBounds[axis], scales[axis], numBins);
+				counts[b]++;
+				int o = b * 6;
+				if (leafMinX < bounds[o+0]) bounds[o+0] = leafMinX;
+				if (leafMinY < bounds[o+1]) bounds[o+1] = leafMinY;
+				if (leafMinZ < bounds[o+2]) bounds[o+2] = leafMinZ;
+				if (leafMaxX > bounds[o+3]) bounds[o+3] = leafMaxX;
+				if (leafMaxY > bounds[o+4]) bounds[o+4] = leafMaxY;
+				if (leafMaxZ > bounds[o+5]) bounds[o+5] = leafMaxZ;
+			}
+		}
+
+		int bestAxis = -1;
+		int bestBin = 0;
+		float bestCost = Float.MAX_VALUE;
+		float[] acc = bins.accumulated;
+
+		for (int axis=0; axis<3; axis++) {
+			int first = axis * SAH_BIN_COUNT;
+
+			// sweep from right, rightCosts[b] is cost of bins b..numBins-1:
+			resetBounds(acc);
+			int count = 0;
+			for (int b=numBins-1; b>0; b--) {
+				count += counts[first+b];
+				mergeBounds(acc, bounds, first+b);
+				rightCosts[b] = count > 0? halfArea(acc) * count : 0f;
+			}
+
+			// sweep from left, split is before bin b:
+			resetBounds(acc);
+			count = 0;
+			for (int b=1; b<numBins; b++) {
+				count += counts[first+b-1];
+				mergeBounds(acc, bounds, first+b-1);
+				if (count == 0 || count == numIndices) {
+					continue;
+				}
+				float cost = halfArea(acc) * count + rightCosts[b];
+				if (cost < bestCost) {
+					bestCost = cost;
+					bestAxis = axis;
+					bestBin = b;
+				}
+			}
+		}
+
+		if (bestAxis == -1) {
+			// all centers are equal, any split is good
+			return startIndex + (numIndices >> 1);
+		}
+
+		float scale = scales[bestAxis];
+		float centroidMin = centroidBounds[bestAxis];
+		int left = startIndex;
+		int right = endIndex - 1;
+		while (true) {
+			while (left <= right && sahBin(sahCentroids[left*3+bestAxis], centroidMin, scale, numBins) < bestBin) {
+				left++;
+			}
+			while (left <= right && sahBin(sahCentroids[right*3+bestAxis], centroidMin, scale, numBins) >= bestBin) {
+				right--;
+			}
+			if (left > right) {
+				break;
+			}
+			swapSahLeaves(left, right);
+			left++;
+			right--;
+		}
+		return left;
+	}
+
+	/**
+	 * Splits at mean of centers along longest axis, with the same balancing
+	 * as in {@link #sortAndCalcSplittingIndex}.
+	 */
+	protected int sortAndCalcMeanSplittingIndex(int startIndex, int endIndex, SahBins bins) {
+		int numIndices = endIndex - startIndex;
+		float[] centroidBounds = bins.centroidBounds;
+
+		float meanX = 0f, meanY = 0f, meanZ = 0f;
+		for (int i=startIndex; i<endIndex; i++) {
+			meanX += sahCentroids[i*3+0];
+			meanY += sahCentroids[i*3+1];
+			meanZ += sahCentroids[i*3+2];
+		}
+
+		float extentX = centroidBounds[3] - centroidBounds[0];
+		float extentY = centroidBounds[4] - centroidBounds[1];
+		float extentZ = centroidBounds[5] - centroidBounds[2];
+		int axis = (extentX >= extentY)? ((extentX >= extentZ)? 0 : 2) : ((extentY >= extentZ)? 1 : 2);
+		float splitValue = (axis == 0? meanX : axis == 1? meanY : meanZ) / numIndices;
+
+		int splitIndex = startIndex;
+		for (int i=startIndex; i<endIndex; i++) {
+			if (sahCentroids[i*3+axis] > splitValue) {
+				swapSahLeaves(i, splitIndex);
+				splitIndex++;
+			}
+		}
+
+		int rangeBalancedIndices = numIndices / 3;
+		boolean unbalanced = ((splitIndex <= (startIndex + rangeBalancedIndices)) || (splitIndex >= (endIndex - 1 - rangeBalancedIndices)));
+		if (unbalanced) {
+			splitIndex = startIndex + (numIndices >> 1);
+		}
+		return splitIndex;
+	}
+
+	private void swapSahLeaves(int i, int j) {
+		int tmpIndex = sahLeafIndices[i];
+		sahLeafIndices[i] = sahLeafIndices[j];
+		sahLeafIndices[j] = tmpIndex;
+
+		swap(sahLeafBounds, i*6, j*6, 6);
+		swap(sahCentroids, i*3, j*3, 3);
+	}
+
+	private static void swap(float[] array, int i, int j, int length) {
+		for (int k=0; k<length; k++) {
+			float tmp = array[i+k];
+			array[i+k] = array[j+k];
+			array[j+k] = tmp;
+		}
+	}
+
+	private static int sahBin(float centroid, float centroidMin, float scale, int numBins) {
+		int b = (int)((centroid - centroidMin) * scale);
+		return b < numBins? b : numBins - 1;
+	}
+
+	private static void resetBounds(float[] bounds) {
+		bounds[0] = bounds[1] = bounds[2] = 1e30f;
+		bounds[3] = bounds[4] = bounds[5] = -1e30f;
+	}
+
+	private static void mergeBounds(float[] bounds, float[] binBounds, int bin) {
+		for (int j=0; j<3; j++) {
+			if (binBounds[bin*6+j] < bounds[j]) bounds[j] = binBounds[bin*6+j];
+			if (binBounds[bin*6+3+j] > bounds[3+j]) bounds[3+j] = binBounds[bin*6+3+j];
+		}
+	}
+
+	private static float halfArea(float[] bounds) {
+		float dx = bounds[3] - bounds[0];
+		float dy = bounds[4] - bounds[1];
+		float dz = bounds[5] - bounds[2];
+		return dx*dy + dy*dz + dz*dx;
+	}
+
+	/**
+	 * Adds subtree headers in the same order as {@link #buildTree}, subtrees
+	 * that fit into {@link #MAX_SUBTREE_SIZE_IN_BYTES} contain no more headers.
+	 */
+	protected void updateSubtreeHeadersRecursive(int nodeIndex) {
+		if (quantizedContiguousNodes.isLeafNode(nodeIndex)) {
+			return;
+		}
+
+		int escapeIndex = quantizedContiguousNodes.getEscapeIndex(nodeIndex);
+		if (escapeIndex * QuantizedBvhNodes.getNodeSize() <= MAX_SUBTREE_SIZE_IN_BYTES) {
+			return;
+		}
+
+		int leftChildNodexIndex = nodeIndex + 1;
+		int rightChildNodexIndex = leftChildNodexIndex + (quantizedContiguousNodes.isLeafNode(leftChildNodexIndex)? 1 : quantizedContiguousNodes.getEscapeIndex(leftChildNodexIndex));
+
+		updateSubtreeHeadersRecursive(leftChildNodexIndex);
+		updateSubtreeHeadersRecursive(rightChildNodexIndex);
+		updateSubtreeHeaders(leftChildNodexIndex, rightChildNodexIndex);
+	}
+
 	public void reportAabbOverlappingNodex(NodeOverlapCallback nodeCallback, Vector3f aabbMin, Vector3f aabbMax) {
 		// either choose recursive traversal (walkTree) or stackless (walkStacklessTree)
 
@@ -761,24 +1174,13 @@ public class OptimizedBvh {
 			quantizedQueryAabbMin = quantizeWithClamp(aabbMin);
 			quantizedQueryAabbMax = quantizeWithClamp(aabbMax);
 
-			// TODO
-			/*
-			switch (traversalMode) {
-				case TRAVERSAL_STACKLESS:
-					walkStacklessQuantizedTree(nodeCallback, quantizedQueryAabbMin, quantizedQueryAabbMax, 0, curNodeIndex);
-					break;
-					
-				case TRAVERSAL_STACKLESS_CACHE_FRIENDLY:
-					walkStacklessQuantizedTreeCacheFriendly(nodeCallback, quantizedQueryAabbMin, quantizedQueryAabbMax);
-					break;
-					
-				case TRAVERSAL_RECURSIVE:*/
-					walkRecursiveQuantizedTreeAgainstQueryAabb(quantizedContiguousNodes, 0, nodeCallback, quantizedQueryAabbMin, quantizedQueryAabbMax);
-					/*break;
-					
-				default:
-					assert (false); // unsupported
-			}*/
+			// JAVA NOTE: both traversals visit nodes in the same order
+			if (traversalMode == TraversalMode.TRAVERSAL_RECURSIVE) {
+				walkRecursiveQuantizedTreeAgainstQueryAabb(quantizedContiguousNodes, 0, nodeCallback, quantizedQueryAabbMin, quantizedQueryAabbMax);
+			}
+			else {
+				walkStacklessQuantizedTree(nodeCallback, quantizedQueryAabbMin, quantizedQueryAabbMax, 0, curNodeIndex);
+			}
 		}
 		else {
 			walkStacklessTree(nodeCallback, aabbMin, aabbMax);
@@ -828,8 +1230,34 @@ public class OptimizedBvh {
 				curIndex += escapeIndex;
 			}
 		}
-		if (maxIterations < walkIterations) {
-			maxIterations = walkIterations;
+	}
+
+	protected void walkStacklessQuantizedTree(NodeOverlapCallback nodeCallback, long quantizedQueryAabbMin, long quantizedQueryAabbMax, int startNodeIndex, int endNodeIndex) {
+		assert (useQuantization);
+
+		QuantizedBvhNodes nodes = quantizedContiguousNodes;
+		int curIndex = startNodeIndex;
+		int walkIterations = 0;
+
+		while (curIndex < endNodeIndex) {
+			// catch bugs in tree data
+			assert (walkIterations < endNodeIndex - startNodeIndex);
+
+			walkIterations++;
+
+			boolean aabbOverlap = testQuantizedAabbAgainstQuantizedAabb(quantizedQueryAabbMin, quantizedQueryAabbMax, nodes.getQuantizedAabbMin(curIndex), nodes.getQuantizedAabbMax(curIndex));
+			boolean isLeafNode = nodes.isLeafNode(curIndex);
+
+			if (isLeafNode && aabbOverlap) {
+				nodeCallback.processNode(nodes.getPartId(curIndex), nodes.getTriangleIndex(curIndex));
+			}
+
+			if (aabbOverlap || isLeafNode) {
+				curIndex++;
+			}
+			else {
+				curIndex += nodes.getEscapeIndex(curIndex);
+			}
 		}
 	}
 
@@ -857,54 +1285,207 @@ public class OptimizedBvh {
 		}
 	}
 	
+	/**
+	 * Reports leaf nodes intersected by the ray. When the callback implements
+	 * {@link RayNodeOverlapCallback}, nodes entered by the ray after the closest
+	 * hit found so far are skipped.
+	 */
 	public void reportRayOverlappingNodex(NodeOverlapCallback nodeCallback, Vector3f raySource, Vector3f rayTarget) {
-		stack.vectors.push();
+		walkStacklessTreeAgainstRay(nodeCallback, raySource, rayTarget, BulletGlobals.ZERO_VECTOR3, BulletGlobals.ZERO_VECTOR3);
+	}
+
+	/**
+	 * Reports leaf nodes intersected by box given by aabbMin and aabbMax (relative
+	 * to the ray) moved from raySource to rayTarget.
+	 */
+	public void reportBoxCastOverlappingNodex(NodeOverlapCallback nodeCallback, Vector3f raySource, Vector3f rayTarget, Vector3f aabbMin, Vector3f aabbMax) {
+		walkStacklessTreeAgainstRay(nodeCallback, raySource, rayTarget, aabbMin, aabbMax);
+	}
+	
+	/**
+	 * Reports leaf nodes intersected by up to 4 rays, traversing the tree once
+	 * for all of them. Subtrees are skipped when no ray enters them before its
+	 * closest hit. Most effective for coherent rays (similar origin and direction).
+	 */
+	public void reportRayPacketOverlappingNodex(RayPacketNodeOverlapCallback nodeCallback, Vector3f[] raySources, Vector3f[] rayTargets, int numRays) {
+		assert (numRays >= 1 && numRays <= 4);
+
+		ObjectPool<RaySlab> raySlabs = BulletPool.get(RaySlab.class);
+		RaySlab ray0 = raySlabs.get();
+		RaySlab ray1 = raySlabs.get();
+		RaySlab ray2 = raySlabs.get();
+		RaySlab ray3 = raySlabs.get();
 		try {
-			boolean fast_path = useQuantization && traversalMode == TraversalMode.TRAVERSAL_STACKLESS;
-			if (fast_path) {
-				throw new UnsupportedOperationException();
-				//walkStacklessQuantizedTreeAgainstRay(nodeCallback, raySource, rayTarget, btVector3(0, 0, 0), btVector3(0, 0, 0), 0, m_curNodeIndex);
+			// unused rays are never entered (lambdaMax is negative):
+			float lambdaMax0 = -1f, lambdaMax1 = -1f, lambdaMax2 = -1f, lambdaMax3 = -1f;
+
+			ray0.init(this, raySources[0], rayTargets[0], BulletGlobals.ZERO_VECTOR3, BulletGlobals.ZERO_VECTOR3);
+			lambdaMax0 = nodeCallback.getHitFraction(0);
+			if (numRays > 1) {
+				ray1.init(this, raySources[1], rayTargets[1], BulletGlobals.ZERO_VECTOR3, BulletGlobals.ZERO_VECTOR3);
+				lambdaMax1 = nodeCallback.getHitFraction(1);
 			}
-			else {
-				/* Otherwise fallback to AABB overlap test */
-				Vector3f aabbMin = stack.vectors.get(raySource);
-				Vector3f aabbMax = stack.vectors.get(raySource);
-				VectorUtil.setMin(aabbMin, rayTarget);
-				VectorUtil.setMax(aabbMax, rayTarget);
-				reportAabbOverlappingNodex(nodeCallback, aabbMin, aabbMax);
+			if (numRays > 2) {
+				ray2.init(this, raySources[2], rayTargets[2], BulletGlobals.ZERO_VECTOR3, BulletGlobals.ZERO_VECTOR3);
+				lambdaMax2 = nodeCallback.getHitFraction(2);
+			}
+			if (numRays > 3) {
+				ray3.init(this, raySources[3], rayTargets[3], BulletGlobals.ZERO_VECTOR3, BulletGlobals.ZERO_VECTOR3);
+				lambdaMax3 = nodeCallback.getHitFraction(3);
+			}
+
+			QuantizedBvhNodes nodes = quantizedContiguousNodes;
+			float minX, minY, minZ, maxX, maxY, maxZ;
+			boolean isLeafNode;
+			int curIndex = 0;
+			int walkIterations = 0;
+
+			while (curIndex < curNodeIndex) {
+				// catch bugs in tree data
+				assert (walkIterations < curNodeIndex);
+
+				walkIterations++;
+
+				OptimizedBvhNode node = null;
+				if (useQuantization) {
+					long nodeMin = nodes.getQuantizedAabbMin(curIndex);
+					long nodeMax = nodes.getQuantizedAabbMax(curIndex);
+					minX = QuantizedBvhNodes.getCoord(nodeMin, 0);
+					minY = QuantizedBvhNodes.getCoord(nodeMin, 1);
+					minZ = QuantizedBvhNodes.getCoord(nodeMin, 2);
+					maxX = QuantizedBvhNodes.getCoord(nodeMax, 0);
+					maxY = QuantizedBvhNodes.getCoord(nodeMax, 1);
+					maxZ = QuantizedBvhNodes.getCoord(nodeMax, 2);
+					isLeafNode = nodes.isLeafNode(curIndex);
+				}
+				else {
+					node = contiguousNodes.get(curIndex);
+					minX = node.aabbMinOrg.x;
+					minY = node.aabbMinOrg.y;
+					minZ = node.aabbMinOrg.z;
+					maxX = node.aabbMaxOrg.x;
+					maxY = node.aabbMaxOrg.y;
+					maxZ = node.aabbMaxOrg.z;
+					isLeafNode = (node.escapeIndex == -1);
+				}
+
+				int rayMask = 0;
+				if (ray0.overlaps(minX, minY, minZ, maxX, maxY, maxZ, lambdaMax0)) rayMask |= 1;
+				if (ray1.overlaps(minX, minY, minZ, maxX, maxY, maxZ, lambdaMax1)) rayMask |= 2;
+				if (ray2.overlaps(minX, minY, minZ, maxX, maxY, maxZ, lambdaMax2)) rayMask |= 4;
+				if (ray3.overlaps(minX, minY, minZ, maxX, maxY, maxZ, lambdaMax3)) rayMask |= 8;
+
+				if (isLeafNode && rayMask != 0) {
+					if (useQuantization) {
+						nodeCallback.processNode(nodes.getPartId(curIndex), nodes.getTriangleIndex(curIndex), rayMask);
+					}
+					else {
+						nodeCallback.processNode(node.subPart, node.triangleIndex, rayMask);
+					}
+
+					// further nodes are only interesting when entered before the closest hit:
+					if ((rayMask & 1) != 0) lambdaMax0 = nodeCallback.getHitFraction(0);
+					if ((rayMask & 2) != 0) lambdaMax1 = nodeCallback.getHitFraction(1);
+					if ((rayMask & 4) != 0) lambdaMax2 = nodeCallback.getHitFraction(2);
+					if ((rayMask & 8) != 0) lambdaMax3 = nodeCallback.getHitFraction(3);
+				}
+
+				if (rayMask != 0 || isLeafNode) {
+					curIndex++;
+				}
+				else {
+					curIndex += useQuantization? nodes.getEscapeIndex(curIndex) : node.escapeIndex;
+				}
 			}
 		}
 		finally {
-			stack.vectors.pop();
+			raySlabs.release(ray0);
+			raySlabs.release(ray1);
+			raySlabs.release(ray2);
+			raySlabs.release(ray3);
 		}
 	}
 
-	public void reportBoxCastOverlappingNodex(NodeOverlapCallback nodeCallback, Vector3f raySource, Vector3f rayTarget, Vector3f aabbMin, Vector3f aabbMax) {
-		stack.vectors.push();
+	/**
+	 * Stackless traversal using slab test of the ray (or box moved along the ray)
+	 * against node AABBs. Nodes entered past the closest hit fraction of
+	 * {@link RayNodeOverlapCallback} are skipped, including whole subtrees.
+	 */
+	protected void walkStacklessTreeAgainstRay(NodeOverlapCallback nodeCallback, Vector3f raySource, Vector3f rayTarget, Vector3f aabbMin, Vector3f aabbMax) {
+		ObjectPool<RaySlab> raySlabs = BulletPool.get(RaySlab.class);
+		RaySlab ray = raySlabs.get();
 		try {
-			boolean fast_path = useQuantization && traversalMode == TraversalMode.TRAVERSAL_STACKLESS;
-			if (fast_path) {
-				throw new UnsupportedOperationException();
-				//walkStacklessQuantizedTreeAgainstRay(nodeCallback, raySource, rayTarget, aabbMin, aabbMax, 0, m_curNodeIndex);
-			}
-			else {
-				/* Slow path:
-				Construct the bounding box for the entire box cast and send that down the tree */
-				Vector3f qaabbMin = stack.vectors.get(raySource);
-				Vector3f qaabbMax = stack.vectors.get(raySource);
-				VectorUtil.setMin(qaabbMin, rayTarget);
-				VectorUtil.setMax(qaabbMax, rayTarget);
-				qaabbMin.add(aabbMin);
-				qaabbMax.add(aabbMax);
-				reportAabbOverlappingNodex(nodeCallback, qaabbMin, qaabbMax);
+			ray.init(this, raySource, rayTarget, aabbMin, aabbMax);
+
+			RayNodeOverlapCallback rayCallback = (nodeCallback instanceof RayNodeOverlapCallback)? (RayNodeOverlapCallback)nodeCallback : null;
+			float lambdaMax = rayCallback != null? rayCallback.getHitFraction() : 1f;
+
+			QuantizedBvhNodes nodes = quantizedContiguousNodes;
+			boolean rayOverlap, isLeafNode;
+			int curIndex = 0;
+			int walkIterations = 0;
+
+			while (curIndex < curNodeIndex) {
+				// catch bugs in tree data
+				assert (walkIterations < curNodeIndex);
+
+				walkIterations++;
+
+				if (useQuantization) {
+					long nodeMin = nodes.getQuantizedAabbMin(curIndex);
+					long nodeMax = nodes.getQuantizedAabbMax(curIndex);
+					rayOverlap = ray.overlaps(
+							QuantizedBvhNodes.getCoord(nodeMin, 0), QuantizedBvhNodes.getCoord(nodeMin, 1), QuantizedBvhNodes.getCoord(nodeMin, 2),
+							QuantizedBvhNodes.getCoord(nodeMax, 0), QuantizedBvhNodes.getCoord(nodeMax, 1), QuantizedBvhNodes.getCoord(nodeMax, 2),
+							lambdaMax);
+					isLeafNode = nodes.isLeafNode(curIndex);
+
+					if (isLeafNode && rayOverlap) {
+						nodeCallback.processNode(nodes.getPartId(curIndex), nodes.getTriangleIndex(curIndex));
+						if (rayCallback != null) {
+							lambdaMax = rayCallback.getHitFraction();
+						}
+					}
+
+					if (rayOverlap || isLeafNode) {
+						curIndex++;
+					}
+					else {
+						curIndex += nodes.getEscapeIndex(curIndex);
+					}
+				}
+				else {
+					OptimizedBvhNode node = contiguousNodes.get(curIndex);
+					rayOverlap = ray.overlaps(
+							node.aabbMinOrg.x, node.aabbMinOrg.y, node.aabbMinOrg.z,
+							node.aabbMaxOrg.x, node.aabbMaxOrg.y, node.aabbMaxOrg.z,
+							lambdaMax);
+					isLeafNode = (node.escapeIndex == -1);
+
+					if (isLeafNode && rayOverlap) {
+						nodeCallback.processNode(node.subPart, node.triangleIndex);
+						if (rayCallback != null) {
+							lambdaMax = rayCallback.getHitFraction();
+						}
+					}
+
+					if (rayOverlap || isLeafNode) {
+						curIndex++;
+					}
+					else {
+						curIndex += node.escapeIndex;
+					}
+				}
 			}
 		}
 		finally {
-			stack.vectors.pop();
+			raySlabs.release(ray);
 		}
 	}
-	
+
 	public long quantizeWithClamp(Vector3f point) {
+		BulletStack stack = BulletStack.get();
+
 		assert (useQuantization);
 
 		stack.vectors.push();
@@ -940,4 +1521,107 @@ public class OptimizedBvh {
 		vecOut.add(bvhAabbMin);
 	}
 	
+	////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Ray (or box moved along the ray) prepared for slab tests against node AABBs.
+	 * For quantized trees the ray is converted to quantized space once, so node
+	 * bounds can be tested without unquantization.
+	 */
+	protected static class RaySlab {
+		private float invDirX, invDirY, invDirZ;
+		// node bounds offsets relative to ray source (includes box extents):
+		private float minOffsetX, minOffsetY, minOffsetZ;
+		private float maxOffsetX, maxOffsetY, maxOffsetZ;
+
+		public RaySlab() {
+		}
+
+		public void init(OptimizedBvh bvh, Vector3f raySource, Vector3f rayTarget, Vector3f aabbMin, Vector3f aabbMax) {
+			float scaleX = 1f, scaleY = 1f, scaleZ = 1f;
+			float originX = raySource.x, originY = raySource.y, originZ = raySource.z;
+			float expand = 0f;
+
+			if (bvh.useQuantization) {
+				scaleX = bvh.bvhQuantization.x;
+				scaleY = bvh.bvhQuantization.y;
+				scaleZ = bvh.bvhQuantization.z;
+				originX = (raySource.x - bvh.bvhAabbMin.x) * scaleX;
+				originY = (raySource.y - bvh.bvhAabbMin.y) * scaleY;
+				originZ = (raySource.z - bvh.bvhAabbMin.z) * scaleZ;
+				// quantized bounds are rounded to nearest:
+				expand = 1f;
+			}
+			else if (bvh.curNodeIndex > 0) {
+				// similar tolerance as for quantized bounds, triangle raycasts
+				// accept hits slightly outside of triangle edges:
+				OptimizedBvhNode rootNode = bvh.contiguousNodes.get(0);
+				float extent = Math.max(rootNode.aabbMaxOrg.x - rootNode.aabbMinOrg.x, Math.max(rootNode.aabbMaxOrg.y - rootNode.aabbMinOrg.y, rootNode.aabbMaxOrg.z - rootNode.aabbMinOrg.z));
+				expand = extent * 2e-5f;
+			}
+
+			invDirX = invDir((rayTarget.x - raySource.x) * scaleX);
+			invDirY = invDir((rayTarget.y - raySource.y) * scaleY);
+			invDirZ = invDir((rayTarget.z - raySource.z) * scaleZ);
+
+			// box moved along the ray overlaps node when ray overlaps node expanded by the box:
+			minOffsetX = -expand - aabbMax.x * scaleX - originX;
+			minOffsetY = -expand - aabbMax.y * scaleY - originY;
+			minOffsetZ = -expand - aabbMax.z * scaleZ - originZ;
+			maxOffsetX = expand - aabbMin.x * scaleX - originX;
+			maxOffsetY = expand - aabbMin.y * scaleY - originY;
+			maxOffsetZ = expand - aabbMin.z * scaleZ - originZ;
+		}
+
+		private static float invDir(float dir) {
+			// JAVA NOTE: large value instead of infinity avoids NaN for 0*inf
+			return dir != 0f? 1f / dir : 1e30f;
+		}
+
+		/**
+		 * Tests if ray enters given AABB in range 0..lambdaMax.
+		 */
+		public boolean overlaps(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float lambdaMax) {
+			float t0 = (minX + minOffsetX) * invDirX;
+			float t1 = (maxX + maxOffsetX) * invDirX;
+			float tmin = t0 < t1? t0 : t1;
+			float tmax = t0 < t1? t1 : t0;
+
+			t0 = (minY + minOffsetY) * invDirY;
+			t1 = (maxY + maxOffsetY) * invDirY;
+			if (t0 > t1) {
+				float tmp = t0; t0 = t1; t1 = tmp;
+			}
+			if (t0 > tmin) tmin = t0;
+			if (t1 < tmax) tmax = t1;
+
+			t0 = (minZ + minOffsetZ) * invDirZ;
+			t1 = (maxZ + maxOffsetZ) * invDirZ;
+			if (t0 > t1) {
+				float tmp = t0; t0 = t1; t1 = tmp;
+			}
+			if (t0 > tmin) tmin = t0;
+			if (t1 < tmax) tmax = t1;
+
+			if (tmin < 0f) tmin = 0f;
+			if (tmax > lambdaMax) tmax = lambdaMax;
+			return tmin <= tmax;
+		}
+	}
+	
+	/**
+	 * Per-thread scratch space of binned SAH builder.
+	 */
+	protected static class SahBins {
+		public final int[] counts = new int[3 * SAH_BIN_COUNT];
+		public final float[] bounds = new float[3 * SAH_BIN_COUNT * 6];
+		public final float[] rightCosts = new float[SAH_BIN_COUNT];
+		public final float[] accumulated = new float[6];
+		public final float[] centroidBounds = new float[6];
+		public final float[] scales = new float[3];
+
+		public SahBins() {
+		}
+	}
+	
 }
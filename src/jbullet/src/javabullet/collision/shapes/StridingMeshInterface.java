@@ -36,9 +36,8 @@ public abstract class StridingMeshInterface {
 
 	protected final Vector3f scaling = new Vector3f(1f, 1f, 1f);
 	
-	private VertexData data = new VertexData();
-	
 	public void internalProcessAllTriangles(InternalTriangleIndexCallback callback, Vector3f aabbMin, Vector3f aabbMax) {
+		VertexData data = new VertexData();
 		int numtotalphysicsverts = 0;
 		int part, graphicssubparts = getNumSubParts();
 		int gfxindex;
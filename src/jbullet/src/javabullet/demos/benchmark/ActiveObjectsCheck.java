@@ -0,0 +1,155 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+
+package javabullet.demos.benchmark;
+
+import javabullet.collision.broadphase.DbvtBroadphase;
+import javabullet.collision.dispatch.ActiveObjectList;
+import javabullet.collision.dispatch.CollisionDispatcher;
+import javabullet.collision.dispatch.CollisionObject;
+import javabullet.collision.dispatch.CollisionWorld.ClosestRayResultCallback;
+import javabullet.collision.dispatch.DefaultCollisionConfiguration;
+import javabullet.collision.shapes.BoxShape;
+import javabullet.collision.shapes.CollisionShape;
+import javabullet.collision.shapes.SphereShape;
+import javabullet.dynamics.DiscreteDynamicsWorld;
+import javabullet.dynamics.RigidBody;
+import javabullet.dynamics.RigidBodyConstructionInfo;
+import javabullet.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
+import javabullet.linearmath.DefaultMotionState;
+import javabullet.linearmath.Transform;
+import javax.vecmath.Vector3f;
+
+/**
+ * Headless check of the active objects index. Verifies that objects keep
+ * the order in which they were added regardless of the order they were put
+ * to sleep and woken up in, that static objects are not indexed and that
+ * static object moved by setWorldTransform is still updated in the broadphase.
+ * Exits with non-zero status on failure.
+ * 
+ * @author jezek2
+ */
+public class ActiveObjectsCheck {
+
+	private DiscreteDynamicsWorld dynamicsWorld;
+	private RigidBody ground;
+	private RigidBody[] spheres = new RigidBody[4];
+	
+	public ActiveObjectsCheck() {
+		DefaultCollisionConfiguration collisionConfiguration = new DefaultCollisionConfiguration();
+		CollisionDispatcher dispatcher = new CollisionDispatcher(collisionConfiguration);
+		dynamicsWorld = new DiscreteDynamicsWorld(dispatcher, new DbvtBroadphase(), new SequentialImpulseConstraintSolver(), collisionConfiguration);
+		dynamicsWorld.setGravity(new Vector3f(0f, 0f, 0f));
+		
+		ground = createBody(0f, new BoxShape(new Vector3f(5f, 1f, 5f)), 0f, -1f);
+		CollisionShape sphereShape = new SphereShape(0.5f);
+		for (int i=0; i<spheres.length; i++) {
+			spheres[i] = createBody(1f, sphereShape, i*10f + 20f, 5f);
+		}
+	}
+	
+	private RigidBody createBody(float mass, CollisionShape shape, float x, float y) {
+		Transform startTransform = new Transform();
+		startTransform.setIdentity();
+		startTransform.origin.set(x, y, 0f);
+		
+		Vector3f localInertia = new Vector3f(0f, 0f, 0f);
+		if (mass != 0f) {
+			shape.calculateLocalInertia(mass, localInertia);
+		}
+		
+		RigidBodyConstructionInfo rbInfo = new RigidBodyConstructionInfo(mass, new DefaultMotionState(startTransform), shape, localInertia);
+		RigidBody body = new RigidBody(rbInfo);
+		dynamicsWorld.addRigidBody(body);
+		return body;
+	}
+	
+	/**
+	 * Returns active objects as indices of spheres, static objects are reported as -1.
+	 */
+	private String getActiveOrder() {
+		ActiveObjectList activeObjects = dynamicsWorld.getActiveObjects();
+		activeObjects.compact();
+		
+		StringBuilder buf = new StringBuilder();
+		for (int i=0; i<activeObjects.size(); i++) {
+			CollisionObject colObj = activeObjects.get(i);
+			int index = -1;
+			for (int j=0; j<spheres.length; j++) {
+				if (spheres[j] == colObj) {
+					index = j;
+				}
+			}
+			if (buf.length() > 0) {
+				buf.append(' ');
+			}
+			buf.append(index);
+		}
+		return buf.toString();
+	}
+	
+	private boolean check(String name, String value, String expected) {
+		boolean pass = value.equals(expected);
+		System.out.println(name+": "+value+(pass? "" : "  FAILED, expected "+expected));
+		return pass;
+	}
+	
+	public boolean run() {
+		boolean ok = true;
+		ok &= check("after add", getActiveOrder(), "0 1 2 3");
+		
+		spheres[1].forceActivationState(CollisionObject.ISLAND_SLEEPING);
+		ok &= check("1 asleep", getActiveOrder(), "0 2 3");
+		
+		// tail slot becomes a hole before 1 is woken up:
+		spheres[3].forceActivationState(CollisionObject.ISLAND_SLEEPING);
+		spheres[1].forceActivationState(CollisionObject.ACTIVE_TAG);
+		ok &= check("3 asleep, 1 woken", getActiveOrder(), "0 1 2");
+		
+		spheres[3].forceActivationState(CollisionObject.ACTIVE_TAG);
+		ok &= check("3 woken", getActiveOrder(), "0 1 2 3");
+		
+		// move static ground under the spheres, broadphase must see it:
+		Transform trans = new Transform();
+		trans.setIdentity();
+		trans.origin.set(40f, -1f, 0f);
+		ground.setWorldTransform(trans);
+		dynamicsWorld.stepSimulation(1f / 60f, 1, 1f / 60f);
+		
+		Vector3f rayFrom = new Vector3f(40f, 10f, 0.5f);
+		Vector3f rayTo = new Vector3f(40f, -10f, 0.5f);
+		ClosestRayResultCallback callback = new ClosestRayResultCallback(rayFrom, rayTo);
+		dynamicsWorld.rayTest(rayFrom, rayTo, callback);
+		ok &= check("moved ground hit", String.valueOf(callback.collisionObject == ground), "true");
+		
+		return ok;
+	}
+	
+	public static void main(String[] args) {
+		if (!new ActiveObjectsCheck().run()) {
+			System.exit(1);
+		}
+	}
+	
+}
@@ -0,0 +1,310 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.demos.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javabullet.collision.broadphase.DbvtBroadphase;
+import javabullet.collision.dispatch.CollisionDispatcher;
+import javabullet.collision.dispatch.CollisionObject;
+import javabullet.collision.dispatch.CollisionWorld;
+import javabullet.collision.dispatch.CollisionWorld.ClosestRayResultCallback;
+import javabullet.collision.dispatch.DefaultCollisionConfiguration;
+import javabullet.collision.shapes.BoxShape;
+import javabullet.collision.shapes.BvhTriangleMeshShape;
+import javabullet.collision.shapes.CollisionShape;
+import javabullet.collision.shapes.CompoundShape;
+import javabullet.collision.shapes.ConvexHullShape;
+import javabullet.collision.shapes.CylinderShape;
+import javabullet.collision.shapes.SphereShape;
+import javabullet.collision.shapes.TriangleIndexVertexArray;
+import javabullet.linearmath.Transform;
+import javax.vecmath.Quat4f;
+import javax.vecmath.Vector3f;
+
+/**
+ * Headless check of batch raycasts. Casts the same rays with
+ * {@link CollisionWorld#rayTestBatch} and one by one with {@link CollisionWorld#rayTest}
+ * and {@link ClosestRayResultCallback}, and with serial and parallel batch
+ * processing, before and after moving some of the objects. Exits with non-zero
+ * status on mismatch.
+ *
+ * @author jezek2
+ */
+public class BatchRaycastCheck {
+	
+	private static final int NUM_RAYS = 40000;
+	private static final int NUM_OBJECTS = 200;
+	private static final int TERRAIN_SIZE = 32;
+	private static final float AREA = 40f;
+	private static final float NORMAL_TOLERANCE = 1e-5f;
+	
+	private static final short GROUP_A = 64;
+	private static final short GROUP_B = 128;
+	
+	private CollisionWorld collisionWorld;
+	private List<CollisionObject> objects = new ArrayList<CollisionObject>();
+	private Random random = new Random(1234);
+	
+	private float[] rayFrom = new float[NUM_RAYS*3];
+	private float[] rayTo = new float[NUM_RAYS*3];
+	private short[] filterMasks = new short[NUM_RAYS];
+	
+	public BatchRaycastCheck() {
+		DefaultCollisionConfiguration collisionConfiguration = new DefaultCollisionConfiguration();
+		CollisionDispatcher dispatcher = new CollisionDispatcher(collisionConfiguration);
+		collisionWorld = new CollisionWorld(dispatcher, new DbvtBroadphase(), collisionConfiguration);
+		
+		CollisionObject terrain = new CollisionObject();
+		terrain.setCollisionShape(new BvhTriangleMeshShape(createTerrainMesh(), true));
+		Transform trans = new Transform();
+		trans.setIdentity();
+		terrain.setWorldTransform(trans);
+		collisionWorld.addCollisionObject(terrain);
+		objects.add(terrain);
+		
+		CollisionShape[] shapes = new CollisionShape[] {
+			new BoxShape(new Vector3f(1f, 0.5f, 0.75f)),
+			new SphereShape(0.8f),
+			new CylinderShape(new Vector3f(0.5f, 1f, 0.5f)),
+			createHull(),
+			createCompound(),
+		};
+		
+		for (int i=0; i<NUM_OBJECTS; i++) {
+			CollisionObject colObj = new CollisionObject();
+			colObj.setCollisionShape(shapes[i % shapes.length]);
+			colObj.setWorldTransform(randomTransform(trans));
+			short group = (i & 1) == 0? GROUP_A : GROUP_B;
+			collisionWorld.addCollisionObject(colObj, group, (short)-1);
+			objects.add(colObj);
+		}
+		collisionWorld.updateAabbs();
+		
+		for (int i=0; i<NUM_RAYS; i++) {
+			setRandomPoint(rayFrom, i);
+			setRandomPoint(rayTo, i);
+			switch (i % 4) {
+				case 0: filterMasks[i] = GROUP_A; break;
+				case 1: filterMasks[i] = GROUP_B; break;
+				default: filterMasks[i] = (short)-1; break;
+			}
+		}
+	}
+	
+	private static TriangleIndexVertexArray createTerrainMesh() {
+		int numVertices = (TERRAIN_SIZE + 1) * (TERRAIN_SIZE + 1);
+		int numTriangles = TERRAIN_SIZE * TERRAIN_SIZE * 2;
+		float scale = 2f * AREA / TERRAIN_SIZE;
+		
+		ByteBuffer vertices = ByteBuffer.allocateDirect(numVertices * 3 * 4).order(ByteOrder.nativeOrder());
+		for (int i=0; i<=TERRAIN_SIZE; i++) {
+			for (int j=0; j<=TERRAIN_SIZE; j++) {
+				vertices.putFloat((i - TERRAIN_SIZE/2) * scale);
+				vertices.putFloat((float)(Math.sin(i * 0.5) * Math.cos(j * 0.4)) * 2f - 8f);
+				vertices.putFloat((j - TERRAIN_SIZE/2) * scale);
+			}
+		}
+		vertices.flip();
+		
+		ByteBuffer indices = ByteBuffer.allocateDirect(numTriangles * 3 * 4).order(ByteOrder.nativeOrder());
+		for (int i=0; i<TERRAIN_SIZE; i++) {
+			for (int j=0; j<TERRAIN_SIZE; j++) {
+				int i0 = i * (TERRAIN_SIZE + 1) + j;
+				int i1 = i0 + 1;
+				int i2 = i0 + TERRAIN_SIZE + 1;
+				int i3 = i2 + 1;
+				indices.putInt(i0).putInt(i1).putInt(i2);
+				indices.putInt(i1).putInt(i3).putInt(i2);
+			}
+		}
+		indices.flip();
+		
+		return new TriangleIndexVertexArray(numTriangles, indices, 3 * 4, numVertices, vertices, 3 * 4);
+	}
+	
+	private CollisionShape createHull() {
+		List<Vector3f> points = new ArrayList<Vector3f>();
+		for (int i=0; i<40; i++) {
+			Vector3f v = new Vector3f(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f);
+			v.normalize();
+			v.scale(1.2f);
+			points.add(v);
+		}
+		ConvexHullShape hull = new ConvexHullShape(points);
+		hull.buildSupportGraph();
+		return hull;
+	}
+	
+	private CollisionShape createCompound() {
+		CompoundShape compound = new CompoundShape();
+		Transform trans = new Transform();
+		trans.setIdentity();
+		trans.origin.set(-1f, 0f, 0f);
+		compound.addChildShape(trans, new BoxShape(new Vector3f(0.5f, 0.5f, 0.5f)));
+		trans.origin.set(1f, 0f, 0f);
+		compound.addChildShape(trans, new SphereShape(0.6f));
+		return compound;
+	}
+	
+	private Transform randomTransform(Transform out) {
+		Quat4f rot = new Quat4f(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f);
+		rot.normalize();
+		out.setIdentity();
+		out.setRotation(rot);
+		out.origin.set((random.nextFloat() - 0.5f) * AREA, (random.nextFloat() - 0.5f) * 10f, (random.nextFloat() - 0.5f) * AREA);
+		return out;
+	}
+	
+	private void setRandomPoint(float[] points, int index) {
+		points[index*3+0] = (random.nextFloat() - 0.5f) * AREA * 1.2f;
+		points[index*3+1] = (random.nextFloat() - 0.5f) * 24f;
+		points[index*3+2] = (random.nextFloat() - 0.5f) * AREA * 1.2f;
+	}
+	
+	private static class Results {
+		public final float[] hitFractions = new float[NUM_RAYS];
+		public final float[] hitNormals = new float[NUM_RAYS*3];
+		public final int[] hitObjects = new int[NUM_RAYS];
+		
+		public int getNumHits() {
+			int numHits = 0;
+			for (int i=0; i<NUM_RAYS; i++) {
+				if (hitObjects[i] != -1) {
+					numHits++;
+				}
+			}
+			return numHits;
+		}
+		
+		public boolean equals(Results r) {
+			return Arrays.equals(hitFractions, r.hitFractions) && Arrays.equals(hitNormals, r.hitNormals) && Arrays.equals(hitObjects, r.hitObjects);
+		}
+	}
+	
+	private Results castBatch() {
+		Results results = new Results();
+		collisionWorld.rayTestBatch(rayFrom, rayTo, filterMasks, NUM_RAYS, results.hitFractions, results.hitNormals, results.hitObjects);
+		return results;
+	}
+	
+	private Results castSingle() {
+		Results results = new Results();
+		List<CollisionObject> objectArray = collisionWorld.getCollisionObjectArray();
+		Vector3f from = new Vector3f();
+		Vector3f to = new Vector3f();
+		for (int i=0; i<NUM_RAYS; i++) {
+			from.set(rayFrom[i*3+0], rayFrom[i*3+1], rayFrom[i*3+2]);
+			to.set(rayTo[i*3+0], rayTo[i*3+1], rayTo[i*3+2]);
+			ClosestRayResultCallback callback = new ClosestRayResultCallback(from, to);
+			collisionWorld.rayTest(from, to, callback, filterMasks[i]);
+			
+			results.hitFractions[i] = callback.closestHitFraction;
+			results.hitObjects[i] = callback.hasHit()? objectArray.indexOf(callback.collisionObject) : -1;
+			results.hitNormals[i*3+0] = callback.hitNormalWorld.x;
+			results.hitNormals[i*3+1] = callback.hitNormalWorld.y;
+			results.hitNormals[i*3+2] = callback.hitNormalWorld.z;
+		}
+		return results;
+	}
+	
+	/**
+	 * Compares batch results with single raycasts. Fractions must be exact,
+	 * for hits the object and normal must match too.
+	 */
+	private static boolean compareWithSingle(String name, Results batch, Results single) {
+		int mismatches = 0;
+		for (int i=0; i<NUM_RAYS; i++) {
+			boolean match = batch.hitFractions[i] == single.hitFractions[i] && batch.hitObjects[i] == single.hitObjects[i];
+			if (match && single.hitObjects[i] != -1) {
+				for (int j=0; j<3; j++) {
+					match &= Math.abs(batch.hitNormals[i*3+j] - single.hitNormals[i*3+j]) <= NORMAL_TOLERANCE;
+				}
+			}
+			if (!match) {
+				mismatches++;
+			}
+		}
+		System.out.println(name+": rays="+NUM_RAYS+" hits="+single.getNumHits()+" mismatches="+mismatches+(mismatches == 0? "" : "  FAILED"));
+		return mismatches == 0;
+	}
+	
+	private static boolean compareExact(String name, Results results, Results expected) {
+		boolean pass = results.equals(expected);
+		System.out.println(name+": "+(pass? "identical" : "FAILED, results differ"));
+		return pass;
+	}
+	
+	private boolean checkAll(String name, ExecutorService executor, int parallelism) {
+		boolean ok = true;
+		
+		collisionWorld.setExecutor(null);
+		Results serial = castBatch();
+		ok &= compareWithSingle(name+", batch vs single", serial, castSingle());
+		
+		collisionWorld.setExecutor(executor);
+		collisionWorld.setParallelism(parallelism);
+		try {
+			ok &= compareExact(name+", "+parallelism+" threads vs serial", castBatch(), serial);
+		}
+		finally {
+			collisionWorld.setExecutor(null);
+		}
+		return ok;
+	}
+	
+	public boolean run() {
+		int parallelism = 4;
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism - 1);
+		try {
+			boolean ok = checkAll("initial", executor, parallelism);
+			
+			// move every third object, batch snapshot must follow:
+			Transform trans = new Transform();
+			for (int i=1; i<objects.size(); i+=3) {
+				objects.get(i).setWorldTransform(randomTransform(trans));
+			}
+			collisionWorld.updateAabbs();
+			
+			ok &= checkAll("moved", executor, parallelism);
+			return ok;
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+	
+	public static void main(String[] args) {
+		if (!new BatchRaycastCheck().run()) {
+			System.exit(1);
+		}
+	}
+
+}
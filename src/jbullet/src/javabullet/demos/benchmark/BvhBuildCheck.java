@@ -0,0 +1,152 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+
+package javabullet.demos.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javabullet.collision.narrowphase.TriangleRaycastCallback;
+import javabullet.collision.shapes.BvhTriangleMeshShape;
+import javabullet.collision.shapes.TreeBuildMode;
+import javabullet.collision.shapes.TriangleIndexVertexArray;
+import javax.vecmath.Vector3f;
+
+/**
+ * Headless check of bvh build modes. Builds triangle mesh shape with mean split,
+ * binned SAH and parallel binned SAH trees (and with the tree supplied after
+ * construction) and casts same set of rays against each. All trees must report
+ * the same closest hits, otherwise exits with non-zero status.
+ * 
+ * @author jezek2
+ */
+public class BvhBuildCheck {
+
+	private static final int SIZE = 128;
+	private static final int NUM_RAYS = 4096;
+	private static final float TOLERANCE = 1e-5f;
+	
+	private static TriangleIndexVertexArray createMesh() {
+		int numVertices = (SIZE + 1) * (SIZE + 1);
+		int numTriangles = SIZE * SIZE * 2;
+		
+		ByteBuffer vertices = ByteBuffer.allocateDirect(numVertices * 3 * 4).order(ByteOrder.nativeOrder());
+		for (int i=0; i<=SIZE; i++) {
+			for (int j=0; j<=SIZE; j++) {
+				vertices.putFloat(i - SIZE/2);
+				vertices.putFloat((float)(Math.sin(i * 0.3) * Math.cos(j * 0.2)) * 2f);
+				vertices.putFloat(j - SIZE/2);
+			}
+		}
+		vertices.flip();
+		
+		ByteBuffer indices = ByteBuffer.allocateDirect(numTriangles * 3 * 4).order(ByteOrder.nativeOrder());
+		for (int i=0; i<SIZE; i++) {
+			for (int j=0; j<SIZE; j++) {
+				int i0 = i * (SIZE + 1) + j;
+				int i1 = i0 + 1;
+				int i2 = i0 + SIZE + 1;
+				int i3 = i2 + 1;
+				indices.putInt(i0).putInt(i1).putInt(i2);
+				indices.putInt(i1).putInt(i3).putInt(i2);
+			}
+		}
+		indices.flip();
+		
+		return new TriangleIndexVertexArray(numTriangles, indices, 3 * 4, numVertices, vertices, 3 * 4);
+	}
+	
+	/**
+	 * Returns closest hit fraction for each ray.
+	 */
+	private static float[] castRays(BvhTriangleMeshShape shape) {
+		Random random = new Random(4321);
+		float[] fractions = new float[NUM_RAYS];
+		for (int i=0; i<NUM_RAYS; i++) {
+			float x = (random.nextFloat() - 0.5f) * SIZE;
+			float z = (random.nextFloat() - 0.5f) * SIZE;
+			Vector3f from = new Vector3f(x, 10f, z);
+			Vector3f to = ((i & 1) == 0)? new Vector3f(x, -10f, z) : new Vector3f(-x, -3f, -z);
+			
+			TriangleRaycastCallback callback = new TriangleRaycastCallback(from, to) {
+				public float reportHit(Vector3f hitNormalLocal, float hitFraction, int partId, int triangleIndex) {
+					return hitFraction;
+				}
+			};
+			callback.hitFraction = 1f;
+			shape.performRaycast(callback, from, to);
+			fractions[i] = callback.hitFraction;
+		}
+		return fractions;
+	}
+	
+	private static boolean compare(String name, float[] fractions, float[] expected) {
+		int numHits = 0;
+		float maxError = 0f;
+		for (int i=0; i<fractions.length; i++) {
+			maxError = Math.max(maxError, Math.abs(fractions[i] - expected[i]));
+			if (fractions[i] < 1f) {
+				numHits++;
+			}
+		}
+		boolean pass = maxError <= TOLERANCE;
+		System.out.println(name+": hits="+numHits+" max error="+maxError+(pass? "" : "  FAILED"));
+		return pass;
+	}
+	
+	public static void main(String[] args) {
+		TriangleIndexVertexArray mesh = createMesh();
+		boolean ok = true;
+		
+		BvhTriangleMeshShape meanSplit = new BvhTriangleMeshShape(mesh, true);
+		float[] expected = castRays(meanSplit);
+		ok &= compare("mean split", expected, expected);
+		
+		BvhTriangleMeshShape sah = new BvhTriangleMeshShape(mesh, true, TreeBuildMode.BUILD_BINNED_SAH, null, 1);
+		ok &= sah.getOptimizedBvh().getBuildMode() == TreeBuildMode.BUILD_BINNED_SAH;
+		ok &= compare("binned SAH", castRays(sah), expected);
+		
+		int parallelism = 4;
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism - 1);
+		try {
+			BvhTriangleMeshShape parallelSah = new BvhTriangleMeshShape(mesh, true, TreeBuildMode.BUILD_BINNED_SAH, executor, parallelism);
+			ok &= compare("parallel binned SAH", castRays(parallelSah), expected);
+		}
+		finally {
+			executor.shutdown();
+		}
+		
+		// tree shared with another shape:
+		BvhTriangleMeshShape shared = new BvhTriangleMeshShape(mesh, true, false);
+		shared.setOptimizedBvh(sah.getOptimizedBvh());
+		ok &= compare("shared binned SAH", castRays(shared), expected);
+		
+		if (!ok) {
+			System.exit(1);
+		}
+	}
+	
+}
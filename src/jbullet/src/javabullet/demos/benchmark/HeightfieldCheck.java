@@ -0,0 +1,188 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.demos.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import javabullet.collision.narrowphase.TriangleRaycastCallback;
+import javabullet.collision.shapes.HeightfieldTerrainShape;
+import javabullet.collision.shapes.ScalarType;
+import javabullet.linearmath.Transform;
+import javax.vecmath.Vector3f;
+
+/**
+ * Headless check of heightfield raycasts. Rays marched through the grid
+ * cells by {@link HeightfieldTerrainShape#performRaycast} must report the same
+ * closest hits as testing all triangles returned by processAllTriangles. Small
+ * differences are allowed for rays crossing cell borders exactly at the hit,
+ * where the edge tolerance of triangle test lets the triangle of neighbouring
+ * (not visited) cell report slightly closer hit. All up axes, flipped and
+ * diamond subdivision, short heights and negative scaling are covered. Exits
+ * with non-zero status on mismatch.
+ * 
+ * @author jezek2
+ */
+public class HeightfieldCheck {
+
+	private static final int WIDTH = 33;
+	private static final int LENGTH = 25;
+	private static final int NUM_RAYS = 2000;
+	private static final float TOLERANCE = 1e-5f;
+	
+	private static final Vector3f[] SCALINGS = new Vector3f[] {
+		new Vector3f(1f, 1f, 1f),
+		new Vector3f(1.5f, 0.75f, 2f),
+		new Vector3f(-1.5f, 0.75f, 2f),
+		new Vector3f(1f, -2f, -0.5f),
+	};
+	
+	private static ByteBuffer createHeights(ScalarType type) {
+		Random random = new Random(5678);
+		ByteBuffer heights = ByteBuffer.allocateDirect(WIDTH * LENGTH * 4).order(ByteOrder.nativeOrder());
+		for (int y=0; y<LENGTH; y++) {
+			for (int x=0; x<WIDTH; x++) {
+				// smooth hills with some noise, flat area to test rays along the surface
+				float height = (x > 20 && y > 15)? 1f : (float)(Math.sin(x * 0.4) * Math.cos(y * 0.3)) * 3f + random.nextFloat() - 0.5f;
+				if (type == ScalarType.PHY_FLOAT) {
+					heights.putFloat(height);
+				}
+				else {
+					heights.putShort((short)(height * 100f));
+				}
+			}
+		}
+		heights.flip();
+		return heights;
+	}
+	
+	private static float raycast(HeightfieldTerrainShape shape, Vector3f from, Vector3f to, boolean bruteForce) {
+		TriangleRaycastCallback callback = new TriangleRaycastCallback(from, to) {
+			public float reportHit(Vector3f hitNormalLocal, float hitFraction, int partId, int triangleIndex) {
+				return hitFraction;
+			}
+		};
+		callback.hitFraction = 1f;
+		
+		if (bruteForce) {
+			Vector3f aabbMin = new Vector3f(), aabbMax = new Vector3f();
+			Transform identity = new Transform();
+			identity.setIdentity();
+			shape.getAabb(identity, aabbMin, aabbMax);
+			shape.processAllTriangles(callback, aabbMin, aabbMax);
+		}
+		else {
+			shape.performRaycast(callback, from, to);
+		}
+		return callback.hitFraction;
+	}
+	
+	private static void randomPoint(Random random, Vector3f aabbMin, Vector3f aabbMax, Vector3f out) {
+		out.x = aabbMin.x + (aabbMax.x - aabbMin.x) * (random.nextFloat() * 1.4f - 0.2f);
+		out.y = aabbMin.y + (aabbMax.y - aabbMin.y) * (random.nextFloat() * 1.4f - 0.2f);
+		out.z = aabbMin.z + (aabbMax.z - aabbMin.z) * (random.nextFloat() * 1.4f - 0.2f);
+	}
+	
+	private static float getCoord(Vector3f v, int axis) {
+		return axis == 0? v.x : (axis == 1? v.y : v.z);
+	}
+	
+	private static void setCoord(Vector3f v, int axis, float value) {
+		if (axis == 0) v.x = value; else if (axis == 1) v.y = value; else v.z = value;
+	}
+	
+	/**
+	 * Casts random rays, every fourth is parallel to the up axis and every
+	 * fourth is horizontal and parallel to one of grid axes.
+	 */
+	private static boolean check(String name, HeightfieldTerrainShape shape, int upAxis) {
+		Random random = new Random(1234);
+		Vector3f aabbMin = new Vector3f(), aabbMax = new Vector3f();
+		Transform identity = new Transform();
+		identity.setIdentity();
+		shape.getAabb(identity, aabbMin, aabbMax);
+		
+		Vector3f from = new Vector3f(), to = new Vector3f();
+		int numHits = 0;
+		int mismatches = 0;
+		float maxError = 0f;
+		for (int i=0; i<NUM_RAYS; i++) {
+			randomPoint(random, aabbMin, aabbMax, from);
+			randomPoint(random, aabbMin, aabbMax, to);
+			switch (i % 4) {
+				case 0:
+					for (int axis=0; axis<3; axis++) {
+						if (axis != upAxis) {
+							setCoord(to, axis, getCoord(from, axis));
+						}
+					}
+					break;
+				case 1:
+					setCoord(to, upAxis, getCoord(from, upAxis));
+					setCoord(to, (upAxis + 1 + (i & 4) / 4) % 3, getCoord(from, (upAxis + 1 + (i & 4) / 4) % 3));
+					break;
+			}
+			
+			float expected = raycast(shape, from, to, true);
+			float fraction = raycast(shape, from, to, false);
+			if (expected < 1f) {
+				numHits++;
+			}
+			float error = Math.abs(fraction - expected);
+			maxError = Math.max(maxError, error);
+			if (error > TOLERANCE || (fraction < 1f) != (expected < 1f)) {
+				mismatches++;
+			}
+		}
+		
+		boolean pass = mismatches == 0;
+		System.out.println(name+": rays="+NUM_RAYS+" hits="+numHits+" mismatches="+mismatches+" max error="+maxError+(pass? "" : "  FAILED"));
+		return pass;
+	}
+	
+	public static void main(String[] args) {
+		boolean ok = true;
+		
+		for (ScalarType type : new ScalarType[] { ScalarType.PHY_FLOAT, ScalarType.PHY_SHORT }) {
+			ByteBuffer heights = createHeights(type);
+			for (int upAxis=0; upAxis<3; upAxis++) {
+				for (int subdivision=0; subdivision<3; subdivision++) {
+					for (int i=0; i<SCALINGS.length; i++) {
+						HeightfieldTerrainShape shape = new HeightfieldTerrainShape(WIDTH, LENGTH, heights, 0.01f, -4f, 4f, upAxis, type, subdivision == 1);
+						shape.setUseDiamondSubdivision(subdivision == 2);
+						shape.setLocalScaling(SCALINGS[i]);
+						
+						String name = type+" up="+upAxis+" "+(subdivision == 0? "regular" : (subdivision == 1? "flipped" : "diamond"))+" scaling="+SCALINGS[i];
+						ok &= check(name, shape, upAxis);
+					}
+				}
+			}
+		}
+		
+		if (!ok) {
+			System.exit(1);
+		}
+	}
+	
+}
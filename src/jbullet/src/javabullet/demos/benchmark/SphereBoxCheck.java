@@ -0,0 +1,119 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+
+package javabullet.demos.benchmark;
+
+import javabullet.collision.broadphase.DbvtBroadphase;
+import javabullet.collision.dispatch.CollisionDispatcher;
+import javabullet.collision.dispatch.DefaultCollisionConfiguration;
+import javabullet.collision.shapes.BoxShape;
+import javabullet.collision.shapes.CollisionShape;
+import javabullet.collision.shapes.SphereShape;
+import javabullet.dynamics.DiscreteDynamicsWorld;
+import javabullet.dynamics.RigidBody;
+import javabullet.dynamics.RigidBodyConstructionInfo;
+import javabullet.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
+import javabullet.linearmath.DefaultMotionState;
+import javabullet.linearmath.Transform;
+import javax.vecmath.Vector3f;
+
+/**
+ * Headless check of sphere-box contact normals. Drops a sphere onto a ground box
+ * with the sphere added to the world both after and before the box, so both
+ * orders of the sphere-box algorithm are exercised. The sphere starts already
+ * slightly penetrating the box, so the broadphase pair is created in insertion order.
+ * The sphere must come to rest on top of the box, otherwise exits with non-zero status.
+ * 
+ * @author jezek2
+ */
+public class SphereBoxCheck {
+
+	private static final int STEPS = 300;
+	private static final float RADIUS = 0.5f;
+	private static final float START_HEIGHT = 0.49f;
+	private static final float TOLERANCE = 0.05f;
+	
+	private DiscreteDynamicsWorld dynamicsWorld;
+	private RigidBody sphere;
+	
+	public SphereBoxCheck(boolean sphereFirst) {
+		DefaultCollisionConfiguration collisionConfiguration = new DefaultCollisionConfiguration();
+		CollisionDispatcher dispatcher = new CollisionDispatcher(collisionConfiguration);
+		dynamicsWorld = new DiscreteDynamicsWorld(dispatcher, new DbvtBroadphase(), new SequentialImpulseConstraintSolver(), collisionConfiguration);
+		dynamicsWorld.setGravity(new Vector3f(0f, -10f, 0f));
+		
+		CollisionShape groundShape = new BoxShape(new Vector3f(50f, 1f, 50f));
+		CollisionShape sphereShape = new SphereShape(RADIUS);
+		if (sphereFirst) {
+			sphere = createBody(1f, sphereShape, START_HEIGHT);
+			createBody(0f, groundShape, -1f);
+		}
+		else {
+			createBody(0f, groundShape, -1f);
+			sphere = createBody(1f, sphereShape, START_HEIGHT);
+		}
+	}
+	
+	private RigidBody createBody(float mass, CollisionShape shape, float y) {
+		Transform startTransform = new Transform();
+		startTransform.setIdentity();
+		startTransform.origin.set(0f, y, 0f);
+		
+		Vector3f localInertia = new Vector3f(0f, 0f, 0f);
+		if (mass != 0f) {
+			shape.calculateLocalInertia(mass, localInertia);
+		}
+		
+		RigidBodyConstructionInfo rbInfo = new RigidBodyConstructionInfo(mass, new DefaultMotionState(startTransform), shape, localInertia);
+		RigidBody body = new RigidBody(rbInfo);
+		dynamicsWorld.addRigidBody(body);
+		return body;
+	}
+	
+	/**
+	 * Returns resting height of the sphere center.
+	 */
+	public float run() {
+		for (int i=0; i<STEPS; i++) {
+			dynamicsWorld.stepSimulation(1f / 60f, 1, 1f / 60f);
+		}
+		return sphere.getWorldTransform().origin.y;
+	}
+	
+	public static void main(String[] args) {
+		boolean ok = true;
+		for (int order=0; order<2; order++) {
+			boolean sphereFirst = (order == 1);
+			float y = new SphereBoxCheck(sphereFirst).run();
+			boolean pass = Math.abs(y - RADIUS) <= TOLERANCE;
+			System.out.println((sphereFirst? "sphere before box" : "box before sphere")+": y="+y+(pass? "" : "  FAILED"));
+			ok &= pass;
+		}
+		
+		if (!ok) {
+			System.exit(1);
+		}
+	}
+	
+}
@@ -0,0 +1,165 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.demos.benchmark;
+
+import javabullet.collision.broadphase.DbvtBroadphase;
+import javabullet.collision.dispatch.CollisionDispatcher;
+import javabullet.collision.dispatch.DefaultCollisionConfiguration;
+import javabullet.collision.shapes.BoxShape;
+import javabullet.collision.shapes.CollisionShape;
+import javabullet.dynamics.DiscreteDynamicsWorld;
+import javabullet.dynamics.RigidBody;
+import javabullet.dynamics.RigidBodyConstructionInfo;
+import javabullet.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
+import javabullet.dynamics.constraintsolver.SolverMode;
+import javabullet.linearmath.DefaultMotionState;
+import javabullet.linearmath.Transform;
+import javax.vecmath.Vector3f;
+
+/**
+ * Headless benchmark comparing solver convergence with and without warm starting.
+ * For each number of solver iterations it simulates a stack of boxes and reports
+ * average solver residual (see {@link SequentialImpulseConstraintSolver#getLastResidual})
+ * and drift of the top box. At the end it prints the lowest number of iterations
+ * needed to reach target residual in each mode, while the stack stays standing.
+ * Runs where the top box drifts by more than a box height are marked as collapsed,
+ * exits with non-zero status when warm starting collapses a stack that stands
+ * without it.<p>
+ * 
+ * Usage: WarmStartingBenchmark [targetResidual] [stackHeight]
+ * 
+ * @author jezek2
+ */
+public class WarmStartingBenchmark {
+
+	private static final int MAX_ITERATIONS = 20;
+	private static final int SETTLE_STEPS = 180;
+	private static final int MEASURE_STEPS = 120;
+	private static final float MAX_DRIFT = 0.1f;
+	private static final float BOX_SIZE = 1f;
+	
+	private DiscreteDynamicsWorld dynamicsWorld;
+	private SequentialImpulseConstraintSolver solver;
+	private RigidBody topBox;
+	
+	public WarmStartingBenchmark(boolean warmstarting, int numIterations, int stackHeight) {
+		DefaultCollisionConfiguration collisionConfiguration = new DefaultCollisionConfiguration();
+		CollisionDispatcher dispatcher = new CollisionDispatcher(collisionConfiguration);
+		solver = new SequentialImpulseConstraintSolver();
+		if (warmstarting) {
+			solver.setSolverMode(solver.getSolverMode() | SolverMode.SOLVER_USE_WARMSTARTING);
+		}
+		dynamicsWorld = new DiscreteDynamicsWorld(dispatcher, new DbvtBroadphase(), solver, collisionConfiguration);
+		dynamicsWorld.setGravity(new Vector3f(0f, -10f, 0f));
+		dynamicsWorld.getSolverInfo().numIterations = numIterations;
+
+		createBody(0f, new BoxShape(new Vector3f(50f, 1f, 50f)), 0f, -1f);
+		
+		CollisionShape boxShape = new BoxShape(new Vector3f(BOX_SIZE * 0.5f, BOX_SIZE * 0.5f, BOX_SIZE * 0.5f));
+		for (int i=0; i<stackHeight; i++) {
+			topBox = createBody(1f, boxShape, 0f, BOX_SIZE * (0.5f + i));
+		}
+	}
+	
+	private RigidBody createBody(float mass, CollisionShape shape, float x, float y) {
+		Transform startTransform = new Transform();
+		startTransform.setIdentity();
+		startTransform.origin.set(x, y, 0f);
+		
+		Vector3f localInertia = new Vector3f(0f, 0f, 0f);
+		if (mass != 0f) {
+			shape.calculateLocalInertia(mass, localInertia);
+		}
+		
+		RigidBodyConstructionInfo rbInfo = new RigidBodyConstructionInfo(mass, new DefaultMotionState(startTransform), shape, localInertia);
+		RigidBody body = new RigidBody(rbInfo);
+		body.setActivationState(RigidBody.DISABLE_DEACTIVATION);
+		dynamicsWorld.addRigidBody(body);
+		return body;
+	}
+	
+	/**
+	 * Stores average residual over measured steps into result[0] and drift of top box into result[1].
+	 */
+	public void run(float[] result) {
+		float startY = topBox.getWorldTransform().origin.y;
+		
+		for (int i=0; i<SETTLE_STEPS; i++) {
+			dynamicsWorld.stepSimulation(1f / 60f, 1, 1f / 60f);
+		}
+		
+		double residual = 0.0;
+		for (int i=0; i<MEASURE_STEPS; i++) {
+			dynamicsWorld.stepSimulation(1f / 60f, 1, 1f / 60f);
+			residual += solver.getLastResidual();
+		}
+		
+		result[0] = (float)(residual / MEASURE_STEPS);
+		result[1] = startY - topBox.getWorldTransform().origin.y;
+	}
+	
+	public static void main(String[] args) {
+		float targetResidual = args.length > 0? Float.parseFloat(args[0]) : 0.025f;
+		int stackHeight = args.length > 1? Integer.parseInt(args[1]) : 10;
+		
+		System.out.println("stack of "+stackHeight+" boxes, target residual "+targetResidual);
+		System.out.println("iterations  residual(cold)  drift(cold)  residual(warm)  drift(warm)");
+		
+		int[] needed = new int[] { -1, -1 };
+		float[] result = new float[2];
+		boolean[] collapsed = new boolean[2];
+		boolean failed = false;
+		for (int iter=1; iter<=MAX_ITERATIONS; iter++) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("%10d", iter));
+			for (int mode=0; mode<2; mode++) {
+				new WarmStartingBenchmark(mode == 1, iter, stackHeight).run(result);
+				sb.append(String.format("  %14.6f  %11.4f", result[0], result[1]));
+				collapsed[mode] = Math.abs(result[1]) > BOX_SIZE;
+				if (needed[mode] == -1 && result[0] <= targetResidual && Math.abs(result[1]) <= MAX_DRIFT) {
+					needed[mode] = iter;
+				}
+			}
+			if (collapsed[0] || collapsed[1]) {
+				sb.append("  collapsed (");
+				sb.append(collapsed[0]? (collapsed[1]? "both" : "cold") : "warm");
+				sb.append(")");
+			}
+			if (collapsed[1] && !collapsed[0]) {
+				sb.append(" FAILED");
+				failed = true;
+			}
+			System.out.println(sb);
+		}
+		
+		System.out.println("iterations needed without warm starting: "+(needed[0] != -1? String.valueOf(needed[0]) : "> "+MAX_ITERATIONS));
+		System.out.println("iterations needed with warm starting:    "+(needed[1] != -1? String.valueOf(needed[1]) : "> "+MAX_ITERATIONS));
+		
+		if (failed) {
+			System.out.println("FAILED: warm starting collapsed stack that stands without it");
+			System.exit(1);
+		}
+	}
+	
+}
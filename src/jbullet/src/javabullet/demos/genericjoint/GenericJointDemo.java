@@ -29,18 +29,8 @@ package javabullet.demos.genericjoint;
 
 import java.util.ArrayList;
 import java.util.List;
-import javabullet.collision.broadphase.BroadphaseInterface;
-import javabullet.collision.broadphase.SimpleBroadphase;
-import javabullet.collision.dispatch.CollisionDispatcher;
-import javabullet.collision.dispatch.DefaultCollisionConfiguration;
-import javabullet.collision.shapes.BoxShape;
-import javabullet.collision.shapes.CollisionShape;
 import javabullet.demos.opengl.DemoApplication;
 import javabullet.demos.opengl.JOGL;
-import javabullet.dynamics.DiscreteDynamicsWorld;
-import javabullet.dynamics.constraintsolver.ConstraintSolver;
-import javabullet.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
-import javabullet.linearmath.Transform;
 import javax.vecmath.Vector3f;
 import javax.media.opengl.*;
 
@@ -57,34 +47,8 @@ public class GenericJointDemo extends DemoApplication {
 	}
 
 	public void initPhysics() {
-		// Setup the basic world
-		DefaultCollisionConfiguration collision_config = new DefaultCollisionConfiguration();
-
-		CollisionDispatcher dispatcher = new CollisionDispatcher(collision_config);
-
-		//btPoint3 worldAabbMin(-10000,-10000,-10000);
-		//btPoint3 worldAabbMax(10000,10000,10000);
-		//btBroadphaseInterface* overlappingPairCache = new btAxisSweep3 (worldAabbMin, worldAabbMax);
-		BroadphaseInterface overlappingPairCache = new SimpleBroadphase();
-
-		//#ifdef USE_ODE_QUICKSTEP
-		//btConstraintSolver* constraintSolver = new OdeConstraintSolver();
-		//#else
-		ConstraintSolver constraintSolver = new SequentialImpulseConstraintSolver();
-		//#endif
-
-		dynamicsWorld = new DiscreteDynamicsWorld(dispatcher, overlappingPairCache, constraintSolver, collision_config);
-
-		dynamicsWorld.setGravity(new Vector3f(0f, -30f, 0f));
-
-		// Setup a big ground box
-		{
-			CollisionShape groundShape = new BoxShape(new Vector3f(200f, 10f, 200f));
-			Transform groundTransform = new Transform();
-			groundTransform.setIdentity();
-			groundTransform.origin.set(0f, -15f, 0f);
-			localCreateRigidBody(0f, groundTransform, groundShape);
-		}
+		// Setup the basic world with a big ground box
+		dynamicsWorld = GenericJointScene.createWorld();
 
 		// Spawn one ragdoll
 		spawnRagdoll();
@@ -97,7 +61,7 @@ public class GenericJointDemo extends DemoApplication {
 	}
 	
 	public void spawnRagdoll(boolean random) {
-		RagDoll ragDoll = new RagDoll(dynamicsWorld, new Vector3f(0f, 0f, 10f), 5f);
+		RagDoll ragDoll = GenericJointScene.spawnRagdoll(dynamicsWorld, new Vector3f(0f, 0f, 10f));
 		ragdolls.add(ragDoll);
 	}
 	
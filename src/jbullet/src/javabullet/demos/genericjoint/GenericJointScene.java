@@ -0,0 +1,86 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.demos.genericjoint;
+
+import javabullet.collision.broadphase.AxisSweep3;
+import javabullet.collision.broadphase.BroadphaseInterface;
+import javabullet.collision.dispatch.CollisionDispatcher;
+import javabullet.collision.dispatch.DefaultCollisionConfiguration;
+import javabullet.collision.shapes.BoxShape;
+import javabullet.collision.shapes.CollisionShape;
+import javabullet.dynamics.DiscreteDynamicsWorld;
+import javabullet.dynamics.DynamicsWorld;
+import javabullet.dynamics.RigidBody;
+import javabullet.dynamics.RigidBodyConstructionInfo;
+import javabullet.dynamics.constraintsolver.ConstraintSolver;
+import javabullet.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
+import javabullet.linearmath.DefaultMotionState;
+import javabullet.linearmath.Transform;
+import javax.vecmath.Vector3f;
+
+/**
+ * World setup of {@link GenericJointDemo} without any rendering, shared by the
+ * demo and headless tools.
+ * 
+ * @author jezek2
+ */
+public class GenericJointScene {
+	
+	public static final float RAGDOLL_SCALE = 5f;
+
+	public static DiscreteDynamicsWorld createWorld() {
+		// Setup the basic world
+		DefaultCollisionConfiguration collision_config = new DefaultCollisionConfiguration();
+
+		CollisionDispatcher dispatcher = new CollisionDispatcher(collision_config);
+
+		Vector3f worldAabbMin = new Vector3f(-10000f, -10000f, -10000f);
+		Vector3f worldAabbMax = new Vector3f(10000f, 10000f, 10000f);
+		BroadphaseInterface overlappingPairCache = new AxisSweep3(worldAabbMin, worldAabbMax);
+
+		ConstraintSolver constraintSolver = new SequentialImpulseConstraintSolver();
+
+		DiscreteDynamicsWorld dynamicsWorld = new DiscreteDynamicsWorld(dispatcher, overlappingPairCache, constraintSolver, collision_config);
+
+		dynamicsWorld.setGravity(new Vector3f(0f, -30f, 0f));
+
+		// Setup a big ground box
+		{
+			CollisionShape groundShape = new BoxShape(new Vector3f(200f, 10f, 200f));
+			Transform groundTransform = new Transform();
+			groundTransform.setIdentity();
+			groundTransform.origin.set(0f, -15f, 0f);
+			
+			RigidBody ground = new RigidBody(new RigidBodyConstructionInfo(0f, new DefaultMotionState(groundTransform), groundShape, new Vector3f(0f, 0f, 0f)));
+			dynamicsWorld.addRigidBody(ground);
+		}
+		
+		return dynamicsWorld;
+	}
+	
+	public static RagDoll spawnRagdoll(DynamicsWorld dynamicsWorld, Vector3f positionOffset) {
+		return new RagDoll(dynamicsWorld, positionOffset, RAGDOLL_SCALE);
+	}
+	
+}
@@ -201,6 +201,12 @@ public abstract class DemoApplication
         // JAU
 		gl.glEnable(gl.GL_CULL_FACE);
 		gl.glCullFace(gl.GL_BACK);
+
+		//#ifdef SHOW_NUM_DEEP_PENETRATIONS
+		if (dynamicsWorld != null) {
+			dynamicsWorld.getStatistics().setEnabled(true);
+		}
+		//#endif //SHOW_NUM_DEEP_PENETRATIONS
 	}
 
     public void dispose(GLAutoDrawable drawable) {
@@ -1058,13 +1064,13 @@ public abstract class DemoApplication
 				//#ifdef SHOW_NUM_DEEP_PENETRATIONS
 				buf.setLength(0);
 				buf.append("gNumDeepPenetrationChecks = ");
-				FastFormat.append(buf, BulletGlobals.gNumDeepPenetrationChecks);
+				FastFormat.append(buf, getDynamicsWorld().getStatistics().getTotal().getDeepPenetrationChecks());
 				drawString(buf, Math.round(xOffset), Math.round(yStart), TEXT_COLOR);
 				yStart += yIncr;
 
 				buf.setLength(0);
 				buf.append("gNumGjkChecks = ");
-				FastFormat.append(buf, BulletGlobals.gNumGjkChecks);
+				FastFormat.append(buf, getDynamicsWorld().getStatistics().getTotal().getGjkChecks());
 				drawString(buf, Math.round(xOffset), Math.round(yStart), TEXT_COLOR);
 				yStart += yIncr;
 
@@ -1125,8 +1131,11 @@ public abstract class DemoApplication
 	
 	public void clientResetScene() {
 		//#ifdef SHOW_NUM_DEEP_PENETRATIONS
-		BulletGlobals.gNumDeepPenetrationChecks = 0;
-		BulletGlobals.gNumGjkChecks = 0;
+		if (dynamicsWorld != null) {
+			// counters shown in HUD are collected only when enabled:
+			dynamicsWorld.getStatistics().setEnabled(true);
+			dynamicsWorld.getStatistics().reset();
+		}
 		//#endif //SHOW_NUM_DEEP_PENETRATIONS
 
 		int numObjects = 0;
@@ -0,0 +1,244 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.demos.replay;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javabullet.collision.dispatch.CollisionObject;
+import javabullet.demos.genericjoint.GenericJointScene;
+import javabullet.dynamics.DiscreteDynamicsWorld;
+import javabullet.dynamics.RigidBody;
+import javax.vecmath.Vector3f;
+
+/**
+ * Headless harness for recording and verifying simulation traces, used to check
+ * that optimizations don't change behavior. Scenes are built from the
+ * {@link GenericJointScene} demo setup.<p>
+ * 
+ * Usage:<br>
+ * <code>ReplayHarness record &lt;scene&gt; &lt;file&gt; [steps]</code> - records golden trace<br>
+ * <code>ReplayHarness verify &lt;scene&gt; &lt;file&gt; [tolerance]</code> - replays scene and compares it with trace<br>
+ * <code>ReplayHarness bench &lt;scene&gt; [steps] [runs]</code> - measures throughput<p>
+ * 
+ * Verification exits with status 1 when the difference of any value exceeds
+ * the tolerance (default 0, exact match).
+ * 
+ * @author jezek2
+ */
+public class ReplayHarness {
+	
+	public static final float TIME_STEP = 1f / 60f;
+	public static final int DEFAULT_STEPS = 600;
+	public static final int DEFAULT_RUNS = 5;
+	
+	private static final String[] SCENES = { "genericjoint", "ragdolls" };
+	
+	private DiscreteDynamicsWorld dynamicsWorld;
+	private final List<RigidBody> bodies = new ArrayList<RigidBody>();
+	private float[] state;
+	
+	public ReplayHarness(String scene) {
+		dynamicsWorld = GenericJointScene.createWorld();
+		
+		if ("genericjoint".equals(scene)) {
+			// same as in GenericJointDemo
+			GenericJointScene.spawnRagdoll(dynamicsWorld, new Vector3f(0f, 0f, 10f));
+		}
+		else if ("ragdolls".equals(scene)) {
+			// pile of ragdolls falling onto each other
+			for (int y=0; y<4; y++) {
+				for (int x=0; x<3; x++) {
+					for (int z=0; z<3; z++) {
+						GenericJointScene.spawnRagdoll(dynamicsWorld, new Vector3f((x-1)*4f, y*6f, (z-1)*4f));
+					}
+				}
+			}
+		}
+		else {
+			throw new IllegalArgumentException("unknown scene '"+scene+"', available scenes: "+Arrays.toString(SCENES));
+		}
+		
+		// only dynamic bodies are traced, in order of addition to the world
+		List<CollisionObject> objects = dynamicsWorld.getCollisionObjectArray();
+		for (int i=0; i<objects.size(); i++) {
+			RigidBody body = RigidBody.upcast(objects.get(i));
+			if (body != null && !body.isStaticOrKinematicObject()) {
+				bodies.add(body);
+			}
+		}
+		state = new float[bodies.size() * TraceWriter.STATE_SIZE];
+	}
+	
+	public int getNumBodies() {
+		return bodies.size();
+	}
+	
+	public float[] step() {
+		dynamicsWorld.stepSimulation(TIME_STEP, 1, TIME_STEP);
+		TraceWriter.captureState(bodies, state);
+		return state;
+	}
+	
+	public void record(String fileName, int numSteps) throws IOException {
+		TraceWriter writer = new TraceWriter(new FileOutputStream(fileName), bodies.size(), TIME_STEP);
+		try {
+			for (int i=0; i<numSteps; i++) {
+				writer.writeStep(step());
+			}
+		}
+		finally {
+			writer.close();
+		}
+		System.out.println("recorded "+numSteps+" steps of "+bodies.size()+" bodies into "+fileName);
+	}
+	
+	/**
+	 * Replays scene and compares it against trace. Returns true when all values
+	 * are within tolerance.
+	 */
+	public boolean verify(String fileName, float tolerance) throws IOException {
+		TraceReader reader = new TraceReader(new FileInputStream(fileName));
+		try {
+			if (reader.getNumBodies() != bodies.size()) {
+				System.out.println("FAIL: trace has "+reader.getNumBodies()+" bodies, scene has "+bodies.size());
+				return false;
+			}
+			if (reader.getTimeStep() != TIME_STEP) {
+				System.out.println("FAIL: trace was recorded with time step "+reader.getTimeStep());
+				return false;
+			}
+			
+			float[] expected = new float[state.length];
+			float[] maxError = new float[4];
+			int firstFailedStep = -1;
+			
+			while (reader.readStep(expected)) {
+				step();
+				
+				for (int b=0; b<bodies.size(); b++) {
+					int base = b * TraceWriter.STATE_SIZE;
+					float posError = maxDiff(state, expected, base, 3, false);
+					float rotError = maxDiff(state, expected, base + 3, 4, true);
+					float linVelError = maxDiff(state, expected, base + 7, 3, false);
+					float angVelError = maxDiff(state, expected, base + 10, 3, false);
+					
+					maxError[0] = Math.max(maxError[0], posError);
+					maxError[1] = Math.max(maxError[1], rotError);
+					maxError[2] = Math.max(maxError[2], linVelError);
+					maxError[3] = Math.max(maxError[3], angVelError);
+					
+					if (firstFailedStep == -1 && Math.max(Math.max(posError, rotError), Math.max(linVelError, angVelError)) > tolerance) {
+						firstFailedStep = reader.getNumSteps() - 1;
+						System.out.println("first divergence at step "+firstFailedStep+", body "+b+
+								": position "+posError+", rotation "+rotError+", linear velocity "+linVelError+", angular velocity "+angVelError);
+					}
+				}
+			}
+			
+			System.out.println("compared "+reader.getNumSteps()+" steps of "+bodies.size()+" bodies, max error:"+
+					" position "+maxError[0]+", rotation "+maxError[1]+", linear velocity "+maxError[2]+", angular velocity "+maxError[3]);
+			System.out.println(firstFailedStep == -1? "OK" : "FAIL: tolerance "+tolerance+" exceeded");
+			return firstFailedStep == -1;
+		}
+		finally {
+			reader.close();
+		}
+	}
+	
+	private static float maxDiff(float[] a, float[] b, int offset, int count, boolean quaternion) {
+		float max = 0f;
+		float maxNeg = 0f;
+		for (int i=offset; i<offset+count; i++) {
+			max = Math.max(max, Math.abs(a[i] - b[i]));
+			maxNeg = Math.max(maxNeg, Math.abs(a[i] + b[i]));
+		}
+		// q and -q represent same rotation
+		return quaternion? Math.min(max, maxNeg) : max;
+	}
+	
+	/**
+	 * Measures average time of step in nanoseconds.
+	 */
+	public long bench(int numSteps) {
+		long t0 = System.nanoTime();
+		for (int i=0; i<numSteps; i++) {
+			dynamicsWorld.stepSimulation(TIME_STEP, 1, TIME_STEP);
+		}
+		return (System.nanoTime() - t0) / numSteps;
+	}
+	
+	private static void usage() {
+		System.out.println("usage:");
+		System.out.println("  ReplayHarness record <scene> <file> [steps]");
+		System.out.println("  ReplayHarness verify <scene> <file> [tolerance]");
+		System.out.println("  ReplayHarness bench <scene> [steps] [runs]");
+		System.out.println("scenes: "+Arrays.toString(SCENES));
+		System.exit(2);
+	}
+	
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			usage();
+		}
+		
+		String mode = args[0];
+		String scene = args[1];
+		
+		if ("record".equals(mode) && args.length >= 3) {
+			int numSteps = args.length > 3? Integer.parseInt(args[3]) : DEFAULT_STEPS;
+			new ReplayHarness(scene).record(args[2], numSteps);
+		}
+		else if ("verify".equals(mode) && args.length >= 3) {
+			float tolerance = args.length > 3? Float.parseFloat(args[3]) : 0f;
+			if (!new ReplayHarness(scene).verify(args[2], tolerance)) {
+				System.exit(1);
+			}
+		}
+		else if ("bench".equals(mode)) {
+			int numSteps = args.length > 2? Integer.parseInt(args[2]) : DEFAULT_STEPS;
+			int numRuns = args.length > 3? Integer.parseInt(args[3]) : DEFAULT_RUNS;
+			
+			// every run simulates the scene from the start, first run is warmup
+			long[] times = new long[numRuns];
+			for (int i=0; i<=numRuns; i++) {
+				ReplayHarness harness = new ReplayHarness(scene);
+				long time = harness.bench(numSteps);
+				if (i > 0) {
+					times[i-1] = time;
+				}
+			}
+			Arrays.sort(times);
+			long median = times[numRuns / 2];
+			System.out.println(scene+": "+numSteps+" steps, best "+times[0]+" ns/step, median "+median+" ns/step ("+(1000000000L / Math.max(1L, median))+" steps/s)");
+		}
+		else {
+			usage();
+		}
+	}
+	
+}
@@ -0,0 +1,96 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.demos.replay;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads trace written by {@link TraceWriter}.
+ * 
+ * @author jezek2
+ */
+public class TraceReader {
+
+	private final DataInputStream in;
+	private final int numBodies;
+	private final float timeStep;
+	private int numSteps;
+	
+	public TraceReader(InputStream in) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(in));
+		
+		if (this.in.readInt() != TraceWriter.MAGIC) {
+			throw new IOException("not a trace file");
+		}
+		int version = this.in.readInt();
+		if (version != TraceWriter.VERSION) {
+			throw new IOException("unsupported trace version "+version);
+		}
+		numBodies = this.in.readInt();
+		timeStep = this.in.readFloat();
+	}
+
+	public int getNumBodies() {
+		return numBodies;
+	}
+
+	public float getTimeStep() {
+		return timeStep;
+	}
+	
+	/**
+	 * Reads next step into array of numBodies*STATE_SIZE floats. Returns false
+	 * at the end of trace.
+	 */
+	public boolean readStep(float[] state) throws IOException {
+		int step;
+		try {
+			step = in.readInt();
+		}
+		catch (EOFException e) {
+			return false;
+		}
+		if (step != numSteps) {
+			throw new IOException("corrupted trace, expected step "+numSteps+" got "+step);
+		}
+		for (int i=0; i<numBodies*TraceWriter.STATE_SIZE; i++) {
+			state[i] = in.readFloat();
+		}
+		numSteps++;
+		return true;
+	}
+
+	public int getNumSteps() {
+		return numSteps;
+	}
+	
+	public void close() throws IOException {
+		in.close();
+	}
+	
+}
@@ -0,0 +1,115 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.demos.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import javabullet.dynamics.RigidBody;
+import javabullet.linearmath.MatrixUtil;
+import javabullet.linearmath.Transform;
+import javax.vecmath.Quat4f;
+import javax.vecmath.Vector3f;
+
+/**
+ * Writes per-step state of rigid bodies into compact binary trace.<p>
+ * 
+ * Format (big endian): magic, version, number of bodies, time step, followed
+ * by steps. Each step is step index followed by {@link #STATE_SIZE} floats
+ * per body: origin, rotation quaternion, linear and angular velocity.
+ * 
+ * @author jezek2
+ */
+public class TraceWriter {
+	
+	public static final int MAGIC = 0x4A425452; // "JBTR"
+	public static final int VERSION = 1;
+	public static final int STATE_SIZE = 3 + 4 + 3 + 3;
+	
+	private final DataOutputStream out;
+	private final int numBodies;
+	private int numSteps;
+
+	public TraceWriter(OutputStream out, int numBodies, float timeStep) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+		this.numBodies = numBodies;
+		
+		this.out.writeInt(MAGIC);
+		this.out.writeInt(VERSION);
+		this.out.writeInt(numBodies);
+		this.out.writeFloat(timeStep);
+	}
+	
+	public void writeStep(float[] state) throws IOException {
+		out.writeInt(numSteps++);
+		for (int i=0; i<numBodies*STATE_SIZE; i++) {
+			out.writeFloat(state[i]);
+		}
+	}
+	
+	public int getNumSteps() {
+		return numSteps;
+	}
+	
+	public void close() throws IOException {
+		out.close();
+	}
+	
+	/**
+	 * Stores state of given bodies into array of numBodies*STATE_SIZE floats.
+	 */
+	public static void captureState(List<RigidBody> bodies, float[] out) {
+		Quat4f rot = new Quat4f();
+		
+		int pos = 0;
+		for (int i=0; i<bodies.size(); i++) {
+			RigidBody body = bodies.get(i);
+			Transform trans = body.getWorldTransform();
+			MatrixUtil.getRotation(trans.basis, rot);
+			
+			// keep sign of quaternion canonical, q and -q represent same rotation
+			if (rot.w < 0f) {
+				rot.negate();
+			}
+			
+			pos = put(out, pos, trans.origin);
+			out[pos++] = rot.x;
+			out[pos++] = rot.y;
+			out[pos++] = rot.z;
+			out[pos++] = rot.w;
+			pos = put(out, pos, body.getLinearVelocity());
+			pos = put(out, pos, body.getAngularVelocity());
+		}
+	}
+	
+	private static int put(float[] out, int pos, Vector3f v) {
+		out[pos++] = v.x;
+		out[pos++] = v.y;
+		out[pos++] = v.z;
+		return pos;
+	}
+	
+}
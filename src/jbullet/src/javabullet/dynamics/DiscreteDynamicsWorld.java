@@ -26,18 +26,24 @@ package javabullet.dynamics;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import javabullet.BulletGlobals;
+import javabullet.BulletStack;
+import javabullet.BulletStats;
 import javabullet.collision.broadphase.BroadphaseInterface;
+import javabullet.collision.broadphase.BroadphaseProxy;
 import javabullet.collision.broadphase.CollisionFilterGroups;
 import javabullet.collision.broadphase.Dispatcher;
 import javabullet.collision.broadphase.DispatcherInfo;
 import javabullet.collision.dispatch.CollisionConfiguration;
+import javabullet.collision.dispatch.CollisionDispatcher;
 import javabullet.collision.dispatch.CollisionObject;
 import javabullet.collision.dispatch.CollisionWorld;
 import javabullet.collision.dispatch.SimulationIslandManager;
 import javabullet.collision.narrowphase.PersistentManifold;
 import javabullet.collision.shapes.CollisionShape;
 import javabullet.collision.shapes.InternalTriangleIndexCallback;
+import javabullet.collision.shapes.SphereShape;
 import javabullet.collision.shapes.TriangleCallback;
 import javabullet.dynamics.constraintsolver.ConstraintSolver;
 import javabullet.dynamics.constraintsolver.ContactSolverInfo;
@@ -47,9 +53,12 @@ import javabullet.dynamics.vehicle.RaycastVehicle;
 import javabullet.linearmath.DebugDrawModes;
 import javabullet.linearmath.IDebugDraw;
 import javabullet.linearmath.MiscUtil;
+import javabullet.linearmath.ProfileManager;
 import javabullet.linearmath.ScalarUtil;
 import javabullet.linearmath.Transform;
 import javabullet.linearmath.TransformUtil;
+import javabullet.util.IntArrayList;
+import javabullet.util.ParallelLoop;
 import javax.vecmath.Vector3f;
 
 /**
@@ -76,6 +85,19 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 	protected List<RaycastVehicle> vehicles = new ArrayList<RaycastVehicle>();
 	protected int profileTimings = 0;
 	
+	// parallel solving of simulation islands:
+	protected ExecutorService solverExecutor;
+	protected int solverParallelism = Runtime.getRuntime().availableProcessors();
+	protected boolean deterministic = false;
+	
+	private final PredictMotionLoop predictMotionLoop = new PredictMotionLoop();
+	private final IntegrateTransformsLoop integrateTransformsLoop = new IntegrateTransformsLoop();
+	
+	// CCD motion clamping:
+	private final IntArrayList ccdObjectIndices = new IntArrayList();
+	private final SphereShape ccdSweptSphere = new SphereShape(0f);
+	private final ClosestNotMeConvexResultCallback ccdSweepResults = new ClosestNotMeConvexResultCallback();
+	
 	public DiscreteDynamicsWorld(Dispatcher dispatcher, BroadphaseInterface pairCache, ConstraintSolver constraintSolver, CollisionConfiguration collisionConfiguration) {
 		super(dispatcher, pairCache, collisionConfiguration);
 		this.constraintSolver = constraintSolver;
@@ -96,9 +118,9 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 	}
 
 	protected void saveKinematicState(float timeStep) {
-		for (int i = 0; i < collisionObjects.size(); i++) {
-			CollisionObject colObj = collisionObjects.get(i);
-			RigidBody body = RigidBody.upcast(colObj);
+		activeObjects.compact();
+		for (int i = 0; i < activeObjects.size(); i++) {
+			RigidBody body = RigidBody.upcast(activeObjects.get(i));
 			if (body != null) {
 				//Transform predictedTrans = new Transform();
 				if (body.getActivationState() != CollisionObject.ISLAND_SLEEPING) {
@@ -113,6 +135,8 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 
 	@Override
 	public void debugDrawWorld() {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			if (getDebugDrawer() != null && (getDebugDrawer().getDebugMode() & (DebugDrawModes.DRAW_WIREFRAME | DebugDrawModes.DRAW_AABB)) != 0) {
@@ -193,26 +217,31 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 
 	@Override
 	public void clearForces() {
-		// todo: iterate over awake simulation islands!
-		for (int i = 0; i < collisionObjects.size(); i++) {
-			CollisionObject colObj = collisionObjects.get(i);
-
-			RigidBody body = RigidBody.upcast(colObj);
+		activeObjects.compact();
+		for (int i = 0; i < activeObjects.size(); i++) {
+			RigidBody body = RigidBody.upcast(activeObjects.get(i));
 			if (body != null) {
 				body.clearForces();
 			}
 		}
+		
+		// sleeping bodies with applied forces:
+		for (int i = 0; i < activeObjects.getNumDirtyObjects(); i++) {
+			RigidBody body = RigidBody.upcast(activeObjects.getDirtyObject(i));
+			if (body != null) {
+				body.clearForces();
+			}
+		}
+		activeObjects.clearDirtyObjects();
 	}
 	
 	/**
 	 * Apply gravity, call this once per timestep.
 	 */
 	public void applyGravity() {
-		// todo: iterate over awake simulation islands!
-		for (int i = 0; i < collisionObjects.size(); i++) {
-			CollisionObject colObj = collisionObjects.get(i);
-
-			RigidBody body = RigidBody.upcast(colObj);
+		activeObjects.compact();
+		for (int i = 0; i < activeObjects.size(); i++) {
+			RigidBody body = RigidBody.upcast(activeObjects.get(i));
 			if (body != null && body.isActive()) {
 				body.applyGravity();
 			}
@@ -220,26 +249,21 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 	}
 
 	protected void synchronizeMotionStates() {
+		BulletStack stack = BulletStack.get();
+
 		stack.transforms.push();
 		try {
 			Transform interpolatedTransform = stack.transforms.get();
 
-			// todo: iterate over awake simulation islands!
-			for (int i = 0; i < collisionObjects.size(); i++) {
-				CollisionObject colObj = collisionObjects.get(i);
-
-				RigidBody body = RigidBody.upcast(colObj);
-				if (body != null && body.getMotionState() != null && !body.isStaticOrKinematicObject()) {
-					// we need to call the update at least once, even for sleeping objects
-					// otherwise the 'graphics' transform never updates properly
-					// so todo: add 'dirty' flag
-					//if (body->getActivationState() != ISLAND_SLEEPING)
-					{
-						TransformUtil.integrateTransform(body.getInterpolationWorldTransform(),
-								body.getInterpolationLinearVelocity(), body.getInterpolationAngularVelocity(), localTime, interpolatedTransform);
-						body.getMotionState().setWorldTransform(interpolatedTransform);
-					}
-				}
+			activeObjects.compact();
+			for (int i = 0; i < activeObjects.size(); i++) {
+				synchronizeMotionState(RigidBody.upcast(activeObjects.get(i)), interpolatedTransform);
+			}
+
+			// we need to call the update at least once, even for sleeping objects
+			// otherwise the 'graphics' transform never updates properly
+			for (int i = 0; i < activeObjects.getNumDirtyObjects(); i++) {
+				synchronizeMotionState(RigidBody.upcast(activeObjects.getDirtyObject(i)), interpolatedTransform);
 			}
 
 			if (getDebugDrawer() != null && (getDebugDrawer().getDebugMode() & DebugDrawModes.DRAW_WIREFRAME) != 0) {
@@ -256,6 +280,14 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 		}
 	}
 
+	private void synchronizeMotionState(RigidBody body, Transform interpolatedTransform) {
+		if (body != null && body.getMotionState() != null && !body.isStaticOrKinematicObject()) {
+			TransformUtil.integrateTransform(body.getInterpolationWorldTransform(),
+					body.getInterpolationLinearVelocity(), body.getInterpolationAngularVelocity(), localTime, interpolatedTransform);
+			body.getMotionState().setWorldTransform(interpolatedTransform);
+		}
+	}
+
     public long nanoTime() {
 		// JAU: Orig: return System.nanoTime();
 		return System.currentTimeMillis()*1000000;
@@ -265,8 +297,9 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 	public int stepSimulation(float timeStep, int maxSubSteps, float fixedTimeStep) {
 		startProfiling(timeStep);
 
-		long t0 = nanoTime();
+		long t0 = System.nanoTime();
 		
+		BulletStats.Counters prevStats = statistics.bind();
 		BulletGlobals.pushProfile("stepSimulation");
 		try {
 			int numSimulationSubSteps = 0;
@@ -315,14 +348,14 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 
 			clearForces();
 
-			// TODO: CProfileManager::Increment_Frame_Counter();
-
 			return numSimulationSubSteps;
 		}
 		finally {
 			BulletGlobals.popProfile();
+			ProfileManager.incrementFrameCounter();
 			
-			BulletGlobals.stepSimulationTime = (nanoTime() - t0) / 1000000;
+			BulletStats.unbind(prevStats);
+			statistics.merge(getBroadphase().getOverlappingPairCache().getNumOverlappingPairs(), System.nanoTime() - t0);
 		}
 	}
 
@@ -421,27 +454,16 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 	protected void updateActivationState(float timeStep) {
 		BulletGlobals.pushProfile("updateActivationState");
 		try {
-			for (int i = 0; i < collisionObjects.size(); i++) {
-				CollisionObject colObj = collisionObjects.get(i);
-				RigidBody body = RigidBody.upcast(colObj);
-				if (body != null) {
-					body.updateDeactivation(timeStep);
-
-					if (body.wantsSleeping()) {
-						if (body.isStaticOrKinematicObject()) {
-							body.setActivationState(CollisionObject.ISLAND_SLEEPING);
-						}
-						else {
-							if (body.getActivationState() == CollisionObject.ACTIVE_TAG) {
-								body.setActivationState(CollisionObject.WANTS_DEACTIVATION);
-							}
-						}
-					}
-					else {
-						if (body.getActivationState() != CollisionObject.DISABLE_DEACTIVATION) {
-							body.setActivationState(CollisionObject.ACTIVE_TAG);
-						}
-					}
+			if (BulletGlobals.gDisableDeactivation || (BulletGlobals.gDeactivationTime == 0f)) {
+				// sleeping bodies must be woken up too:
+				for (int i = 0; i < collisionObjects.size(); i++) {
+					updateActivationState(RigidBody.upcast(collisionObjects.get(i)), timeStep);
+				}
+			}
+			else {
+				activeObjects.compact();
+				for (int i = 0; i < activeObjects.size(); i++) {
+					updateActivationState(RigidBody.upcast(activeObjects.get(i)), timeStep);
 				}
 			}
 		}
@@ -449,6 +471,28 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 			BulletGlobals.popProfile();
 		}
 	}
+	
+	private void updateActivationState(RigidBody body, float timeStep) {
+		if (body != null) {
+			body.updateDeactivation(timeStep);
+
+			if (body.wantsSleeping()) {
+				if (body.isStaticOrKinematicObject()) {
+					body.setActivationState(CollisionObject.ISLAND_SLEEPING);
+				}
+				else {
+					if (body.getActivationState() == CollisionObject.ACTIVE_TAG) {
+						body.setActivationState(CollisionObject.WANTS_DEACTIVATION);
+					}
+				}
+			}
+			else {
+				if (body.getActivationState() != CollisionObject.DISABLE_DEACTIVATION) {
+					body.setActivationState(CollisionObject.ACTIVE_TAG);
+				}
+			}
+		}
+	}
 
 	@Override
 	public void addConstraint(TypedConstraint constraint, boolean disableCollisionsBetweenLinkedBodies) {
@@ -476,7 +520,7 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 		vehicles.remove(vehicle);
 	}
 	
-	private static int getConstraintIslandId(TypedConstraint lhs) {
+	static int getConstraintIslandId(TypedConstraint lhs) {
 		int islandId;
 
 		CollisionObject rcolObj0 = lhs.getRigidBodyA();
@@ -493,14 +537,16 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 		public IDebugDraw debugDrawer;
 		//public StackAlloc* m_stackAlloc;
 		public Dispatcher dispatcher;
+		public IslandSolverMetrics metrics;
 
-		public void init(ContactSolverInfo solverInfo, ConstraintSolver solver, List<TypedConstraint> sortedConstraints, int numConstraints, IDebugDraw debugDrawer, Dispatcher dispatcher) {
+		public void init(ContactSolverInfo solverInfo, ConstraintSolver solver, List<TypedConstraint> sortedConstraints, int numConstraints, IDebugDraw debugDrawer, Dispatcher dispatcher, IslandSolverMetrics metrics) {
 			this.solverInfo = solverInfo;
 			this.solver = solver;
 			this.sortedConstraints = sortedConstraints;
 			this.numConstraints = numConstraints;
 			this.debugDrawer = debugDrawer;
 			this.dispatcher = dispatcher;
+			this.metrics = metrics;
 		}
 
 		public void processIsland(List<CollisionObject> bodies, int numBodies, List<PersistentManifold> manifolds, int manifolds_offset, int numManifolds, int islandId) {
@@ -532,12 +578,19 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 				}
 
 				solver.solveGroup(bodies, numBodies, manifolds, manifolds_offset, numManifolds, sortedConstraints, startConstraint_idx, numCurConstraints, solverInfo, debugDrawer/*,m_stackAlloc*/, dispatcher);
+				
+				if ((numManifolds != 0 || numCurConstraints != 0) && solver instanceof SequentialImpulseConstraintSolver) {
+					SequentialImpulseConstraintSolver si = (SequentialImpulseConstraintSolver) solver;
+					metrics.add(islandId, si.getLastIterations(), si.getLastResidual());
+				}
 			}
 		}
 	}
 
 	private List<TypedConstraint> sortedConstraints = new ArrayList<TypedConstraint>();
 	private InplaceSolverIslandCallback solverCallback = new InplaceSolverIslandCallback();
+	private ParallelSolverIslandCallback parallelSolverCallback = new ParallelSolverIslandCallback();
+	private final IslandSolverMetrics islandSolverMetrics = new IslandSolverMetrics();
 	
 	protected void solveConstraints(ContactSolverInfo solverInfo) {
 		BulletGlobals.pushProfile("solveConstraints");
@@ -551,8 +604,27 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 			MiscUtil.heapSort(sortedConstraints, sortConstraintOnIslandPredicate);
 
 			List<TypedConstraint> constraintsPtr = getNumConstraints() != 0 ? sortedConstraints : null;
+			
+			islandSolverMetrics.clear();
+
+			// debug drawing is not done in parallel:
+			boolean parallel = solverExecutor != null && solverParallelism > 1;
+			if ((parallel || deterministic) &&
+					constraintSolver instanceof SequentialImpulseConstraintSolver &&
+					(debugDrawer == null || debugDrawer.getDebugMode() == 0)) {
+				parallelSolverCallback.init(solverInfo, (SequentialImpulseConstraintSolver) constraintSolver, constraintsPtr, sortedConstraints.size(), dispatcher1, islandSolverMetrics);
+
+				constraintSolver.prepareSolve(getCollisionWorld().getNumCollisionObjects(), getCollisionWorld().getDispatcher().getNumManifolds());
 
-			solverCallback.init(solverInfo, constraintSolver, constraintsPtr, sortedConstraints.size(), debugDrawer/*,m_stackAlloc*/, dispatcher1);
+				// collect islands, then solve them concurrently
+				islandManager.buildAndProcessIslands(getCollisionWorld().getDispatcher(), getCollisionWorld().getCollisionObjectArray(), parallelSolverCallback);
+				parallelSolverCallback.solveIslands(solverExecutor, parallel? solverParallelism : 1);
+
+				constraintSolver.allSolved(solverInfo, debugDrawer/*, m_stackAlloc*/);
+				return;
+			}
+
+			solverCallback.init(solverInfo, constraintSolver, constraintsPtr, sortedConstraints.size(), debugDrawer/*,m_stackAlloc*/, dispatcher1, islandSolverMetrics);
 
 			constraintSolver.prepareSolve(getCollisionWorld().getNumCollisionObjects(), getCollisionWorld().getDispatcher().getNumManifolds());
 
@@ -601,19 +673,58 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 
 	protected void integrateTransforms(float timeStep) {
 		BulletGlobals.pushProfile("integrateTransforms");
+		try {
+			activeObjects.compact();
+			integrateTransformsLoop.timeStep = timeStep;
+			integrateTransformsLoop.run(executor, parallelism, activeObjects.size(), MIN_OBJECTS_PER_CHUNK);
+			
+			// JAVA NOTE: fast moving bodies are deferred by the loop and clamped here
+			// serially, in order of active objects, so the result is independent
+			// of number of threads
+			if (ccdObjectIndices.size() > 0) {
+				integrateClampedTransforms(timeStep);
+			}
+		}
+		finally {
+			BulletGlobals.popProfile();
+		}
+	}
+	
+	private void integrateClampedTransforms(float timeStep) {
+		BulletStack stack = BulletStack.get();
+		
+		BulletGlobals.pushProfile("CCD motion clamping");
 		stack.transforms.push();
 		try {
+			sortIndices(ccdObjectIndices);
+			
 			Transform predictedTrans = stack.transforms.get();
-			for (int i = 0; i < collisionObjects.size(); i++) {
-				CollisionObject colObj = collisionObjects.get(i);
-				RigidBody body = RigidBody.upcast(colObj);
-				if (body != null) {
-					if (body.isActive() && (!body.isStaticOrKinematicObject())) {
-						body.predictIntegratedTransform(timeStep, predictedTrans);
-						body.proceedToTransform(predictedTrans);
-					}
+			for (int i=0; i<ccdObjectIndices.size(); i++) {
+				RigidBody body = RigidBody.upcast(activeObjects.get(ccdObjectIndices.get(i)));
+				body.predictIntegratedTransform(timeStep, predictedTrans);
+				
+				// sweep the core sphere of the body against the world and limit
+				// the motion to the time of impact
+				ccdSweptSphere.setUnscaledRadius(body.getCcdSweptSphereRadius());
+				ccdSweepResults.init(body, getDispatcher());
+				BroadphaseProxy proxy = body.getBroadphaseHandle();
+				convexSweepTest(ccdSweptSphere, body.getWorldTransform(), predictedTrans, ccdSweepResults, proxy != null? proxy.collisionFilterMask : (short)-1);
+				
+				// JAVA NOTE: hits at the very start of the sweep are ignored (Bullet clamps
+				// any hit below 1). The sweep doesn't filter out objects the core sphere
+				// already touches or moves away from, clamping to near zero fraction would
+				// stop the body for the whole step, such contact is left to the solver
+				if (ccdSweepResults.hasHit() && (ccdSweepResults.closestHitFraction > 0.0001f)) {
+					BulletStats.addClampedCcdMotion();
+					body.setHitFraction(ccdSweepResults.closestHitFraction);
+					body.predictIntegratedTransform(timeStep * body.getHitFraction(), predictedTrans);
+					body.setHitFraction(0f);
 				}
+				ccdSweepResults.init(null, null);
+				
+				body.proceedToTransform(predictedTrans);
 			}
+			ccdObjectIndices.clear();
 		}
 		finally {
 			stack.transforms.pop();
@@ -621,24 +732,41 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 		}
 	}
 	
+	private static void sortIndices(IntArrayList list) {
+		// insertion sort, there are only few fast moving bodies
+		for (int i=1; i<list.size(); i++) {
+			int value = list.get(i);
+			int j = i - 1;
+			while (j >= 0 && list.get(j) > value) {
+				list.set(j + 1, list.get(j));
+				j--;
+			}
+			list.set(j + 1, value);
+		}
+	}
+	
+	/**
+	 * Returns true if motion of body should be clamped by CCD, ie. when the square
+	 * of linear motion in this step exceeds body's CCD motion threshold.
+	 */
+	private static boolean needsMotionClamping(RigidBody body, Transform predictedTrans) {
+		float threshold = body.getCcdSquareMotionThreshold();
+		if (threshold == 0f || !body.getCollisionShape().isConvex()) {
+			return false;
+		}
+		
+		float dx = predictedTrans.origin.x - body.getWorldTransform().origin.x;
+		float dy = predictedTrans.origin.y - body.getWorldTransform().origin.y;
+		float dz = predictedTrans.origin.z - body.getWorldTransform().origin.z;
+		return threshold < dx*dx + dy*dy + dz*dz;
+	}
+	
 	protected void predictUnconstraintMotion(float timeStep) {
 		BulletGlobals.pushProfile("predictUnconstraintMotion");
 		try {
-			for (int i = 0; i < collisionObjects.size(); i++) {
-				CollisionObject colObj = collisionObjects.get(i);
-				RigidBody body = RigidBody.upcast(colObj);
-				if (body != null) {
-					if (!body.isStaticOrKinematicObject()) {
-						if (body.isActive()) {
-							body.integrateVelocities(timeStep);
-							// damping
-							body.applyDamping(timeStep);
-
-							body.predictIntegratedTransform(timeStep, body.getInterpolationWorldTransform());
-						}
-					}
-				}
-			}
+			activeObjects.compact();
+			predictMotionLoop.timeStep = timeStep;
+			predictMotionLoop.run(executor, parallelism, activeObjects.size(), MIN_OBJECTS_PER_CHUNK);
 		}
 		finally {
 			BulletGlobals.popProfile();
@@ -650,6 +778,8 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 	}
 
 	protected void debugDrawSphere(float radius, Transform transform, Vector3f color) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			Vector3f start = stack.vectors.get(transform.origin);
@@ -712,6 +842,8 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 	}
 	
 	public void debugDrawObject(Transform worldTransform, CollisionShape shape, Vector3f color) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			Vector3f tmp = stack.vectors.get();
@@ -939,9 +1071,176 @@ public class DiscreteDynamicsWorld extends DynamicsWorld {
 	public ContactSolverInfo getSolverInfo() {
 		return solverInfo;
 	}
+
+	/**
+	 * Returns per-island iteration counts and residuals of the last step.
+	 * See {@link ContactSolverInfo#convergenceTolerance}.
+	 */
+	public IslandSolverMetrics getIslandSolverMetrics() {
+		return islandSolverMetrics;
+	}
+
+	public ExecutorService getSolverExecutor() {
+		return solverExecutor;
+	}
+
+	/**
+	 * Sets executor used for solving simulation islands in parallel. Islands are
+	 * solved in parallel only with {@link SequentialImpulseConstraintSolver},
+	 * each thread uses its own solver created from the world solver. Results are
+	 * independent of number of threads, but differ from serial solving because
+	 * each island uses separate random seed. Executor is not shut down by world.
+	 * 
+	 * @param executor executor service, or null for serial solving (default)
+	 */
+	public void setSolverExecutor(ExecutorService executor) {
+		this.solverExecutor = executor;
+	}
+
+	public int getSolverParallelism() {
+		return solverParallelism;
+	}
+
+	/**
+	 * Sets number of threads (including calling thread) used for solving islands.
+	 * Defaults to number of available processors.
+	 */
+	public void setSolverParallelism(int parallelism) {
+		assert (parallelism >= 1);
+		this.solverParallelism = parallelism;
+	}
+	
+	/**
+	 * Configures parallel execution of whole simulation step. Per-body stages
+	 * (motion prediction, AABB updates, transform integration) are processed in
+	 * parallel per body, narrowphase per collision pair (when {@link CollisionDispatcher}
+	 * is used) and constraint solving per simulation island. Stages that modify
+	 * shared structures (broadphase, island building, activation states, motion
+	 * states) stay on calling thread. Executor is not shut down by world.<p>
+	 * 
+	 * Use {@link #setDeterministic} to get results that are independent of
+	 * number of threads.
+	 * 
+	 * @param executor executor service, or null for serial simulation
+	 * @param parallelism number of threads including calling thread
+	 */
+	public void setStepExecutor(ExecutorService executor, int parallelism) {
+		setExecutor(executor);
+		setParallelism(parallelism);
+		setSolverExecutor(executor);
+		setSolverParallelism(parallelism);
+		if (dispatcher1 instanceof CollisionDispatcher) {
+			CollisionDispatcher dispatcher = (CollisionDispatcher) dispatcher1;
+			dispatcher.setExecutor(executor);
+			dispatcher.setParallelism(parallelism);
+		}
+	}
+
+	public boolean isDeterministic() {
+		return deterministic;
+	}
+
+	/**
+	 * Enables deterministic mode. Simulation islands are then solved the same way
+	 * regardless of whether parallel solving is enabled, so results are
+	 * bit-identical for any number of threads (including serial simulation).
+	 * Other parallel stages give the same results as serial processing.
+	 */
+	public void setDeterministic(boolean deterministic) {
+		this.deterministic = deterministic;
+	}
 	
 	////////////////////////////////////////////////////////////////////////////
 	
+	private class PredictMotionLoop extends ParallelLoop {
+		public float timeStep;
+		
+		@Override
+		protected void process(int start, int end) {
+			for (int i = start; i < end; i++) {
+				RigidBody body = RigidBody.upcast(activeObjects.get(i));
+				if (body != null) {
+					if (!body.isStaticOrKinematicObject()) {
+						if (body.isActive()) {
+							body.integrateVelocities(timeStep);
+							// damping
+							body.applyDamping(timeStep);
+
+							body.predictIntegratedTransform(timeStep, body.getInterpolationWorldTransform());
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	private class IntegrateTransformsLoop extends ParallelLoop {
+		public float timeStep;
+		
+		@Override
+		protected void process(int start, int end) {
+			BulletStack stack = BulletStack.get();
+
+			stack.transforms.push();
+			try {
+				Transform predictedTrans = stack.transforms.get();
+				for (int i = start; i < end; i++) {
+					RigidBody body = RigidBody.upcast(activeObjects.get(i));
+					if (body != null) {
+						if (body.isActive() && (!body.isStaticOrKinematicObject())) {
+							body.predictIntegratedTransform(timeStep, predictedTrans);
+							if (needsMotionClamping(body, predictedTrans)) {
+								synchronized (ccdObjectIndices) {
+									ccdObjectIndices.add(i);
+								}
+								continue;
+							}
+							body.proceedToTransform(predictedTrans);
+						}
+					}
+				}
+			}
+			finally {
+				stack.transforms.pop();
+			}
+		}
+	}
+	
+	private static class ClosestNotMeConvexResultCallback extends ClosestConvexResultCallback {
+		private CollisionObject me;
+		private Dispatcher dispatcher;
+		
+		public void init(CollisionObject me, Dispatcher dispatcher) {
+			this.me = me;
+			this.dispatcher = dispatcher;
+			closestHitFraction = 1f;
+			hitCollisionObject = null;
+		}
+		
+		@Override
+		public boolean needsCollision(CollisionObject collisionObject) {
+			// don't collide with itself
+			if (collisionObject == me) {
+				return false;
+			}
+			
+			// don't do CCD when there are no contact responses
+			if (!collisionObject.hasContactResponse()) {
+				return false;
+			}
+			
+			return dispatcher.needsResponse(me, collisionObject);
+		}
+		
+		@Override
+		public float addSingleResult(LocalConvexResult convexResult, boolean normalInWorldSpace) {
+			if (convexResult.hitCollisionObject == me) {
+				return 1f;
+			}
+			return super.addSingleResult(convexResult, normalInWorldSpace);
+		}
+	}
+	
 	private static final Comparator<TypedConstraint> sortConstraintOnIslandPredicate = new Comparator<TypedConstraint>() {
 		public int compare(TypedConstraint lhs, TypedConstraint rhs) {
 			int rIslandId0, lIslandId0;
@@ -23,6 +23,7 @@
 
 package javabullet.dynamics;
 
+import javabullet.BulletStats;
 import javabullet.collision.broadphase.BroadphaseInterface;
 import javabullet.collision.broadphase.Dispatcher;
 import javabullet.collision.dispatch.CollisionConfiguration;
@@ -39,6 +40,8 @@ import javax.vecmath.Vector3f;
  */
 public abstract class DynamicsWorld extends CollisionWorld {
 
+	protected final BulletStats statistics = new BulletStats();
+	
 	public DynamicsWorld(Dispatcher dispatcher, BroadphaseInterface broadphasePairCache, CollisionConfiguration collisionConfiguration) {
 		super(dispatcher, broadphasePairCache, collisionConfiguration);
 	}
@@ -101,4 +104,11 @@ public abstract class DynamicsWorld extends CollisionWorld {
 
 	public abstract void clearForces();
 	
+	/**
+	 * Returns statistics of this world, collecting of counters is disabled by default.
+	 */
+	public BulletStats getStatistics() {
+		return statistics;
+	}
+	
 }
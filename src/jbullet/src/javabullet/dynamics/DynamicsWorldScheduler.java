@@ -0,0 +1,196 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.dynamics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import javabullet.util.ParallelLoop;
+
+/**
+ * Steps many independent dynamics worlds concurrently. Each world is stepped
+ * by one thread at a time, different worlds can be stepped by different threads
+ * in each tick. Worlds must not share any objects (bodies, shapes with mutable
+ * state, solvers, dispatchers or broadphases).<p>
+ * 
+ * Worlds stepped by scheduler can use the scheduler's executor for their own
+ * parallel stages, stages never wait for helper tasks that didn't start yet
+ * (see {@link javabullet.util.HelperTasks}).<p>
+ * 
+ * Global callbacks in {@link javabullet.BulletGlobals} are called concurrently
+ * from multiple threads and must be thread-safe.
+ * 
+ * @author jezek2
+ */
+public class DynamicsWorldScheduler {
+
+	private final List<DynamicsWorld> worlds = new ArrayList<DynamicsWorld>();
+	private long[] stepTimes = new long[16];
+	private int[] numSubSteps = new int[16];
+	private long tickTime;
+	
+	private ExecutorService executor;
+	private int parallelism;
+	
+	private float timeStep;
+	private int maxSubSteps;
+	private float fixedTimeStep;
+	
+	private final StepLoop stepLoop = new StepLoop();
+	
+	/**
+	 * Creates scheduler stepping worlds using given executor.
+	 * 
+	 * @param executor executor service, or null for serial stepping
+	 * @param parallelism number of threads including calling thread
+	 */
+	public DynamicsWorldScheduler(ExecutorService executor, int parallelism) {
+		assert (parallelism >= 1);
+		this.executor = executor;
+		this.parallelism = parallelism;
+	}
+	
+	public void addWorld(DynamicsWorld world) {
+		assert (!worlds.contains(world));
+		worlds.add(world);
+	}
+	
+	public void removeWorld(DynamicsWorld world) {
+		worlds.remove(world);
+	}
+	
+	public int getNumWorlds() {
+		return worlds.size();
+	}
+	
+	public DynamicsWorld getWorld(int index) {
+		return worlds.get(index);
+	}
+	
+	public final void stepSimulation(float timeStep) {
+		stepSimulation(timeStep, 1, 1f / 60f);
+	}
+
+	public final void stepSimulation(float timeStep, int maxSubSteps) {
+		stepSimulation(timeStep, maxSubSteps, 1f / 60f);
+	}
+
+	/**
+	 * Steps all worlds, see {@link DynamicsWorld#stepSimulation(float, int, float)}.
+	 * Returns after all worlds are stepped, exception thrown by any world is
+	 * rethrown to caller.
+	 */
+	public void stepSimulation(float timeStep, int maxSubSteps, float fixedTimeStep) {
+		long t0 = System.nanoTime();
+		
+		int numWorlds = worlds.size();
+		if (stepTimes.length < numWorlds) {
+			stepTimes = new long[numWorlds];
+			numSubSteps = new int[numWorlds];
+		}
+		
+		this.timeStep = timeStep;
+		this.maxSubSteps = maxSubSteps;
+		this.fixedTimeStep = fixedTimeStep;
+		stepLoop.run(executor, parallelism, numWorlds, 1);
+		
+		tickTime = System.nanoTime() - t0;
+	}
+	
+	/**
+	 * Returns duration of last step of given world in nanoseconds.
+	 */
+	public long getStepTime(int index) {
+		assert (index < worlds.size());
+		return stepTimes[index];
+	}
+	
+	/**
+	 * Returns number of simulation substeps done in last step of given world.
+	 */
+	public int getNumSubSteps(int index) {
+		assert (index < worlds.size());
+		return numSubSteps[index];
+	}
+	
+	/**
+	 * Returns longest step duration of all worlds in last tick in nanoseconds.
+	 */
+	public long getMaxStepTime() {
+		long max = 0;
+		for (int i=0; i<worlds.size(); i++) {
+			max = Math.max(max, stepTimes[i]);
+		}
+		return max;
+	}
+	
+	/**
+	 * Returns sum of step durations of all worlds in last tick in nanoseconds.
+	 */
+	public long getTotalStepTime() {
+		long total = 0;
+		for (int i=0; i<worlds.size(); i++) {
+			total += stepTimes[i];
+		}
+		return total;
+	}
+	
+	/**
+	 * Returns wall-clock duration of last tick in nanoseconds.
+	 */
+	public long getTickTime() {
+		return tickTime;
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public void setParallelism(int parallelism) {
+		assert (parallelism >= 1);
+		this.parallelism = parallelism;
+	}
+	
+	////////////////////////////////////////////////////////////////////////////
+	
+	private class StepLoop extends ParallelLoop {
+		@Override
+		protected void process(int start, int end) {
+			for (int i = start; i < end; i++) {
+				long t0 = System.nanoTime();
+				numSubSteps[i] = worlds.get(i).stepSimulation(timeStep, maxSubSteps, fixedTimeStep);
+				stepTimes[i] = System.nanoTime() - t0;
+			}
+		}
+	}
+	
+}
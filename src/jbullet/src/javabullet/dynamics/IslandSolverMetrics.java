@@ -0,0 +1,104 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.dynamics;
+
+import javabullet.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
+import javabullet.util.FloatArrayList;
+import javabullet.util.IntArrayList;
+
+/**
+ * Per-island statistics of the constraint solver gathered during the last
+ * simulation step. Filled only when {@link SequentialImpulseConstraintSolver}
+ * is used in cache friendly mode.<p>
+ * 
+ * Islands are reported in the order they were processed by the island manager.
+ * Islands without contacts and constraints are not reported.
+ * 
+ * @author jezek2
+ */
+public class IslandSolverMetrics {
+
+	private final IntArrayList islandIds = new IntArrayList();
+	private final IntArrayList iterations = new IntArrayList();
+	private final FloatArrayList residuals = new FloatArrayList();
+	
+	public void clear() {
+		islandIds.clear();
+		iterations.clear();
+		residuals.clear();
+	}
+	
+	public void add(int islandId, int numIterations, float residual) {
+		islandIds.add(islandId);
+		iterations.add(numIterations);
+		residuals.add(residual);
+	}
+	
+	public int getNumIslands() {
+		return islandIds.size();
+	}
+	
+	public int getIslandId(int index) {
+		return islandIds.get(index);
+	}
+
+	/**
+	 * Returns number of solver iterations used for given island.
+	 */
+	public int getIterations(int index) {
+		return iterations.get(index);
+	}
+
+	/**
+	 * Returns maximum impulse change in the last iteration for given island.
+	 */
+	public float getResidual(int index) {
+		return residuals.get(index);
+	}
+	
+	public int getTotalIterations() {
+		int total = 0;
+		for (int i=0; i<iterations.size(); i++) {
+			total += iterations.get(i);
+		}
+		return total;
+	}
+	
+	public int getMaxIterations() {
+		int max = 0;
+		for (int i=0; i<iterations.size(); i++) {
+			max = Math.max(max, iterations.get(i));
+		}
+		return max;
+	}
+	
+	public float getMaxResidual() {
+		float max = 0f;
+		for (int i=0; i<residuals.size(); i++) {
+			max = Math.max(max, residuals.get(i));
+		}
+		return max;
+	}
+	
+}
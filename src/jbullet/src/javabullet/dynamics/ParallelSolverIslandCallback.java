@@ -0,0 +1,256 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.dynamics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import javabullet.BulletStats;
+import javabullet.collision.broadphase.Dispatcher;
+import javabullet.collision.dispatch.CollisionObject;
+import javabullet.collision.dispatch.SimulationIslandManager;
+import javabullet.collision.narrowphase.PersistentManifold;
+import javabullet.dynamics.constraintsolver.ContactSolverInfo;
+import javabullet.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
+import javabullet.dynamics.constraintsolver.TypedConstraint;
+import javabullet.linearmath.MiscUtil;
+import javabullet.util.HelperTasks;
+
+/**
+ * Island callback that collects simulation islands and solves them afterwards
+ * in parallel. Each thread uses its own {@link SequentialImpulseConstraintSolver}
+ * created by {@link SequentialImpulseConstraintSolver#createThreadSolver}.<p>
+ * 
+ * Every island gets its own random seed derived from its position in island
+ * order, so results don't depend on number of threads or scheduling.
+ * 
+ * @author jezek2
+ */
+class ParallelSolverIslandCallback implements SimulationIslandManager.IslandCallback {
+
+	private ContactSolverInfo solverInfo;
+	private SequentialImpulseConstraintSolver solver;
+	private List<TypedConstraint> sortedConstraints;
+	private int numConstraints;
+	private Dispatcher dispatcher;
+	private IslandSolverMetrics metrics;
+	private long baseSeed;
+	
+	private final List<IslandTask> tasks = new ArrayList<IslandTask>();
+	private final List<IslandTask> islandOrder = new ArrayList<IslandTask>();
+	private final List<IslandTask> tasksPool = new ArrayList<IslandTask>();
+	private final AtomicInteger nextTask = new AtomicInteger();
+	
+	private final List<SolverWorker> workers = new ArrayList<SolverWorker>();
+	private final HelperTasks helperTasks = new HelperTasks();
+	
+	private final ThreadLocal<ThreadSolver> threadSolvers = new ThreadLocal<ThreadSolver>() {
+		@Override
+		protected ThreadSolver initialValue() {
+			return new ThreadSolver();
+		}
+	};
+	
+	public void init(ContactSolverInfo solverInfo, SequentialImpulseConstraintSolver solver, List<TypedConstraint> sortedConstraints, int numConstraints, Dispatcher dispatcher, IslandSolverMetrics metrics) {
+		this.solverInfo = solverInfo;
+		this.solver = solver;
+		this.sortedConstraints = sortedConstraints;
+		this.numConstraints = numConstraints;
+		this.dispatcher = dispatcher;
+		this.metrics = metrics;
+		this.baseSeed = solver.getRandSeed();
+	}
+	
+	public void processIsland(List<CollisionObject> bodies, int numBodies, List<PersistentManifold> manifolds, int manifolds_offset, int numManifolds, int islandId) {
+		if (islandId < 0) {
+			// not split into islands, nothing to parallelize:
+			solver.solveGroup(bodies, numBodies, manifolds, manifolds_offset, numManifolds, sortedConstraints, 0, numConstraints, solverInfo, null, dispatcher);
+			return;
+		}
+		
+		// find constraints for this island (same as in InplaceSolverIslandCallback)
+		int startConstraint_idx = -1;
+		int numCurConstraints = 0;
+		int i;
+
+		for (i = 0; i < numConstraints; i++) {
+			if (DiscreteDynamicsWorld.getConstraintIslandId(sortedConstraints.get(i)) == islandId) {
+				startConstraint_idx = i;
+				break;
+			}
+		}
+		for (; i < numConstraints; i++) {
+			if (DiscreteDynamicsWorld.getConstraintIslandId(sortedConstraints.get(i)) == islandId) {
+				numCurConstraints++;
+			}
+		}
+		
+		if (numManifolds == 0 && numCurConstraints == 0) {
+			return;
+		}
+		
+		// bodies and manifold lists are reused by island manager, must be copied:
+		IslandTask task = tasksPool.isEmpty()? new IslandTask() : tasksPool.remove(tasksPool.size() - 1);
+		for (i = 0; i < numBodies; i++) {
+			task.bodies.add(bodies.get(i));
+		}
+		for (i = 0; i < numManifolds; i++) {
+			task.manifolds.add(manifolds.get(manifolds_offset + i));
+		}
+		task.constraintsOffset = startConstraint_idx;
+		task.numConstraints = numCurConstraints;
+		task.islandId = islandId;
+		task.seed = baseSeed + tasks.size();
+		tasks.add(task);
+		islandOrder.add(task);
+	}
+	
+	/**
+	 * Solves all collected islands, calling thread participates in solving.
+	 */
+	public void solveIslands(ExecutorService executor, int parallelism) {
+		try {
+			int numTasks = tasks.size();
+			if (numTasks == 0) {
+				return;
+			}
+			
+			// biggest islands first for better load balancing:
+			MiscUtil.heapSort(tasks, islandCostComparator);
+			nextTask.set(0);
+			
+			int numWorkers = Math.min(parallelism, numTasks) - 1;
+			while (workers.size() < numWorkers) {
+				workers.add(new SolverWorker(this));
+			}
+			BulletStats stats = BulletStats.getCurrent();
+			for (int i=0; i<numWorkers; i++) {
+				workers.get(i).stats = stats;
+				helperTasks.submit(executor, workers.get(i));
+			}
+			
+			try {
+				processTasks();
+			}
+			finally {
+				helperTasks.join();
+			}
+			
+			for (int i=0; i<numTasks; i++) {
+				IslandTask task = islandOrder.get(i);
+				metrics.add(task.islandId, task.iterations, task.residual);
+			}
+			
+			// advance seed of main solver, so that next step uses different order:
+			solver.setRandSeed(baseSeed + numTasks);
+		}
+		finally {
+			for (int i=0; i<tasks.size(); i++) {
+				IslandTask task = tasks.get(i);
+				task.bodies.clear();
+				task.manifolds.clear();
+				tasksPool.add(task);
+			}
+			tasks.clear();
+			islandOrder.clear();
+			sortedConstraints = null;
+		}
+	}
+	
+	private void processTasks() {
+		SequentialImpulseConstraintSolver threadSolver = threadSolvers.get().get(solver);
+		
+		int numTasks = tasks.size();
+		int t;
+		while ((t = nextTask.getAndIncrement()) < numTasks) {
+			IslandTask task = tasks.get(t);
+			threadSolver.setRandSeed(task.seed);
+			threadSolver.solveGroup(task.bodies, task.bodies.size(), task.manifolds, 0, task.manifolds.size(), sortedConstraints, task.constraintsOffset, task.numConstraints, solverInfo, null, dispatcher);
+			task.iterations = threadSolver.getLastIterations();
+			task.residual = threadSolver.getLastResidual();
+		}
+	}
+	
+	////////////////////////////////////////////////////////////////////////////
+	
+	private static class IslandTask {
+		public final List<CollisionObject> bodies = new ArrayList<CollisionObject>();
+		public final List<PersistentManifold> manifolds = new ArrayList<PersistentManifold>();
+		public int constraintsOffset;
+		public int numConstraints;
+		public int islandId;
+		public long seed;
+		
+		// results:
+		public int iterations;
+		public float residual;
+	}
+	
+	private static final Comparator<IslandTask> islandCostComparator = new Comparator<IslandTask>() {
+		public int compare(IslandTask lhs, IslandTask rhs) {
+			int cost0 = lhs.manifolds.size() + lhs.numConstraints;
+			int cost1 = rhs.manifolds.size() + rhs.numConstraints;
+			return cost0 > cost1? -1 : (cost0 < cost1? +1 : 0);
+		}
+	};
+	
+	private static class ThreadSolver {
+		private SequentialImpulseConstraintSolver template;
+		private SequentialImpulseConstraintSolver solver;
+		
+		/**
+		 * Returns solver for current thread, recreated when world solver changes.
+		 */
+		public SequentialImpulseConstraintSolver get(SequentialImpulseConstraintSolver template) {
+			if (this.template != template) {
+				this.template = template;
+				solver = template.createThreadSolver();
+			}
+			solver.setSolverMode(template.getSolverMode());
+			return solver;
+		}
+	}
+	
+	private static class SolverWorker implements Runnable {
+		private final ParallelSolverIslandCallback callback;
+		public BulletStats stats;
+
+		public SolverWorker(ParallelSolverIslandCallback callback) {
+			this.callback = callback;
+		}
+		
+		public void run() {
+			BulletStats.Counters prevStats = BulletStats.bind(stats);
+			try {
+				callback.processTasks();
+			}
+			finally {
+				BulletStats.unbind(prevStats);
+			}
+		}
+	}
+	
+}
@@ -26,6 +26,7 @@ package javabullet.dynamics;
 import java.util.ArrayList;
 import java.util.List;
 import javabullet.BulletGlobals;
+import javabullet.BulletStack;
 import javabullet.collision.broadphase.BroadphaseProxy;
 import javabullet.collision.dispatch.CollisionFlags;
 import javabullet.collision.dispatch.CollisionObject;
@@ -169,6 +170,9 @@ public class RigidBody extends CollisionObject {
 	 * but a rigidbody is derived from CollisionObject, so we can safely perform an upcast.
 	 */
 	public static RigidBody upcast(CollisionObject colObj) {
+		if (colObj == null) {
+			return null;
+		}
 		return (RigidBody) colObj.getInternalOwner();
 	}
 
@@ -222,6 +226,8 @@ public class RigidBody extends CollisionObject {
 	 * Damps the velocity, using the given linearDamping and angularDamping.
 	 */
 	public void applyDamping(float timeStep) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			linearVelocity.scale(MiscUtil.GEN_clamped((1f - timeStep * linearDamping), 0f, 1f));
@@ -272,11 +278,11 @@ public class RigidBody extends CollisionObject {
 
 	public void setMassProps(float mass, Vector3f inertia) {
 		if (mass == 0f) {
-			collisionFlags |= CollisionFlags.STATIC_OBJECT;
+			setCollisionFlags(collisionFlags | CollisionFlags.STATIC_OBJECT);
 			inverseMass = 0f;
 		}
 		else {
-			collisionFlags &= (~CollisionFlags.STATIC_OBJECT);
+			setCollisionFlags(collisionFlags & (~CollisionFlags.STATIC_OBJECT));
 			inverseMass = 1f / mass;
 		}
 
@@ -294,6 +300,8 @@ public class RigidBody extends CollisionObject {
 	}
 	
 	public void integrateVelocities(float step) {
+		BulletStack stack = BulletStack.get();
+
 		if (isStaticOrKinematicObject()) {
 			return;
 		}
@@ -327,10 +335,12 @@ public class RigidBody extends CollisionObject {
 		interpolationAngularVelocity.set(getAngularVelocity());
 		worldTransform.set(xform);
 		updateInertiaTensor();
+		markDirty();
 	}
 
 	public void applyCentralForce(Vector3f force) {
 		totalForce.add(force);
+		markDirty();
 	}
 	
 	public Vector3f getInvInertiaDiagLocal() {
@@ -348,9 +358,12 @@ public class RigidBody extends CollisionObject {
 
 	public void applyTorque(Vector3f torque) {
 		totalTorque.add(torque);
+		markDirty();
 	}
 
 	public void applyForce(Vector3f force, Vector3f rel_pos) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			applyCentralForce(force);
@@ -368,6 +381,8 @@ public class RigidBody extends CollisionObject {
 	}
 	
 	public void applyTorqueImpulse(Vector3f torque) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			Vector3f tmp = stack.vectors.get(torque);
@@ -380,6 +395,8 @@ public class RigidBody extends CollisionObject {
 	}
 
 	public void applyImpulse(Vector3f impulse, Vector3f rel_pos) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			if (inverseMass != 0f) {
@@ -415,6 +432,8 @@ public class RigidBody extends CollisionObject {
 	}
 	
 	public void updateInertiaTensor() {
+		BulletStack stack = BulletStack.get();
+
 		stack.matrices.push();
 		try {
 			Matrix3f mat1 = stack.matrices.get();
@@ -435,6 +454,8 @@ public class RigidBody extends CollisionObject {
 	}
 
 	public Quat4f getOrientation() {
+		BulletStack stack = BulletStack.get();
+
 		stack.quats.push();
 		try {
 			Quat4f orn = stack.quats.get();
@@ -469,6 +490,8 @@ public class RigidBody extends CollisionObject {
 	}
 
 	public Vector3f getVelocityInLocalPoint(Vector3f rel_pos) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			// we also calculate lin/ang velocity for kinematic objects
@@ -494,6 +517,8 @@ public class RigidBody extends CollisionObject {
 	}
 
 	public float computeImpulseDenominator(Vector3f pos, Vector3f normal) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			Vector3f r0 = stack.vectors.get();
@@ -516,6 +541,8 @@ public class RigidBody extends CollisionObject {
 	}
 
 	public float computeAngularImpulseDenominator(Vector3f axis) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			Vector3f vec = stack.vectors.get();
@@ -24,6 +24,9 @@
 package javabullet.dynamics;
 
 import java.util.List;
+import javabullet.BulletGlobals;
+import javabullet.BulletStack;
+import javabullet.BulletStats;
 import javabullet.collision.broadphase.BroadphaseInterface;
 import javabullet.collision.broadphase.Dispatcher;
 import javabullet.collision.broadphase.DispatcherInfo;
@@ -33,6 +36,7 @@ import javabullet.collision.dispatch.CollisionObject;
 import javabullet.collision.narrowphase.PersistentManifold;
 import javabullet.dynamics.constraintsolver.ConstraintSolver;
 import javabullet.dynamics.constraintsolver.ContactSolverInfo;
+import javabullet.linearmath.ProfileManager;
 import javabullet.linearmath.Transform;
 import javax.vecmath.Vector3f;
 
@@ -72,6 +76,8 @@ public class SimpleDynamicsWorld extends DynamicsWorld {
 	}
 	
 	protected void integrateTransforms(float timeStep) {
+		BulletStack stack = BulletStack.get();
+
 		stack.transforms.push();
 		try {
 			Transform predictedTrans = stack.transforms.get();
@@ -96,40 +102,53 @@ public class SimpleDynamicsWorld extends DynamicsWorld {
 	 */
 	@Override
 	public int stepSimulation(float timeStep, int maxSubSteps, float fixedTimeStep) {
-		// apply gravity, predict motion
-		predictUnconstraintMotion(timeStep);
-
-		DispatcherInfo dispatchInfo = getDispatchInfo();
-		dispatchInfo.timeStep = timeStep;
-		dispatchInfo.stepCount = 0;
-		dispatchInfo.debugDraw = getDebugDrawer();
-
-		// perform collision detection
-		performDiscreteCollisionDetection();
-
-		// solve contact constraints
-		int numManifolds = dispatcher1.getNumManifolds();
-		if (numManifolds != 0)
-		{
-			List<PersistentManifold> manifoldPtr = ((CollisionDispatcher)dispatcher1).getInternalManifoldPointer();
-
-			ContactSolverInfo infoGlobal = new ContactSolverInfo();
-			infoGlobal.timeStep = timeStep;
-			constraintSolver.prepareSolve(0,numManifolds);
-			constraintSolver.solveGroup(null,0,manifoldPtr, 0, numManifolds, null,0,0,infoGlobal,debugDrawer/*, m_stackAlloc*/,dispatcher1);
-			constraintSolver.allSolved(infoGlobal,debugDrawer/*, m_stackAlloc*/);
-		}
+		long t0 = System.nanoTime();
+		
+		BulletStats.Counters prevStats = statistics.bind();
+		BulletGlobals.pushProfile("stepSimulation");
+		try {
+			// apply gravity, predict motion
+			predictUnconstraintMotion(timeStep);
+
+			DispatcherInfo dispatchInfo = getDispatchInfo();
+			dispatchInfo.timeStep = timeStep;
+			dispatchInfo.stepCount = 0;
+			dispatchInfo.debugDraw = getDebugDrawer();
+
+			// perform collision detection
+			performDiscreteCollisionDetection();
+
+			// solve contact constraints
+			int numManifolds = dispatcher1.getNumManifolds();
+			if (numManifolds != 0)
+			{
+				List<PersistentManifold> manifoldPtr = ((CollisionDispatcher)dispatcher1).getInternalManifoldPointer();
 
-		// integrate transforms
-		integrateTransforms(timeStep);
+				ContactSolverInfo infoGlobal = new ContactSolverInfo();
+				infoGlobal.timeStep = timeStep;
+				constraintSolver.prepareSolve(0,numManifolds);
+				constraintSolver.solveGroup(null,0,manifoldPtr, 0, numManifolds, null,0,0,infoGlobal,debugDrawer/*, m_stackAlloc*/,dispatcher1);
+				constraintSolver.allSolved(infoGlobal,debugDrawer/*, m_stackAlloc*/);
+			}
+
+			// integrate transforms
+			integrateTransforms(timeStep);
 
-		updateAabbs();
+			updateAabbs();
 
-		synchronizeMotionStates();
+			synchronizeMotionStates();
 
-		clearForces();
+			clearForces();
 
-		return 1;
+			return 1;
+		}
+		finally {
+			BulletGlobals.popProfile();
+			ProfileManager.incrementFrameCounter();
+			
+			BulletStats.unbind(prevStats);
+			statistics.merge(getBroadphase().getOverlappingPairCache().getNumOverlappingPairs(), System.nanoTime() - t0);
+		}
 	}
 
 	@Override
@@ -173,6 +192,8 @@ public class SimpleDynamicsWorld extends DynamicsWorld {
 
 	@Override
 	public void updateAabbs() {
+		BulletStack stack = BulletStack.get();
+
 		stack.pushCommonMath();
 		try {
 			Transform predictedTrans = stack.transforms.get();
@@ -26,6 +26,7 @@
 package javabullet.dynamics.constraintsolver;
 
 import javabullet.BulletGlobals;
+import javabullet.BulletStack;
 import javabullet.dynamics.RigidBody;
 import javabullet.linearmath.QuaternionUtil;
 import javabullet.linearmath.ScalarUtil;
@@ -122,6 +123,8 @@ public class ConeTwistConstraint extends TypedConstraint {
 	
 	@Override
 	public void buildJacobian() {
+		BulletStack stack = BulletStack.get();
+
 		stack.pushCommonMath();
 		stack.quats.push();
 		try {
@@ -275,6 +278,8 @@ public class ConeTwistConstraint extends TypedConstraint {
 
 	@Override
 	public void solveConstraint(float timeStep) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			Vector3f tmp = stack.vectors.get();
@@ -38,6 +38,8 @@ public class ContactSolverInfo {
 	public float maxErrorReduction = 20f;
 	public float sor = 1.3f;
 	public float erp = 0.4f;
+	public float warmstartingFactor = 0.85f; // used with SolverMode.SOLVER_USE_WARMSTARTING
+	public float convergenceTolerance = 0f; // stop iterating when impulses change less than this, 0 = disabled
 
 	public ContactSolverInfo() {
 	}
@@ -52,6 +54,8 @@ public class ContactSolverInfo {
 		maxErrorReduction = g.maxErrorReduction;
 		sor = g.sor;
 		erp = g.erp;
+		warmstartingFactor = g.warmstartingFactor;
+		convergenceTolerance = g.convergenceTolerance;
 	}
 	
 }
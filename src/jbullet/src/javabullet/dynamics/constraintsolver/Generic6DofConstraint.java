@@ -31,6 +31,7 @@ http://gimpact.sf.net
 package javabullet.dynamics.constraintsolver;
 
 import javabullet.BulletGlobals;
+import javabullet.BulletStack;
 import javabullet.dynamics.RigidBody;
 import javabullet.linearmath.MatrixUtil;
 import javabullet.linearmath.Transform;
@@ -156,6 +157,8 @@ public class Generic6DofConstraint extends TypedConstraint {
 	 * Calcs the euler angles between the two bodies.
 	 */
 	protected void calculateAngleInfo() {
+		BulletStack stack = BulletStack.get();
+
 		stack.pushCommonMath();
 		try {
 			Matrix3f mat = stack.matrices.get();
@@ -225,6 +228,8 @@ public class Generic6DofConstraint extends TypedConstraint {
 	}
 	
 	protected void buildLinearJacobian(/*JacobianEntry jacLinear*/int jacLinear_index, Vector3f normalWorld, Vector3f pivotAInW, Vector3f pivotBInW) {
+		BulletStack stack = BulletStack.get();
+
 		stack.pushCommonMath();
 		try {
 			Matrix3f mat1 = stack.matrices.get(rbA.getCenterOfMassTransform().basis);
@@ -256,6 +261,8 @@ public class Generic6DofConstraint extends TypedConstraint {
 	}
 
 	protected void buildAngularJacobian(/*JacobianEntry jacAngular*/int jacAngular_index, Vector3f jointAxisW) {
+		BulletStack stack = BulletStack.get();
+
 		stack.matrices.push();
 		try {
 			Matrix3f mat1 = stack.matrices.get(rbA.getCenterOfMassTransform().basis);
@@ -290,6 +297,8 @@ public class Generic6DofConstraint extends TypedConstraint {
 	
 	@Override
 	public void buildJacobian() {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			// calculates transform
@@ -340,6 +349,8 @@ public class Generic6DofConstraint extends TypedConstraint {
 
 	@Override
 	public void solveConstraint(float timeStep) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			this.timeStep = timeStep;
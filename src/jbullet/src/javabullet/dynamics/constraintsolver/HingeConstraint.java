@@ -26,6 +26,7 @@
 package javabullet.dynamics.constraintsolver;
 
 import javabullet.BulletGlobals;
+import javabullet.BulletStack;
 import javabullet.dynamics.RigidBody;
 import javabullet.linearmath.QuaternionUtil;
 import javabullet.linearmath.ScalarUtil;
@@ -77,6 +78,9 @@ public class HingeConstraint extends TypedConstraint {
 
 	public HingeConstraint(RigidBody rbA, RigidBody rbB, Vector3f pivotInA, Vector3f pivotInB, Vector3f axisInA, Vector3f axisInB) {
 		super(TypedConstraintType.HINGE_CONSTRAINT_TYPE, rbA, rbB);
+
+		BulletStack stack = BulletStack.get();
+		
 		angularOnly = false;
 		enableAngularMotor = false;
 
@@ -131,6 +135,9 @@ public class HingeConstraint extends TypedConstraint {
 
 	public HingeConstraint(RigidBody rbA, Vector3f pivotInA, Vector3f axisInA) {
 		super(TypedConstraintType.HINGE_CONSTRAINT_TYPE, rbA);
+
+		BulletStack stack = BulletStack.get();
+		
 		angularOnly = false;
 		enableAngularMotor = false;
 
@@ -237,6 +244,8 @@ public class HingeConstraint extends TypedConstraint {
 	
 	@Override
 	public void buildJacobian() {
+		BulletStack stack = BulletStack.get();
+
 		stack.pushCommonMath();
 		try {
 			Vector3f tmp = stack.vectors.get();
@@ -370,6 +379,8 @@ public class HingeConstraint extends TypedConstraint {
 
 	@Override
 	public void solveConstraint(float timeStep) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			Vector3f tmp = stack.vectors.get();
@@ -548,6 +559,8 @@ public class HingeConstraint extends TypedConstraint {
 	}
 
 	public float getHingeAngle() {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			Vector3f refAxis0 = stack.vectors.get();
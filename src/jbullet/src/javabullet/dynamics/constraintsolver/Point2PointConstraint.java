@@ -23,6 +23,7 @@
 
 package javabullet.dynamics.constraintsolver;
 
+import javabullet.BulletStack;
 import javabullet.dynamics.RigidBody;
 import javabullet.linearmath.VectorUtil;
 import javax.vecmath.Matrix3f;
@@ -61,6 +62,8 @@ public class Point2PointConstraint extends TypedConstraint {
 
 	@Override
 	public void buildJacobian() {
+		BulletStack stack = BulletStack.get();
+
 		stack.pushCommonMath();
 		try {
 			appliedImpulse = 0f;
@@ -106,6 +109,8 @@ public class Point2PointConstraint extends TypedConstraint {
 
 	@Override
 	public void solveConstraint(float timeStep) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			Vector3f tmp = stack.vectors.get();
@@ -26,7 +26,8 @@ package javabullet.dynamics.constraintsolver;
 import java.util.ArrayList;
 import java.util.List;
 import javabullet.BulletGlobals;
-import javabullet.BulletPool;
+import javabullet.BulletStack;
+import javabullet.BulletStats;
 import javabullet.ContactDestroyedCallback;
 import javabullet.ObjectPool;
 import javabullet.collision.broadphase.Dispatcher;
@@ -55,21 +56,27 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 	private static final int MAX_CONTACT_SOLVER_TYPES = ContactConstraintEnum.MAX_CONTACT_SOLVER_TYPES.ordinal();
 
 	private static final int SEQUENTIAL_IMPULSE_MAX_SOLVER_POINTS = 16384;
-	private static OrderIndex[] gOrder = new OrderIndex[SEQUENTIAL_IMPULSE_MAX_SOLVER_POINTS];
 	
-	private static int totalCpd = 0;
-	
-	static {
-		for (int i=0; i<gOrder.length; i++) {
-			gOrder[i] = new OrderIndex();
+	private static final ContactDestroyedCallback contactDestroyedCallback = new ContactDestroyedCallback() {
+		public boolean invoke(Object userPersistentData) {
+			assert (userPersistentData != null);
+			ConstraintPersistentData cpd = (ConstraintPersistentData) userPersistentData;
+			//btAlignedFree(cpd);
+			//printf("totalCpd = %i. DELETED Ptr %x\n",totalCpd,userPersistentData);
+			return true;
 		}
-	}
+	};
 	
 	////////////////////////////////////////////////////////////////////////////
 	
-	private final ObjectPool<SolverBody> bodiesPool = BulletPool.get(SolverBody.class);
-	private final ObjectPool<SolverConstraint> constraintsPool = BulletPool.get(SolverConstraint.class);
-	private final ObjectPool<JacobianEntry> jacobiansPool = BulletPool.get(JacobianEntry.class);
+	// JAVA NOTE: order array is per instance (originally global), so that separate
+	// solvers can be used from multiple threads; the global totalCpd debug counter
+	// of persistent data was removed for the same reason
+	private OrderIndex[] gOrder = new OrderIndex[0];
+	
+	private final ObjectPool<SolverBody> bodiesPool = new ObjectPool<SolverBody>(SolverBody.class);
+	private final ObjectPool<SolverConstraint> constraintsPool = new ObjectPool<SolverConstraint>(SolverConstraint.class);
+	private final ObjectPool<JacobianEntry> jacobiansPool = new ObjectPool<JacobianEntry>(JacobianEntry.class);
 	
 	private final List<SolverBody> tmpSolverBodyPool = new ArrayList<SolverBody>();
 	private final List<SolverConstraint> tmpSolverConstraintPool = new ArrayList<SolverConstraint>();
@@ -77,25 +84,25 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 	private final IntArrayList orderTmpConstraintPool = new IntArrayList();
 	private final IntArrayList orderFrictionConstraintPool = new IntArrayList();
 	
+	// packed copies of solver pools, used with SOLVER_PACKED_ARRAYS:
+	private final SolverBodyArrays packedBodies = new SolverBodyArrays();
+	private final SolverConstraintArrays packedConstraints = new SolverConstraintArrays();
+	private final SolverConstraintArrays packedFrictionConstraints = new SolverConstraintArrays();
+	
 	protected final ContactSolverFunc[][] contactDispatch = new ContactSolverFunc[MAX_CONTACT_SOLVER_TYPES][MAX_CONTACT_SOLVER_TYPES];
 	protected final ContactSolverFunc[][] frictionDispatch = new ContactSolverFunc[MAX_CONTACT_SOLVER_TYPES][MAX_CONTACT_SOLVER_TYPES];
 	
 	// choose between several modes, different friction model etc.
-	protected int solverMode = SolverMode.SOLVER_RANDMIZE_ORDER | SolverMode.SOLVER_CACHE_FRIENDLY; // not using SOLVER_USE_WARMSTARTING,
+	protected int solverMode = SolverMode.SOLVER_RANDMIZE_ORDER | SolverMode.SOLVER_CACHE_FRIENDLY | SolverMode.SOLVER_PACKED_ARRAYS; // not using SOLVER_USE_WARMSTARTING,
 	// btSeed2 is used for re-arranging the constraint rows. improves convergence/quality of friction
 	protected long btSeed2 = 0L;
+	
+	// metrics of last solved group (cache friendly solver only):
+	protected float lastResidual = 0f;
+	protected int lastIterations = 0;
 
 	public SequentialImpulseConstraintSolver() {
-		BulletGlobals.gContactDestroyedCallback = new ContactDestroyedCallback() {
-			public boolean invoke(Object userPersistentData) {
-				assert (userPersistentData != null);
-				ConstraintPersistentData cpd = (ConstraintPersistentData) userPersistentData;
-				//btAlignedFree(cpd);
-				totalCpd--;
-				//printf("totalCpd = %i. DELETED Ptr %x\n",totalCpd,userPersistentData);
-				return true;
-			}
-		};
+		BulletGlobals.gContactDestroyedCallback = contactDestroyedCallback;
 
 		// initialize default friction/contact funcs
 		int i, j;
@@ -162,6 +169,91 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 		}
 	}
 	
+	/**
+	 * Starts contact and its friction constraints with impulses from previous frame.
+	 * Only the velocity part of normal impulse is reused, penetration recovery is
+	 * recomputed every frame (carrying it over pushes resting bodies apart). Friction
+	 * directions change between frames, previous friction impulse is projected
+	 * onto the new ones.
+	 */
+	private void warmstartContact(SolverConstraint contactConstraint, ManifoldPoint cp, float warmstartingFactor) {
+		contactConstraint.appliedImpulse = cp.appliedImpulse * warmstartingFactor;
+		contactConstraint.appliedVelocityImpulse = contactConstraint.appliedImpulse;
+		applyWarmstartImpulse(contactConstraint);
+		
+		BulletStack stack = BulletStack.get();
+		
+		stack.vectors.push();
+		try {
+			Vector3f lateralImpulse = stack.vectors.get();
+			lateralImpulse.scale(cp.appliedImpulseLateral1, cp.lateralFrictionDir1);
+			lateralImpulse.scaleAdd(cp.appliedImpulseLateral2, cp.lateralFrictionDir2, lateralImpulse);
+			lateralImpulse.scale(warmstartingFactor);
+			
+			SolverConstraint frictionConstraint1 = tmpSolverFrictionConstraintPool.get(contactConstraint.frictionIndex);
+			frictionConstraint1.appliedImpulse = lateralImpulse.dot(frictionConstraint1.contactNormal);
+			applyWarmstartImpulse(frictionConstraint1);
+
+			SolverConstraint frictionConstraint2 = tmpSolverFrictionConstraintPool.get(contactConstraint.frictionIndex + 1);
+			frictionConstraint2.appliedImpulse = lateralImpulse.dot(frictionConstraint2.contactNormal);
+			applyWarmstartImpulse(frictionConstraint2);
+		}
+		finally {
+			stack.vectors.pop();
+		}
+	}
+	
+	private void applyWarmstartImpulse(SolverConstraint constraint) {
+		if (constraint.appliedImpulse == 0f) {
+			return;
+		}
+		
+		BulletStack stack = BulletStack.get();
+		
+		stack.vectors.push();
+		try {
+			Vector3f tmp = stack.vectors.get();
+			SolverBody body1 = tmpSolverBodyPool.get(constraint.solverBodyIdA);
+			SolverBody body2 = tmpSolverBodyPool.get(constraint.solverBodyIdB);
+			if (body1.invMass != 0f) {
+				tmp.scale(body1.invMass, constraint.contactNormal);
+				body1.internalApplyImpulse(tmp, constraint.angularComponentA, constraint.appliedImpulse);
+			}
+			if (body2.invMass != 0f) {
+				tmp.scale(body2.invMass, constraint.contactNormal);
+				body2.internalApplyImpulse(tmp, constraint.angularComponentB, -constraint.appliedImpulse);
+			}
+		}
+		finally {
+			stack.vectors.pop();
+		}
+	}
+	
+	/**
+	 * Stores resulting impulses into contact points, used for warm starting in next frame.
+	 */
+	private void storeContactImpulses(boolean packed) {
+		int numConstraintPool = tmpSolverConstraintPool.size();
+		for (int i = 0; i < numConstraintPool; i++) {
+			SolverConstraint contactConstraint = tmpSolverConstraintPool.get(i);
+			ManifoldPoint pt = (ManifoldPoint) contactConstraint.originalContactPoint;
+			int frictionIndex = contactConstraint.frictionIndex;
+			if (packed) {
+				pt.appliedImpulse = packedConstraints.appliedVelocityImpulse[i];
+				pt.appliedImpulseLateral1 = packedFrictionConstraints.appliedImpulse[frictionIndex];
+				pt.appliedImpulseLateral2 = packedFrictionConstraints.appliedImpulse[frictionIndex + 1];
+			}
+			else {
+				pt.appliedImpulse = contactConstraint.appliedVelocityImpulse;
+				pt.appliedImpulseLateral1 = tmpSolverFrictionConstraintPool.get(frictionIndex).appliedImpulse;
+				pt.appliedImpulseLateral2 = tmpSolverFrictionConstraintPool.get(frictionIndex + 1).appliedImpulse;
+			}
+			pt.lateralFrictionDir1.set(tmpSolverFrictionConstraintPool.get(frictionIndex).contactNormal);
+			pt.lateralFrictionDir2.set(tmpSolverFrictionConstraintPool.get(frictionIndex + 1).contactNormal);
+			contactConstraint.originalContactPoint = null;
+		}
+	}
+	
 	private float restitutionCurve(float rel_vel, float restitution) {
 		float rest = restitution * -rel_vel;
 		return rest;
@@ -176,6 +268,8 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 			SolverBody body2,
 			SolverConstraint contactConstraint,
 			ContactSolverInfo solverInfo) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			float normalImpulse;
@@ -234,6 +328,8 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 			SolverConstraint contactConstraint,
 			ContactSolverInfo solverInfo,
 			float appliedNormalImpulse) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			float combinedFriction = contactConstraint.friction;
@@ -291,7 +387,8 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 					tmp.scale(body2.invMass, contactConstraint.contactNormal);
 					body2.internalApplyImpulse(tmp, contactConstraint.angularComponentB, -j1);
 				}
-
+				
+				return j1;
 			}
 			return 0f;
 		}
@@ -301,6 +398,8 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 	}
 	
 	protected void addFrictionConstraint(Vector3f normalAxis, int solverBodyIdA, int solverBodyIdB, int frictionIndex, ManifoldPoint cp, Vector3f rel_pos1, Vector3f rel_pos2, CollisionObject colObj0, CollisionObject colObj1, float relaxation) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			RigidBody body0 = RigidBody.upcast(colObj0);
@@ -372,6 +471,8 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 	}
 	
 	public float solveGroupCacheFriendlySetup(List<CollisionObject> bodies, int numBodies, List<PersistentManifold> manifoldPtr, int manifold_offset, int numManifolds, List<TypedConstraint> constraints, int constraints_offset, int numConstraints, ContactSolverInfo infoGlobal, IDebugDraw debugDrawer/*,btStackAlloc* stackAlloc*/) {
+		BulletStack stack = BulletStack.get();
+
 		BulletGlobals.pushProfile("solveGroupCacheFriendlySetup");
 		stack.vectors.push();
 		try {
@@ -457,6 +558,8 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 
 						int solverBodyIdA = -1;
 						int solverBodyIdB = -1;
+						
+						BulletStats.addContactPoints(manifold.getNumContacts());
 
 						if (manifold.getNumContacts() != 0) {
 							if (colObj0.getIslandTag() >= 0) {
@@ -607,6 +710,10 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 
 									solverConstraint.appliedImpulse = 0f;
 									solverConstraint.appliedVelocityImpulse = 0f;
+									
+									// first of the two friction constraints added below:
+									solverConstraint.frictionIndex = tmpSolverFrictionConstraintPool.size();
+									solverConstraint.originalContactPoint = cp;
 								}
 
 								{
@@ -632,6 +739,10 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 										addFrictionConstraint(frictionDir2, solverBodyIdA, solverBodyIdB, frictionIndex, cp, rel_pos1, rel_pos2, colObj0, colObj1, relaxation);
 									}
 								}
+								
+								if ((solverMode & SolverMode.SOLVER_USE_WARMSTARTING) != 0) {
+									warmstartContact(tmpSolverConstraintPool.get(frictionIndex), cp, infoGlobal.warmstartingFactor);
+								}
 							}
 						}
 					}
@@ -679,6 +790,9 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 		try {
 			int numConstraintPool = tmpSolverConstraintPool.size();
 			int numFrictionPool = tmpSolverFrictionConstraintPool.size();
+			
+			// joints don't report impulse changes, so their islands always use all iterations:
+			boolean earlyExit = infoGlobal.convergenceTolerance > 0f && numConstraints == 0;
 
 			// should traverse the contacts random order...
 			int iteration;
@@ -686,21 +800,10 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 				for (iteration = 0; iteration < infoGlobal.numIterations; iteration++) {
 
 					int j;
+					float residual = 0f;
 					if ((solverMode & SolverMode.SOLVER_RANDMIZE_ORDER) != 0) {
 						if ((iteration & 7) == 0) {
-							for (j = 0; j < numConstraintPool; ++j) {
-								int tmp = orderTmpConstraintPool.get(j);
-								int swapi = randInt2(j + 1);
-								orderTmpConstraintPool.set(j, orderTmpConstraintPool.get(swapi));
-								orderTmpConstraintPool.set(swapi, tmp);
-							}
-
-							for (j = 0; j < numFrictionPool; ++j) {
-								int tmp = orderFrictionConstraintPool.get(j);
-								int swapi = randInt2(j + 1);
-								orderFrictionConstraintPool.set(j, orderFrictionConstraintPool.get(swapi));
-								orderFrictionConstraintPool.set(swapi, tmp);
-							}
+							randomizeConstraintOrder(numConstraintPool, numFrictionPool);
 						}
 					}
 
@@ -737,8 +840,9 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 							int numPoolConstraints = tmpSolverConstraintPool.size();
 							for (j = 0; j < numPoolConstraints; j++) {
 								SolverConstraint solveManifold = tmpSolverConstraintPool.get(orderTmpConstraintPool.get(j));
-								resolveSingleCollisionCombinedCacheFriendly(tmpSolverBodyPool.get(solveManifold.solverBodyIdA),
+								float deltaImpulse = resolveSingleCollisionCombinedCacheFriendly(tmpSolverBodyPool.get(solveManifold.solverBodyIdA),
 										tmpSolverBodyPool.get(solveManifold.solverBodyIdB), solveManifold, infoGlobal);
+								residual = Math.max(residual, Math.abs(deltaImpulse));
 							}
 						}
 						finally {
@@ -753,15 +857,22 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 
 							for (j = 0; j < numFrictionPoolConstraints; j++) {
 								SolverConstraint solveManifold = tmpSolverFrictionConstraintPool.get(orderFrictionConstraintPool.get(j));
-								resolveSingleFrictionCacheFriendly(tmpSolverBodyPool.get(solveManifold.solverBodyIdA),
+								float deltaImpulse = resolveSingleFrictionCacheFriendly(tmpSolverBodyPool.get(solveManifold.solverBodyIdA),
 										tmpSolverBodyPool.get(solveManifold.solverBodyIdB), solveManifold, infoGlobal,
 										tmpSolverConstraintPool.get(solveManifold.frictionIndex).appliedImpulse);
+								residual = Math.max(residual, Math.abs(deltaImpulse));
 							}
 						}
 						finally {
 							BulletGlobals.popProfile();
 						}
 					}
+					
+					lastResidual = residual;
+					lastIterations = iteration + 1;
+					if (earlyExit && residual < infoGlobal.convergenceTolerance) {
+						break;
+					}
 				}
 			}
 
@@ -772,17 +883,259 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 		}
 	}
 
+	private void randomizeConstraintOrder(int numConstraintPool, int numFrictionPool) {
+		int j;
+		for (j = 0; j < numConstraintPool; ++j) {
+			int tmp = orderTmpConstraintPool.get(j);
+			int swapi = randInt2(j + 1);
+			orderTmpConstraintPool.set(j, orderTmpConstraintPool.get(swapi));
+			orderTmpConstraintPool.set(swapi, tmp);
+		}
+
+		for (j = 0; j < numFrictionPool; ++j) {
+			int tmp = orderFrictionConstraintPool.get(j);
+			int swapi = randInt2(j + 1);
+			orderFrictionConstraintPool.set(j, orderFrictionConstraintPool.get(swapi));
+			orderFrictionConstraintPool.set(swapi, tmp);
+		}
+	}
+	
+	/**
+	 * Copies solver bodies and constraints prepared by setup into packed arrays.
+	 */
+	private void packSolverPools() {
+		int i;
+		
+		int numBodies = tmpSolverBodyPool.size();
+		packedBodies.resize(numBodies);
+		for (i = 0; i < numBodies; i++) {
+			packedBodies.set(i, tmpSolverBodyPool.get(i));
+		}
+		
+		int numConstraintPool = tmpSolverConstraintPool.size();
+		packedConstraints.resize(numConstraintPool);
+		for (i = 0; i < numConstraintPool; i++) {
+			packedConstraints.set(i, tmpSolverConstraintPool.get(i));
+		}
+		
+		int numFrictionPool = tmpSolverFrictionConstraintPool.size();
+		packedFrictionConstraints.resize(numFrictionPool);
+		for (i = 0; i < numFrictionPool; i++) {
+			packedFrictionConstraints.set(i, tmpSolverFrictionConstraintPool.get(i));
+		}
+	}
+	
+	/**
+	 * Same as {@link #solveGroupCacheFriendlyIterations}, but works on packed arrays
+	 * instead of pooled objects. Produces identical results.
+	 */
+	protected float solveGroupCacheFriendlyIterationsPacked(List<TypedConstraint> constraints, int constraints_offset, int numConstraints, ContactSolverInfo infoGlobal) {
+		BulletGlobals.pushProfile("solveGroupCacheFriendlyIterationsPacked");
+		try {
+			SolverBodyArrays bodies = packedBodies;
+			SolverConstraintArrays contacts = packedConstraints;
+			SolverConstraintArrays frictions = packedFrictionConstraints;
+			
+			int numConstraintPool = contacts.size;
+			int numFrictionPool = frictions.size;
+			
+			// joints don't report impulse changes, so their islands always use all iterations:
+			boolean earlyExit = infoGlobal.convergenceTolerance > 0f && numConstraints == 0;
+
+			// should traverse the contacts random order...
+			int iteration;
+			for (iteration = 0; iteration < infoGlobal.numIterations; iteration++) {
+				int j;
+				float residual = 0f;
+				if ((solverMode & SolverMode.SOLVER_RANDMIZE_ORDER) != 0) {
+					if ((iteration & 7) == 0) {
+						randomizeConstraintOrder(numConstraintPool, numFrictionPool);
+					}
+				}
+
+				for (j = 0; j < numConstraints; j++) {
+					TypedConstraint constraint = constraints.get(constraints_offset+j);
+					
+					if ((constraint.getRigidBodyA().getIslandTag() >= 0) && (constraint.getRigidBodyA().getCompanionId() >= 0)) {
+						bodies.writebackVelocity(constraint.getRigidBodyA().getCompanionId());
+					}
+					if ((constraint.getRigidBodyB().getIslandTag() >= 0) && (constraint.getRigidBodyB().getCompanionId() >= 0)) {
+						bodies.writebackVelocity(constraint.getRigidBodyB().getCompanionId());
+					}
+
+					constraint.solveConstraint(infoGlobal.timeStep);
+
+					if ((constraint.getRigidBodyA().getIslandTag() >= 0) && (constraint.getRigidBodyA().getCompanionId() >= 0)) {
+						bodies.readVelocity(constraint.getRigidBodyA().getCompanionId());
+					}
+					if ((constraint.getRigidBodyB().getIslandTag() >= 0) && (constraint.getRigidBodyB().getCompanionId() >= 0)) {
+						bodies.readVelocity(constraint.getRigidBodyB().getCompanionId());
+					}
+				}
+
+				for (j = 0; j < numConstraintPool; j++) {
+					float deltaImpulse = resolveSingleCollisionCombinedPacked(bodies, contacts, orderTmpConstraintPool.get(j));
+					residual = Math.max(residual, Math.abs(deltaImpulse));
+				}
+
+				for (j = 0; j < numFrictionPool; j++) {
+					int idx = orderFrictionConstraintPool.get(j);
+					float deltaImpulse = resolveSingleFrictionPacked(bodies, frictions, idx, contacts.appliedImpulse[frictions.frictionIndex[idx]]);
+					residual = Math.max(residual, Math.abs(deltaImpulse));
+				}
+				
+				lastResidual = residual;
+				lastIterations = iteration + 1;
+				if (earlyExit && residual < infoGlobal.convergenceTolerance) {
+					break;
+				}
+			}
+
+			return 0f;
+		}
+		finally {
+			BulletGlobals.popProfile();
+		}
+	}
+	
+	/**
+	 * Packed version of {@link #resolveSingleCollisionCombinedCacheFriendly}.
+	 */
+	private static float resolveSingleCollisionCombinedPacked(SolverBodyArrays bodies, SolverConstraintArrays c, int i) {
+		int i3 = i*3;
+		int bodyA = c.solverBodyIdA[i];
+		int bodyB = c.solverBodyIdB[i];
+		
+		float rel_vel = relativeVelocity(bodies, c, i3, bodyA, bodyB);
+
+		float positionalError = c.penetration[i];
+		float velocityError = c.restitution[i] - rel_vel; // * damping;
+
+		float penetrationImpulse = positionalError * c.jacDiagABInv[i];
+		float velocityImpulse = velocityError * c.jacDiagABInv[i];
+		float normalImpulse = penetrationImpulse + velocityImpulse;
+
+		// See Erin Catto's GDC 2006 paper: Clamp the accumulated impulse
+		float oldNormalImpulse = c.appliedImpulse[i];
+		float sum = oldNormalImpulse + normalImpulse;
+		c.appliedImpulse[i] = 0f > sum ? 0f : sum;
+
+		float oldVelocityImpulse = c.appliedVelocityImpulse[i];
+		float velocitySum = oldVelocityImpulse + velocityImpulse;
+		c.appliedVelocityImpulse[i] = 0f > velocitySum ? 0f : velocitySum;
+
+		normalImpulse = c.appliedImpulse[i] - oldNormalImpulse;
+
+		internalApplyImpulsePacked(bodies, bodyA, c.contactNormal, c.angularComponentA, i3, normalImpulse);
+		internalApplyImpulsePacked(bodies, bodyB, c.contactNormal, c.angularComponentB, i3, -normalImpulse);
+		
+		return normalImpulse;
+	}
+	
+	/**
+	 * Packed version of {@link #resolveSingleFrictionCacheFriendly}.
+	 */
+	private static float resolveSingleFrictionPacked(SolverBodyArrays bodies, SolverConstraintArrays c, int i, float appliedNormalImpulse) {
+		float limit = appliedNormalImpulse * c.friction[i];
+
+		if (appliedNormalImpulse > 0f) //friction
+		{
+			int i3 = i*3;
+			int bodyA = c.solverBodyIdA[i];
+			int bodyB = c.solverBodyIdB[i];
+			
+			float rel_vel = relativeVelocity(bodies, c, i3, bodyA, bodyB);
+
+			// calculate j that moves us to zero relative velocity
+			float j1 = -rel_vel * c.jacDiagABInv[i];
+			float oldTangentImpulse = c.appliedImpulse[i];
+			float impulse = oldTangentImpulse + j1;
+
+			if (limit < impulse) {
+				impulse = limit;
+			}
+			else {
+				if (impulse < -limit) {
+					impulse = -limit;
+				}
+			}
+			c.appliedImpulse[i] = impulse;
+			j1 = impulse - oldTangentImpulse;
+
+			internalApplyImpulsePacked(bodies, bodyA, c.contactNormal, c.angularComponentA, i3, j1);
+			internalApplyImpulsePacked(bodies, bodyB, c.contactNormal, c.angularComponentB, i3, -j1);
+			
+			return j1;
+		}
+		return 0f;
+	}
+	
+	/**
+	 * Optimized version of projected relative velocity, uses precomputed cross products with normal.
+	 */
+	private static float relativeVelocity(SolverBodyArrays bodies, SolverConstraintArrays c, int i3, int bodyA, int bodyB) {
+		float[] lv = bodies.linearVelocity;
+		float[] av = bodies.angularVelocity;
+		float[] n = c.contactNormal;
+		float[] r1 = c.relpos1CrossNormal;
+		float[] r2 = c.relpos2CrossNormal;
+		float nx = n[i3+0], ny = n[i3+1], nz = n[i3+2];
+		int a3 = bodyA*3;
+		int b3 = bodyB*3;
+		
+		float vel1Dotn = (nx*lv[a3+0] + ny*lv[a3+1] + nz*lv[a3+2]) + (r1[i3+0]*av[a3+0] + r1[i3+1]*av[a3+1] + r1[i3+2]*av[a3+2]);
+		float vel2Dotn = (nx*lv[b3+0] + ny*lv[b3+1] + nz*lv[b3+2]) + (r2[i3+0]*av[b3+0] + r2[i3+1]*av[b3+1] + r2[i3+2]*av[b3+2]);
+		return vel1Dotn - vel2Dotn;
+	}
+	
+	/**
+	 * Packed version of {@link SolverBody#internalApplyImpulse}, linear component is normal scaled by inverse mass.
+	 */
+	private static void internalApplyImpulsePacked(SolverBodyArrays bodies, int body, float[] normal, float[] angularComponent, int i3, float impulseMagnitude) {
+		float invMass = bodies.invMass[body];
+		if (invMass != 0f) {
+			float[] lv = bodies.linearVelocity;
+			float[] av = bodies.angularVelocity;
+			int b3 = body*3;
+			
+			lv[b3+0] = impulseMagnitude * (invMass * normal[i3+0]) + lv[b3+0];
+			lv[b3+1] = impulseMagnitude * (invMass * normal[i3+1]) + lv[b3+1];
+			lv[b3+2] = impulseMagnitude * (invMass * normal[i3+2]) + lv[b3+2];
+			
+			float angularImpulse = impulseMagnitude * bodies.angularFactor[body];
+			av[b3+0] = angularImpulse * angularComponent[i3+0] + av[b3+0];
+			av[b3+1] = angularImpulse * angularComponent[i3+1] + av[b3+1];
+			av[b3+2] = angularImpulse * angularComponent[i3+2] + av[b3+2];
+		}
+	}
+
 	public float solveGroupCacheFriendly(List<CollisionObject> bodies, int numBodies, List<PersistentManifold> manifoldPtr, int manifold_offset, int numManifolds, List<TypedConstraint> constraints, int constraints_offset, int numConstraints, ContactSolverInfo infoGlobal, IDebugDraw debugDrawer/*,btStackAlloc* stackAlloc*/) {
 		int i;
 
 		solveGroupCacheFriendlySetup(bodies, numBodies, manifoldPtr, manifold_offset, numManifolds, constraints, constraints_offset, numConstraints, infoGlobal, debugDrawer/*, stackAlloc*/);
-		solveGroupCacheFriendlyIterations(bodies, numBodies, manifoldPtr, manifold_offset, numManifolds, constraints, constraints_offset, numConstraints, infoGlobal, debugDrawer/*, stackAlloc*/);
+		
+		boolean packed = (solverMode & SolverMode.SOLVER_PACKED_ARRAYS) != 0;
+		if (packed) {
+			packSolverPools();
+			solveGroupCacheFriendlyIterationsPacked(constraints, constraints_offset, numConstraints, infoGlobal);
+		}
+		else {
+			solveGroupCacheFriendlyIterations(bodies, numBodies, manifoldPtr, manifold_offset, numManifolds, constraints, constraints_offset, numConstraints, infoGlobal, debugDrawer/*, stackAlloc*/);
+		}
+
+		storeContactImpulses(packed);
 
 		for (i = 0; i < tmpSolverBodyPool.size(); i++) {
 			SolverBody body = tmpSolverBodyPool.get(i);
-			body.writebackVelocity();
+			if (packed) {
+				packedBodies.writebackVelocity(i);
+			}
+			else {
+				body.writebackVelocity();
+			}
 			bodiesPool.release(body);
 		}
+		packedBodies.clear();
 
 		//	printf("m_tmpSolverConstraintPool.size() = %i\n",m_tmpSolverConstraintPool.size());
 
@@ -830,10 +1183,17 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 			ContactSolverInfo info = new ContactSolverInfo(infoGlobal);
 
 			int numiter = infoGlobal.numIterations;
+			lastIterations = numiter;
 
 			int totalPoints = 0;
 			{
 				short j;
+				for (j = 0; j < numManifolds; j++) {
+					totalPoints += manifoldPtr.get(manifold_offset+j).getNumContacts();
+				}
+				ensureOrderCapacity(totalPoints);
+				totalPoints = 0;
+				
 				for (j = 0; j < numManifolds; j++) {
 					PersistentManifold manifold = manifoldPtr.get(manifold_offset+j);
 					prepareConstraints(manifold, info, debugDrawer);
@@ -899,6 +1259,8 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 	}
 	
 	protected void prepareConstraints(PersistentManifold manifoldPtr, ContactSolverInfo info, IDebugDraw debugDrawer) {
+		BulletStack stack = BulletStack.get();
+
 		stack.pushCommonMath();
 		try {
 			RigidBody body0 = (RigidBody) manifoldPtr.getBody0();
@@ -911,7 +1273,7 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 				//#endif //FORCE_REFESH_CONTACT_MANIFOLDS		
 				int numpoints = manifoldPtr.getNumContacts();
 
-				BulletGlobals.gTotalContactPoints += numpoints;
+				BulletStats.addContactPoints(numpoints);
 
 				Vector3f color = stack.vectors.get(0f, 1f, 0f);
 				for (int i = 0; i < numpoints; i++) {
@@ -963,7 +1325,7 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 							cpd = new ConstraintPersistentData();
 							//assert(cpd != null);
 
-							totalCpd++;
+							//totalCpd++;
 							//printf("totalCpd = %i Created Ptr %x\n",totalCpd,cpd);
 							cp.userPersistentData = cpd;
 							cpd.persistentLifeTime = cp.getLifeTime();
@@ -1105,6 +1467,8 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 	}
 
 	public float solveCombinedContactFriction(RigidBody body0, RigidBody body1, ManifoldPoint cp, ContactSolverInfo info, int iter, IDebugDraw debugDrawer) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			float maxImpulse = 0f;
@@ -1137,6 +1501,8 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 	}
 	
 	protected float solve(RigidBody body0, RigidBody body1, ManifoldPoint cp, ContactSolverInfo info, int iter, IDebugDraw debugDrawer) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			float maxImpulse = 0f;
@@ -1170,6 +1536,8 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 	}
 
 	protected float solveFriction(RigidBody body0, RigidBody body1, ManifoldPoint cp, ContactSolverInfo info, int iter, IDebugDraw debugDrawer) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			Vector3f color = stack.vectors.get(0f, 1f, 0f);
@@ -1215,6 +1583,39 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 		this.solverMode = solverMode;
 	}
 
+	/**
+	 * Creates new solver with the same solver mode and contact/friction functions.
+	 * Used when simulation islands are solved in parallel, as each thread must
+	 * use its own solver instance.
+	 */
+	public SequentialImpulseConstraintSolver createThreadSolver() {
+		SequentialImpulseConstraintSolver solver = new SequentialImpulseConstraintSolver();
+		solver.solverMode = solverMode;
+		for (int i = 0; i < MAX_CONTACT_SOLVER_TYPES; i++) {
+			System.arraycopy(contactDispatch[i], 0, solver.contactDispatch[i], 0, MAX_CONTACT_SOLVER_TYPES);
+			System.arraycopy(frictionDispatch[i], 0, solver.frictionDispatch[i], 0, MAX_CONTACT_SOLVER_TYPES);
+		}
+		return solver;
+	}
+
+	/**
+	 * Returns maximum absolute change of contact or friction impulse during the
+	 * last iteration of the last solved group (cache friendly solver only). Lower
+	 * value means the solver got closer to convergence.
+	 */
+	public float getLastResidual() {
+		return lastResidual;
+	}
+
+	/**
+	 * Returns number of iterations used for the last solved group (cache friendly
+	 * solver only). Can be lower than {@link ContactSolverInfo#numIterations} when
+	 * {@link ContactSolverInfo#convergenceTolerance} is set.
+	 */
+	public int getLastIterations() {
+		return lastIterations;
+	}
+
 	public void setRandSeed(long seed) {
 		btSeed2 = seed;
 	}
@@ -1225,6 +1626,18 @@ public class SequentialImpulseConstraintSolver extends ConstraintSolver {
 	
 	////////////////////////////////////////////////////////////////////////////
 	
+	private void ensureOrderCapacity(int totalPoints) {
+		assert (totalPoints <= SEQUENTIAL_IMPULSE_MAX_SOLVER_POINTS);
+		if (gOrder.length < totalPoints) {
+			OrderIndex[] newOrder = new OrderIndex[Math.max(totalPoints, gOrder.length * 2)];
+			System.arraycopy(gOrder, 0, newOrder, 0, gOrder.length);
+			for (int i=gOrder.length; i<newOrder.length; i++) {
+				newOrder[i] = new OrderIndex();
+			}
+			gOrder = newOrder;
+		}
+	}
+	
 	private static class OrderIndex {
 		public int manifoldIndex;
 		public int pointIndex;
@@ -0,0 +1,106 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.dynamics.constraintsolver;
+
+import javabullet.dynamics.RigidBody;
+
+/**
+ * Structure-of-arrays variant of {@link SolverBody} pool, used by the cache
+ * friendly solver when {@link SolverMode#SOLVER_PACKED_ARRAYS} is set. Vectors
+ * are stored interleaved (x, y, z) in float arrays, bodies are indexed by
+ * solver body id.
+ * 
+ * @author jezek2
+ */
+public class SolverBodyArrays {
+
+	public int size;
+	
+	public float[] linearVelocity = new float[0];
+	public float[] angularVelocity = new float[0];
+	public float[] invMass = new float[0];
+	public float[] angularFactor = new float[0];
+	public RigidBody[] originalBody = new RigidBody[0];
+	
+	/**
+	 * Sets number of bodies, growing arrays if needed. Content is not preserved when growing.
+	 */
+	public void resize(int n) {
+		if (invMass.length < n) {
+			int capacity = Math.max(n, invMass.length * 2);
+			linearVelocity = new float[capacity*3];
+			angularVelocity = new float[capacity*3];
+			invMass = new float[capacity];
+			angularFactor = new float[capacity];
+			originalBody = new RigidBody[capacity];
+		}
+		size = n;
+	}
+	
+	public void set(int i, SolverBody body) {
+		int i3 = i*3;
+		linearVelocity[i3+0] = body.linearVelocity.x;
+		linearVelocity[i3+1] = body.linearVelocity.y;
+		linearVelocity[i3+2] = body.linearVelocity.z;
+		angularVelocity[i3+0] = body.angularVelocity.x;
+		angularVelocity[i3+1] = body.angularVelocity.y;
+		angularVelocity[i3+2] = body.angularVelocity.z;
+		invMass[i] = body.invMass;
+		angularFactor[i] = body.angularFactor;
+		originalBody[i] = body.originalBody;
+	}
+
+	public void writebackVelocity(int i) {
+		if (invMass[i] != 0f) {
+			int i3 = i*3;
+			RigidBody body = originalBody[i];
+			body.getLinearVelocity().set(linearVelocity[i3+0], linearVelocity[i3+1], linearVelocity[i3+2]);
+			body.getAngularVelocity().set(angularVelocity[i3+0], angularVelocity[i3+1], angularVelocity[i3+2]);
+		}
+	}
+
+	public void readVelocity(int i) {
+		if (invMass[i] != 0f) {
+			int i3 = i*3;
+			RigidBody body = originalBody[i];
+			linearVelocity[i3+0] = body.getLinearVelocity().x;
+			linearVelocity[i3+1] = body.getLinearVelocity().y;
+			linearVelocity[i3+2] = body.getLinearVelocity().z;
+			angularVelocity[i3+0] = body.getAngularVelocity().x;
+			angularVelocity[i3+1] = body.getAngularVelocity().y;
+			angularVelocity[i3+2] = body.getAngularVelocity().z;
+		}
+	}
+	
+	/**
+	 * Releases references to bodies.
+	 */
+	public void clear() {
+		for (int i=0; i<size; i++) {
+			originalBody[i] = null;
+		}
+		size = 0;
+	}
+	
+}
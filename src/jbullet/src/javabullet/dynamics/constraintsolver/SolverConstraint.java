@@ -50,6 +50,8 @@ public class SolverConstraint {
 	public float penetration;
 	
 	public SolverConstraintType constraintType;
+	// contact: index of first friction constraint, friction: index of contact constraint
 	public int frictionIndex;
+	public Object originalContactPoint;
 	
 }
@@ -0,0 +1,107 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.dynamics.constraintsolver;
+
+/**
+ * Structure-of-arrays variant of {@link SolverConstraint} pool, used by the cache
+ * friendly solver when {@link SolverMode#SOLVER_PACKED_ARRAYS} is set. Vectors
+ * are stored interleaved (x, y, z) in float arrays.
+ * 
+ * @author jezek2
+ */
+public class SolverConstraintArrays {
+
+	public int size;
+	
+	public float[] relpos1CrossNormal = new float[0];
+	public float[] contactNormal = new float[0];
+	public float[] relpos2CrossNormal = new float[0];
+	public float[] angularComponentA = new float[0];
+	public float[] angularComponentB = new float[0];
+	
+	public float[] appliedVelocityImpulse = new float[0];
+	public float[] appliedImpulse = new float[0];
+	public int[] solverBodyIdA = new int[0];
+	public int[] solverBodyIdB = new int[0];
+	
+	public float[] friction = new float[0];
+	public float[] restitution = new float[0];
+	public float[] jacDiagABInv = new float[0];
+	public float[] penetration = new float[0];
+	
+	public int[] frictionIndex = new int[0];
+	
+	/**
+	 * Sets number of constraints, growing arrays if needed. Content is not preserved when growing.
+	 */
+	public void resize(int n) {
+		if (appliedImpulse.length < n) {
+			int capacity = Math.max(n, appliedImpulse.length * 2);
+			relpos1CrossNormal = new float[capacity*3];
+			contactNormal = new float[capacity*3];
+			relpos2CrossNormal = new float[capacity*3];
+			angularComponentA = new float[capacity*3];
+			angularComponentB = new float[capacity*3];
+			appliedVelocityImpulse = new float[capacity];
+			appliedImpulse = new float[capacity];
+			solverBodyIdA = new int[capacity];
+			solverBodyIdB = new int[capacity];
+			friction = new float[capacity];
+			restitution = new float[capacity];
+			jacDiagABInv = new float[capacity];
+			penetration = new float[capacity];
+			frictionIndex = new int[capacity];
+		}
+		size = n;
+	}
+	
+	public void set(int i, SolverConstraint c) {
+		int i3 = i*3;
+		relpos1CrossNormal[i3+0] = c.relpos1CrossNormal.x;
+		relpos1CrossNormal[i3+1] = c.relpos1CrossNormal.y;
+		relpos1CrossNormal[i3+2] = c.relpos1CrossNormal.z;
+		contactNormal[i3+0] = c.contactNormal.x;
+		contactNormal[i3+1] = c.contactNormal.y;
+		contactNormal[i3+2] = c.contactNormal.z;
+		relpos2CrossNormal[i3+0] = c.relpos2CrossNormal.x;
+		relpos2CrossNormal[i3+1] = c.relpos2CrossNormal.y;
+		relpos2CrossNormal[i3+2] = c.relpos2CrossNormal.z;
+		angularComponentA[i3+0] = c.angularComponentA.x;
+		angularComponentA[i3+1] = c.angularComponentA.y;
+		angularComponentA[i3+2] = c.angularComponentA.z;
+		angularComponentB[i3+0] = c.angularComponentB.x;
+		angularComponentB[i3+1] = c.angularComponentB.y;
+		angularComponentB[i3+2] = c.angularComponentB.z;
+		appliedVelocityImpulse[i] = c.appliedVelocityImpulse;
+		appliedImpulse[i] = c.appliedImpulse;
+		solverBodyIdA[i] = c.solverBodyIdA;
+		solverBodyIdB[i] = c.solverBodyIdB;
+		friction[i] = c.friction;
+		restitution[i] = c.restitution;
+		jacDiagABInv[i] = c.jacDiagABInv;
+		penetration[i] = c.penetration;
+		frictionIndex[i] = c.frictionIndex;
+	}
+	
+}
@@ -33,5 +33,11 @@ public class SolverMode {
 	public static final int SOLVER_FRICTION_SEPARATE = 2;
 	public static final int SOLVER_USE_WARMSTARTING  = 4;
 	public static final int SOLVER_CACHE_FRIENDLY    = 8;
+	
+	/**
+	 * Cache friendly solver iterates over packed structure-of-arrays copies of
+	 * solver bodies and constraints instead of pooled objects.
+	 */
+	public static final int SOLVER_PACKED_ARRAYS     = 16;
 
 }
@@ -24,7 +24,6 @@
 package javabullet.dynamics.constraintsolver;
 
 import javabullet.BulletGlobals;
-import javabullet.BulletStack;
 import javabullet.dynamics.RigidBody;
 
 /**
@@ -34,8 +33,6 @@ import javabullet.dynamics.RigidBody;
  */
 public abstract class TypedConstraint {
 	
-	protected final BulletStack stack = BulletStack.get();
-	
 	private static final RigidBody s_fixed = new RigidBody(0, null, null);
 
 	private int userConstraintType = -1;
@@ -35,8 +35,6 @@ import javax.vecmath.Vector3f;
  */
 public class WheelInfo {
 
-	protected final BulletStack stack = BulletStack.get();
-	
 	public final RaycastInfo raycastInfo = new RaycastInfo();
 
 	public final Transform worldTransform = new Transform();
@@ -96,6 +94,8 @@ public class WheelInfo {
 	}
 
 	public void updateWheel(RigidBody chassis, RaycastInfo raycastInfo) {
+		BulletStack stack = BulletStack.get();
+
 		stack.vectors.push();
 		try {
 			if (raycastInfo.isInContact) {
@@ -0,0 +1,221 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.linearmath;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import javabullet.BulletGlobals;
+
+/**
+ * Hierarchical profiler, the counterpart of Bullet's CProfileManager.<p>
+ * 
+ * Every thread records into its own tree of {@link ProfileNode}s, so profiling
+ * can be used while worlds or their stages are stepped in parallel. Nodes are
+ * created the first time a block is entered under a given parent, after that
+ * profiling doesn't allocate. Blocks are timed with {@link System#nanoTime}.<p>
+ * 
+ * A frame is ended by {@link #incrementFrameCounter}, which is called at the end
+ * of each {@link javabullet.dynamics.DynamicsWorld#stepSimulation stepSimulation}.
+ * Each node then stores its time for the frame into a rolling window, which is
+ * used for percentile queries (eg. p99 of step time). Helper threads used for
+ * parallel stages only accumulate totals, the stepping thread's tree contains
+ * the wall time of each stage.<p>
+ * 
+ * Profiling is disabled by default (see {@link BulletGlobals#ENABLE_PROFILE}),
+ * the cost of disabled profile block is a single volatile read.
+ * 
+ * @author jezek2
+ */
+public class ProfileManager {
+	
+	public static final int DEFAULT_WINDOW_SIZE = 256;
+	
+	private static volatile boolean enabled = BulletGlobals.ENABLE_PROFILE;
+	private static volatile int windowSize = DEFAULT_WINDOW_SIZE;
+	
+	private static final List<ThreadProfile> threadProfiles = new ArrayList<ThreadProfile>();
+	
+	private static final ThreadLocal<ThreadProfile> currentProfile = new ThreadLocal<ThreadProfile>() {
+		@Override
+		protected ThreadProfile initialValue() {
+			ThreadProfile profile = new ThreadProfile(Thread.currentThread().getName(), windowSize);
+			synchronized (threadProfiles) {
+				threadProfiles.add(profile);
+			}
+			return profile;
+		}
+	};
+	
+	public static boolean isEnabled() {
+		return enabled;
+	}
+	
+	public static void setEnabled(boolean enabled) {
+		ProfileManager.enabled = enabled;
+	}
+
+	/**
+	 * Sets number of frames kept for percentile queries. Applies only to
+	 * threads that start profiling after this call.
+	 */
+	public static void setWindowSize(int windowSize) {
+		if (windowSize < 1) {
+			throw new IllegalArgumentException("window size must be positive");
+		}
+		ProfileManager.windowSize = windowSize;
+	}
+	
+	/**
+	 * Starts profile block. Key is usually a string literal, class objects
+	 * are reported using their simple name.
+	 */
+	public static void startProfile(Object key) {
+		if (!enabled) return;
+		
+		ThreadProfile profile = currentProfile.get();
+		if (!key.equals(profile.current.getKey())) {
+			profile.current = profile.current.getSubNode(key);
+		}
+		profile.current.call();
+	}
+	
+	public static void stopProfile() {
+		if (!enabled) return;
+		
+		ThreadProfile profile = currentProfile.get();
+		// JAVA NOTE: guards against unbalanced calls when profiling is enabled mid-frame
+		if (profile.current == profile.root) {
+			return;
+		}
+		if (profile.current.ret()) {
+			profile.current = profile.current.getParent();
+		}
+	}
+	
+	/**
+	 * Ends current frame of calling thread.
+	 */
+	public static void incrementFrameCounter() {
+		if (!enabled) return;
+		
+		ThreadProfile profile = currentProfile.get();
+		if (profile.current != profile.root) {
+			// frame ended inside of a block (eg. nested stepSimulation), it is
+			// finished by the outermost call
+			return;
+		}
+		profile.frameCounter++;
+		profile.root.endFrame();
+	}
+	
+	/**
+	 * Resets statistics of calling thread, the tree structure is kept.
+	 */
+	public static void reset() {
+		ThreadProfile profile = currentProfile.get();
+		profile.root.reset();
+		profile.frameCounter = 0;
+	}
+	
+	/**
+	 * Returns root of profile tree of calling thread. The root itself is not
+	 * timed, its children are the outermost profile blocks.
+	 */
+	public static ProfileNode getRoot() {
+		return currentProfile.get().root;
+	}
+	
+	public static int getFrameCount() {
+		return currentProfile.get().frameCounter;
+	}
+	
+	/**
+	 * Returns profile roots of all threads that used profiling. Trees of other
+	 * threads are consistent only while these threads are not stepping.
+	 */
+	public static List<ProfileNode> getAllRoots(List<ProfileNode> out) {
+		out.clear();
+		synchronized (threadProfiles) {
+			for (int i=0; i<threadProfiles.size(); i++) {
+				out.add(threadProfiles.get(i).root);
+			}
+		}
+		return out;
+	}
+	
+	public static void printProfile(PrintStream out, ProfileNode root) {
+		out.println("Profile: "+root.getName());
+		for (ProfileNode node = root.getChild(); node != null; node = node.getSibling()) {
+			printNode(out, node, 1);
+		}
+	}
+
+	public static void printAllProfiles(PrintStream out) {
+		List<ProfileNode> roots = getAllRoots(new ArrayList<ProfileNode>());
+		for (int i=0; i<roots.size(); i++) {
+			if (roots.get(i).getChild() != null) {
+				printProfile(out, roots.get(i));
+			}
+		}
+	}
+	
+	private static void printNode(PrintStream out, ProfileNode node, int depth) {
+		StringBuilder sb = new StringBuilder();
+		for (int i=0; i<depth; i++) {
+			sb.append("  ");
+		}
+		sb.append(node.getName());
+		sb.append(" calls=").append(node.getTotalCalls());
+		sb.append(" total=").append(toMillis(node.getTotalTime())).append(" ms");
+		if (node.getNumSamples() > 0) {
+			sb.append(" p50=").append(toMillis(node.getPercentile(50f)));
+			sb.append(" p99=").append(toMillis(node.getPercentile(99f)));
+			sb.append(" max=").append(toMillis(node.getMaxFrameTime())).append(" ms");
+		}
+		out.println(sb);
+		
+		for (ProfileNode child = node.getChild(); child != null; child = child.getSibling()) {
+			printNode(out, child, depth + 1);
+		}
+	}
+	
+	private static float toMillis(long nanos) {
+		return nanos / 1000000f;
+	}
+	
+	////////////////////////////////////////////////////////////////////////////
+	
+	private static class ThreadProfile {
+		public final ProfileNode root;
+		public ProfileNode current;
+		public int frameCounter;
+
+		public ThreadProfile(String threadName, int windowSize) {
+			root = new ProfileNode(threadName, null, windowSize);
+			current = root;
+		}
+	}
+	
+}
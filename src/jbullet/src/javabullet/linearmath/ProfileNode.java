@@ -0,0 +1,205 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.linearmath;
+
+import java.util.Arrays;
+
+/**
+ * A node in the hierarchical profile tree maintained by {@link ProfileManager}.
+ * Each node accumulates the time spent in one named block for a given parent,
+ * and keeps a rolling window of per-frame times for percentile queries.<p>
+ * 
+ * All times are in nanoseconds.
+ * 
+ * @author jezek2
+ */
+public class ProfileNode {
+
+	private final Object key;
+	private final String name;
+	private final ProfileNode parent;
+	private ProfileNode child;
+	private ProfileNode sibling;
+	
+	private int totalCalls;
+	private long totalTime;
+	private long startTime;
+	private int recursionCounter;
+	
+	private long frameTime;
+	private long lastFrameTime;
+	private long maxFrameTime;
+	
+	// rolling window of per-frame times:
+	private final long[] samples;
+	private final long[] sortedSamples;
+	private int numSamples;
+	private int samplePos;
+
+	ProfileNode(Object key, ProfileNode parent, int windowSize) {
+		this.key = key;
+		this.name = (key instanceof Class)? ((Class<?>)key).getSimpleName() : String.valueOf(key);
+		this.parent = parent;
+		this.samples = new long[windowSize];
+		this.sortedSamples = new long[windowSize];
+	}
+	
+	Object getKey() {
+		return key;
+	}
+	
+	ProfileNode getSubNode(Object key) {
+		ProfileNode last = null;
+		for (ProfileNode node = child; node != null; node = node.sibling) {
+			if (key.equals(node.key)) {
+				return node;
+			}
+			last = node;
+		}
+		
+		// JAVA NOTE: appended to keep the nodes in first-call order
+		ProfileNode node = new ProfileNode(key, this, samples.length);
+		if (last != null) {
+			last.sibling = node;
+		}
+		else {
+			child = node;
+		}
+		return node;
+	}
+	
+	void call() {
+		totalCalls++;
+		if (recursionCounter++ == 0) {
+			startTime = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Returns true when the outermost (non-recursive) call has ended.
+	 */
+	boolean ret() {
+		if (recursionCounter == 0) {
+			return true;
+		}
+		if (--recursionCounter == 0) {
+			long time = System.nanoTime() - startTime;
+			totalTime += time;
+			frameTime += time;
+			return true;
+		}
+		return false;
+	}
+	
+	void endFrame() {
+		samples[samplePos] = frameTime;
+		samplePos = (samplePos + 1) % samples.length;
+		if (numSamples < samples.length) {
+			numSamples++;
+		}
+		lastFrameTime = frameTime;
+		if (frameTime > maxFrameTime) {
+			maxFrameTime = frameTime;
+		}
+		frameTime = 0;
+		
+		for (ProfileNode node = child; node != null; node = node.sibling) {
+			node.endFrame();
+		}
+	}
+	
+	void reset() {
+		totalCalls = 0;
+		totalTime = 0;
+		frameTime = 0;
+		lastFrameTime = 0;
+		maxFrameTime = 0;
+		numSamples = 0;
+		samplePos = 0;
+		
+		for (ProfileNode node = child; node != null; node = node.sibling) {
+			node.reset();
+		}
+	}
+	
+	public String getName() {
+		return name;
+	}
+
+	public ProfileNode getParent() {
+		return parent;
+	}
+
+	public ProfileNode getChild() {
+		return child;
+	}
+
+	public ProfileNode getSibling() {
+		return sibling;
+	}
+
+	public int getTotalCalls() {
+		return totalCalls;
+	}
+
+	public long getTotalTime() {
+		return totalTime;
+	}
+
+	/**
+	 * Returns time spent in this block during the last finished frame.
+	 */
+	public long getLastFrameTime() {
+		return lastFrameTime;
+	}
+
+	public long getMaxFrameTime() {
+		return maxFrameTime;
+	}
+
+	/**
+	 * Returns number of frames in the rolling window.
+	 */
+	public int getNumSamples() {
+		return numSamples;
+	}
+	
+	/**
+	 * Returns the given percentile (0-100) of the per-frame times in the
+	 * rolling window, or 0 when no frame has finished yet.
+	 */
+	public long getPercentile(float percentile) {
+		if (numSamples == 0) {
+			return 0;
+		}
+		System.arraycopy(samples, 0, sortedSamples, 0, numSamples);
+		Arrays.sort(sortedSamples, 0, numSamples);
+		
+		int idx = (int) Math.ceil(percentile * 0.01f * numSamples) - 1;
+		if (idx < 0) idx = 0;
+		if (idx >= numSamples) idx = numSamples - 1;
+		return sortedSamples[idx];
+	}
+	
+}
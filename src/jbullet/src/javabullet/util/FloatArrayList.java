@@ -68,4 +68,8 @@ public class FloatArrayList {
 		return size;
 	}
 
+	public void clear() {
+		size = 0;
+	}
+
 }
@@ -110,8 +110,17 @@ public class HashUtil {
 		}
 
 		public boolean retainEntries(IObjectProcedure<V> proc) {
-			valueWrapper.proc = proc;
-			return retainEntries(valueWrapper);
+			// JAVA NOTE: auto compaction during removal rehashes the table in the middle
+			// of iteration, causing wrong entries to be removed, so it's disabled meanwhile
+			float autoCompactionFactor = getAutoCompactionFactor();
+			setAutoCompactionFactor(0f);
+			try {
+				valueWrapper.proc = proc;
+				return retainEntries(valueWrapper);
+			}
+			finally {
+				setAutoCompactionFactor(autoCompactionFactor);
+			}
 		}
 	}
 	
@@ -0,0 +1,124 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Helper tasks submitted to executor to assist calling thread that processes
+ * shared queue of work. Once calling thread has claimed all work, helpers that
+ * haven't started yet are cancelled and only the running ones are waited for.
+ * This way the caller never waits for tasks queued behind other work in busy
+ * or shared executor (which could deadlock when called from within executor
+ * task itself).<p>
+ * 
+ * Instances are reusable, but not reentrant.
+ * 
+ * @author jezek2
+ */
+public class HelperTasks {
+
+	private final List<Helper> helpers = new ArrayList<Helper>();
+	private final List<Future<?>> futures = new ArrayList<Future<?>>();
+	
+	/**
+	 * Submits helper task, it's run only if it starts before {@link #join}
+	 * claims it.
+	 */
+	public void submit(ExecutorService executor, Runnable task) {
+		// new helper for every submission, cancelled helper can still be
+		// referenced by executor thread that already dequeued it:
+		Helper helper = new Helper(task);
+		helpers.add(helper);
+		futures.add(executor.submit(helper));
+	}
+	
+	/**
+	 * Cancels helpers that haven't started yet and waits for completion of
+	 * the running ones, rethrowing exception of failed task. Must be called
+	 * after calling thread has claimed all work, in finally block.
+	 */
+	public void join() {
+		try {
+			for (int i=0; i<helpers.size(); i++) {
+				if (helpers.get(i).started.compareAndSet(false, true)) {
+					futures.get(i).cancel(false);
+				}
+			}
+			for (int i=0; i<helpers.size(); i++) {
+				Future<?> future = futures.get(i);
+				if (!future.isCancelled()) {
+					get(future);
+				}
+			}
+		}
+		finally {
+			helpers.clear();
+			futures.clear();
+		}
+	}
+	
+	private static void get(Future<?> future) {
+		try {
+			future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+	
+	////////////////////////////////////////////////////////////////////////////
+	
+	private static class Helper implements Runnable {
+		public final AtomicBoolean started = new AtomicBoolean();
+		public final Runnable task;
+
+		public Helper(Runnable task) {
+			this.task = task;
+		}
+		
+		public void run() {
+			if (started.compareAndSet(false, true)) {
+				task.run();
+			}
+		}
+	}
+	
+}
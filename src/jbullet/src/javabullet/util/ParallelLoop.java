@@ -0,0 +1,116 @@
+/*
+ * Java port of Bullet (c) 2008 Martin Dvorak <jezek2@advel.cz>
+ *
+ * Bullet Continuous Collision Detection and Physics Library
+ * Copyright (c) 2003-2007 Erwin Coumans  http://continuousphysics.com/Bullet/
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from
+ * the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose, 
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ */
+
+package javabullet.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import javabullet.BulletStats;
+
+/**
+ * Loop over range of items split into contiguous chunks processed concurrently
+ * by executor threads. Calling thread participates in processing and returns
+ * after all chunks are done, without waiting for helper tasks that didn't
+ * start (see {@link HelperTasks}), so it can be used from executor tasks. Chunk boundaries depend only on item count and
+ * parallelism, {@link #process} must not depend on order of chunks.<p>
+ * 
+ * Instances are reusable, but not reentrant.
+ * 
+ * @author jezek2
+ */
+public abstract class ParallelLoop {
+
+	private final AtomicInteger nextChunk = new AtomicInteger();
+	private final HelperTasks helperTasks = new HelperTasks();
+	private int count;
+	private int numChunks;
+	private BulletStats stats;
+	
+	private final Runnable worker = new Runnable() {
+		public void run() {
+			BulletStats.Counters prevStats = BulletStats.bind(stats);
+			try {
+				processChunks();
+			}
+			finally {
+				BulletStats.unbind(prevStats);
+			}
+		}
+	};
+	
+	/**
+	 * Processes items in range, called concurrently for different ranges.
+	 * 
+	 * @param start first item index
+	 * @param end index after last item
+	 */
+	protected abstract void process(int start, int end);
+	
+	/**
+	 * Processes all items, in parallel when executor is given and there are
+	 * enough items.
+	 * 
+	 * @param executor executor service, or null for serial processing
+	 * @param parallelism number of threads including calling thread
+	 * @param count number of items
+	 * @param minChunkSize minimum number of items processed by one task
+	 */
+	public void run(ExecutorService executor, int parallelism, int count, int minChunkSize) {
+		if (executor == null || parallelism <= 1 || count < minChunkSize * 2) {
+			process(0, count);
+			return;
+		}
+		
+		// more chunks than threads for better load balancing:
+		this.count = count;
+		stats = BulletStats.getCurrent();
+		numChunks = Math.max(1, Math.min(parallelism * 4, count / minChunkSize));
+		nextChunk.set(0);
+		try {
+			int numWorkers = Math.min(parallelism, numChunks) - 1;
+			for (int i=0; i<numWorkers; i++) {
+				helperTasks.submit(executor, worker);
+			}
+			
+			try {
+				processChunks();
+			}
+			finally {
+				helperTasks.join();
+			}
+		}
+		finally {
+			stats = null;
+		}
+	}
+	
+	private void processChunks() {
+		int c;
+		while ((c = nextChunk.getAndIncrement()) < numChunks) {
+			int start = (int)((long)count * c / numChunks);
+			int end = (int)((long)count * (c+1) / numChunks);
+			process(start, end);
+		}
+	}
+	
+}